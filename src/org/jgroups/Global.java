@@ -50,6 +50,9 @@ public final class Global {
     public static final String USE_JDK_LOGGER="jgroups.use.jdk_logger"; // forces use of the JDK logger
     public static final String LOG_CLASS="jgroups.log_class"; // class of preferred logger
 
+    /** Runs init() and start() of independent protocols concurrently (see Protocol.startDependencies()) */
+    public static final String PARALLEL_START="jgroups.parallel_start";
+
     /** System prop for defining the default number of headers in a Message */
     public static final String DEFAULT_HEADERS="jgroups.msg.default_headers";
 
@@ -58,11 +58,12 @@ public class ObjectMessage extends BaseMessage {
     public ObjectMessage     setArray(byte[] b, int off, int len) {throw new UnsupportedOperationException();}
     public ObjectMessage     setArray(ByteArray buf)              {throw new UnsupportedOperationException();}
 
-    /** Sets the object. If the object doesn't implement {@link SizeStreamable}, or is a primitive type,
-     * it will be wrapped into an {@link ObjectWrapper} (which does implement SizeStreamable)
+    /** Sets the object. If the object doesn't implement {@link SizeStreamable}, is not a primitive type and is not
+     * registered with {@link TypeRegistry}, it will be wrapped into an {@link ObjectWrapper} (which does implement
+     * SizeStreamable)
      */
     public ObjectMessage setObject(Object obj) {
-        if(obj == null || obj instanceof SizeStreamable || Util.isPrimitiveType(obj))
+        if(Util.isSizeable(obj))
             this.obj=obj;
         else
             this.obj=new ObjectWrapper(obj);
@@ -4,6 +4,7 @@ package org.jgroups;
 
 import org.jgroups.annotations.Immutable;
 import org.jgroups.util.ArrayIterator;
+import org.jgroups.util.MemberIndex;
 import org.jgroups.util.SizeStreamable;
 import org.jgroups.util.Util;
 
@@ -41,6 +42,9 @@ public class View implements Comparable<View>, SizeStreamable, Iterable<Address>
     */
     protected Address[] members;
 
+    /** Maps members to their position in members; computed lazily on first access (once per view) */
+    protected volatile MemberIndex index;
+
     protected static final boolean suppress_view_size=Boolean.getBoolean(Global.SUPPRESS_VIEW_SIZE);
 
 
@@ -134,6 +138,22 @@ public class View implements Comparable<View>, SizeStreamable, Iterable<Address>
         return members;
     }
 
+    /**
+     * Returns the {@link MemberIndex} of this view, which maps each member to its position in the view. The index is
+     * created on the first call and then reused, so all protocols handling the same view share it.
+     */
+    public MemberIndex getMemberIndex() {
+        MemberIndex tmp=index;
+        if(tmp == null)
+            index=tmp=new MemberIndex(view_id, members);
+        return tmp;
+    }
+
+    /** Returns the position of mbr in this view, or -1 if mbr is not a member */
+    public int indexOf(Address mbr) {
+        return getMemberIndex().indexOf(mbr);
+    }
+
     /**
      * Returns true if this view contains a certain member
      * @param mbr - the address of the member,
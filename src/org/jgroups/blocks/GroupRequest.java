@@ -90,7 +90,8 @@ public class GroupRequest<T> extends Request<RspList<T>> {
         lock.lock();
         try {
             if(!rsp.wasReceived()) {
-                if(!(rsp.wasSuspected() || rsp.wasUnreachable()))
+                boolean first=!(rsp.wasSuspected() || rsp.wasUnreachable());
+                if(first)
                     num_received++;
                 if(rsp_filter == null || rsp_filter.isAcceptable(response_value, sender)) {
                     if(is_exception && response_value instanceof Throwable)
@@ -98,6 +99,8 @@ public class GroupRequest<T> extends Request<RspList<T>> {
                     else
                         rsp.setValue((T)response_value);
                     num_valid++;
+                    if(first)
+                        rspDone(sender, rsp);
                 }
             }
 
@@ -126,8 +129,10 @@ public class GroupRequest<T> extends Request<RspList<T>> {
                     if(rsp != null && rsp.setUnreachable()) {
                         lock.lock();
                         try {
-                            if(!(rsp.wasReceived() || rsp.wasSuspected()))
+                            if(!(rsp.wasReceived() || rsp.wasSuspected())) {
                                 num_received++;
+                                rspDone(member, rsp);
+                            }
                         }
                         finally {
                             lock.unlock();
@@ -181,8 +186,10 @@ public class GroupRequest<T> extends Request<RspList<T>> {
                 if(!(mbr instanceof SiteAddress) && !view.containsMember(mbr)) {
                     Rsp<T> rsp=entry.getValue();
                     if(rsp.setSuspected()) {
-                        if(!(rsp.wasReceived() || rsp.wasUnreachable()))
+                        if(!(rsp.wasReceived() || rsp.wasUnreachable())) {
                             num_received++;
+                            rspDone(mbr, rsp);
+                        }
                         changed=true;
                     }
                 }
@@ -208,6 +215,7 @@ public class GroupRequest<T> extends Request<RspList<T>> {
                 if(rsp != null && !(rsp.wasReceived() || rsp.wasSuspected() || rsp.wasUnreachable())) {
                     rsp.setException(new IllegalStateException("transport was closed"));
                     num_received++;
+                    rspDone(entry.getKey(), rsp);
                     changed=true;
                 }
             }
@@ -277,13 +285,23 @@ public class GroupRequest<T> extends Request<RspList<T>> {
     protected boolean setSuspected(Address mbr) {
         Rsp<T> rsp=rsps.get(mbr);
         if(rsp != null && rsp.setSuspected()) {
-            if(!(rsp.wasReceived() || rsp.wasUnreachable()))
+            if(!(rsp.wasReceived() || rsp.wasUnreachable())) {
                 num_received++;
+                rspDone(mbr, rsp);
+            }
             return true;
         }
         return false;
     }
 
+    /**
+     * Called (with the lock held) when the response of a member is received (and accepted by the response filter),
+     * or the member was suspected, is unreachable, or the transport was closed. Called at most once per member
+     */
+    @GuardedBy("lock")
+    protected void rspDone(Address mbr, Rsp<T> rsp) {
+    }
+
 
     protected RspList<T> doAndComplete(Callable<RspList<T>> supplier) {
         try {
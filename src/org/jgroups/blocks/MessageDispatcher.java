@@ -13,6 +13,7 @@ import org.jgroups.util.*;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Stream;
 
@@ -43,6 +44,7 @@ public class MessageDispatcher implements RequestHandler, Closeable, ChannelList
     protected RequestHandler                        req_handler;
     protected boolean                               async_dispatching;
     protected boolean                               wrap_exceptions;
+    protected boolean                               striped_request_table;
     protected ProtocolAdapter                       prot_adapter;
     protected volatile Collection<Address>          members=new HashSet<>();
     protected Address                               local_addr;
@@ -88,6 +90,7 @@ public class MessageDispatcher implements RequestHandler, Closeable, ChannelList
     public boolean           asyncDispatching()           {return async_dispatching;}
     public boolean           getWrapExceptions()          {return wrap_exceptions;}
     public boolean           wrapExceptions()             {return wrap_exceptions;}
+    public boolean           stripedRequestTable()        {return striped_request_table;}
     public UpHandler         getProtocolAdapter()         {return prot_adapter;}
     public UpHandler         protocolAdapter()            {return prot_adapter;}
     public RpcStats          getRpcStats()                {return rpc_stats;}
@@ -117,7 +120,8 @@ public class MessageDispatcher implements RequestHandler, Closeable, ChannelList
             return (X)this;
         stop();
         this.corr=c;
-        corr.asyncDispatching(this.async_dispatching).wrapExceptions(this.wrap_exceptions);
+        corr.asyncDispatching(this.async_dispatching).wrapExceptions(this.wrap_exceptions)
+          .stripedRequestTable(striped_request_table);
         start();
         return (X)this;
     }
@@ -148,6 +152,14 @@ public class MessageDispatcher implements RequestHandler, Closeable, ChannelList
         return (X)this;
     }
 
+    /** Uses a {@link org.jgroups.util.StripedRequestTable} for pending requests. Must be set before sending RPCs */
+    public <X extends MessageDispatcher> X stripedRequestTable(boolean flag) {
+        striped_request_table=flag;
+        if(corr != null)
+            corr.stripedRequestTable(flag);
+        return (X)this;
+    }
+
     protected <X extends MessageDispatcher> X setMembers(List<Address> new_mbrs) {
         if(new_mbrs != null)
             members=new HashSet<>(new_mbrs); // volatile write - seen by a subsequent read
@@ -158,7 +170,8 @@ public class MessageDispatcher implements RequestHandler, Closeable, ChannelList
     public <X extends MessageDispatcher> X start() {
         if(corr == null)
             corr=createRequestCorrelator(prot_adapter, this, local_addr)
-              .asyncDispatching(async_dispatching).wrapExceptions(this.wrap_exceptions);
+              .asyncDispatching(async_dispatching).wrapExceptions(this.wrap_exceptions)
+              .stripedRequestTable(striped_request_table);
         corr.start();
 
         if(channel != null) {
@@ -243,6 +256,42 @@ public class MessageDispatcher implements RequestHandler, Closeable, ChannelList
     }
 
 
+    /**
+     * Sends a message to all members and publishes the responses of the members in dests (if non-null) as they are
+     * received, rather than waiting for all responses.
+     * @param dests A list of group members from which to expect responses
+     * @param msg The message to be sent
+     * @param opts A set of options that govern the call. If a timeout is set, the publisher completes when it elapses,
+     *             even if not all responses have been received
+     * @return A publisher of the responses (see {@link StreamingGroupRequest}). Cancelling the subscription cancels
+     *         the request. If the request is sent asynchronously, the publisher completes without publishing responses
+     * @throws Exception If the request cannot be sent
+     */
+    public <T> Flow.Publisher<Rsp<T>> castMessageWithPublisher(final Collection<Address> dests, Message msg,
+                                                               RequestOptions opts) throws Exception {
+        if(opts == null) {
+            log.warn("request options were null, using default of sync");
+            opts=RequestOptions.SYNC();
+        }
+        List<Address> real_dests=targets(dests, opts);
+        boolean sync=opts.mode() != ResponseMode.GET_NONE;
+        StreamingGroupRequest<T> req=new StreamingGroupRequest<>(corr, sync? real_dests : Collections.emptyList(), opts);
+        if(real_dests.isEmpty()) {
+            log.trace("destination list is empty, won't send message");
+            req.complete(req.rsps);
+            return req;
+        }
+        updateStats(real_dests, opts.anycasting(), sync, 0);
+        if(!sync) {
+            corr.sendRequest(real_dests, msg, null, opts);
+            req.complete(req.rsps);
+            return req;
+        }
+        req.execute(msg, false);
+        return req;
+    }
+
+
     protected <T> GroupRequest<T> cast(final Collection<Address> dests, Message msg, RequestOptions options,
                                        boolean block_for_results) throws Exception {
         if(options == null) {
@@ -250,25 +299,7 @@ public class MessageDispatcher implements RequestHandler, Closeable, ChannelList
             options=RequestOptions.SYNC();
         }
 
-        List<Address> real_dests;
-        // we need to clone because we don't want to modify the original
-        if(dests != null)
-            real_dests=dests.stream().filter(dest -> dest instanceof SiteAddress || this.members.contains(dest))
-              .collect(ArrayList::new, (list,dest) -> {if(!list.contains(dest)) list.add(dest);}, (l,r) -> {});
-        else
-            real_dests=new ArrayList<>(members);
-
-        // Remove the local member from the target destination set if we should not deliver our own message
-        JChannel tmp=channel;
-        if((tmp != null && tmp.getDiscardOwnMessages()) || options.transientFlagSet(Message.TransientFlag.DONT_LOOPBACK)) {
-            if(local_addr == null)
-                local_addr=tmp != null? tmp.getAddress() : null;
-            real_dests.remove(local_addr);
-        }
-
-        if(options.hasExclusionList())
-            Stream.of(options.exclusionList()).forEach(real_dests::remove);
-
+        List<Address> real_dests=targets(dests, options);
         if(real_dests.isEmpty()) {
             log.trace("destination list is empty, won't send message");
             return empty_group_request;
@@ -293,6 +324,29 @@ public class MessageDispatcher implements RequestHandler, Closeable, ChannelList
         return req;
     }
 
+    /** Returns the members from which responses are expected: dests (or all members), minus excluded members */
+    protected List<Address> targets(final Collection<Address> dests, RequestOptions options) {
+        List<Address> real_dests;
+        // we need to clone because we don't want to modify the original
+        if(dests != null)
+            real_dests=dests.stream().filter(dest -> dest instanceof SiteAddress || this.members.contains(dest))
+              .collect(ArrayList::new, (list,dest) -> {if(!list.contains(dest)) list.add(dest);}, (l,r) -> {});
+        else
+            real_dests=new ArrayList<>(members);
+
+        // Remove the local member from the target destination set if we should not deliver our own message
+        JChannel tmp=channel;
+        if((tmp != null && tmp.getDiscardOwnMessages()) || options.transientFlagSet(Message.TransientFlag.DONT_LOOPBACK)) {
+            if(local_addr == null)
+                local_addr=tmp != null? tmp.getAddress() : null;
+            real_dests.remove(local_addr);
+        }
+
+        if(options.hasExclusionList())
+            Stream.of(options.exclusionList()).forEach(real_dests::remove);
+        return real_dests;
+    }
+
 
 
     public void done(long req_id) {
@@ -2,8 +2,11 @@ package org.jgroups.blocks;
 
 
 import org.jgroups.Constructable;
+import org.jgroups.Global;
 import org.jgroups.util.Bits;
-import org.jgroups.util.Streamable;
+import org.jgroups.util.ByteArray;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.SizeStreamable;
 import org.jgroups.util.Util;
 
 import java.io.DataInput;
@@ -22,12 +25,14 @@ import java.util.function.Supplier;
  * A method call is serializable and can be passed over the wire.
  * @author Bela Ban
  */
-public class MethodCall implements Streamable, Constructable<MethodCall> {
+public class MethodCall implements SizeStreamable, Constructable<MethodCall> {
     protected String       method_name;
     protected short        method_id=-1; // the ID of a method, maps to a java.lang.reflect.Method
     protected Object[]     args;         // the arguments to the call
     protected Class<?>[]   types;        // the types of the arguments, e.g., new Class[]{String.class, int.class}
     protected Method       method;
+    // marshalled form of a call whose size can only be computed by marshalling it; cleared by writeTo()
+    protected volatile ByteArray serialized;
 
 
     /** Needed for deserialization */
@@ -62,18 +67,20 @@ public class MethodCall implements Streamable, Constructable<MethodCall> {
     public String     getMethodName()          {return method_name != null? method_name : String.valueOf(method_id);}
 
     public short      getMethodId()            {return method_id;}
-    public MethodCall setMethodId(short id)    {this.method_id=id; return this;}
+    public MethodCall setMethodId(short id)    {this.method_id=id; serialized=null; return this;}
 
     public Object[]   getArgs()                {return args;}
-    public MethodCall setArgs(Object...args)   {this.args=args; return this;}
+    public MethodCall setArgs(Object...args)   {this.args=args; serialized=null; return this;}
 
     public Method     getMethod()              {return method;}
+    public Class<?>[] getTypes()               {return types;}
 
 
     public MethodCall setMethod(Method m)      {
         this.method=Objects.requireNonNull(m);
         this.method_name=m.getName();
         this.types=m.getParameterTypes();
+        serialized=null;
         return this;
     }
 
@@ -158,8 +165,50 @@ public class MethodCall implements Streamable, Constructable<MethodCall> {
         return ret.toString();
     }
 
+    /**
+     * Returns true if the marshalled size of this call can be computed without marshalling it, ie. all arguments
+     * (and types) are primitive types, {@link SizeStreamable}s or registered with {@link org.jgroups.util.TypeRegistry}
+     */
+    public boolean isSizeable() {
+        return computeSize() >= 0;
+    }
+
+    /**
+     * Returns the marshalled size. If this call has arguments which are not sizeable (e.g. {@link java.io.Serializable}
+     * arguments), the call is marshalled to compute the size, and the marshalled form is used by the next
+     * {@link #writeTo(DataOutput)}
+     */
+    @Override
+    public int serializedSize() {
+        int size=computeSize();
+        if(size >= 0)
+            return size;
+        ByteArray buf=serialized;
+        if(buf == null) {
+            ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(512, true);
+            try {
+                marshal(out);
+            }
+            catch(IOException ex) {
+                throw new IllegalStateException(String.format("failed computing the size of %s", this), ex);
+            }
+            serialized=buf=out.getBuffer();
+        }
+        return buf.getLength();
+    }
+
     @Override
     public void writeTo(DataOutput out) throws IOException {
+        ByteArray buf=serialized;
+        if(buf != null) {
+            serialized=null;
+            out.write(buf.getArray(), buf.getOffset(), buf.getLength());
+        }
+        else
+            marshal(out);
+    }
+
+    protected void marshal(DataOutput out) throws IOException {
         out.writeBoolean(useIds());
         if(useIds())
             out.writeShort(method_id);
@@ -191,10 +240,42 @@ public class MethodCall implements Streamable, Constructable<MethodCall> {
             writeArg(out, obj);
     }
 
+    /** Writes an argument. Subclasses overriding this method need to override {@link #argSize(Object)}, too */
     protected void writeArg(DataOutput out, Object obj) throws IOException {
         Util.objectToStream(obj, out);
     }
 
+    /** Returns the size of an argument as written by {@link #writeArg(DataOutput, Object)}, or -1 if not known */
+    protected int argSize(Object obj) {
+        return Util.isSizeable(obj)? Util.size(obj) : -1;
+    }
+
+    /** Computes the size without marshalling the call, returns -1 if an argument or type is not sizeable */
+    protected int computeSize() {
+        int size=Global.BYTE_SIZE * 2; // useIds() and number of args
+        if(useIds())
+            size+=Global.SHORT_SIZE;
+        else {
+            size+=Global.BYTE_SIZE + (method_name != null? Bits.sizeUTF(method_name) : 0) + Global.BYTE_SIZE;
+            if(types != null) {
+                for(Class<?> type: types) {
+                    if(!Util.isSizeable(type))
+                        return -1;
+                    size+=Util.size(type);
+                }
+            }
+        }
+        if(args != null) {
+            for(Object arg: args) {
+                int arg_size=argSize(arg);
+                if(arg_size < 0)
+                    return -1;
+                size+=arg_size;
+            }
+        }
+        return size;
+    }
+
     protected void readArgs(DataInput in) throws IOException, ClassNotFoundException {
         int args_len=in.readByte();
         if(args_len == 0)
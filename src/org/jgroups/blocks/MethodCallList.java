@@ -0,0 +1,182 @@
+package org.jgroups.blocks;
+
+import org.jgroups.Constructable;
+import org.jgroups.Global;
+import org.jgroups.util.ByteArray;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A list of {@link MethodCall}s which is sent in a single message and executed in order by the receiver's
+ * {@link RpcDispatcher}. The receiver returns a {@link Results} instance with one result (or exception) per call.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class MethodCallList implements SizeStreamable, Constructable<MethodCallList> {
+    protected List<MethodCall> calls;
+
+    /** Needed for deserialization */
+    public MethodCallList() {
+    }
+
+    public MethodCallList(List<MethodCall> calls) {
+        this.calls=Objects.requireNonNull(calls);
+    }
+
+    public Supplier<? extends MethodCallList> create() {return MethodCallList::new;}
+    public List<MethodCall>                   calls()  {return calls != null? calls : Collections.emptyList();}
+    public int                                size()   {return calls != null? calls.size() : 0;}
+
+    /** Returns true if the size of all calls can be computed without marshalling them */
+    public boolean isSizeable() {
+        for(int i=0; i < size(); i++)
+            if(!calls.get(i).isSizeable())
+                return false;
+        return true;
+    }
+
+    @Override
+    public int serializedSize() {
+        int retval=Global.INT_SIZE;
+        for(int i=0; i < size(); i++)
+            retval+=calls.get(i).serializedSize();
+        return retval;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        int size=size();
+        out.writeInt(size);
+        for(int i=0; i < size; i++)
+            calls.get(i).writeTo(out);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException, ClassNotFoundException {
+        int size=in.readInt();
+        calls=new ArrayList<>(size);
+        for(int i=0; i < size; i++) {
+            MethodCall call=new MethodCall();
+            call.readFrom(in);
+            calls.add(call);
+        }
+    }
+
+    public String toString() {
+        return String.format("%d calls: %s", size(), calls);
+    }
+
+
+    /** The results of the invocation of a {@link MethodCallList}: one value or exception per call */
+    public static class Results implements SizeStreamable, Constructable<Results> {
+        protected Object[]  values;
+        protected boolean[] exceptions;
+        // marshalled form if not all values are sizeable; cleared by writeTo()
+        protected volatile ByteArray serialized;
+
+        /** Needed for deserialization */
+        public Results() {
+        }
+
+        public Results(int size) {
+            values=new Object[size];
+            exceptions=new boolean[size];
+        }
+
+        public Supplier<? extends Results> create()                  {return Results::new;}
+        public int                         size()                    {return values != null? values.length : 0;}
+        public Object                      value(int index)          {return values[index];}
+        public boolean                     isException(int index)    {return exceptions[index];}
+        public Results setValue(int index, Object val) {
+            values[index]=val;
+            serialized=null;
+            return this;
+        }
+
+        public Results setException(int index, Throwable t) {
+            values[index]=t;
+            exceptions[index]=true;
+            serialized=null;
+            return this;
+        }
+
+        /** Returns true if the size of all values can be computed without marshalling them */
+        public boolean isSizeable() {
+            for(int i=0; i < size(); i++)
+                if(!Util.isSizeable(values[i]))
+                    return false;
+            return true;
+        }
+
+        /**
+         * Returns the marshalled size. If not all values are sizeable, the results are marshalled to compute the
+         * size, and the marshalled form is used by the next {@link #writeTo(DataOutput)}
+         */
+        @Override
+        public int serializedSize() {
+            if(isSizeable()) {
+                int retval=Global.INT_SIZE + size() * Global.BYTE_SIZE;
+                for(int i=0; i < size(); i++)
+                    retval+=Util.size(values[i]);
+                return retval;
+            }
+            ByteArray buf=serialized;
+            if(buf == null) {
+                ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(512, true);
+                try {
+                    marshal(out);
+                }
+                catch(IOException ex) {
+                    throw new IllegalStateException(String.format("failed computing the size of %s", this), ex);
+                }
+                serialized=buf=out.getBuffer();
+            }
+            return buf.getLength();
+        }
+
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            ByteArray buf=serialized;
+            if(buf != null) {
+                serialized=null;
+                out.write(buf.getArray(), buf.getOffset(), buf.getLength());
+            }
+            else
+                marshal(out);
+        }
+
+        protected void marshal(DataOutput out) throws IOException {
+            int size=size();
+            out.writeInt(size);
+            for(int i=0; i < size; i++) {
+                out.writeBoolean(exceptions[i]);
+                Util.objectToStream(values[i], out);
+            }
+        }
+
+        @Override
+        public void readFrom(DataInput in) throws IOException, ClassNotFoundException {
+            int size=in.readInt();
+            values=new Object[size];
+            exceptions=new boolean[size];
+            for(int i=0; i < size; i++) {
+                exceptions[i]=in.readBoolean();
+                values[i]=Util.objectFromStream(in);
+            }
+        }
+
+        public String toString() {
+            return String.format("%d results", size());
+        }
+    }
+}
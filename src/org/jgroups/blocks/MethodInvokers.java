@@ -0,0 +1,197 @@
+package org.jgroups.blocks;
+
+import org.jgroups.util.Util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates and caches {@link Invoker}s, which invoke methods through {@link MethodHandle}s rather than
+ * {@link Method#invoke(Object, Object...)}. An invoker is created once per (target class, method id), (target class,
+ * method name, arity) or {@link Method} and then reused for all subsequent invocations.<br/>
+ * Methods with up to {@link #MAX_FAST_ARITY} parameters are invoked by passing the arguments directly to the method
+ * handle; for methods with more parameters, the argument array is spread by the method handle.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class MethodInvokers {
+    public static final int MAX_FAST_ARITY=4;
+
+    protected final Map<Class<?>,Entry> entries=new ConcurrentHashMap<>();
+    protected final Map<Method,Invoker> methods=new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface Invoker {
+        Object invoke(Object target, Object[] args) throws Throwable;
+    }
+
+    public int size() {
+        return methods.size() + entries.values().stream().mapToInt(Entry::size).sum();
+    }
+
+    public MethodInvokers clear() {
+        entries.clear();
+        methods.clear();
+        return this;
+    }
+
+    /**
+     * Returns the invoker for the method with the given ID, looking up the method with lookup if not cached
+     * @return The invoker, or null if lookup didn't find a method for the ID
+     */
+    public Invoker get(Class<?> cl, short id, MethodLookup lookup) throws Exception {
+        Entry e=entry(cl);
+        Invoker inv=e.get(id);
+        if(inv != null)
+            return inv;
+        Method m=lookup.findMethod(id);
+        if(m == null)
+            return null;
+        return e.put(id, create(m));
+    }
+
+    /**
+     * Returns the invoker for the method with the given name and argument types, resolved the same way as
+     * {@link MethodCall#invoke(Object)}
+     * @return The invoker, or null if no method was found
+     */
+    public Invoker get(Class<?> cl, String method_name, Class<?>[] types) throws Exception {
+        Entry e=entry(cl);
+        int arity=types != null? types.length : 0;
+        Invoker inv=e.get(method_name, arity);
+        if(inv != null)
+            return inv;
+        Method m=Util.findMethod(cl, method_name, types);
+        if(m == null)
+            return null;
+        return e.put(method_name, arity, create(m));
+    }
+
+    public Invoker get(Method m) throws Exception {
+        Invoker inv=methods.get(m);
+        if(inv == null) {
+            Invoker tmp=methods.putIfAbsent(m, inv=create(m));
+            if(tmp != null)
+                inv=tmp;
+        }
+        return inv;
+    }
+
+    /** Invokes the invoker, unwrapping {@link Throwable}s which are neither errors nor exceptions */
+    public static Object invoke(Invoker inv, Object target, Object[] args) throws Exception {
+        try {
+            return inv.invoke(target, args);
+        }
+        catch(Exception | Error ex) {
+            throw ex;
+        }
+        catch(Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /** Creates an invoker for the given method. Static methods ignore the target */
+    public static Invoker create(Method m) throws IllegalAccessException {
+        Objects.requireNonNull(m);
+        // allow method invocation on protected or (package-) private methods, too
+        if(!Modifier.isPublic(m.getModifiers()) || !Modifier.isPublic(m.getDeclaringClass().getModifiers()))
+            m.setAccessible(true);
+        MethodHandle mh=MethodHandles.lookup().unreflect(m);
+        if(mh.isVarargsCollector())
+            mh=mh.asFixedArity();
+        if(Modifier.isStatic(m.getModifiers()))
+            mh=MethodHandles.dropArguments(mh, 0, Object.class);
+        final int arity=m.getParameterCount();
+        if(arity > MAX_FAST_ARITY) {
+            final MethodHandle spreader=mh.asSpreader(Object[].class, arity)
+              .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+            return (target, args) -> (Object)spreader.invokeExact(target, args);
+        }
+        final MethodHandle h=mh.asType(MethodType.genericMethodType(arity + 1));
+        switch(arity) {
+            case 0:  return (target, args) -> {check(args, 0); return (Object)h.invokeExact(target);};
+            case 1:  return (target, args) -> {check(args, 1); return (Object)h.invokeExact(target, args[0]);};
+            case 2:  return (target, args) -> {check(args, 2); return (Object)h.invokeExact(target, args[0], args[1]);};
+            case 3:  return (target, args) -> {
+                check(args, 3);
+                return (Object)h.invokeExact(target, args[0], args[1], args[2]);
+            };
+            default: return (target, args) -> {
+                check(args, 4);
+                return (Object)h.invokeExact(target, args[0], args[1], args[2], args[3]);
+            };
+        }
+    }
+
+    protected static void check(Object[] args, int arity) {
+        int len=args != null? args.length : 0;
+        if(len != arity)
+            throw new IllegalArgumentException(String.format("wrong number of arguments: %d (expected: %d)", len, arity));
+    }
+
+    protected Entry entry(Class<?> cl) {
+        Entry e=entries.get(cl);
+        if(e == null) {
+            Entry tmp=entries.putIfAbsent(cl, e=new Entry());
+            if(tmp != null)
+                e=tmp;
+        }
+        return e;
+    }
+
+    /** The invokers of a class. Invokers for method IDs are kept in an array indexed by ID (copy-on-write) */
+    protected static class Entry {
+        protected volatile Invoker[]            by_id={};
+        protected final Map<String,Invoker[]>   by_name=new ConcurrentHashMap<>(); // indexed by arity
+
+        protected Invoker get(short id) {
+            Invoker[] tmp=by_id;
+            return id >= 0 && id < tmp.length? tmp[id] : null;
+        }
+
+        protected synchronized Invoker put(short id, Invoker inv) {
+            Invoker[] tmp=by_id;
+            if(id >= tmp.length)
+                tmp=Arrays.copyOf(tmp, id+1);
+            else if(tmp[id] != null)
+                return tmp[id];
+            else
+                tmp=tmp.clone();
+            tmp[id]=inv;
+            by_id=tmp;
+            return inv;
+        }
+
+        protected Invoker get(String name, int arity) {
+            Invoker[] tmp=by_name.get(name);
+            return tmp != null && arity < tmp.length? tmp[arity] : null;
+        }
+
+        protected synchronized Invoker put(String name, int arity, Invoker inv) {
+            Invoker[] tmp=by_name.get(name);
+            if(tmp == null)
+                tmp=new Invoker[arity+1];
+            else if(arity >= tmp.length)
+                tmp=Arrays.copyOf(tmp, arity+1);
+            else if(tmp[arity] != null)
+                return tmp[arity];
+            else
+                tmp=tmp.clone();
+            tmp[arity]=inv;
+            by_name.put(name, tmp);
+            return inv;
+        }
+
+        protected int size() {
+            return (int)(Arrays.stream(by_id).filter(Objects::nonNull).count()
+              + by_name.values().stream().flatMap(Arrays::stream).filter(Objects::nonNull).count());
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 
@@ -38,6 +39,9 @@ public class RequestCorrelator {
     /** To generate unique request IDs */
     protected static final AtomicLong                REQUEST_ID=new AtomicLong(1);
 
+    /** If non-null, pending requests are stored in (and their IDs generated by) this table rather than in requests */
+    protected volatile StripedRequestTable<Request<?>> request_table;
+
     /** The handler for the incoming requests. It is called from inside the dispatcher thread */
     protected RequestHandler                         request_handler;
 
@@ -100,6 +104,17 @@ public class RequestCorrelator {
     public RequestCorrelator      asyncDispatching(boolean flag) {async_dispatching=flag; return this;}
     public boolean                wrapExceptions()               {return wrap_exceptions;}
     public RequestCorrelator      wrapExceptions(boolean flag)   {wrap_exceptions=flag; return this;}
+    public boolean                stripedRequestTable()          {return request_table != null;}
+
+    /**
+     * Stores pending requests in a {@link StripedRequestTable} (true) or a concurrent map (false). The table reduces
+     * contention when many threads invoke RPCs concurrently. Must be called before any requests are sent.
+     */
+    public RequestCorrelator stripedRequestTable(boolean flag) {
+        if(flag != stripedRequestTable())
+            request_table=flag? new StripedRequestTable<Request<?>>(32).removesTillCompaction(1024) : null;
+        return this;
+    }
 
 
     /**
@@ -120,12 +135,10 @@ public class RequestCorrelator {
           .setFlag(opts.flags(), false).setFlag(opts.transientFlags(), true);
 
         if(req != null) { // sync
-            long req_id=REQUEST_ID.getAndIncrement();
-            req.requestId(req_id);
+            long req_id=addRequest(req);
             hdr.requestId(req_id); // set the request-id only for *synchronous RPCs*
             if(log.isTraceEnabled())
                 log.trace("%s: invoking multicast RPC [req-id=%d]", local_addr, req_id);
-            requests.putIfAbsent(req_id, req);
             // make sure no view is received before we add ourself as a view handler (https://issues.jboss.org/browse/JGRP-1428)
             req.viewChange(view);
             if(rpc_stats.extendedStats())
@@ -161,12 +174,10 @@ public class RequestCorrelator {
           .setFlag(opts.transientFlags(), true);
 
         if(req != null) { // sync RPC
-            long req_id=REQUEST_ID.getAndIncrement();
-            req.requestId(req_id);
+            long req_id=addRequest(req);
             hdr.requestId(req_id); // set the request-id only for *synchronous RPCs*
             if(log.isTraceEnabled())
                 log.trace("%s: invoking unicast RPC [req-id=%d] on %s", local_addr, req_id, dest);
-            requests.putIfAbsent(req_id, req);
             // make sure no view is received before we add ourself as a view handler (https://issues.jboss.org/browse/JGRP-1428)
             req.viewChange(view);
             if(rpc_stats.extendedStats())
@@ -222,7 +233,10 @@ public class RequestCorrelator {
 
     public void stop() {
         started=false;
-        requests.values().forEach(Request::transportClosed);
+        forEachRequest(Request::transportClosed);
+        StripedRequestTable<Request<?>> table=request_table;
+        if(table != null)
+            table.clear();
         requests.clear();
     }
 
@@ -243,7 +257,7 @@ public class RequestCorrelator {
 
     /** An entire site is down; mark all requests that point to that site as unreachable (used by RELAY2) */
     public void setSiteUnreachable(String site) {
-        requests.values().stream().filter(Objects::nonNull).forEach(req -> req.siteUnreachable(site));
+        forEachRequest(req -> req.siteUnreachable(site));
     }
 
 
@@ -252,7 +266,7 @@ public class RequestCorrelator {
      */
     public void receiveView(View new_view) {
         view=new_view; // move this before the iteration (JGRP-1428)
-        requests.values().stream().filter(Objects::nonNull).forEach(req -> req.viewChange(new_view));
+        forEachRequest(req -> req.viewChange(new_view));
     }
 
 
@@ -305,8 +319,39 @@ public class RequestCorrelator {
 
 
     // .......................................................................
+    /** Adds a request to the table of pending requests, sets its request-id and returns it */
+    protected long addRequest(Request<?> req) {
+        StripedRequestTable<Request<?>> table=request_table;
+        long req_id;
+        if(table != null) // no response can be received before the request (with the ID in the header) has been sent
+            req.requestId(req_id=table.add(req));
+        else {
+            req.requestId(req_id=REQUEST_ID.getAndIncrement());
+            requests.putIfAbsent(req_id, req);
+        }
+        return req_id;
+    }
+
+    protected Request<?> getRequest(long id) {
+        StripedRequestTable<Request<?>> table=request_table;
+        return table != null? table.get(id) : requests.get(id);
+    }
+
+    protected Request<?> removeRequest(long id) {
+        StripedRequestTable<Request<?>> table=request_table;
+        return table != null? table.remove(id) : requests.remove(id);
+    }
+
+    protected void forEachRequest(Consumer<Request<?>> c) {
+        StripedRequestTable<Request<?>> table=request_table;
+        if(table != null)
+            table.forEach(c);
+        else
+            requests.values().stream().filter(Objects::nonNull).forEach(c);
+    }
+
     protected RequestCorrelator removeEntry(long id) {
-        Request<?> req=requests.remove(id);
+        Request<?> req=removeRequest(id);
         if(req != null) {
             long time_ns=req.start_time > 0? System.nanoTime() - req.start_time : 0;
             if(req instanceof UnicastRequest)
@@ -333,7 +378,7 @@ public class RequestCorrelator {
 
             case Header.RSP:
             case Header.EXC_RSP:
-                Request<?> req=requests.get(hdr.req_id);
+                Request<?> req=getRequest(hdr.req_id);
                 if(req != null) {
                     Object retval=msg.getPayload();
                     req.receiveResponse(retval, msg.getSrc(), hdr.type == Header.EXC_RSP);
@@ -562,12 +607,13 @@ public class RequestCorrelator {
                 switch(key) {
                     case "requests":
                         StringBuilder sb=new StringBuilder();
-                        for(Map.Entry<Long,Request<?>> entry: requests.entrySet())
-                            sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+                        forEachRequest(req -> sb.append(req.requestId()).append(": ").append(req).append("\n"));
                         retval.put(key, sb.toString());
                         break;
                     case "reqtable-info":
-                        retval.put(key, String.format("size=%d, next-id=%d", requests.size(), REQUEST_ID.get()));
+                        StripedRequestTable<Request<?>> table=request_table;
+                        retval.put(key, table != null? table.toString()
+                          : String.format("size=%d, next-id=%d", requests.size(), REQUEST_ID.get()));
                         break;
                     case "rpcs":
                         retval.put("sync  unicast   RPCs", String.valueOf(rpc_stats.unicasts(true)));
@@ -6,8 +6,12 @@ import org.jgroups.*;
 import org.jgroups.util.*;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 
 /**
@@ -22,6 +26,9 @@ public class RpcDispatcher extends MessageDispatcher {
     protected Object        server_obj;
     protected MethodLookup  method_lookup;
     protected MethodInvoker method_invoker;
+    protected boolean       cache_invokers=true;
+    // invokers (per target class and method) used instead of reflection when cache_invokers is true
+    protected final MethodInvokers invokers=new MethodInvokers();
 
 
     public RpcDispatcher() {
@@ -42,6 +49,9 @@ public class RpcDispatcher extends MessageDispatcher {
     public RpcDispatcher setMethodLookup(MethodLookup ml)     {this.method_lookup=ml; return this;}
     public MethodInvoker getMethodInvoker()                   {return method_invoker;}
     public RpcDispatcher setMethodInvoker(MethodInvoker mi)   {this.method_invoker=mi; return this;}
+    public boolean       cacheInvokers()                      {return cache_invokers;}
+    public RpcDispatcher cacheInvokers(boolean b)             {this.cache_invokers=b; if(!b) invokers.clear(); return this;}
+    public MethodInvokers getInvokers()                       {return invokers;}
 
 
     /**
@@ -113,6 +123,113 @@ public class RpcDispatcher extends MessageDispatcher {
         return retval;
     }
 
+    /**
+     * Invokes a method in all members and publishes the responses of the members contained in dests (or all members
+     * if dests is null) as they are received. See {@link #castMessageWithPublisher(Collection, Message, RequestOptions)}
+     * @param dests A list of addresses. If null, we'll publish the responses from all cluster members
+     * @param call The method (plus args) to be invoked
+     * @param options A collection of call options, e.g. sync versus async, timeout etc
+     * @return A publisher of the responses. Cancelling the subscription cancels the RPC
+     * @throws Exception If the sending of the message threw an exception
+     */
+    public <T> Flow.Publisher<Rsp<T>> callRemoteMethodsWithPublisher(Collection<Address> dests, MethodCall call,
+                                                                     RequestOptions options) throws Exception {
+        Message msg=new ObjectMessage(null, call);
+        Flow.Publisher<Rsp<T>> retval=super.castMessageWithPublisher(dests, msg, options);
+        if(log.isTraceEnabled())
+            log.trace("dests=%s, method_call=%s, options=%s", dests, call, options);
+        return retval;
+    }
+
+
+
+    /**
+     * Invokes a list of methods in all members and expects responses from members contained in dests (or all members
+     * if dests is null). All calls are sent in a single message and invoked in order by each receiver; an exception
+     * thrown by one call doesn't prevent the invocation of the subsequent calls.
+     * @param dests A list of addresses. If null, we'll wait for responses from all cluster members
+     * @param calls The methods (plus args) to be invoked
+     * @param opts A collection of call options, e.g. sync versus async, timeout etc
+     * @return A list of response lists, one for each call (in the order of calls), or null if the RPC is asynchronous
+     * @throws Exception If the sending of the message threw an exception
+     * @since 5.2
+     */
+    public <T> List<RspList<T>> callRemoteMethods(Collection<Address> dests, List<MethodCall> calls,
+                                                  RequestOptions opts) throws Exception {
+        if(dests != null && dests.isEmpty()) { // don't send if dest list is empty
+            log.trace("destination list of %d calls is empty: no need to send message", calls.size());
+            return emptyRspLists(calls.size());
+        }
+        Message msg=new ObjectMessage(null, new MethodCallList(calls));
+        RspList<MethodCallList.Results> rsps=super.castMessage(dests, msg, opts);
+        if(log.isTraceEnabled())
+            log.trace("dests=%s, %d calls, options=%s, responses: %s", dests, calls.size(), opts, rsps);
+        return rsps != null? split(rsps, calls.size()) : null;
+    }
+
+    /**
+     * Same as {@link #callRemoteMethods(Collection, List, RequestOptions)}, but returns a future for each call
+     * @return A list of futures, one for each call (in the order of calls), or null if the RPC is asynchronous
+     * @since 5.2
+     */
+    public <T> List<CompletableFuture<RspList<T>>> callRemoteMethodsWithFuture(Collection<Address> dests,
+                                                                               List<MethodCall> calls,
+                                                                               RequestOptions opts) throws Exception {
+        if(dests != null && dests.isEmpty()) { // don't send if dest list is empty
+            log.trace("destination list of %d calls is empty: no need to send message", calls.size());
+            List<CompletableFuture<RspList<T>>> retval=new ArrayList<>(calls.size());
+            for(int i=0; i < calls.size(); i++)
+                retval.add(CompletableFuture.completedFuture(empty_rsplist));
+            return retval;
+        }
+        Message msg=new ObjectMessage(null, new MethodCallList(calls));
+        CompletableFuture<RspList<MethodCallList.Results>> f=super.castMessageWithFuture(dests, msg, opts);
+        if(log.isTraceEnabled())
+            log.trace("dests=%s, %d calls, options=%s", dests, calls.size(), opts);
+        if(f == null)
+            return null;
+        CompletableFuture<List<RspList<T>>> all=f.thenApply(rsps -> split(rsps, calls.size()));
+        List<CompletableFuture<RspList<T>>> retval=new ArrayList<>(calls.size());
+        for(int i=0; i < calls.size(); i++) {
+            final int index=i;
+            retval.add(all.thenApply(l -> l.get(index)));
+        }
+        return retval;
+    }
+
+    /**
+     * Invokes a list of methods in a cluster member. All calls are sent in a single message and invoked in order by
+     * the receiver.
+     * @param dest The target member on which to invoke the methods
+     * @param calls The methods (plus args) to be invoked
+     * @param opts The options (e.g. blocking, timeout etc)
+     * @return A list of futures, one for each call (in the order of calls), or null if the RPC is asynchronous. If a
+     *         call threw an exception, its future is completed exceptionally
+     * @throws Exception If the sending of the message threw an exception
+     * @since 5.2
+     */
+    public <T> List<CompletableFuture<T>> callRemoteMethodWithFuture(Address dest, List<MethodCall> calls,
+                                                                     RequestOptions opts) throws Exception {
+        if(log.isTraceEnabled())
+            log.trace("dest=%s, %d calls, options=%s", dest, calls.size(), opts);
+        Message msg=new ObjectMessage(dest, new MethodCallList(calls));
+        CompletableFuture<MethodCallList.Results> f=super.sendMessageWithFuture(msg, opts);
+        if(f == null)
+            return null;
+        List<CompletableFuture<T>> retval=new ArrayList<>(calls.size());
+        for(int i=0; i < calls.size(); i++) {
+            final int index=i;
+            retval.add(f.thenCompose(res -> {
+                CompletableFuture<T> cf=new CompletableFuture<>();
+                if(res.isException(index))
+                    cf.completeExceptionally((Throwable)res.value(index));
+                else
+                    cf.complete((T)res.value(index));
+                return cf;
+            }));
+        }
+        return retval;
+    }
 
 
     /**
@@ -182,21 +299,96 @@ public class RpcDispatcher extends MessageDispatcher {
             return null;
         }
 
-        MethodCall method_call=req.getObject();   // methodCallFromBuffer(req.getArray(), req.getOffset(), req.getLength(), marshaller);
+        Object obj=req.getObject();
+        if(obj instanceof MethodCallList)
+            return invoke(req.getSrc(), (MethodCallList)obj);
+        MethodCall method_call=(MethodCall)obj;
         if(log.isTraceEnabled())
             log.trace("[sender=%s], method_call: %s", req.getSrc(), method_call);
+        return invoke(method_call);
+    }
 
+    /** Invokes all calls in order. Exceptions are added to the results rather than thrown */
+    protected MethodCallList.Results invoke(Address sender, MethodCallList list) {
+        if(log.isTraceEnabled())
+            log.trace("[sender=%s], method_calls: %s", sender, list);
+        List<MethodCall> calls=list.calls();
+        MethodCallList.Results results=new MethodCallList.Results(calls.size());
+        for(int i=0; i < calls.size(); i++) {
+            try {
+                results.setValue(i, invoke(calls.get(i)));
+            }
+            catch(Throwable t) {
+                results.setException(i, t);
+            }
+        }
+        return results;
+    }
+
+    protected Object invoke(MethodCall method_call) throws Exception {
         if(method_call.useIds()) {
             if(method_invoker != null) // this trumps a method lookup
                 return method_invoker.invoke(server_obj, method_call.getMethodId(), method_call.getArgs());
             if(method_lookup == null)
                 throw new Exception(String.format("MethodCall uses ID=%d, but method_lookup has not been set", method_call.getMethodId()));
+            if(cache_invokers) {
+                MethodInvokers.Invoker inv=invokers.get(server_obj.getClass(), method_call.getMethodId(), method_lookup);
+                if(inv == null)
+                    throw new Exception("no method found for " + method_call.getMethodId());
+                return MethodInvokers.invoke(inv, server_obj, method_call.getArgs());
+            }
             Method m=method_lookup.findMethod(method_call.getMethodId());
             if(m == null)
                 throw new Exception("no method found for " + method_call.getMethodId());
             method_call.setMethod(m);
         }
+        else if(cache_invokers) {
+            Method m=method_call.getMethod(); // set if the call was sent to self
+            MethodInvokers.Invoker inv=m != null? invokers.get(m)
+              : invokers.get(server_obj.getClass(), method_call.getMethodName(), method_call.getTypes());
+            if(inv == null)
+                throw new NoSuchMethodException(method_call.getMethodName());
+            return MethodInvokers.invoke(inv, server_obj, method_call.getArgs());
+        }
         return method_call.invoke(server_obj);
     }
 
+
+    protected static <T> List<RspList<T>> emptyRspLists(int size) {
+        List<RspList<T>> retval=new ArrayList<>(size);
+        for(int i=0; i < size; i++)
+            retval.add(empty_rsplist);
+        return retval;
+    }
+
+    /** Splits the responses to a {@link MethodCallList} into one response list per call */
+    protected static <T> List<RspList<T>> split(RspList<MethodCallList.Results> rsps, int num_calls) {
+        List<RspList<T>> retval=new ArrayList<>(num_calls);
+        for(int i=0; i < num_calls; i++) {
+            RspList<T> list=new RspList<>(rsps.size());
+            for(Map.Entry<Address,Rsp<MethodCallList.Results>> e: rsps.entrySet()) {
+                Rsp<MethodCallList.Results> rsp=e.getValue();
+                Rsp<T> r=new Rsp<>();
+                if(rsp.hasException())
+                    r.setException(rsp.getException());
+                else if(rsp.wasReceived()) {
+                    MethodCallList.Results res=rsp.getValue();
+                    if(res == null || i >= res.size())
+                        r.setValue(null);
+                    else if(res.isException(i))
+                        r.setException((Throwable)res.value(i));
+                    else
+                        r.setValue((T)res.value(i));
+                }
+                if(rsp.wasSuspected())
+                    r.setSuspected();
+                if(rsp.wasUnreachable())
+                    r.setUnreachable();
+                list.put(e.getKey(), r);
+            }
+            retval.add(list);
+        }
+        return retval;
+    }
+
 }
@@ -0,0 +1,446 @@
+package org.jgroups.blocks;
+
+import org.jgroups.util.Util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Same semantics as {@link LazyRemovalCache}: elements are only marked as removable by remove(), removeAll() and
+ * retainAll(), and marked elements are evicted when they're older than max_age. However, the keys are spread over
+ * a number of segments, each with its own lock and its own expiry wheel: when an element is marked as removable,
+ * it is also added to the wheel bucket of the tick in which it expires. Eviction therefore only processes the
+ * buckets of the ticks that elapsed since the last eviction run, instead of scanning the entire cache.<br/>
+ * Lookups (get()) don't acquire a lock and don't allocate memory.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class SegmentedLazyRemovalCache<K,V> {
+    protected final Segment<K,V>[] segments;
+    protected final int            shift; // 32 - log2(segments.length)
+
+    /** Max number of elements, if exceeded, we remove all elements marked as removable and older than max_age ms */
+    protected final int            max_elements;
+    protected final long           max_age;   // ns
+    protected final long           tick;      // duration of a wheel tick (ns)
+
+    /** Number of ticks in max_age; the wheel has 2 more buckets, so an expiration never wraps around the wheel */
+    protected static final int     TICKS=16;
+
+    public SegmentedLazyRemovalCache() {
+        this(200, 5000L, 16);
+    }
+
+    /**
+     * Creates a new instance
+     * @param max_elements The max number of elements in the cache
+     * @param max_age The max age (in ms) an entry can have before it is considered expired (and can be removed on
+     *                the next sweep)
+     * @param num_segments The number of segments, rounded up to the next power of 2
+     */
+    public SegmentedLazyRemovalCache(int max_elements, long max_age, int num_segments) {
+        this.max_elements=max_elements;
+        this.max_age=TimeUnit.NANOSECONDS.convert(max_age, TimeUnit.MILLISECONDS);
+        this.tick=Math.max(this.max_age / TICKS, TimeUnit.MILLISECONDS.toNanos(1));
+        int size=Util.getNextHigherPowerOfTwo(Math.max(num_segments, 1));
+        this.shift=32 - Integer.numberOfTrailingZeros(size);
+        long current_tick=Math.floorDiv(System.nanoTime(), tick);
+        this.segments=new Segment[size];
+        for(int i=0; i < segments.length; i++)
+            segments[i]=new Segment<>(TICKS + 2, current_tick);
+    }
+
+    public int numSegments() {return segments.length;}
+
+    public boolean add(K key, V val) {
+        return add(key, val, false);
+    }
+
+    public boolean addIfAbsent(K key, V val) {
+        return add(key, val, true);
+    }
+
+    public boolean containsKey(K key) {
+        return key != null && segment(key).map.containsKey(key);
+    }
+
+    public V get(K key) {
+        if(key == null)
+            return null;
+        Entry<K,V> entry=segment(key).map.get(key);
+        return entry != null? entry.val : null;
+    }
+
+    public Entry<K,V> getEntry(K key) {
+        return key != null? segment(key).map.get(key) : null;
+    }
+
+    public void remove(K key) {
+        remove(key, false);
+    }
+
+    public void remove(K key, boolean force) {
+        if(key == null)
+            return;
+        Segment<K,V> seg=segment(key);
+        if(force)
+            seg.map.remove(key);
+        else {
+            seg.lock.lock();
+            try {
+                Entry<K,V> entry=seg.map.get(key);
+                if(entry != null)
+                    markRemovable(seg, entry, System.nanoTime());
+            }
+            finally {
+                seg.lock.unlock();
+            }
+        }
+        checkMaxSizeExceeded();
+    }
+
+    public void removeAll(Collection<K> keys) {
+        removeAll(keys, false);
+    }
+
+    public void removeAll(Collection<K> keys, boolean force) {
+        if(keys == null || keys.isEmpty())
+            return;
+        long now=System.nanoTime();
+        for(K key: keys) {
+            if(key == null)
+                continue;
+            Segment<K,V> seg=segment(key);
+            if(force)
+                seg.map.remove(key);
+            else {
+                seg.lock.lock();
+                try {
+                    Entry<K,V> entry=seg.map.get(key);
+                    if(entry != null)
+                        markRemovable(seg, entry, now);
+                }
+                finally {
+                    seg.lock.unlock();
+                }
+            }
+        }
+        checkMaxSizeExceeded();
+    }
+
+    public void clear(boolean force) {
+        long now=System.nanoTime();
+        for(Segment<K,V> seg: segments) {
+            seg.lock.lock();
+            try {
+                if(force) {
+                    seg.map.clear();
+                    seg.clearWheel();
+                }
+                else
+                    for(Entry<K,V> entry: seg.map.values())
+                        markRemovable(seg, entry, now);
+            }
+            finally {
+                seg.lock.unlock();
+            }
+        }
+    }
+
+    public void retainAll(Collection<K> keys) {
+        retainAll(keys, false);
+    }
+
+    /** Marks (or removes if force is true) all elements not in keys and unmarks all elements in keys */
+    public void retainAll(Collection<K> keys, boolean force) {
+        if(keys == null || keys.isEmpty())
+            return;
+        long now=System.nanoTime();
+        for(Segment<K,V> seg: segments) {
+            seg.lock.lock();
+            try {
+                for(Iterator<Entry<K,V>> it=seg.map.values().iterator(); it.hasNext();) {
+                    Entry<K,V> entry=it.next();
+                    if(keys.contains(entry.key))
+                        entry.unmark();
+                    else if(force)
+                        it.remove();
+                    else
+                        markRemovable(seg, entry, now);
+                }
+            }
+            finally {
+                seg.lock.unlock();
+            }
+        }
+        checkMaxSizeExceeded();
+    }
+
+    /** Returns a copy of all keys */
+    public Set<K> keySet() {
+        Set<K> retval=new HashSet<>(size());
+        for(Segment<K,V> seg: segments)
+            retval.addAll(seg.map.keySet());
+        return retval;
+    }
+
+    public Set<V> values() {
+        Set<V> retval=new HashSet<>(size());
+        for(Segment<K,V> seg: segments)
+            for(Entry<K,V> entry: seg.map.values())
+                retval.add(entry.val);
+        return retval;
+    }
+
+    /** Returns all values which have not been marked as removable */
+    public Set<V> nonRemovedValues() {
+        Set<V> retval=new HashSet<>();
+        for(Segment<K,V> seg: segments)
+            for(Entry<K,V> entry: seg.map.values())
+                if(!entry.removable)
+                    retval.add(entry.val);
+        return retval;
+    }
+
+    public Map<K,V> contents() {
+        return contents(false);
+    }
+
+    public Map<K,V> contents(boolean skip_removed_values) {
+        Map<K,V> retval=new HashMap<>();
+        for(Segment<K,V> seg: segments)
+            for(Entry<K,V> entry: seg.map.values()) {
+                if(entry.removable && skip_removed_values)
+                    continue;
+                retval.put(entry.key, entry.val);
+            }
+        return retval;
+    }
+
+    public int size() {
+        int retval=0;
+        for(Segment<K,V> seg: segments)
+            retval+=seg.map.size();
+        return retval;
+    }
+
+    /** Returns the number of elements in the expiry wheels; used for testing */
+    public int wheelSize() {
+        int retval=0;
+        for(Segment<K,V> seg: segments) {
+            seg.lock.lock();
+            try {
+                for(List<Entry<K,V>> bucket: seg.wheel)
+                    retval+=bucket.size();
+            }
+            finally {
+                seg.lock.unlock();
+            }
+        }
+        return retval;
+    }
+
+    public String printCache() {
+        return printCache(null);
+    }
+
+    public String printCache(LazyRemovalCache.Printable<K,Entry<K,V>> print_function) {
+        StringBuilder sb=new StringBuilder();
+        for(Segment<K,V> seg: segments)
+            for(Entry<K,V> entry: seg.map.values()) {
+                if(print_function != null)
+                    sb.append(print_function.print(entry.key, entry));
+                else
+                    sb.append(entry.key).append(": ").append(entry).append("\n");
+            }
+        return sb.toString();
+    }
+
+    public String toString() {
+        return printCache();
+    }
+
+    /**
+     * Removes elements marked as removable
+     * @param force If set to true, all elements marked as 'removable' will get removed, regardless of expiration
+     */
+    public void removeMarkedElements(boolean force) {
+        long now=System.nanoTime();
+        for(Segment<K,V> seg: segments) {
+            seg.lock.lock();
+            try {
+                if(force || max_age <= 0) {
+                    seg.map.values().removeIf(e -> e.removable);
+                    seg.clearWheel();
+                }
+                else
+                    expire(seg, now);
+            }
+            finally {
+                seg.lock.unlock();
+            }
+        }
+    }
+
+    /** Removes elements marked as removable and older than max_age */
+    public void removeMarkedElements() {
+        removeMarkedElements(false);
+    }
+
+
+    /**
+     * Picks the segment from the high bits of the (scrambled) hash: ConcurrentHashMap uses the low bits to pick a
+     * bucket, so using them here, too, would leave most buckets in a segment empty
+     */
+    protected Segment<K,V> segment(K key) {
+        if(segments.length == 1)
+            return segments[0];
+        int h=key.hashCode() * 0x9E3779B9;
+        return segments[h >>> shift];
+    }
+
+    protected boolean add(K key, V val, boolean if_absent) {
+        if(key == null || val == null)
+            return false;
+        Segment<K,V> seg=segment(key);
+        boolean added;
+        seg.lock.lock();
+        try {
+            Entry<K,V> entry=seg.map.get(key);
+            if(entry != null) {
+                if(if_absent)
+                    return false;
+                if(Objects.equals(entry.val, val)) {
+                    entry.unmark(); // the wheel's reference to it is dropped when its tick is processed
+                    return false;
+                }
+            }
+            added=seg.map.put(key, new Entry<>(key, val)) == null;
+        }
+        finally {
+            seg.lock.unlock();
+        }
+        if(added)
+            checkMaxSizeExceeded();
+        return added;
+    }
+
+    /** Marks an entry as removable and adds it to the bucket of its expiration tick. Needs to hold the segment lock */
+    protected void markRemovable(Segment<K,V> seg, Entry<K,V> entry, long now) {
+        if(entry.removable)
+            return;
+        entry.timestamp=now;
+        entry.removable=true;
+        long expiry_tick=Math.floorDiv(now + max_age, tick) + 1;
+        if(entry.tick != expiry_tick) {
+            entry.tick=expiry_tick;
+            seg.wheel[index(seg, expiry_tick)].add(entry);
+        }
+    }
+
+    /** Processes the buckets of all ticks that elapsed since the last run. Needs to hold the segment lock */
+    protected void expire(Segment<K,V> seg, long now) {
+        long current_tick=Math.floorDiv(now, tick);
+        long num_ticks=Math.min(current_tick - seg.last_tick, seg.wheel.length);
+        for(long t=current_tick - num_ticks + 1; t <= current_tick; t++) {
+            int idx=index(seg, t);
+            List<Entry<K,V>> bucket=seg.wheel[idx];
+            for(int i=bucket.size()-1; i >= 0; i--) {
+                Entry<K,V> e=bucket.get(i);
+                boolean current=index(seg, e.tick) == idx;
+                if(seg.map.get(e.key) != e || !e.removable || !current || e.tick <= current_tick) {
+                    if(current && e.tick <= current_tick && e.removable)
+                        seg.map.remove(e.key, e);
+                    if(current)
+                        e.tick=-1;
+                    removeAt(bucket, i);
+                }
+            }
+        }
+        seg.last_tick=Math.max(seg.last_tick, current_tick);
+    }
+
+    protected void checkMaxSizeExceeded() {
+        if(size() > max_elements)
+            removeMarkedElements(false);
+    }
+
+    protected int index(Segment<K,V> seg, long t) {
+        return (int)Math.floorMod(t, (long)seg.wheel.length);
+    }
+
+    /** Removes the element at index by replacing it with the last element (order in a bucket doesn't matter) */
+    protected static <T> void removeAt(List<T> list, int index) {
+        int last=list.size()-1;
+        if(index != last)
+            list.set(index, list.get(last));
+        list.remove(last);
+    }
+
+
+    protected static class Segment<K,V> {
+        protected final ConcurrentMap<K,Entry<K,V>> map=new ConcurrentHashMap<>();
+        protected final List<Entry<K,V>>[]          wheel;
+        protected final Lock                        lock=new ReentrantLock();
+        protected long                              last_tick; // the last tick processed by expire()
+
+        protected Segment(int wheel_size, long current_tick) {
+            wheel=new List[wheel_size];
+            for(int i=0; i < wheel.length; i++)
+                wheel[i]=new ArrayList<>();
+            last_tick=current_tick;
+        }
+
+        protected void clearWheel() {
+            for(List<Entry<K,V>> bucket: wheel) {
+                for(Entry<K,V> e: bucket)
+                    e.tick=-1;
+                bucket.clear();
+            }
+        }
+    }
+
+    public static class Entry<K,V> {
+        protected final K          key;
+        protected final V          val;
+        protected long             timestamp=System.nanoTime();
+        protected volatile boolean removable;
+        protected long             tick=-1; // the tick of the wheel bucket referencing this entry, -1 if none
+
+        public Entry(K key, V val) {
+            this.key=key;
+            this.val=val;
+        }
+
+        public K       getKey()      {return key;}
+        public V       getVal()      {return val;}
+        public boolean isRemovable() {return removable;}
+
+        protected void unmark() {
+            if(removable) {
+                removable=false;
+                timestamp=System.nanoTime();
+            }
+        }
+
+        public String toString() {
+            return toString(null);
+        }
+
+        public String toString(Function<V,String> print_val) {
+            StringBuilder sb=new StringBuilder(print_val != null? print_val.apply(val) : val.toString()).append(" (");
+            long age=TimeUnit.MILLISECONDS.convert(System.nanoTime() - timestamp, TimeUnit.NANOSECONDS);
+            if(age < 1000)
+                sb.append(age).append(" ms");
+            else
+                sb.append(TimeUnit.SECONDS.convert(age, TimeUnit.MILLISECONDS)).append(" secs");
+            sb.append(" old").append((removable? ", removable" : "")).append(")");
+            return sb.toString();
+        }
+    }
+}
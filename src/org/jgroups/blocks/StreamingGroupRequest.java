@@ -0,0 +1,183 @@
+package org.jgroups.blocks;
+
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.util.Rsp;
+import org.jgroups.util.RspList;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link GroupRequest} which publishes responses as they are received, so that callers can process the first
+ * responses without waiting for the slowest member. Each member's {@link Rsp} is published once: when its response
+ * has been received (and accepted by the {@link RspFilter}, if set), or when the member was suspected or is
+ * unreachable.<br/>
+ * Responses received before a subscriber subscribed are buffered. Only a single subscriber is supported.
+ * The subscriber is completed when all responses have been received (or the response filter doesn't need more
+ * responses), or when the timeout of the {@link RequestOptions} (if set) elapsed. Cancelling the subscription cancels
+ * the request; responses received after that are discarded.<br/>
+ * Subscriber callbacks are invoked by the thread delivering the response, but never while holding a lock of this
+ * request, so they can call {@link Flow.Subscription#request(long)}, {@link Flow.Subscription#cancel()} or send RPCs.
+ * A slow subscriber still delays the thread delivering the response; expensive processing should be done in a
+ * different thread.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class StreamingGroupRequest<T> extends GroupRequest<T> implements Flow.Publisher<Rsp<T>> {
+    protected final Queue<Rsp<T>>                    queue=new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger                    wip=new AtomicInteger(); // serializes calls to the subscriber
+    protected final AtomicLong                       requested=new AtomicLong();
+    protected final AtomicBoolean                    subscribed=new AtomicBoolean();
+    protected volatile Flow.Subscriber<? super Rsp<T>> subscriber;
+    protected volatile boolean                       terminated; // cancelled, or onComplete()/onError() was called
+    protected volatile Throwable                     exception;  // set when completed exceptionally
+
+    public StreamingGroupRequest(RequestCorrelator corr, Collection<Address> targets, RequestOptions options) {
+        super(corr, targets, options);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Rsp<T>> s) {
+        if(subscribed.compareAndSet(false, true)) {
+            s.onSubscribe(new RspSubscription());
+            subscriber=s; // set after onSubscribe(), so that drain() cannot call onNext() before it
+            drain();
+            return;
+        }
+        s.onSubscribe(new Flow.Subscription() {
+            public void request(long n) {}
+            public void cancel()        {}
+        });
+        s.onError(new IllegalStateException(String.format("%s supports only a single subscriber",
+                                                           StreamingGroupRequest.class.getSimpleName())));
+    }
+
+    @Override
+    public void sendRequest(Message msg) throws Exception {
+        long timeout=options.timeout();
+        if(timeout > 0)
+            completeOnTimeout(rsps, timeout, TimeUnit.MILLISECONDS);
+        super.sendRequest(msg);
+    }
+
+    @Override
+    public void receiveResponse(Object response_value, Address sender, boolean is_exception) {
+        super.receiveResponse(response_value, sender, is_exception);
+        drain();
+    }
+
+    @Override
+    public void siteUnreachable(String site) {
+        super.siteUnreachable(site);
+        drain();
+    }
+
+    @Override
+    public void viewChange(View view) {
+        super.viewChange(view);
+        drain();
+    }
+
+    @Override
+    public void transportClosed() {
+        super.transportClosed();
+        drain();
+    }
+
+    @Override
+    public boolean complete(RspList<T> value) {
+        boolean rc=super.complete(value);
+        corrDone();
+        drain();
+        return rc;
+    }
+
+    @Override
+    public boolean completeExceptionally(Throwable ex) {
+        if(!isDone())
+            exception=ex;
+        boolean rc=super.completeExceptionally(ex);
+        corrDone();
+        drain();
+        return rc;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean rc=super.cancel(mayInterruptIfRunning);
+        drain();
+        return rc;
+    }
+
+    public String toString() {
+        return String.format("%s, buffered=%d, requested=%d", super.toString(), queue.size(), requested.get());
+    }
+
+    @Override
+    protected void rspDone(Address mbr, Rsp<T> rsp) {
+        if(!terminated && !isDone())
+            queue.add(rsp); // delivered by drain() once the lock has been released
+    }
+
+    /**
+     * Delivers buffered responses up to the requested number and completes the subscriber when done. Does nothing
+     * when called with the lock held: the caller which acquired the lock calls drain() after releasing it
+     */
+    protected void drain() {
+        if(((ReentrantLock)lock).isHeldByCurrentThread() || wip.getAndIncrement() != 0)
+            return;
+        int missed=1;
+        for(;;) {
+            Flow.Subscriber<? super Rsp<T>> s=subscriber;
+            if(s != null && !terminated) {
+                long r=requested.get(), delivered=0;
+                Rsp<T> rsp;
+                while(delivered != r && !terminated && (rsp=queue.poll()) != null) {
+                    s.onNext(rsp);
+                    delivered++;
+                }
+                if(delivered > 0 && r != Long.MAX_VALUE)
+                    requested.addAndGet(-delivered);
+                if(!terminated && isDone() && queue.isEmpty()) {
+                    terminated=true;
+                    if(!isCancelled()) {
+                        Throwable ex=exception;
+                        if(ex != null)
+                            s.onError(ex);
+                        else
+                            s.onComplete();
+                    }
+                }
+            }
+            if((missed=wip.addAndGet(-missed)) == 0)
+                break;
+        }
+    }
+
+    protected class RspSubscription implements Flow.Subscription {
+        public void request(long n) {
+            if(n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException(String.format("number of requested elements (%d) must be positive", n)));
+                return;
+            }
+            requested.getAndAccumulate(n, (a,b) -> a+b < 0? Long.MAX_VALUE : a+b);
+            drain();
+        }
+
+        public void cancel() {
+            terminated=true;
+            queue.clear();
+            StreamingGroupRequest.this.cancel(false);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.jgroups.blocks.atomic;
 
+import org.jgroups.util.Range;
+
 /**
  * @author Bela Ban
  * @since 3.0.0
@@ -49,5 +51,18 @@ public interface Counter {
      * @return the updated value
      */
     long addAndGet(long delta);
+
+    /**
+     * Atomically reserves a range of consecutive values: the counter is incremented by num (e.g. in a single round trip
+     * to the coordinator), and the values between the old and the new value are reserved exclusively for the caller
+     * @param num The number of values to reserve, needs to be positive
+     * @return The reserved range (low and high are inclusive)
+     */
+    default Range reserve(long num) {
+        if(num <= 0)
+            throw new IllegalArgumentException("the number of values to reserve needs to be positive: " + num);
+        long high=addAndGet(num);
+        return new Range(high - num + 1, high);
+    }
 }
 
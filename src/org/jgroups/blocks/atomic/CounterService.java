@@ -2,14 +2,18 @@ package org.jgroups.blocks.atomic;
 
 import org.jgroups.JChannel;
 import org.jgroups.protocols.COUNTER;
+import org.jgroups.protocols.CRDT_COUNTER;
 
 /**
- * Provides a distributed counter (similar to AtomicLong) which can be atomically updated across a cluster.
+ * Provides a distributed counter (similar to AtomicLong) which can be atomically updated across a cluster.<br/>
+ * If the channel has {@link CRDT_COUNTER} instead of {@link COUNTER}, the counters are eventually consistent and don't
+ * support {@link Counter#set(long)} and {@link Counter#compareAndSet(long, long)}.
  * @author Bela Ban
  * @since 3.0.0
  */
 public class CounterService {
-    protected COUNTER  counter_prot;
+    protected COUNTER      counter_prot;
+    protected CRDT_COUNTER crdt_prot;
 
     public CounterService(JChannel ch) {
         setChannel(ch);
@@ -17,8 +21,9 @@ public class CounterService {
 
     public void setChannel(JChannel ch) {
         counter_prot=ch.getProtocolStack().findProtocol(COUNTER.class);
-        if(counter_prot == null)
-            throw new IllegalStateException("channel configuration must include the COUNTER protocol");
+        crdt_prot=counter_prot == null? ch.getProtocolStack().findProtocol(CRDT_COUNTER.class) : null;
+        if(counter_prot == null && crdt_prot == null)
+            throw new IllegalStateException("channel configuration must include the COUNTER or CRDT_COUNTER protocol");
     }
 
     /**
@@ -29,7 +34,30 @@ public class CounterService {
      * @return The counter implementation
      */
     public Counter getOrCreateCounter(String name, long initial_value) {
-        return counter_prot.getOrCreateCounter(name, initial_value);
+        return crdt_prot != null? crdt_prot.getOrCreateCounter(name, initial_value)
+          : counter_prot.getOrCreateCounter(name, initial_value);
+    }
+
+    /**
+     * Returns a counter which hands out cluster-wide unique values from ranges of block_size values reserved on the
+     * coordinator, so that most increments don't require a round trip. Requires {@link COUNTER}
+     * @see COUNTER#getOrCreateReservingCounter(String, long, long, long)
+     */
+    public Counter getOrCreateReservingCounter(String name, long initial_value, long block_size, long prefetch) {
+        if(counter_prot == null)
+            throw new UnsupportedOperationException("reserving counters require COUNTER");
+        return counter_prot.getOrCreateReservingCounter(name, initial_value, block_size, prefetch);
+    }
+
+    /**
+     * Returns an existing grow-only counter, or creates a new one. Requires {@link CRDT_COUNTER}
+     * @param name The name of the counter
+     * @return The counter implementation, which can only be incremented
+     */
+    public Counter getOrCreateGrowOnlyCounter(String name) {
+        if(crdt_prot == null)
+            throw new UnsupportedOperationException("grow-only counters require CRDT_COUNTER");
+        return crdt_prot.getOrCreateGrowOnlyCounter(name);
     }
 
   
@@ -38,16 +66,19 @@ public class CounterService {
      * @param name The name of the counter. No-op if the counter doesn't exist
      */
     public void deleteCounter(String name) {
-        counter_prot.deleteCounter(name);
+        if(crdt_prot != null)
+            crdt_prot.deleteCounter(name);
+        else
+            counter_prot.deleteCounter(name);
     }
 
 
     public String printCounters() {
-        return counter_prot.printCounters();
+        return crdt_prot != null? crdt_prot.printCounters() : counter_prot.printCounters();
     }
 
 
-    public String dumpPendingRequests() {return counter_prot.dumpPendingRequests();}
+    public String dumpPendingRequests() {return crdt_prot != null? "" : counter_prot.dumpPendingRequests();}
 
 
 }
@@ -276,8 +276,7 @@ public class BatchBundler extends NoBundler {
         protected void sendMessageList(final Address dest, final Address src, final Message[] list, int length) {
             try {
                 output.position(0);
-                Util.writeMessageList(dest, src, transport.cluster_name.chars(), list, 0,
-                                      length, output, dest == null, transport.getId());
+                transport.writeMessageList(dest, src, list, 0, length, output, dest == null);
                 transport.doSend(output.buffer(), 0, output.position(), dest);
             }
             catch(Throwable e) {
@@ -139,8 +139,10 @@ public class CENTRAL_LOCK extends Locking implements LockNotification {
         }
 
         // For all non-acquired client locks, send the GRANT_LOCK request to the new coordinator (if changed)
-        if(old_coord != null && !old_coord.equals(coord))
+        if(old_coord != null && !old_coord.equals(coord)) {
+            client_lock_table.recallLeases();
             client_lock_table.resendPendingLockRequests();
+        }
     }
 
     public void lockCreated(String name) {
@@ -89,6 +89,8 @@ public class CENTRAL_LOCK2 extends Locking {
                 server_locks.clear();
             }
         }
+        if(old_coord != null && !Objects.equals(old_coord, coord))
+            client_lock_table.recallLeases(); // the new coord doesn't know about leases
     }
 
     @Override
@@ -118,6 +120,8 @@ public class CENTRAL_LOCK2 extends Locking {
             case LOCK_INFO_REQ:
             case LOCK_INFO_RSP:
             case LOCK_REVOKED:
+            case LEASE_GRANTED:
+            case RECALL_LEASE:
                 if(log.isTraceEnabled())
                     log.trace("%s <-- %s: %s", local_addr, req.sender, req);
                 handleRequest(req);
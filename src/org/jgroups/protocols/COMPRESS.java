@@ -6,18 +6,27 @@ import org.jgroups.annotations.ManagedAttribute;
 import org.jgroups.annotations.Property;
 import org.jgroups.conf.AttributeType;
 import org.jgroups.stack.Protocol;
-import org.jgroups.util.ByteArray;
-import org.jgroups.util.MessageBatch;
-import org.jgroups.util.MessageIterator;
-import org.jgroups.util.Util;
+import org.jgroups.util.*;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
+import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -26,6 +35,14 @@ import java.util.zip.Inflater;
  * Compresses the payload of a message. Goal is to reduce the number of messages
  * sent across the wire. Should ideally be layered somewhere above a
  * fragmentation protocol (e.g. FRAG).
+ * <p/>
+ * Optionally, a preset dictionary ({@link Deflater#setDictionary(byte[])}) can be used, which improves the compression
+ * of small and medium sized messages with similar content. The dictionary is either read from
+ * {@link #dictionary_file}, or trained by the coordinator from sampled payloads ({@link #train_dictionary}) and
+ * multicast to all members. The ID of the dictionary (the CRC32 of its contents) is sent in the
+ * {@link CompressHeader}; a receiver which doesn't have the dictionary fetches it from the sender of the message, and
+ * queues the message until the dictionary has been received. All subsequent (non-OOB) messages from the same sender
+ * are queued behind it, so that messages are passed up in the order in which they were received.
  * 
  * @author Bela Ban
  */
@@ -44,11 +61,49 @@ public class COMPRESS extends Protocol {
     
     @Property(description="Number of inflaters/deflaters for concurrent processing. Default is 2 ")
     protected int pool_size=2;
-    
+
+    @Property(description="File containing a preset dictionary used to compress messages. All members should use " +
+      "the same file",writable=false)
+    protected String dictionary_file;
+
+    @Property(description="If true, the coordinator trains a preset dictionary from sampled payloads and sends it " +
+      "to all members. Ignored when dictionary_file is set",writable=false)
+    protected boolean train_dictionary;
+
+    @Property(description="Max size (in bytes) of a trained dictionary. Deflate uses at most the last 32KB",
+      type=AttributeType.BYTES)
+    protected int dictionary_size=32 * 1024;
+
+    @Property(description="Number of payloads sampled by the coordinator to train a dictionary")
+    protected int training_samples=1000;
+
+    @Property(description="Interval (ms) at which a dictionary request is resent (to the sender of the message " +
+      "and the coordinator) until the dictionary has been received",type=AttributeType.TIME)
+    protected long dictionary_fetch_timeout=5000;
+
+    @Property(description="Max number of messages from a sender queued while a dictionary is fetched. " +
+      "Further messages are dropped")
+    protected int max_queued_msgs=10000;
+
     protected BlockingQueue<Deflater> deflater_pool;
     protected BlockingQueue<Inflater> inflater_pool;
     protected MessageFactory          msg_factory;
     protected final LongAdder         num_compressions=new LongAdder(), num_decompressions=new LongAdder();
+    protected final LongAdder         num_dict_compressions=new LongAdder(), num_dict_fetches=new LongAdder();
+
+    /** All known dictionaries, keyed by ID */
+    protected final Map<Integer,byte[]>          dictionaries=new ConcurrentHashMap<>();
+
+    /** The ID of the dictionary used to compress messages, or 0 if none */
+    protected volatile int                       dict_id;
+
+    /** Messages waiting for a dictionary (and the messages received after them), keyed by sender */
+    protected final Map<Address,PendingMessages> pending_msgs=new ConcurrentHashMap<>();
+
+    /** Collects samples on the coordinator, until a dictionary has been trained */
+    protected final AtomicReference<DictionaryTrainer> trainer=new AtomicReference<>();
+
+    protected volatile View                      view;
 
 
 
@@ -56,8 +111,35 @@ public class COMPRESS extends Protocol {
     public COMPRESS() {      
     }
 
-    public int      getMinSize()      {return min_size;}
-    public COMPRESS setMinSize(int s) {this.min_size=s; return this;}
+    public int      getMinSize()                      {return min_size;}
+    public COMPRESS setMinSize(int s)                 {this.min_size=s; return this;}
+    public String   getDictionaryFile()               {return dictionary_file;}
+    public COMPRESS setDictionaryFile(String f)       {this.dictionary_file=f; return this;}
+    public boolean  trainDictionary()                 {return train_dictionary;}
+    public COMPRESS trainDictionary(boolean b)        {this.train_dictionary=b; return this;}
+    public int      getDictionarySize()               {return dictionary_size;}
+    public COMPRESS setDictionarySize(int s)          {this.dictionary_size=s; return this;}
+    public int      getTrainingSamples()              {return training_samples;}
+    public COMPRESS setTrainingSamples(int n)         {this.training_samples=n; return this;}
+    public long     getDictionaryFetchTimeout()       {return dictionary_fetch_timeout;}
+    public COMPRESS setDictionaryFetchTimeout(long t) {this.dictionary_fetch_timeout=t; return this;}
+    public int      getMaxQueuedMsgs()                {return max_queued_msgs;}
+    public COMPRESS setMaxQueuedMsgs(int m)           {this.max_queued_msgs=m; return this;}
+
+    @ManagedAttribute(description="The ID of the dictionary used to compress messages (0 if none)")
+    public int getDictionaryId() {return dict_id;}
+
+    @ManagedAttribute(description="Number of compressions with a dictionary",type=AttributeType.SCALAR)
+    public long getNumDictionaryCompressions() {return num_dict_compressions.sum();}
+
+    @ManagedAttribute(description="Number of dictionaries fetched from senders of messages",type=AttributeType.SCALAR)
+    public long getNumDictionaryFetches() {return num_dict_fetches.sum();}
+
+    @ManagedAttribute(description="Number of messages queued until a dictionary has been fetched",
+      type=AttributeType.SCALAR)
+    public int getNumQueuedMsgs() {
+        return pending_msgs.values().stream().mapToInt(PendingMessages::size).sum();
+    }
 
     @ManagedAttribute(description="Number of compressions",type=AttributeType.SCALAR)
     public long getNumCompressions() {return num_compressions.sum();}
@@ -68,6 +150,7 @@ public class COMPRESS extends Protocol {
     public void resetStats() {
         super.resetStats();
         num_compressions.reset(); num_decompressions.reset();
+        num_dict_compressions.reset(); num_dict_fetches.reset();
     }
 
     public void init() throws Exception {
@@ -78,6 +161,18 @@ public class COMPRESS extends Protocol {
         for(int i=0; i < pool_size; i++)
             inflater_pool.add(new Inflater());
         msg_factory=getTransport().getMessageFactory();
+        if(dictionary_file != null) {
+            byte[] dict=Files.readAllBytes(Paths.get(dictionary_file));
+            if(dict.length == 0)
+                throw new IllegalArgumentException(String.format("dictionary file %s is empty", dictionary_file));
+            dict_id=addDictionary(dict);
+        }
+    }
+
+    public void stop() {
+        super.stop();
+        pending_msgs.values().forEach(PendingMessages::close);
+        pending_msgs.clear();
     }
 
     public void destroy() {
@@ -86,6 +181,18 @@ public class COMPRESS extends Protocol {
     }   
 
 
+    public Object down(Event evt) {
+        if(evt.getType() == Event.VIEW_CHANGE)
+            handleView(evt.getArg());
+        return down_prot.down(evt);
+    }
+
+    public Object up(Event evt) {
+        if(evt.getType() == Event.VIEW_CHANGE)
+            handleView(evt.getArg());
+        return up_prot.up(evt);
+    }
+
     /**
      * We compress the payload if it is larger than {@code min_size}. In this case we add a header containing
      * the original size before compression. Otherwise we add no header.<p>
@@ -100,11 +207,16 @@ public class COMPRESS extends Protocol {
             byte[] payload=serialize? (tmp=messageToByteArray(msg)).getArray() : msg.getArray();
             int offset=serialize? tmp.getOffset() : msg.getOffset();
             length=serialize? tmp.getLength() : msg.getLength();
+            sample(payload, offset, length);
+            int current_dict_id=dict_id;
+            byte[] dict=current_dict_id != 0? dictionaries.get(current_dict_id) : null;
             byte[] compressed_payload=new byte[length];
             Deflater deflater=null;
             try {
                 deflater=deflater_pool.take();
                 deflater.reset();
+                if(dict != null)
+                    deflater.setDictionary(dict);
                 deflater.setInput(payload, offset, length);
                 deflater.finish();
                 deflater.deflate(compressed_payload);
@@ -117,10 +229,13 @@ public class COMPRESS extends Protocol {
                     else
                         copy=msg.copy(false, true);
                     copy.setArray(compressed_payload, 0, compressed_size)
-                      .putHeader(this.id, new CompressHeader(length).needsDeserialization(serialize));
+                      .putHeader(this.id, new CompressHeader(length).needsDeserialization(serialize)
+                        .dictionaryId(dict != null? current_dict_id : 0));
                     if(log.isTraceEnabled())
                         log.trace("compressed payload from %d bytes to %d bytes", length, compressed_size);
                     num_compressions.increment();
+                    if(dict != null)
+                        num_dict_compressions.increment();
                     return down_prot.down(copy);
                 }
                 else {
@@ -146,9 +261,17 @@ public class COMPRESS extends Protocol {
      */
     public Object up(Message msg) {
         CompressHeader hdr=msg.getHeader(this.id);
+        if(hdr != null && hdr.type != CompressHeader.COMPRESSED) {
+            handleDictionaryMessage(msg, hdr);
+            return null;
+        }
+        if(queue(msg, hdr))
+            return null; // passed up when the dictionary has been received
         if(hdr != null) {
-            Message uncompressed_msg=uncompress(msg, hdr.original_size, hdr.needsDeserialization());
+            byte[] dict=hdr.dict_id != 0? dictionaries.get(hdr.dict_id) : null;
+            Message uncompressed_msg=uncompress(msg, hdr.original_size, hdr.needsDeserialization(), dict);
             if(uncompressed_msg != null) {
+                sample(uncompressed_msg);
                 if(log.isTraceEnabled())
                     log.trace("uncompressed %d bytes to %d bytes", msg.getLength(), uncompressed_msg.getLength());
                 num_decompressions.increment();
@@ -159,13 +282,25 @@ public class COMPRESS extends Protocol {
     }
 
     public void up(MessageBatch batch) {
+        if(mustQueue(batch)) { // rare: messages are passed up one by one, so that they're queued in order
+            for(Message msg: batch)
+                up(msg);
+            return;
+        }
         MessageIterator it=batch.iterator();
         while(it.hasNext()) {
             Message msg=it.next();
             CompressHeader hdr=msg.getHeader(this.id);
             if(hdr != null) {
-                Message uncompressed_msg=uncompress(msg, hdr.original_size, hdr.needsDeserialization());
+                if(hdr.type != CompressHeader.COMPRESSED) {
+                    handleDictionaryMessage(msg, hdr);
+                    it.remove();
+                    continue;
+                }
+                byte[] dict=hdr.dict_id != 0? dictionaries.get(hdr.dict_id) : null;
+                Message uncompressed_msg=uncompress(msg, hdr.original_size, hdr.needsDeserialization(), dict);
                 if(uncompressed_msg != null) {
+                    sample(uncompressed_msg);
                     if(log.isTraceEnabled())
                         log.trace("uncompressed %d bytes to %d bytes", msg.getLength(), uncompressed_msg.getLength());
                     it.replace(uncompressed_msg); // replace msg in batch with uncompressed_msg
@@ -180,6 +315,14 @@ public class COMPRESS extends Protocol {
 
     /** Returns a new message as a result of uncompressing msg, or null if msg couldn't be uncompressed */
     protected Message uncompress(Message msg, int original_size, boolean needs_deserialization) {
+        return uncompress(msg, original_size, needs_deserialization, null);
+    }
+
+    /**
+     * Returns a new message as a result of uncompressing msg (with the given dictionary, if non-null), or null if msg
+     * couldn't be uncompressed
+     */
+    protected Message uncompress(Message msg, int original_size, boolean needs_deserialization, byte[] dict) {
         byte[] compressed_payload=msg.getArray();
         if(compressed_payload != null && compressed_payload.length > 0) {
             byte[] uncompressed_payload=new byte[original_size];
@@ -189,7 +332,12 @@ public class COMPRESS extends Protocol {
                 inflater.reset();
                 inflater.setInput(compressed_payload, msg.getOffset(), msg.getLength());
                 try {
-                    inflater.inflate(uncompressed_payload);
+                    if(inflater.inflate(uncompressed_payload) == 0 && inflater.needsDictionary()) {
+                        if(dict == null)
+                            throw new DataFormatException("message was compressed with a dictionary");
+                        inflater.setDictionary(dict);
+                        inflater.inflate(uncompressed_payload);
+                    }
                     // we need to copy: https://jira.jboss.org/jira/browse/JGRP-867
                     if(needs_deserialization) {
                         return messageFromByteArray(uncompressed_payload, msg_factory);
@@ -212,6 +360,204 @@ public class COMPRESS extends Protocol {
         return null;
     }
 
+    /** Adds a dictionary and passes up the messages waiting for it, returns its ID */
+    protected int addDictionary(byte[] dict) {
+        int dictionary_id=dictionaryId(dict);
+        dictionaries.putIfAbsent(dictionary_id, dict);
+        for(PendingMessages pm: pending_msgs.values())
+            if(pm.waitingFor(dictionary_id))
+                drain(pm);
+        return dictionary_id;
+    }
+
+    /** Returns true if msg was compressed with a dictionary we don't have */
+    protected boolean dictionaryMissing(CompressHeader hdr) {
+        return hdr != null && hdr.type == CompressHeader.COMPRESSED && hdr.dict_id != 0
+          && !dictionaries.containsKey(hdr.dict_id);
+    }
+
+    /** Returns true if messages from the sender of the batch are queued, or a dictionary is missing */
+    protected boolean mustQueue(MessageBatch batch) {
+        if(batch.sender() != null && pending_msgs.containsKey(batch.sender()))
+            return true;
+        for(Message msg: batch)
+            if(dictionaryMissing(msg.getHeader(this.id)))
+                return true;
+        return false;
+    }
+
+    /**
+     * Queues a message if it was compressed with a dictionary we don't have, or if messages from its sender are queued
+     * already (OOB messages are only queued in the former case). The dictionary is fetched from the sender, and the
+     * queued messages are passed up in order when it has been received. Never blocks
+     * @return True if the message was queued (or dropped), false if it can be passed up
+     */
+    protected boolean queue(Message msg, CompressHeader hdr) {
+        boolean missing=dictionaryMissing(hdr);
+        if(!missing && (pending_msgs.isEmpty() || msg.isFlagSet(Message.Flag.OOB)))
+            return false;
+        Address sender=msg.getSrc();
+        if(sender == null) {
+            if(missing)
+                log.error("%s: cannot fetch dictionary %d for message without sender", local_addr, hdr.dict_id);
+            return missing;
+        }
+        for(;;) {
+            PendingMessages pm=missing? pending_msgs.computeIfAbsent(sender, PendingMessages::new)
+              : pending_msgs.get(sender);
+            if(pm == null)
+                return false;
+            Boolean added=pm.add(msg);
+            if(added == null) // pm was closed after passing up all messages
+                continue;
+            if(added)
+                drain(pm);
+            return true;
+        }
+    }
+
+    /**
+     * Passes up the queued messages of a sender, up to the first message whose dictionary is missing (which is then
+     * fetched). Only one thread at a time passes up messages of a given sender
+     */
+    protected void drain(PendingMessages pm) {
+        if(!pm.startDraining())
+            return; // another thread is already passing up the messages
+        int count=0;
+        List<Message> msgs;
+        while((msgs=pm.next()) != null) {
+            for(Message msg: msgs)
+                deliver(msg);
+            count+=msgs.size();
+        }
+        if(count > 0)
+            log.trace("%s: passed up %d queued messages from %s", local_addr, count, pm.sender);
+    }
+
+    /** Uncompresses a message which was queued (if compressed), and passes it up */
+    protected void deliver(Message msg) {
+        CompressHeader hdr=msg.getHeader(this.id);
+        if(hdr == null) {
+            up_prot.up(msg);
+            return;
+        }
+        byte[] dict=hdr.dict_id != 0? dictionaries.get(hdr.dict_id) : null;
+        Message uncompressed_msg=uncompress(msg, hdr.original_size, hdr.needsDeserialization(), dict);
+        if(uncompressed_msg != null) {
+            sample(uncompressed_msg);
+            num_decompressions.increment();
+            up_prot.up(uncompressed_msg);
+        }
+    }
+
+    protected void sendDictionaryRequest(int dictionary_id, Address dest) {
+        log.debug("%s: fetching dictionary %d from %s", local_addr, dictionary_id, dest);
+        Message req=new EmptyMessage(dest).setFlag(Message.Flag.OOB)
+          .putHeader(this.id, new CompressHeader(CompressHeader.DICT_REQ, dictionary_id));
+        down_prot.down(req);
+    }
+
+    protected void handleDictionaryMessage(Message msg, CompressHeader hdr) {
+        switch(hdr.type) {
+            case CompressHeader.DICT_REQ:
+                byte[] dict=dictionaries.get(hdr.dict_id);
+                if(dict == null) {
+                    log.warn("%s: dictionary %d requested by %s not found", local_addr, hdr.dict_id, msg.getSrc());
+                    return;
+                }
+                down_prot.down(new BytesMessage(msg.getSrc(), dict).setFlag(Message.Flag.OOB)
+                                 .putHeader(this.id, new CompressHeader(CompressHeader.DICT_RSP, hdr.dict_id)));
+                break;
+            case CompressHeader.DICT:
+            case CompressHeader.DICT_RSP:
+                dict=msg.getArray() == null? null
+                  : Arrays.copyOfRange(msg.getArray(), msg.getOffset(), msg.getOffset() + msg.getLength());
+                if(dict == null || dictionaryId(dict) != hdr.dict_id) {
+                    log.error("%s: received corrupt dictionary %d from %s", local_addr, hdr.dict_id, msg.getSrc());
+                    return;
+                }
+                addDictionary(dict);
+                if(hdr.type == CompressHeader.DICT && dict_id != hdr.dict_id) {
+                    log.debug("%s: installed dictionary %d (%d bytes) from %s", local_addr, hdr.dict_id, dict.length, msg.getSrc());
+                    dict_id=hdr.dict_id;
+                }
+                break;
+        }
+    }
+
+    /** Invoked by both down() and up(), as COMPRESS can be placed above or below GMS */
+    protected synchronized void handleView(View v) {
+        View old_view=view;
+        if(old_view != null && old_view.getViewId().equals(v.getViewId()))
+            return;
+        view=v;
+        // drop the queued messages of members which left
+        pending_msgs.values().removeIf(pm -> {
+            if(v.containsMember(pm.sender))
+                return false;
+            log.debug("%s: dropping %d queued messages from %s, which left", local_addr, pm.size(), pm.sender);
+            pm.close();
+            return true;
+        });
+        boolean coord=Objects.equals(local_addr, v.getCoord());
+        if(!coord || !train_dictionary || dictionary_file != null) {
+            trainer.set(null);
+            return;
+        }
+        if(dict_id == 0) {
+            if(trainer.get() == null)
+                trainer.compareAndSet(null, new DictionaryTrainer(training_samples, dictionary_size));
+            return;
+        }
+        // send the current dictionary to new members
+        List<Address> new_mbrs=View.newMembers(old_view, v);
+        byte[] dict=dictionaries.get(dict_id);
+        if(dict != null && new_mbrs != null)
+            for(Address mbr: new_mbrs)
+                sendDictionary(mbr, dict_id, dict);
+    }
+
+    protected void sample(Message msg) {
+        if(trainer.get() != null && msg.hasArray())
+            sample(msg.getArray(), msg.getOffset(), msg.getLength());
+    }
+
+    protected void sample(byte[] buf, int offset, int length) {
+        DictionaryTrainer t=trainer.get();
+        if(t == null)
+            return;
+        if(t.add(buf, offset, length) && t.isFull() && trainer.compareAndSet(t, null)) {
+            if(!getTransport().getThreadPool().execute(() -> train(t)))
+                trainer.compareAndSet(null, t); // thread pool is full: retry on the next sample
+        }
+    }
+
+    /** Trains a dictionary from the samples, installs it and sends it to all members */
+    protected void train(DictionaryTrainer t) {
+        byte[] dict=t.train(dictionary_size);
+        if(dict == null || dict.length == 0) {
+            log.warn("%s: could not train a dictionary from %d samples", local_addr, t.size());
+            return;
+        }
+        int dictionary_id=addDictionary(dict);
+        dict_id=dictionary_id;
+        log.debug("%s: trained dictionary %d (%d bytes) from %d samples", local_addr, dictionary_id, dict.length, t.size());
+        sendDictionary(null, dictionary_id, dict);
+    }
+
+    protected void sendDictionary(Address dest, int dictionary_id, byte[] dict) {
+        Message msg=new BytesMessage(dest, dict).putHeader(this.id, new CompressHeader(CompressHeader.DICT, dictionary_id));
+        down_prot.down(msg);
+    }
+
+    /** The ID of a dictionary is the CRC32 of its contents; 0 is reserved for 'no dictionary' */
+    protected static int dictionaryId(byte[] dict) {
+        CRC32 crc=new CRC32();
+        crc.update(dict, 0, dict.length);
+        int retval=(int)crc.getValue();
+        return retval == 0? 1 : retval;
+    }
+
     protected static ByteArray messageToByteArray(Message msg) {
         try {
             return Util.messageToBuffer(msg);
@@ -231,9 +577,116 @@ public class COMPRESS extends Protocol {
     }
 
 
+    /**
+     * The queued messages of a sender: the first message waits for a dictionary, the others were received after it.
+     * The request for the missing dictionary is sent by the timer, and resent every dictionary_fetch_timeout ms
+     * (alternating between the sender and the coordinator) until the dictionary has been received
+     */
+    protected class PendingMessages {
+        protected final Address       sender;
+        protected final List<Message> msgs=new ArrayList<>();
+        protected boolean             draining; // a thread is passing up the messages
+        protected boolean             closed;   // all messages were passed up (or dropped): no messages can be added
+        protected int                 missing;  // the ID of the dictionary the first message waits for
+        protected Future<?>           fetcher;
+        protected int                 attempts;
+
+        protected PendingMessages(Address sender) {this.sender=sender;}
+
+        protected synchronized int     size()                   {return msgs.size();}
+        protected synchronized boolean waitingFor(int dict_id)  {return missing == dict_id && !closed;}
+
+        /** Adds a message. Returns null if closed, false if the message was dropped, true if it was added */
+        protected synchronized Boolean add(Message msg) {
+            if(closed)
+                return null;
+            if(msgs.size() >= max_queued_msgs) {
+                log.error("%s: %d messages from %s are waiting for dictionary %d; dropping message",
+                          local_addr, msgs.size(), sender, missing);
+                return false;
+            }
+            msgs.add(msg);
+            return true;
+        }
+
+        /** Returns true if the caller should pass up the messages, false if another thread is already doing it */
+        protected synchronized boolean startDraining() {
+            if(draining || closed)
+                return false;
+            draining=true;
+            return true;
+        }
+
+        /**
+         * Removes and returns the messages up to the first message whose dictionary is missing. Returns null if
+         * there are no such messages: when no messages are left, this instance is closed and removed; otherwise the
+         * missing dictionary is fetched
+         */
+        protected synchronized List<Message> next() {
+            List<Message> retval=null;
+            int index=0;
+            for(; index < msgs.size(); index++) {
+                CompressHeader hdr=msgs.get(index).getHeader(id);
+                if(dictionaryMissing(hdr)) {
+                    fetch(hdr.dict_id);
+                    break;
+                }
+            }
+            if(index > 0) {
+                List<Message> sub=msgs.subList(0, index);
+                retval=new ArrayList<>(sub);
+                sub.clear();
+                return retval;
+            }
+            draining=false;
+            if(msgs.isEmpty()) {
+                close();
+                pending_msgs.remove(sender, this);
+            }
+            return null;
+        }
+
+        /** Drops all messages and cancels the fetching of the dictionary */
+        protected synchronized void close() {
+            closed=true;
+            msgs.clear();
+            if(fetcher != null)
+                fetcher.cancel(false);
+        }
+
+        protected void fetch(int dictionary_id) {
+            if(missing == dictionary_id)
+                return;
+            if(fetcher != null)
+                fetcher.cancel(false);
+            missing=dictionary_id;
+            attempts=0;
+            num_dict_fetches.increment();
+            fetcher=getTransport().getTimer().scheduleWithFixedDelay(() -> sendRequest(dictionary_id), 0,
+                                                                     dictionary_fetch_timeout, TimeUnit.MILLISECONDS,
+                                                                     false);
+        }
+
+        protected void sendRequest(int dictionary_id) {
+            View v=view;
+            Address coord=v != null? v.getCoord() : null;
+            int attempt=attempts++;
+            Address dest=attempt % 2 == 1 && coord != null && !coord.equals(local_addr)? coord : sender;
+            if(attempt > 0)
+                log.warn("%s: dictionary %d has not been received after %d ms (%d messages waiting); resending " +
+                           "request to %s", local_addr, dictionary_id, dictionary_fetch_timeout * attempt, size(), dest);
+            sendDictionaryRequest(dictionary_id, dest);
+        }
+    }
+
+
     public static class CompressHeader extends Header {
+        public static final byte COMPRESSED=0, DICT_REQ=1, DICT_RSP=2, DICT=3;
+
+        protected byte    type=COMPRESSED;
         protected int     original_size;
         protected boolean needs_deserialization;
+        protected int     dict_id; // the ID of the dictionary used for compression (0 if none), or of a dictionary
 
         public CompressHeader() {
             super();
@@ -243,22 +696,37 @@ public class COMPRESS extends Protocol {
             original_size=s;
         }
 
+        public CompressHeader(byte type, int dict_id) {
+            this.type=type;
+            this.dict_id=dict_id;
+        }
+
         public short                      getMagicId()                       {return 58;}
         public Supplier<? extends Header> create()                           {return CompressHeader::new;}
         public boolean                    needsDeserialization()             {return needs_deserialization;}
         public CompressHeader             needsDeserialization(boolean flag) {needs_deserialization=flag; return this;}
-        @Override public int              serializedSize()                   {return Global.INT_SIZE + Global.BYTE_SIZE;}
+        public int                        dictionaryId()                     {return dict_id;}
+        public CompressHeader             dictionaryId(int id)               {dict_id=id; return this;}
+        @Override public int              serializedSize()                   {return Global.INT_SIZE*2 + Global.BYTE_SIZE*2;}
 
         @Override
         public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(type);
             out.writeInt(original_size);
             out.writeBoolean(needs_deserialization);
+            out.writeInt(dict_id);
         }
 
         @Override
         public void readFrom(DataInput in) throws IOException {
+            type=in.readByte();
             original_size=in.readInt();
             needs_deserialization=in.readBoolean();
+            dict_id=in.readInt();
+        }
+
+        public String toString() {
+            return String.format("type=%d, original_size=%d, dict_id=%d", type, original_size, dict_id);
         }
     }
 }
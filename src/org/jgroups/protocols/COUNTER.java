@@ -11,6 +11,7 @@ import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 
 /**
@@ -56,6 +57,9 @@ public class COUNTER extends Protocol {
     // (client side) pending requests
     protected final Map<Owner,Tuple<Request,Promise>> pending_requests=Util.createConcurrentMap(20);
 
+    // counters handing out values from locally reserved ranges
+    protected final Map<String,ReservingCounter> reserving_counters=new ConcurrentHashMap<>();
+
     protected static final byte REQUEST  = 1;
     protected static final byte RESPONSE = 2;
     
@@ -145,8 +149,40 @@ public class COUNTER extends Protocol {
         }
     }
 
+    /**
+     * Returns a counter which hands out unique values from ranges reserved on the coordinator: a range of block_size
+     * values is reserved with a single {@link AddAndGetRequest}, and increments are served locally from it. When only
+     * prefetch values are left, the next range is reserved asynchronously. The values returned by
+     * {@link Counter#incrementAndGet()} are unique across the cluster, but are not monotonic across members.
+     * Decrementing, {@link Counter#set(long)} and {@link Counter#compareAndSet(long, long)} are not supported, as they
+     * could hand out values that have been reserved already.<br/>
+     * If a reserving counter with the given name exists already, it is returned and block_size and prefetch are ignored
+     * @param name The name of the counter
+     * @param initial_value The initial value of the counter if it doesn't exist yet
+     * @param block_size The number of values reserved at a time
+     * @param prefetch The number of values left in the current range at which the next range is reserved
+     */
+    public Counter getOrCreateReservingCounter(String name, long initial_value, long block_size, long prefetch) {
+        if(block_size <= 0 || prefetch < 0 || prefetch >= block_size)
+            throw new IllegalArgumentException(String.format("block_size (%d) needs to be positive and prefetch (%d) " +
+                                                               "needs to be in [0..block_size)", block_size, prefetch));
+        return reserving_counters.computeIfAbsent(name, n -> new ReservingCounter(getOrCreateCounter(n, initial_value),
+                                                                                  block_size, prefetch));
+    }
+
+    @ManagedOperation(description="Prints the reserved but unused ranges of all reserving counters")
+    public String printReservations() {
+        return reserving_counters.values().stream().map(ReservingCounter::toString).collect(Collectors.joining("\n"));
+    }
+
+    @ManagedAttribute(description="Number of reserved but not yet used values of all reserving counters")
+    public long getNumUnusedReservedValues() {
+        return reserving_counters.values().stream().mapToLong(ReservingCounter::unused).sum();
+    }
+
     /** Sent asynchronously - we don't wait for an ack */
     public void deleteCounter(String name) {
+        reserving_counters.remove(name);
         Owner owner=getOwner();
         Request req=new DeleteRequest(owner, name);
         sendRequest(coord, req);
@@ -392,6 +428,8 @@ public class COUNTER extends Protocol {
         this.view=view;
         if(log.isDebugEnabled())
             log.debug("view=" + view);
+        if(getNumUnusedReservedValues() > 0) // values reserved by a member which leaves are lost
+            log.info("%s: reserved but unused ranges in view %s: %s", local_addr, view.getViewId(), printReservations());
         List<Address> members=view.getMembers();
         Address old_coord=coord;
         if(!members.isEmpty())
@@ -747,6 +785,130 @@ public class COUNTER extends Protocol {
 
 
 
+    /**
+     * Hands out values from ranges reserved on the underlying counter; the next range is reserved asynchronously when
+     * only prefetch values are left in the current range
+     */
+    protected class ReservingCounter implements Counter {
+        protected final Counter counter;
+        protected final long    block_size, prefetch;
+        protected Range         current;   // the range from which values are handed out, next is the next value
+        protected long          next;
+        protected Range         prefetched;
+        protected boolean       reserving; // an asynchronous reservation is in progress
+
+        protected ReservingCounter(Counter counter, long block_size, long prefetch) {
+            this.counter=counter;
+            this.block_size=block_size;
+            this.prefetch=prefetch;
+        }
+
+        public String getName() {return counter.getName();}
+
+        /** Returns the value of the underlying counter (not the last value handed out by this counter) */
+        public long get() {return counter.get();}
+
+        public void set(long new_value) {
+            throw new UnsupportedOperationException("set() is not supported by a reserving counter");
+        }
+
+        public boolean compareAndSet(long expect, long update) {
+            throw new UnsupportedOperationException("compareAndSet() is not supported by a reserving counter");
+        }
+
+        public long incrementAndGet() {return addAndGet(1);}
+
+        public long decrementAndGet() {return addAndGet(-1);}
+
+        /** Reserves delta values and returns the highest; delta values > block_size are reserved on the coordinator */
+        public synchronized long addAndGet(long delta) {
+            if(delta <= 0)
+                throw new UnsupportedOperationException("a reserving counter can only be incremented");
+            if(delta > block_size)
+                return counter.reserve(delta).high;
+            boolean interrupted=false;
+            try {
+                for(;;) {
+                    if(current != null && current.high - next + 1 >= delta) {
+                        long retval=next + delta - 1;
+                        next+=delta;
+                        if(current.high - next + 1 <= prefetch)
+                            reserveAsync();
+                        return retval;
+                    }
+                    if(prefetched != null) { // the remainder of current (if any) is lost
+                        setCurrent(prefetched);
+                        prefetched=null;
+                        continue;
+                    }
+                    if(!reserving) {
+                        setCurrent(counter.reserve(block_size));
+                        continue;
+                    }
+                    try {
+                        this.wait();
+                    }
+                    catch(InterruptedException e) {
+                        interrupted=true;
+                    }
+                }
+            }
+            finally {
+                if(interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+
+        public Range reserve(long num) {
+            long high=addAndGet(num);
+            return new Range(high - num + 1, high);
+        }
+
+        protected synchronized long unused() {
+            long retval=current != null? current.high - next + 1 : 0;
+            return retval + (prefetched != null? prefetched.high - prefetched.low + 1 : 0);
+        }
+
+        protected void setCurrent(Range r) {
+            current=r;
+            next=r.low;
+        }
+
+        protected void reserveAsync() {
+            if(reserving || prefetched != null)
+                return;
+            reserving=true;
+            Runnable r=() -> {
+                Range range=null;
+                try {
+                    range=counter.reserve(block_size);
+                }
+                catch(Throwable t) {
+                    log.warn("%s: failed reserving %d values of counter %s: %s", local_addr, block_size, getName(), t);
+                }
+                finally {
+                    synchronized(ReservingCounter.this) {
+                        prefetched=range;
+                        reserving=false;
+                        ReservingCounter.this.notifyAll();
+                    }
+                }
+            };
+            if(!getTransport().getThreadPool().execute(r))
+                reserving=false; // the thread pool is full: the range is reserved synchronously when needed
+        }
+
+        public synchronized String toString() {
+            StringBuilder sb=new StringBuilder(getName()).append(": ");
+            if(current != null && next <= current.high)
+                sb.append("[").append(next).append(" : ").append(current.high).append("]");
+            if(prefetched != null)
+                sb.append(" ").append(prefetched);
+            return sb.toString();
+        }
+    }
+
+
     protected interface Request extends Streamable {
 
     }
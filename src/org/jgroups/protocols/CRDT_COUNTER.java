@@ -0,0 +1,479 @@
+package org.jgroups.protocols;
+
+import org.jgroups.*;
+import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.annotations.Property;
+import org.jgroups.blocks.atomic.Counter;
+import org.jgroups.conf.AttributeType;
+import org.jgroups.stack.Protocol;
+import org.jgroups.util.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Coordinator-free, eventually consistent counters based on CRDTs (conflict-free replicated data types). Contrary to
+ * {@link COUNTER}, where every update is sent to the coordinator, updates are applied to local state only and reads
+ * are local, so throughput is not limited by a single member. Suited for counters which don't need to be
+ * linearizable, e.g. statistics.<br/>
+ * Two types of counters are supported:
+ * <ul>
+ *     <li>PN-counter ({@link #getOrCreateCounter(String, long)}): every member keeps the sum of its increments (P)
+ *         and decrements (N); the value is the initial value plus the sum of all Ps minus the sum of all Ns</li>
+ *     <li>G-counter ({@link #getOrCreateGrowOnlyCounter(String)}): grow-only counter, only has increments</li>
+ * </ul>
+ * The P and N entries of a member only ever grow, so merging entries takes the max of each, which is commutative,
+ * associative and idempotent. Every flush_interval ms, a member multicasts its own entries of all counters updated
+ * since the last flush in a single message (delta). On a view change with new members or on a merge, all members
+ * multicast their own entries of all counters, and the coordinator (of each subgroup on a merge) multicasts the full
+ * state (including entries of members which left), so partitions heal without any reconciliation by a coordinator.<br/>
+ * {@link Counter#set(long)}, {@link Counter#compareAndSet(long, long)} and {@link Counter#reserve(long)} cannot be
+ * implemented without coordination and throw an {@link UnsupportedOperationException}. Deleting a counter is
+ * best-effort: it is removed from all current members, but will be re-created by a concurrent update or by state from
+ * a member which didn't see the delete.
+ * @author Bela Ban
+ * @since  5.2
+ * @see org.jgroups.blocks.atomic.CounterService
+ */
+@MBean(description="Coordinator-free counters based on CRDTs")
+public class CRDT_COUNTER extends Protocol {
+
+    @Property(description="Interval (in ms) at which local updates are multicast to all members (in a single message)",
+      type=AttributeType.TIME)
+    protected long       flush_interval=100;
+
+    @ManagedAttribute(description="Number of local updates",type=AttributeType.SCALAR)
+    protected final LongAdder num_local_updates=new LongAdder();
+
+    @ManagedAttribute(description="Number of delta messages sent",type=AttributeType.SCALAR)
+    protected final LongAdder num_deltas_sent=new LongAdder();
+
+    @ManagedAttribute(description="Number of full state messages sent",type=AttributeType.SCALAR)
+    protected final LongAdder num_states_sent=new LongAdder();
+
+    @ManagedAttribute(description="Number of counter updates received and merged",type=AttributeType.SCALAR)
+    protected final LongAdder num_merges=new LongAdder();
+
+    protected final ConcurrentMap<String,CounterState> counters=Util.createConcurrentMap(20);
+
+    // names of the counters updated locally since the last flush
+    protected final Set<String>                        dirty=ConcurrentHashMap.newKeySet();
+
+    protected volatile View                            view;
+
+    protected Future<?>                                flush_task;
+
+
+    public long         flushInterval()         {return flush_interval;}
+    public CRDT_COUNTER flushInterval(long f)   {this.flush_interval=f; return this;}
+
+    @ManagedAttribute(description="Number of counters")
+    public int          getNumCounters()        {return counters.size();}
+
+    /**
+     * Returns an existing counter, or creates a new PN-counter if none exists
+     * @param name The name of the counter
+     * @param initial_value The initial value, ignored if the counter already exists. If different members create the
+     *                      counter concurrently with different initial values, one of them is picked on all members
+     */
+    public Counter getOrCreateCounter(String name, long initial_value) {
+        return new CounterImpl(getOrCreate(name, false, initial_value));
+    }
+
+    /** Returns an existing counter, or creates a new grow-only counter (G-counter) with an initial value of 0 */
+    public Counter getOrCreateGrowOnlyCounter(String name) {
+        return new CounterImpl(getOrCreate(name, true, 0));
+    }
+
+    /** Removes the counter from all current members (best-effort, see the class javadoc) */
+    public void deleteCounter(String name) {
+        if(name == null)
+            return;
+        counters.remove(name);
+        dirty.remove(name);
+        sendDelete(name);
+    }
+
+    @ManagedOperation(description="Prints all counters and their values")
+    public String printCounters() {
+        return counters.values().stream().map(CounterState::toString).collect(Collectors.joining("\n"));
+    }
+
+    @ManagedOperation(description="Multicasts all pending local updates")
+    public void flush() {
+        if(dirty.isEmpty() || local_addr == null)
+            return;
+        List<CounterState> list=new ArrayList<>(dirty.size());
+        for(Iterator<String> it=dirty.iterator(); it.hasNext();) {
+            String name=it.next();
+            it.remove();
+            CounterState state=counters.get(name);
+            if(state != null)
+                list.add(state.copy(local_addr));
+        }
+        if(!list.isEmpty()) {
+            send(CrdtHeader.DELTA, list);
+            num_deltas_sent.increment();
+        }
+    }
+
+    public void start() throws Exception {
+        super.start();
+        if(flush_interval <= 0)
+            throw new IllegalArgumentException("flush_interval has to be positive");
+        flush_task=getTransport().getTimer().scheduleWithFixedDelay(this::flush, flush_interval, flush_interval,
+                                                                   TimeUnit.MILLISECONDS, false);
+    }
+
+    public void stop() {
+        if(flush_task != null) {
+            flush_task.cancel(false);
+            flush_task=null;
+        }
+        super.stop();
+    }
+
+    public void resetStats() {
+        super.resetStats();
+        num_local_updates.reset();
+        num_deltas_sent.reset();
+        num_states_sent.reset();
+        num_merges.reset();
+    }
+
+    public Object down(Event evt) {
+        if(evt.getType() == Event.DISCONNECT)
+            flush(); // don't lose local updates on a graceful leave
+        return down_prot.down(evt);
+    }
+
+    public Object up(Event evt) {
+        if(evt.getType() == Event.VIEW_CHANGE)
+            handleView(evt.getArg());
+        return up_prot.up(evt);
+    }
+
+    public Object up(Message msg) {
+        CrdtHeader hdr=msg.getHeader(id);
+        if(hdr == null)
+            return up_prot.up(msg);
+        handle(hdr, msg);
+        return null;
+    }
+
+    public void up(MessageBatch batch) {
+        for(Iterator<Message> it=batch.iterator(); it.hasNext();) {
+            Message msg=it.next();
+            CrdtHeader hdr=msg.getHeader(id);
+            if(hdr != null) {
+                it.remove();
+                handle(hdr, msg);
+            }
+        }
+        if(!batch.isEmpty())
+            up_prot.up(batch);
+    }
+
+
+    protected CounterState getOrCreate(String name, boolean grow_only, long initial_value) {
+        if(local_addr == null)
+            throw new IllegalStateException("the channel needs to be connected before creating or getting a counter");
+        CounterState state=counters.computeIfAbsent(name, n -> new CounterState(n, grow_only, initial_value, local_addr));
+        if(state.grow_only != grow_only)
+            throw new IllegalStateException(String.format("counter %s already exists as a %s", name, state.type()));
+        return state;
+    }
+
+    protected void handle(CrdtHeader hdr, Message msg) {
+        if(Objects.equals(local_addr, msg.getSrc()))
+            return;
+        try {
+            switch(hdr.type) {
+                case CrdtHeader.DELTA:
+                case CrdtHeader.STATE:
+                    for(CounterState s: readStates(msg))
+                        merge(s);
+                    break;
+                case CrdtHeader.DELETE:
+                    String name=new String(msg.getArray(), msg.getOffset(), msg.getLength());
+                    counters.remove(name);
+                    dirty.remove(name);
+                    break;
+                default:
+                    log.error("%s: type %d not known", local_addr, hdr.type);
+            }
+        }
+        catch(Exception ex) {
+            log.error("%s: failed handling message from %s: %s", local_addr, msg.getSrc(), ex);
+        }
+    }
+
+    protected void merge(CounterState s) {
+        CounterState state=counters.putIfAbsent(s.name, s);
+        if(state != null) {
+            if(state.grow_only != s.grow_only) {
+                log.error("%s: counter %s is a %s locally, but a %s was received; discarding it",
+                          local_addr, s.name, state.type(), s.type());
+                return;
+            }
+            state.merge(s);
+        }
+        num_merges.increment();
+    }
+
+    protected void handleView(View v) {
+        View old=view;
+        view=v;
+        if(old == null || counters.isEmpty())
+            return;
+        if(v instanceof MergeView) {
+            // every member sends its own entries; the coord of each subgroup sends the state of its subgroup
+            dirty.addAll(counters.keySet());
+            flush();
+            for(View sub: ((MergeView)v).getSubgroups()) {
+                if(Objects.equals(sub.getCoord(), local_addr)) {
+                    sendState();
+                    break;
+                }
+            }
+            return;
+        }
+        if(!View.newMembers(old, v).isEmpty()) {
+            // our own entries may have been multicast in the previous view only: resend them
+            dirty.addAll(counters.keySet());
+            flush();
+            if(Objects.equals(v.getCoord(), local_addr))
+                sendState();
+        }
+    }
+
+    protected void sendState() {
+        List<CounterState> list=counters.values().stream().map(s -> s.copy(null)).collect(Collectors.toList());
+        if(!list.isEmpty()) {
+            send(CrdtHeader.STATE, list);
+            num_states_sent.increment();
+        }
+    }
+
+    protected void sendDelete(String name) {
+        byte[] buf=name.getBytes();
+        down_prot.down(new BytesMessage(null, buf).putHeader(id, new CrdtHeader(CrdtHeader.DELETE)));
+    }
+
+    protected void send(byte type, List<CounterState> list) {
+        try {
+            ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(list.size() * 64);
+            out.writeInt(list.size());
+            for(CounterState s: list)
+                s.writeTo(out);
+            Message msg=new BytesMessage(null, out.buffer(), 0, out.position()).putHeader(id, new CrdtHeader(type));
+            down_prot.down(msg);
+        }
+        catch(Exception ex) {
+            log.error("%s: failed sending %s: %s", local_addr, CrdtHeader.typeToString(type), ex);
+        }
+    }
+
+    protected static List<CounterState> readStates(Message msg) throws IOException, ClassNotFoundException {
+        ByteArrayDataInputStream in=new ByteArrayDataInputStream(msg.getArray(), msg.getOffset(), msg.getLength());
+        int size=in.readInt();
+        List<CounterState> list=new ArrayList<>(size);
+        for(int i=0; i < size; i++) {
+            CounterState s=new CounterState();
+            s.readFrom(in);
+            list.add(s);
+        }
+        return list;
+    }
+
+
+    protected class CounterImpl implements Counter {
+        protected final CounterState state;
+
+        protected CounterImpl(CounterState state) {
+            this.state=state;
+        }
+
+        public String getName()                             {return state.name;}
+        public long   get()                                 {return state.value();}
+        public long   incrementAndGet()                     {return addAndGet(1);}
+        public long   decrementAndGet()                     {return addAndGet(-1);}
+
+        public void set(long new_value) {
+            throw new UnsupportedOperationException("set() is not supported by CRDT counters");
+        }
+
+        public boolean compareAndSet(long expect, long update) {
+            throw new UnsupportedOperationException("compareAndSet() is not supported by CRDT counters");
+        }
+
+        public Range reserve(long num) {
+            throw new UnsupportedOperationException("reserve() is not supported by CRDT counters " +
+                                                      "(values are not unique)");
+        }
+
+        public long addAndGet(long delta) {
+            if(delta == 0)
+                return state.value();
+            if(delta < 0 && state.grow_only)
+                throw new IllegalArgumentException(String.format("grow-only counter %s cannot be decremented", state.name));
+            long retval=state.add(local_addr, delta);
+            dirty.add(state.name);
+            num_local_updates.increment();
+            return retval;
+        }
+
+        public String toString() {
+            return state.toString();
+        }
+    }
+
+
+    /**
+     * The state of a counter: the initial value (and the member which created the counter with it) plus the increments
+     * (P) and decrements (N) of every member
+     */
+    protected static class CounterState implements Streamable {
+        protected String                  name;
+        protected boolean                 grow_only;
+        protected long                    initial;
+        protected Address                 creator;   // the initial value of the smallest creator wins on a merge
+        protected final Map<Address,long[]> entries=new HashMap<>(); // member -> {P,N}
+        protected long                    value;     // initial + sum(P) - sum(N)
+
+        public CounterState() {
+        }
+
+        protected CounterState(String name, boolean grow_only, long initial, Address creator) {
+            this.name=name;
+            this.grow_only=grow_only;
+            this.initial=this.value=initial;
+            this.creator=creator;
+        }
+
+        protected synchronized long value() {return value;}
+        protected String            type()  {return grow_only? "G-counter" : "PN-counter";}
+
+        protected synchronized long add(Address mbr, long delta) {
+            long[] entry=entries.computeIfAbsent(mbr, m -> new long[2]);
+            if(delta > 0)
+                entry[0]+=delta;
+            else
+                entry[1]-=delta;
+            return value+=delta;
+        }
+
+        /** Merges another state into this one, taking the max of every P and N entry */
+        protected synchronized void merge(CounterState other) {
+            if(other.creator != null && (creator == null || other.creator.compareTo(creator) < 0)) {
+                value+=other.initial - initial;
+                initial=other.initial;
+                creator=other.creator;
+            }
+            for(Map.Entry<Address,long[]> e: other.entries.entrySet()) {
+                long[] theirs=e.getValue(), mine=entries.get(e.getKey());
+                if(mine == null)
+                    entries.put(e.getKey(), mine=new long[2]);
+                if(theirs[0] > mine[0]) {
+                    value+=theirs[0] - mine[0];
+                    mine[0]=theirs[0];
+                }
+                if(theirs[1] > mine[1]) {
+                    value-=theirs[1] - mine[1];
+                    mine[1]=theirs[1];
+                }
+            }
+        }
+
+        /** Returns a copy with the entry of the given member only, or with all entries if mbr is null */
+        protected synchronized CounterState copy(Address mbr) {
+            CounterState s=new CounterState(name, grow_only, initial, creator);
+            for(Map.Entry<Address,long[]> e: entries.entrySet()) {
+                if(mbr == null || mbr.equals(e.getKey())) {
+                    long[] entry=e.getValue();
+                    s.entries.put(e.getKey(), entry.clone());
+                    s.value+=entry[0] - entry[1];
+                }
+            }
+            return s;
+        }
+
+        public synchronized void writeTo(DataOutput out) throws IOException {
+            Bits.writeString(name, out);
+            out.writeBoolean(grow_only);
+            Bits.writeLongCompressed(initial, out);
+            Util.writeAddress(creator, out);
+            out.writeInt(entries.size());
+            for(Map.Entry<Address,long[]> e: entries.entrySet()) {
+                Util.writeAddress(e.getKey(), out);
+                Bits.writeLongCompressed(e.getValue()[0], out);
+                Bits.writeLongCompressed(e.getValue()[1], out);
+            }
+        }
+
+        public synchronized void readFrom(DataInput in) throws IOException, ClassNotFoundException {
+            name=Bits.readString(in);
+            grow_only=in.readBoolean();
+            initial=value=Bits.readLongCompressed(in);
+            creator=Util.readAddress(in);
+            int size=in.readInt();
+            for(int i=0; i < size; i++) {
+                Address mbr=Util.readAddress(in);
+                long p=Bits.readLongCompressed(in), n=Bits.readLongCompressed(in);
+                entries.put(mbr, new long[]{p, n});
+                value+=p - n;
+            }
+        }
+
+        public synchronized String toString() {
+            return String.format("%s: %d (%s, %d members)", name, value, type(), entries.size());
+        }
+    }
+
+
+    public static class CrdtHeader extends Header {
+        public static final byte DELTA=1, STATE=2, DELETE=3;
+
+        protected byte type;
+
+        public CrdtHeader() {}
+        public CrdtHeader(byte type) {this.type=type;}
+
+        public short                      getMagicId()    {return 97;}
+        public Supplier<? extends Header> create()        {return CrdtHeader::new;}
+        public byte                       type()          {return type;}
+        public int                        serializedSize() {return Global.BYTE_SIZE;}
+
+        @Override public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(type);
+        }
+
+        @Override public void readFrom(DataInput in) throws IOException {
+            type=in.readByte();
+        }
+
+        public String toString() {
+            return typeToString(type);
+        }
+
+        protected static String typeToString(byte type) {
+            switch(type) {
+                case DELTA:  return "DELTA";
+                case STATE:  return "STATE";
+                case DELETE: return "DELETE";
+                default:     return "n/a";
+            }
+        }
+    }
+}
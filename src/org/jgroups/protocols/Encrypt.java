@@ -14,6 +14,7 @@ import java.security.KeyStore;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -121,6 +122,9 @@ public abstract class Encrypt<E extends KeyStore.Entry> extends Protocol {
     }
 
 
+    /** Reading the keys may be slow: independent of other protocols but the transport (message factory) */
+    @Override public List<Class<? extends Protocol>> startDependencies() {return List.of(TP.class, KeyExchange.class);}
+
     public Object down(Event evt) {
         switch(evt.getType()) {
             case Event.VIEW_CHANGE:
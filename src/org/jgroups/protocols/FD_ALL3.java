@@ -1,8 +1,11 @@
 package org.jgroups.protocols;
 
 import org.jgroups.Address;
+import org.jgroups.View;
 import org.jgroups.annotations.ManagedAttribute;
 import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.util.MemberIndex;
+import org.jgroups.util.Tuple;
 import org.jgroups.util.Util;
 
 import java.util.Iterator;
@@ -27,6 +30,10 @@ public class FD_ALL3 extends FailureDetection {
     // Map of addresses and timestamps of last updates
     protected final Map<Address,Bitmap> timestamps=Util.createConcurrentMap();
 
+    // The bitmaps of the current view's members, indexed by the member index of the view (null for local_addr).
+    // Avoids a lookup in timestamps for every received message or batch
+    protected volatile Tuple<MemberIndex,Bitmap[]> bitmaps;
+
     @ManagedAttribute(description="The number of bits for each member (timeout / interval)")
     protected int                       num_bits;
 
@@ -65,9 +72,21 @@ public class FD_ALL3 extends FailureDetection {
         return this;
     }
 
+    @Override protected void handleViewChange(View v) {
+        super.handleViewChange(v);
+        MemberIndex index=v.getMemberIndex();
+        Bitmap[] tmp=new Bitmap[index.size()];
+        for(int i=0; i < tmp.length; i++) {
+            Address mbr=index.get(i);
+            if(mbr != null)
+                tmp[i]=timestamps.get(mbr);
+        }
+        bitmaps=new Tuple<>(index, tmp);
+    }
+
     @Override protected void update(Address sender, boolean log_msg, boolean skip_if_exists) {
         if(sender != null && !sender.equals(local_addr)) {
-            Bitmap bm=timestamps.get(sender);
+            Bitmap bm=getBitmap(sender);
             if(bm != null) {
                 if(!skip_if_exists)
                     bm.set();
@@ -79,6 +98,17 @@ public class FD_ALL3 extends FailureDetection {
             log.trace("%s: received heartbeat from %s", local_addr, sender);
     }
 
+    protected Bitmap getBitmap(Address mbr) {
+        Tuple<MemberIndex,Bitmap[]> tmp=bitmaps;
+        if(tmp != null) {
+            int idx=tmp.getVal1().indexOf(mbr);
+            Bitmap bm=idx >= 0? tmp.getVal2()[idx] : null;
+            if(bm != null)
+                return bm;
+        }
+        return timestamps.get(mbr);
+    }
+
     protected int computeBits() {
         return timeout % interval == 0? (int)(timeout / interval) : (int)((timeout / interval)+1);
     }
@@ -0,0 +1,301 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Address;
+import org.jgroups.View;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.annotations.Property;
+import org.jgroups.conf.AttributeType;
+import org.jgroups.util.MemberIndex;
+import org.jgroups.util.Tuple;
+import org.jgroups.util.Util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phi-accrual failure detection (Hayashibara et al.). Every member periodically (interval ms) multicasts a heartbeat;
+ * like {@link FD_ALL3}, heartbeats are suppressed when regular traffic has been sent, and every message or batch
+ * received from P counts as a heartbeat from P.<br/>
+ * For every member, the inter-arrival times of the last {@link #max_samples} heartbeats are kept. The timeout checker
+ * computes phi, the suspicion level, from the time elapsed since the last heartbeat and the mean and standard deviation
+ * of the inter-arrival times: phi=1 means a 10% chance of a false suspicion, phi=2 1%, phi=3 0.1% and so on. Members
+ * whose phi exceeds {@link #threshold} are suspected. As a safeguard, members from which nothing has been received for
+ * {@link #timeout} ms are also suspected.<br/>
+ * Arrivals closer together than {@link #min_interval} ms are coalesced into one sample, and samples shorter than
+ * {@link #interval} are recorded as interval, so that high message rates don't shrink the mean and make the detector
+ * suspect members once traffic stops and only heartbeats are received. As a member which has just sent traffic skips its
+ * next heartbeat, up to 2 * interval ms can pass between arrivals; the mean is therefore never lower than that.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class FD_PHI extends FailureDetection {
+
+    @Property(description="Members whose phi value exceeds this threshold are suspected")
+    protected double  threshold=8.0;
+
+    @Property(description="Max number of inter-arrival times to keep per member")
+    protected int     max_samples=200;
+
+    @Property(description="Arrivals within this time from the previous sample are not recorded as a new sample",
+      type=AttributeType.TIME)
+    protected long    min_interval=500;
+
+    @Property(description="Lower bound for the standard deviation of inter-arrival times; prevents phi from spiking " +
+      "when heartbeats arrive at very regular intervals",type=AttributeType.TIME)
+    protected long    min_std_deviation=500;
+
+    @Property(description="Pause (e.g. GC) which is tolerated on top of the mean inter-arrival time",
+      type=AttributeType.TIME)
+    protected long    acceptable_pause=3000;
+
+    @Property(description="Interval at which the phi values of all members are checked",type=AttributeType.TIME)
+    protected long    check_interval=1000;
+
+    // Map of addresses and inter-arrival histories
+    protected final Map<Address,ArrivalWindow> windows=Util.createConcurrentMap();
+
+    // The windows of the current view's members, indexed by the member index of the view (null for local_addr)
+    protected volatile Tuple<MemberIndex,ArrivalWindow[]> cached_windows;
+
+
+    public double getThreshold()                   {return threshold;}
+    public FD_PHI setThreshold(double t)           {this.threshold=t; return this;}
+    public int    getMaxSamples()                  {return max_samples;}
+    public FD_PHI setMaxSamples(int m)             {this.max_samples=m; return this;}
+    public long   getMinInterval()                 {return min_interval;}
+    public FD_PHI setMinInterval(long m)           {this.min_interval=m; return this;}
+    public long   getMinStdDeviation()             {return min_std_deviation;}
+    public FD_PHI setMinStdDeviation(long m)       {this.min_std_deviation=m; return this;}
+    public long   getAcceptablePause()             {return acceptable_pause;}
+    public FD_PHI setAcceptablePause(long p)       {this.acceptable_pause=p; return this;}
+    public long   getCheckInterval()               {return check_interval;}
+    public FD_PHI setCheckInterval(long i)         {this.check_interval=i; return this;}
+
+    protected Map<Address,?> getTimestamps()           {return windows;}
+    protected long           getTimeoutCheckInterval() {return check_interval;}
+
+    @ManagedAttribute(description="The current phi values of all members")
+    public String getPhiValues() {
+        long now=System.nanoTime();
+        StringBuilder sb=new StringBuilder();
+        for(Map.Entry<Address,ArrivalWindow> e: windows.entrySet()) {
+            if(sb.length() > 0)
+                sb.append(", ");
+            sb.append(e.getKey()).append(String.format(": %.2f", phi(e.getValue(), now)));
+        }
+        return sb.toString();
+    }
+
+    @ManagedAttribute(description="The highest phi value of all members")
+    public double getMaxPhi() {
+        long now=System.nanoTime();
+        return windows.values().stream().mapToDouble(w -> phi(w, now)).max().orElse(0);
+    }
+
+    @ManagedOperation(description="Prints the inter-arrival statistics of all members")
+    public String printTimestamps() {
+        long now=System.nanoTime();
+        StringBuilder sb=new StringBuilder();
+        for(Map.Entry<Address,ArrivalWindow> e: windows.entrySet()) {
+            ArrivalWindow w=e.getValue();
+            sb.append(String.format("%s: %s, phi=%.2f\n", e.getKey(), w, phi(w, now)));
+        }
+        return sb.toString();
+    }
+
+    /** Returns the current phi value for mbr, or 0 if mbr is unknown */
+    public double phi(Address mbr) {
+        ArrivalWindow w=mbr != null? getWindow(mbr) : null;
+        return w != null? phi(w, System.nanoTime()) : 0;
+    }
+
+    public void init() throws Exception {
+        super.init();
+        if(threshold <= 0)
+            throw new IllegalArgumentException("threshold must be positive");
+        if(max_samples < 1)
+            throw new IllegalArgumentException("max_samples must be >= 1");
+    }
+
+    @Override protected void handleViewChange(View v) {
+        super.handleViewChange(v);
+        MemberIndex index=v.getMemberIndex();
+        ArrivalWindow[] tmp=new ArrivalWindow[index.size()];
+        for(int i=0; i < tmp.length; i++) {
+            Address mbr=index.get(i);
+            if(mbr != null)
+                tmp[i]=windows.get(mbr);
+        }
+        cached_windows=new Tuple<>(index, tmp);
+    }
+
+    @Override protected void update(Address sender, boolean log_msg, boolean skip_if_exists) {
+        if(sender != null && !sender.equals(local_addr)) {
+            ArrivalWindow w=getWindow(sender);
+            if(w != null) {
+                if(!skip_if_exists)
+                    w.add(System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(min_interval),
+                          TimeUnit.MILLISECONDS.toNanos(timeout), interval);
+            }
+            else
+                windows.putIfAbsent(sender, new ArrivalWindow(max_samples, interval).arrived(System.nanoTime()));
+        }
+        if(log_msg && log.isTraceEnabled())
+            log.trace("%s: received heartbeat from %s", local_addr, sender);
+    }
+
+    protected ArrivalWindow getWindow(Address mbr) {
+        Tuple<MemberIndex,ArrivalWindow[]> tmp=cached_windows;
+        if(tmp != null) {
+            int idx=tmp.getVal1().indexOf(mbr);
+            ArrivalWindow w=idx >= 0? tmp.getVal2()[idx] : null;
+            if(w != null)
+                return w;
+        }
+        return windows.get(mbr);
+    }
+
+    protected double phi(ArrivalWindow w, long now) {
+        return w.phi(now, min_std_deviation, acceptable_pause, interval * 2);
+    }
+
+    protected <T> boolean needsToBeSuspected(Address mbr, T value) {
+        ArrivalWindow w=(ArrivalWindow)value;
+        long now=System.nanoTime();
+        double phi=phi(w, now);
+        if(phi > threshold) {
+            log.debug("%s: phi for %s is %.2f (threshold: %.2f), adding it to suspect list", local_addr, mbr, phi, threshold);
+            return true;
+        }
+        long elapsed=TimeUnit.NANOSECONDS.toMillis(now - w.lastArrival());
+        if(elapsed > timeout) {
+            log.debug("%s: haven't received a heartbeat from %s in timeout period (%d ms), adding it to suspect list",
+                      local_addr, mbr, timeout);
+            return true;
+        }
+        return false;
+    }
+
+    protected String getTimeoutCheckerInfo() {
+        return FD_PHI.class.getSimpleName() + ": " + getClass().getSimpleName() + " (threshold=" + threshold + ")";
+    }
+
+
+    /**
+     * Keeps the last N inter-arrival times (in ms) of a member in a ring buffer, plus their sum and sum of squares,
+     * so that mean and variance can be computed in constant time. The time of the last arrival is updated on every
+     * message without locking; a new sample is only recorded if the previous one is older than min_interval.
+     */
+    public static class ArrivalWindow {
+        protected final double[] samples;
+        protected int            index, count;
+        protected double         sum, sum_of_squares;
+        protected long           last_sample;  // time (ns) of the last recorded sample
+        protected volatile long  last_arrival; // time (ns) of the last message or heartbeat
+
+        /**
+         * Creates a window
+         * @param size The max number of samples
+         * @param initial_interval The expected inter-arrival time (ms); used as the first sample, so phi can be
+         *                         computed before any real samples have been recorded
+         */
+        public ArrivalWindow(int size, long initial_interval) {
+            samples=new double[size];
+            addSample(initial_interval);
+        }
+
+        public long   lastArrival() {return last_arrival;}
+        public synchronized int    size()  {return count;}
+        public synchronized double mean()  {return count == 0? 0 : sum / count;}
+
+        public synchronized double stdDeviation() {
+            if(count == 0)
+                return 0;
+            double mean=sum / count, variance=sum_of_squares / count - mean * mean;
+            return variance > 0? Math.sqrt(variance) : 0;
+        }
+
+        /** Sets the time of the last arrival without recording a sample */
+        public ArrivalWindow arrived(long now) {
+            last_arrival=now;
+            synchronized(this) {
+                last_sample=now;
+            }
+            return this;
+        }
+
+        /**
+         * Records an arrival at time now (ns). A sample is added only if the last one was recorded at least
+         * min_interval ns ago; gaps longer than max_interval ns (e.g. after a suspicion) are not recorded, but reset
+         * the start of the next sample
+         */
+        public ArrivalWindow add(long now, long min_interval, long max_interval) {
+            return add(now, min_interval, max_interval, 0);
+        }
+
+        /**
+         * Same as {@link #add(long,long,long)}, but samples shorter than min_sample ms are recorded as min_sample ms
+         */
+        public ArrivalWindow add(long now, long min_interval, long max_interval, long min_sample) {
+            last_arrival=now;
+            if(now - last_sample < min_interval) // racy read is ok: re-checked below
+                return this;
+            synchronized(this) {
+                long diff=now - last_sample;
+                if(diff < min_interval)
+                    return this;
+                last_sample=now;
+                if(diff <= max_interval)
+                    addSample(Math.max(TimeUnit.NANOSECONDS.toMillis(diff), min_sample));
+            }
+            return this;
+        }
+
+        /**
+         * Computes phi at time now (ns), using a logistic approximation of the cumulative distribution function of
+         * the normal distribution
+         * @param min_std_deviation Lower bound for the standard deviation (ms)
+         * @param acceptable_pause Time (ms) added to the mean
+         */
+        public double phi(long now, long min_std_deviation, long acceptable_pause) {
+            return phi(now, min_std_deviation, acceptable_pause, 0);
+        }
+
+        /**
+         * Same as {@link #phi(long,long,long)}, but the mean is at least min_mean ms before acceptable_pause is added
+         */
+        public double phi(long now, long min_std_deviation, long acceptable_pause, long min_mean) {
+            double elapsed=TimeUnit.NANOSECONDS.toMillis(now - last_arrival), mean, std_dev;
+            synchronized(this) {
+                mean=Math.max(mean(), min_mean) + acceptable_pause;
+                std_dev=Math.max(stdDeviation(), min_std_deviation);
+            }
+            return computePhi(elapsed, mean, std_dev);
+        }
+
+        public static double computePhi(double elapsed, double mean, double std_dev) {
+            double y=(elapsed - mean) / std_dev;
+            double e=Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            return elapsed > mean? -Math.log10(e / (1.0 + e)) : -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+
+        public String toString() {
+            return String.format("samples=%d, mean=%.2f ms, std-dev=%.2f ms", size(), mean(), stdDeviation());
+        }
+
+        protected void addSample(double s) {
+            if(count == samples.length) {
+                double old=samples[index];
+                sum-=old;
+                sum_of_squares-=old * old;
+            }
+            else
+                count++;
+            samples[index]=s;
+            sum+=s;
+            sum_of_squares+=s * s;
+            index=(index+1) % samples.length;
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package org.jgroups.protocols;
+
+import org.jgroups.*;
+import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.annotations.Property;
+import org.jgroups.conf.AttributeType;
+import org.jgroups.stack.Protocol;
+import org.jgroups.util.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Failure detection based on SWIM (Das, Gupta, Motivala: "SWIM: Scalable Weakly-consistent Infection-style Process
+ * Group Membership Protocol"). Contrary to FD_ALL*, where every member multicasts heartbeats to every other member
+ * (N<sup>2</sup> messages per interval), every member only probes one member per protocol period, so the load per
+ * member is constant and the total load grows linearly with the cluster size:
+ * <ul>
+ *     <li>Every protocol_period ms, a member P picks the next member T from a shuffled list of all members and sends
+ *         it a PING. If no ACK has been received after ping_timeout ms, P sends a PING-REQ to num_indirect_probes
+ *         random members, which ping T on P's behalf and forward T's ACK to P.</li>
+ *     <li>If no (direct or indirect) ACK has been received by the end of the protocol period, P marks T as suspected
+ *         and disseminates SUSPECT(T). A suspected member refutes the suspicion by incrementing its incarnation number
+ *         and disseminating ALIVE. If the suspicion has not been refuted after suspect_timeout ms, the suspected
+ *         member is confirmed as dead and CONFIRM(T) is disseminated.</li>
+ *     <li>Updates are disseminated infection-style: they are piggybacked on pings, acks and (if piggyback_on_traffic
+ *         is true) regular messages sent by this member, each update retransmit_multiplier * log(N) times.</li>
+ *     <li>The coordinator (the first member of the view which has not been confirmed as dead) passes confirmed
+ *         members up to {@link org.jgroups.protocols.pbcast.GMS} as SUSPECT events, which then installs a new view.
+ *         Members that are not confirmed dead are never suspected, so VERIFY_SUSPECT is not needed.</li>
+ * </ul>
+ * Membership changes (joins, leaves, merges) are still handled by GMS; FD_SWIM replaces the FD_ALL* protocols.
+ * @author Bela Ban
+ * @since  5.2
+ */
+@MBean(description="SWIM-style failure detection")
+public class FD_SWIM extends Protocol {
+
+    @Property(description="Interval at which a member is probed",type=AttributeType.TIME)
+    protected long    protocol_period=1000;
+
+    @Property(description="Time to wait for an ACK to a PING before sending PING-REQs to other members",
+      type=AttributeType.TIME)
+    protected long    ping_timeout=300;
+
+    @Property(description="Number of members asked to probe a member indirectly when no ACK was received")
+    protected int     num_indirect_probes=3;
+
+    @Property(description="Time after which a suspected member is confirmed as dead unless it refuted the suspicion",
+      type=AttributeType.TIME)
+    protected long    suspect_timeout=5000;
+
+    @Property(description="Max number of membership updates piggybacked on a single message")
+    protected int     max_piggybacked=6;
+
+    @Property(description="Every update is piggybacked retransmit_multiplier * log2(N) times")
+    protected int     retransmit_multiplier=3;
+
+    @Property(description="Piggyback membership updates on regular messages, too (not just on pings and acks)")
+    protected boolean piggyback_on_traffic=true;
+
+    @ManagedAttribute(description="Number of PINGs sent",type=AttributeType.SCALAR)
+    protected int     num_pings_sent;
+
+    @ManagedAttribute(description="Number of PING-REQs sent",type=AttributeType.SCALAR)
+    protected int     num_ping_reqs_sent;
+
+    @ManagedAttribute(description="Number of ACKs received",type=AttributeType.SCALAR)
+    protected int     num_acks_received;
+
+    @ManagedAttribute(description="Number of members suspected by this member",type=AttributeType.SCALAR)
+    protected int     num_suspicions;
+
+    @ManagedAttribute(description="Number of members confirmed as dead",type=AttributeType.SCALAR)
+    protected int     num_confirmations;
+
+    @ManagedAttribute(description="Number of times a suspicion of this member was refuted",type=AttributeType.SCALAR)
+    protected int     num_refutations;
+
+    @ManagedAttribute(description="Incarnation number of this member")
+    protected volatile long                   incarnation;
+
+    protected final Map<Address,MemberState>  states=Util.createConcurrentMap();
+
+    // updates to be disseminated, at most one per member
+    protected final Map<Address,Update>       updates=Util.createConcurrentMap();
+
+    // PINGs sent on behalf of other members (PING-REQ), keyed by the seqno of the PING
+    protected final Map<Long,Forward>         forwards=Util.createConcurrentMap();
+
+    protected final AtomicLong                seqno=new AtomicLong();
+    protected volatile List<Address>          members=Collections.emptyList();
+    protected Address[]                       probe_order={}; // shuffled members (excluding self)
+    protected int                             probe_index;
+    protected volatile Probe                  current_probe;
+    protected TimeScheduler                   timer;
+    protected Future<?>                       prober;
+
+
+    public long    getProtocolPeriod()               {return protocol_period;}
+    public FD_SWIM setProtocolPeriod(long p)         {this.protocol_period=p; return this;}
+    public long    getPingTimeout()                  {return ping_timeout;}
+    public FD_SWIM setPingTimeout(long t)            {this.ping_timeout=t; return this;}
+    public int     getNumIndirectProbes()            {return num_indirect_probes;}
+    public FD_SWIM setNumIndirectProbes(int n)       {this.num_indirect_probes=n; return this;}
+    public long    getSuspectTimeout()               {return suspect_timeout;}
+    public FD_SWIM setSuspectTimeout(long t)         {this.suspect_timeout=t; return this;}
+    public int     getMaxPiggybacked()               {return max_piggybacked;}
+    public FD_SWIM setMaxPiggybacked(int m)          {this.max_piggybacked=m; return this;}
+    public int     getRetransmitMultiplier()         {return retransmit_multiplier;}
+    public FD_SWIM setRetransmitMultiplier(int m)    {this.retransmit_multiplier=m; return this;}
+    public boolean piggybackOnTraffic()              {return piggyback_on_traffic;}
+    public FD_SWIM piggybackOnTraffic(boolean b)     {this.piggyback_on_traffic=b; return this;}
+    public long    getIncarnation()                  {return incarnation;}
+    public int     getNumPingsSent()                 {return num_pings_sent;}
+    public int     getNumPingReqsSent()              {return num_ping_reqs_sent;}
+    public int     getNumConfirmations()             {return num_confirmations;}
+
+    @ManagedAttribute(description="Is the prober task running")
+    public synchronized boolean isRunning() {return prober != null && !prober.isDone();}
+
+    @ManagedAttribute(description="Number of pending membership updates")
+    public int getNumUpdates() {return updates.size();}
+
+    @ManagedAttribute(description="Currently suspected members")
+    public String getSuspectedMembers() {return print(MemberState.SUSPECT);}
+
+    @ManagedAttribute(description="Members confirmed as dead, but still in the view")
+    public String getConfirmedMembers() {return print(MemberState.CONFIRM);}
+
+    @ManagedOperation(description="Prints the state of all members")
+    public String printStates() {
+        StringBuilder sb=new StringBuilder();
+        states.forEach((k,v) -> sb.append(k).append(": ").append(v).append("\n"));
+        return sb.toString();
+    }
+
+    public void resetStats() {
+        super.resetStats();
+        num_pings_sent=num_ping_reqs_sent=num_acks_received=num_suspicions=num_confirmations=num_refutations=0;
+    }
+
+    public void init() throws Exception {
+        super.init();
+        timer=getTransport().getTimer();
+        if(timer == null)
+            throw new Exception("timer not set");
+        if(ping_timeout >= protocol_period)
+            throw new IllegalArgumentException("ping_timeout needs to be smaller than protocol_period");
+    }
+
+    public void stop() {
+        super.stop();
+        stopProber();
+        states.clear();
+        updates.clear();
+        forwards.clear();
+        current_probe=null;
+    }
+
+    public Object down(Event evt) {
+        if(evt.getType() == Event.VIEW_CHANGE) {
+            Object retval=down_prot.down(evt);
+            handleViewChange(evt.getArg());
+            return retval;
+        }
+        return down_prot.down(evt);
+    }
+
+    public Object down(Message msg) {
+        if(piggyback_on_traffic && !updates.isEmpty() && msg.getHeader(id) == null) {
+            Update[] tmp=selectUpdates(msg.getDest());
+            if(tmp != null) // the message may be retransmitted or sent concurrently, so add the header to a copy
+                msg=msg.copy(true, true).putHeader(id, new SwimHeader(SwimHeader.PIGGYBACK).updates(tmp));
+        }
+        return down_prot.down(msg);
+    }
+
+    public Object up(Message msg) {
+        SwimHeader hdr=msg.getHeader(id);
+        if(hdr == null)
+            return up_prot.up(msg);
+        handleUpdates(hdr.updates);
+        if(hdr.type == SwimHeader.PIGGYBACK)
+            return up_prot.up(msg);
+        handle(hdr, msg.getSrc());
+        return null;
+    }
+
+    public void up(MessageBatch batch) {
+        for(Iterator<Message> it=batch.iterator(); it.hasNext();) {
+            Message msg=it.next();
+            SwimHeader hdr=msg.getHeader(id);
+            if(hdr == null)
+                continue;
+            handleUpdates(hdr.updates);
+            if(hdr.type != SwimHeader.PIGGYBACK) {
+                it.remove();
+                handle(hdr, msg.getSrc());
+            }
+        }
+        if(!batch.isEmpty())
+            up_prot.up(batch);
+    }
+
+    protected void handle(SwimHeader hdr, Address sender) {
+        switch(hdr.type) {
+            case SwimHeader.PING:
+                send(sender, new SwimHeader(SwimHeader.ACK).seqno(hdr.seqno));
+                break;
+            case SwimHeader.ACK:
+                num_acks_received++;
+                Forward fwd=forwards.remove(hdr.seqno);
+                if(fwd != null) { // ack to a PING we sent on behalf of another member: forward it
+                    send(fwd.requester, new SwimHeader(SwimHeader.ACK).seqno(fwd.seqno).target(sender));
+                    break;
+                }
+                Probe probe=current_probe;
+                if(probe != null && probe.seqno == hdr.seqno)
+                    probe.acked=true;
+                break;
+            case SwimHeader.PING_REQ:
+                if(hdr.target == null)
+                    break;
+                long seq=seqno.incrementAndGet();
+                forwards.put(seq, new Forward(sender, hdr.seqno));
+                send(hdr.target, new SwimHeader(SwimHeader.PING).seqno(seq));
+                break;
+        }
+    }
+
+    protected synchronized void handleViewChange(View v) {
+        List<Address> mbrs=v.getMembers();
+        members=mbrs;
+        states.keySet().retainAll(mbrs);
+        updates.keySet().retainAll(mbrs);
+        for(Address mbr: mbrs) {
+            if(!mbr.equals(local_addr))
+                states.putIfAbsent(mbr, new MemberState());
+        }
+        probe_order=shuffle();
+        probe_index=0;
+        if(mbrs.size() > 1)
+            startProber();
+        else
+            stopProber();
+    }
+
+    /** Called every protocol_period ms */
+    protected void probe() {
+        Probe prev=current_probe;
+        if(prev != null && !prev.acked)
+            suspect(prev.target);
+        long now=System.nanoTime();
+        for(Map.Entry<Address,MemberState> e: states.entrySet()) {
+            MemberState s=e.getValue();
+            if(s.status == MemberState.SUSPECT && now - s.suspected >= TimeUnit.MILLISECONDS.toNanos(suspect_timeout))
+                confirm(e.getKey(), s.incarnation);
+        }
+        forwards.values().removeIf(f -> now - f.created >= TimeUnit.MILLISECONDS.toNanos(protocol_period));
+        sendSuspectEvent();
+
+        Address target=nextTarget();
+        if(target == null) {
+            current_probe=null;
+            return;
+        }
+        Probe probe=current_probe=new Probe(target, seqno.incrementAndGet());
+        send(target, new SwimHeader(SwimHeader.PING).seqno(probe.seqno));
+        num_pings_sent++;
+        timer.schedule(() -> probeIndirectly(probe), ping_timeout, TimeUnit.MILLISECONDS, false);
+    }
+
+    protected void probeIndirectly(Probe probe) {
+        if(probe.acked || current_probe != probe)
+            return;
+        List<Address> helpers=new ArrayList<>(members);
+        helpers.removeIf(m -> m.equals(local_addr) || m.equals(probe.target) || isConfirmed(m));
+        Collections.shuffle(helpers, ThreadLocalRandom.current());
+        for(int i=0; i < Math.min(num_indirect_probes, helpers.size()); i++) {
+            send(helpers.get(i), new SwimHeader(SwimHeader.PING_REQ).seqno(probe.seqno).target(probe.target));
+            num_ping_reqs_sent++;
+        }
+    }
+
+    /** Returns the next member to probe, round-robin over a shuffled list which is reshuffled after each round */
+    protected synchronized Address nextTarget() {
+        for(int i=0; i <= probe_order.length; i++) {
+            if(probe_index >= probe_order.length) {
+                probe_order=shuffle();
+                probe_index=0;
+                if(probe_order.length == 0)
+                    return null;
+            }
+            Address mbr=probe_order[probe_index++];
+            if(!isConfirmed(mbr))
+                return mbr;
+        }
+        return null;
+    }
+
+    protected Address[] shuffle() {
+        Address[] tmp=states.keySet().toArray(new Address[0]);
+        Util.shuffle(tmp, 0, tmp.length);
+        return tmp;
+    }
+
+    protected void suspect(Address mbr) {
+        MemberState s=states.get(mbr);
+        if(s != null)
+            apply(new Update(Update.SUSPECT, mbr, s.incarnation));
+    }
+
+    protected void confirm(Address mbr, long inc) {
+        apply(new Update(Update.CONFIRM, mbr, inc));
+    }
+
+    protected void handleUpdates(Update[] list) {
+        if(list != null)
+            for(Update u: list)
+                apply(u);
+    }
+
+    /** Applies an update to the local state and disseminates it if it changed the state */
+    protected void apply(Update u) {
+        if(u == null || u.mbr == null)
+            return;
+        if(u.mbr.equals(local_addr)) {
+            if(u.type == Update.SUSPECT)
+                refute(u.incarnation);
+            return;
+        }
+        MemberState s=states.get(u.mbr);
+        if(s == null)
+            return;
+        boolean changed;
+        synchronized(s) {
+            changed=s.apply(u);
+        }
+        if(!changed)
+            return;
+        updates.put(u.mbr, u);
+        switch(u.type) {
+            case Update.SUSPECT:
+                num_suspicions++;
+                log.debug("%s: suspecting %s (incarnation %d)", local_addr, u.mbr, u.incarnation);
+                break;
+            case Update.CONFIRM:
+                num_confirmations++;
+                log.debug("%s: %s is confirmed as dead", local_addr, u.mbr);
+                sendSuspectEvent();
+                break;
+            case Update.ALIVE:
+                log.debug("%s: %s is alive (incarnation %d)", local_addr, u.mbr, u.incarnation);
+                break;
+        }
+    }
+
+    protected synchronized void refute(long inc) {
+        if(inc < incarnation)
+            return;
+        incarnation=inc+1;
+        num_refutations++;
+        log.debug("%s: refuting suspicion (incarnation %d)", local_addr, incarnation);
+        updates.put(local_addr, new Update(Update.ALIVE, local_addr, incarnation));
+    }
+
+    /** If this member is the coordinator, passes all confirmed members which are still in the view up to GMS */
+    protected void sendSuspectEvent() {
+        List<Address> confirmed=null;
+        Address coord=null;
+        for(Address mbr: members) {
+            if(isConfirmed(mbr)) {
+                if(confirmed == null)
+                    confirmed=new ArrayList<>();
+                confirmed.add(mbr);
+            }
+            else if(coord == null)
+                coord=mbr;
+        }
+        if(confirmed != null && Objects.equals(coord, local_addr)) {
+            log.debug("%s: suspecting %s", local_addr, confirmed);
+            up_prot.up(new Event(Event.SUSPECT, confirmed));
+            down_prot.down(new Event(Event.SUSPECT, confirmed));
+        }
+    }
+
+    protected boolean isConfirmed(Address mbr) {
+        MemberState s=states.get(mbr);
+        return s != null && s.status == MemberState.CONFIRM;
+    }
+
+    protected void send(Address dest, SwimHeader hdr) {
+        Update[] tmp=updates.isEmpty()? null : selectUpdates(dest);
+        Message msg=new EmptyMessage(dest).setFlag(Message.Flag.OOB).setFlag(Message.TransientFlag.DONT_LOOPBACK)
+          .putHeader(id, hdr.updates(tmp));
+        down_prot.down(msg);
+    }
+
+    /**
+     * Selects up to max_piggybacked updates, and removes those which have been sent often enough. An update about
+     * dest is always included first, so that a suspected member learns about the suspicion (and can refute it) asap
+     */
+    protected Update[] selectUpdates(Address dest) {
+        int limit=retransmit_multiplier * (32 - Integer.numberOfLeadingZeros(members.size()));
+        List<Update> list=new ArrayList<>(Math.min(max_piggybacked, updates.size()));
+        Update first=dest != null? updates.get(dest) : null;
+        if(first != null)
+            add(first, list, limit);
+        for(Update u: updates.values()) {
+            if(list.size() >= max_piggybacked)
+                break;
+            if(u != first)
+                add(u, list, limit);
+        }
+        return list.isEmpty()? null : list.toArray(new Update[0]);
+    }
+
+    protected void add(Update u, List<Update> list, int limit) {
+        list.add(u);
+        if(u.sent.incrementAndGet() >= limit)
+            updates.remove(u.mbr, u);
+    }
+
+    protected String print(byte status) {
+        StringBuilder sb=new StringBuilder();
+        states.forEach((k,v) -> {
+            if(v.status == status)
+                sb.append(sb.length() > 0? ", " : "").append(k);
+        });
+        return sb.toString();
+    }
+
+    protected synchronized void startProber() {
+        if(!isRunning())
+            prober=timer.scheduleWithFixedDelay(this::probe, protocol_period, protocol_period, TimeUnit.MILLISECONDS, false);
+    }
+
+    protected synchronized void stopProber() {
+        if(prober != null) {
+            prober.cancel(true);
+            prober=null;
+        }
+    }
+
+
+    protected static class Probe {
+        protected final Address  target;
+        protected final long     seqno;
+        protected volatile boolean acked;
+
+        protected Probe(Address target, long seqno) {
+            this.target=target;
+            this.seqno=seqno;
+        }
+    }
+
+    protected static class Forward {
+        protected final Address requester;
+        protected final long    seqno; // the seqno of the requester's PING-REQ
+        protected final long    created=System.nanoTime();
+
+        protected Forward(Address requester, long seqno) {
+            this.requester=requester;
+            this.seqno=seqno;
+        }
+    }
+
+    /** The state of a member, as seen by this member. Changed by applying {@link Update}s */
+    protected static class MemberState {
+        protected static final byte ALIVE=Update.ALIVE, SUSPECT=Update.SUSPECT, CONFIRM=Update.CONFIRM;
+        protected volatile byte status=ALIVE;
+        protected long          incarnation;
+        protected long          suspected; // time (ns) when the member was suspected
+
+        /**
+         * Applies the update according to the SWIM override rules, returns true if the state was changed:
+         * <ul>
+         *     <li>ALIVE(i) overrides SUSPECT(j) and ALIVE(j) if i > j</li>
+         *     <li>SUSPECT(i) overrides SUSPECT(j) if i > j and ALIVE(j) if i >= j</li>
+         *     <li>CONFIRM overrides everything</li>
+         * </ul>
+         */
+        protected boolean apply(Update u) {
+            if(status == CONFIRM)
+                return false;
+            switch(u.type) {
+                case Update.ALIVE:
+                    if(u.incarnation <= incarnation)
+                        return false;
+                    break;
+                case Update.SUSPECT:
+                    if(status == SUSPECT? u.incarnation <= incarnation : u.incarnation < incarnation)
+                        return false;
+                    suspected=System.nanoTime();
+                    break;
+                case Update.CONFIRM:
+                    break;
+                default:
+                    return false;
+            }
+            status=u.type;
+            incarnation=Math.max(incarnation, u.incarnation);
+            return true;
+        }
+
+        public String toString() {
+            return String.format("%s (incarnation %d)", Update.type(status), incarnation);
+        }
+    }
+
+    /** A membership update about a member, disseminated by piggybacking it on messages */
+    public static class Update {
+        public static final byte ALIVE=1, SUSPECT=2, CONFIRM=3;
+        protected final byte          type;
+        protected final Address       mbr;
+        protected final long          incarnation;
+        protected final AtomicInteger sent=new AtomicInteger(); // number of times this update has been piggybacked
+
+        public Update(byte type, Address mbr, long incarnation) {
+            this.type=type;
+            this.mbr=mbr;
+            this.incarnation=incarnation;
+        }
+
+        public byte    type()        {return type;}
+        public Address member()      {return mbr;}
+        public long    incarnation() {return incarnation;}
+
+        public String toString() {return String.format("%s(%s, %d)", type(type), mbr, incarnation);}
+
+        protected static String type(byte t) {
+            switch(t) {
+                case ALIVE:   return "ALIVE";
+                case SUSPECT: return "SUSPECT";
+                case CONFIRM: return "CONFIRM";
+                default:      return "n/a";
+            }
+        }
+    }
+
+    public static class SwimHeader extends Header {
+        public static final byte PIGGYBACK=0, PING=1, ACK=2, PING_REQ=3;
+
+        protected byte     type;
+        protected long     seqno;
+        protected Address  target;  // the member to be pinged (PING_REQ), or the member which sent the ACK
+        protected Update[] updates; // piggybacked updates, may be null
+
+        public SwimHeader() {}
+        public SwimHeader(byte type) {this.type=type;}
+
+        public short                      getMagicId()             {return 96;}
+        public Supplier<? extends Header> create()                 {return SwimHeader::new;}
+        public byte                       type()                   {return type;}
+        public long                       seqno()                  {return seqno;}
+        public SwimHeader                 seqno(long s)            {this.seqno=s; return this;}
+        public Address                    target()                 {return target;}
+        public SwimHeader                 target(Address t)        {this.target=t; return this;}
+        public Update[]                   updates()                {return updates;}
+        public SwimHeader                 updates(Update[] u)      {this.updates=u; return this;}
+
+        @Override public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(type);
+            if(type != PIGGYBACK) {
+                Bits.writeLongCompressed(seqno, out);
+                Util.writeAddress(target, out);
+            }
+            int len=updates == null? 0 : updates.length;
+            out.writeShort(len);
+            for(int i=0; i < len; i++) {
+                Update u=updates[i];
+                out.writeByte(u.type);
+                Util.writeAddress(u.mbr, out);
+                Bits.writeLongCompressed(u.incarnation, out);
+            }
+        }
+
+        @Override public void readFrom(DataInput in) throws IOException, ClassNotFoundException {
+            type=in.readByte();
+            if(type != PIGGYBACK) {
+                seqno=Bits.readLongCompressed(in);
+                target=Util.readAddress(in);
+            }
+            int len=in.readShort();
+            if(len > 0) {
+                updates=new Update[len];
+                for(int i=0; i < len; i++) {
+                    byte t=in.readByte();
+                    Address mbr=Util.readAddress(in);
+                    updates[i]=new Update(t, mbr, Bits.readLongCompressed(in));
+                }
+            }
+        }
+
+        @Override public int serializedSize() {
+            int retval=Global.BYTE_SIZE + Global.SHORT_SIZE;
+            if(type != PIGGYBACK)
+                retval+=Bits.size(seqno) + Util.size(target);
+            if(updates != null)
+                for(Update u: updates)
+                    retval+=Global.BYTE_SIZE + Util.size(u.mbr) + Bits.size(u.incarnation);
+            return retval;
+        }
+
+        public String toString() {
+            String t;
+            switch(type) {
+                case PIGGYBACK: t="PIGGYBACK"; break;
+                case PING:      t="PING";      break;
+                case ACK:       t="ACK";       break;
+                case PING_REQ:  t="PING-REQ";  break;
+                default:        t="n/a";       break;
+            }
+            StringBuilder sb=new StringBuilder(t);
+            if(type != PIGGYBACK)
+                sb.append(" seqno=").append(seqno);
+            if(target != null)
+                sb.append(", target=").append(target);
+            if(updates != null)
+                sb.append(", updates=").append(Arrays.toString(updates));
+            return sb.toString();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.jgroups.annotations.ManagedAttribute;
 import org.jgroups.annotations.ManagedOperation;
 import org.jgroups.util.*;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -295,6 +296,8 @@ public class FRAG2 extends Fragmentation {
      * @return the complete message
      */
     protected Message assembleMessage(Message[] fragments, boolean needs_deserialization, FragHeader hdr) throws Exception {
+        if(direct_reassembly && !needs_deserialization)
+            return assembleDirect(fragments);
         int combined_length=0, index=0;
 
         for(Message fragment: fragments)
@@ -318,6 +321,22 @@ public class FRAG2 extends Fragmentation {
         return retval;
     }
 
+    /** Copies the payloads of all fragments into a direct ByteBuffer and returns it in a {@link NioMessage} */
+    protected Message assembleDirect(Message[] fragments) {
+        int combined_length=0;
+        for(Message fragment: fragments)
+            combined_length+=fragment.getLength();
+
+        ByteBuffer combined_buffer=ByteBuffer.allocateDirect(combined_length);
+        Message first=fragments[0];
+        for(int i=0; i < fragments.length; i++) {
+            Message fragment=fragments[i];
+            fragments[i]=null; // help garbage collection a bit
+            combined_buffer.put(fragment.getArray(), fragment.getOffset(), fragment.getLength());
+        }
+        return createNioMessage(first, combined_buffer.flip());
+    }
+
 
 
 
@@ -3,14 +3,21 @@ package org.jgroups.protocols;
 import org.jgroups.*;
 import org.jgroups.annotations.ManagedAttribute;
 import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.annotations.Property;
+import org.jgroups.conf.AttributeType;
 import org.jgroups.util.*;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
@@ -28,12 +35,31 @@ import java.util.function.Predicate;
  * <br/>
  * Requirement: lossless delivery (e.g. NAKACK2 or UNICAST3). No requirement on ordering. Works for both unicast and
  * multicast messages.<br/>
+ * <br/>
+ * If {@link #stream_threshold} is set, messages with a byte array of at least stream_threshold bytes are not
+ * reassembled: when the first fragment is received, an {@link ObjectMessage} whose payload is an {@link InputStream}
+ * is passed up (in a separate thread) and the fragments are written to the input stream as they are received. When the
+ * input stream's buffer ({@link #stream_buffer_size}) is full, receiving of fragments blocks until the application
+ * has read from the stream. The application therefore has to read the stream to the end, or close it. Streamed
+ * messages may be delivered out of order with respect to other messages from the same sender. OOB messages are
+ * always reassembled in memory.
  *
  * @author Bela Ban
  * @since 4.0
  */
 public class FRAG3 extends Fragmentation {
-    
+
+    @Property(description="Messages with a byte array of at least this size (in bytes) are delivered as an " +
+      "InputStream fed by the fragments as they are received, rather than being reassembled in memory. 0 disables " +
+      "streaming. OOB messages are never streamed",type=AttributeType.BYTES)
+    protected int stream_threshold;
+
+    @Property(description="Max number of bytes buffered in the input stream of a streamed message",
+      type=AttributeType.BYTES)
+    protected int stream_buffer_size=1_000_000;
+
+    @ManagedAttribute(description="Number of messages delivered as input streams",type=AttributeType.SCALAR)
+    protected final LongAdder num_streamed_msgs=new LongAdder();
 
     // fragmentation list has a fragtable per sender; this way it becomes easier to clean up if a member leaves or crashes
     protected final ConcurrentMap<Address,ConcurrentMap<Integer,FragEntry>> fragment_list=Util.createConcurrentMap(11);
@@ -58,6 +84,11 @@ public class FRAG3 extends Fragmentation {
 
     protected int getNextId() {return curr_id.getAndIncrement();}
 
+    public int   getStreamThreshold()       {return stream_threshold;}
+    public FRAG3 setStreamThreshold(int t)  {this.stream_threshold=t; return this;}
+    public int   getStreamBufferSize()      {return stream_buffer_size;}
+    public FRAG3 setStreamBufferSize(int s) {this.stream_buffer_size=s; return this;}
+
     public void init() throws Exception {
         super.init();
         
@@ -70,6 +101,9 @@ public class FRAG3 extends Fragmentation {
         if(frag_size >= max_bundle_size)
             throw new IllegalArgumentException("frag_size (" + frag_size + ") has to be < TP.max_bundle_size (" +
                                                  max_bundle_size + ")");
+        if(stream_threshold > 0 && stream_buffer_size < frag_size)
+            throw new IllegalArgumentException("stream_buffer_size (" + stream_buffer_size + ") has to be >= frag_size ("
+                                                 + frag_size + ")");
         msg_factory=transport.getMessageFactory();
         Map<String,Object> info=new HashMap<>(1);
         info.put("frag_size", frag_size);
@@ -81,6 +115,7 @@ public class FRAG3 extends Fragmentation {
         super.resetStats();
         avg_size_down.clear();
         avg_size_up.clear();
+        num_streamed_msgs.reset();
     }
 
 
@@ -162,7 +197,7 @@ public class FRAG3 extends Fragmentation {
 
         for(Address mbr: left_mbrs) {
             // the new view doesn't contain the sender, it must have left, hence we will clear its fragmentation tables
-            fragment_list.remove(mbr);
+            abortStreams(fragment_list.remove(mbr));
             log.trace("%s: removed %s from fragmentation table", local_addr, mbr);
         }
     }
@@ -170,16 +205,55 @@ public class FRAG3 extends Fragmentation {
     @ManagedOperation(description="removes all fragments sent by mbr")
     public void clearFragmentsFor(Address mbr) {
         if(mbr == null) return;
-        fragment_list.remove(mbr);
+        abortStreams(fragment_list.remove(mbr));
         log.trace("%s: removed %s from fragmentation table", local_addr, mbr);
     }
 
     @ManagedOperation(description="Removes all entries from the fragmentation table. " +
             "Dangerous: this might remove fragments that are still needed to assemble an entire message")
      public void clearAllFragments() {
+        fragment_list.values().forEach(this::abortStreams);
         fragment_list.clear();
     }
 
+    /** Aborts the input streams of streamed messages; readers get an EOFException */
+    protected void abortStreams(Map<Integer,FragEntry> frag_table) {
+        if(frag_table == null)
+            return;
+        for(FragEntry entry: frag_table.values())
+            if(entry instanceof StreamEntry)
+                ((StreamEntry)entry).in.abort();
+    }
+
+    /**
+     * OOB messages are not streamed: their fragments are received on different threads, which would all block
+     * while the application hasn't read from the stream
+     */
+    protected boolean stream(Message msg, Frag3Header hdr) {
+        return stream_threshold > 0 && !hdr.needs_deserialization && hdr.original_length >= stream_threshold
+          && !msg.isFlagSet(Message.Flag.OOB);
+    }
+
+    /**
+     * Passes a streamed message up on a thread from the transport's thread pool, so that fragments can be received
+     * while it is being read
+     */
+    protected void deliverStream(Message msg, int frag_id) {
+        num_streamed_msgs.increment();
+        Runnable r=() -> {
+            try {
+                up_prot.up(msg);
+            }
+            catch(Throwable t) {
+                log.error("%s: failed passing up streamed message from %s: %s", local_addr, msg.getSrc(), t);
+            }
+        };
+        // the message cannot be delivered on the current thread, which writes the fragments to the stream: if the
+        // thread pool is full, a separate thread is used
+        if(!getTransport().getThreadPool().execute(r))
+            getThreadFactory().newThread(r, "FRAG3-stream-" + frag_id).start();
+    }
+
     /** Send all fragments as separate messages (with same ID !).
      Example:
      <pre>
@@ -264,12 +338,20 @@ public class FRAG3 extends Fragmentation {
 
         FragEntry entry=frag_table.get(hdr.id);
         if(entry == null) {
-            entry=new FragEntry(hdr.num_frags, hdr.needs_deserialization);
+            entry=stream(msg, hdr)? new StreamEntry(hdr.num_frags) : new FragEntry(hdr.num_frags, hdr.needs_deserialization);
             FragEntry tmp=frag_table.putIfAbsent(hdr.id, entry);
             if(tmp != null)
                 entry=tmp;
         }
 
+        if(entry instanceof StreamEntry) {
+            StreamEntry stream_entry=(StreamEntry)entry;
+            stream_entry.set(msg, hdr); // may block until the application has read from the stream
+            if(stream_entry.done)
+                frag_table.remove(hdr.id, stream_entry);
+            return null;
+        }
+
         if((assembled_msg=entry.set(msg, hdr)) != null) {
             frag_table.remove(hdr.id);
             if(log.isTraceEnabled())
@@ -293,6 +375,7 @@ public class FRAG3 extends Fragmentation {
         // the message to be passed up; fragments write their payloads into the buffer at the correct offsets
         protected Message               msg;
         protected byte[]                buffer;
+        protected ByteBuffer            direct_buffer; // used instead of buffer when direct_reassembly is true
         protected final int             num_frags; // number of expected fragments
         protected final FixedSizeBitSet received;
         protected final boolean         needs_deserialization;
@@ -312,8 +395,12 @@ public class FRAG3 extends Fragmentation {
         public Message set(Message frag_msg, Frag3Header hdr) {
             lock.lock();
             try {
-                if(buffer == null)
-                    buffer=new byte[hdr.original_length];
+                if(buffer == null && direct_buffer == null) {
+                    if(direct_reassembly && !needs_deserialization)
+                        direct_buffer=ByteBuffer.allocateDirect(hdr.original_length);
+                    else
+                        buffer=new byte[hdr.original_length];
+                }
 
                 if(hdr.frag_id == 0 && !needs_deserialization) {
                     // the first fragment creates the message, copy the headers but not the buffer
@@ -324,7 +411,13 @@ public class FRAG3 extends Fragmentation {
                     // if not yet added: copy the fragment's buffer into msg.buffer at the correct offset
                     int frag_length=frag_msg.getLength();
                     int offset=hdr.offset;
-                    System.arraycopy(frag_msg.getArray(), frag_msg.getOffset(), buffer, offset, frag_length);
+                    if(direct_buffer != null) {
+                        ByteBuffer tmp=direct_buffer.duplicate();
+                        tmp.position(offset);
+                        tmp.put(frag_msg.getArray(), frag_msg.getOffset(), frag_length);
+                    }
+                    else
+                        System.arraycopy(frag_msg.getArray(), frag_msg.getOffset(), buffer, offset, frag_length);
                     if(isComplete())
                         return assembleMessage();
                 }
@@ -349,6 +442,8 @@ public class FRAG3 extends Fragmentation {
          * @return the complete message in one buffer
          */
         protected Message assembleMessage() throws Exception {
+            if(direct_buffer != null)
+                return createNioMessage(msg, direct_buffer);
             return needs_deserialization? Util.messageFromBuffer(buffer, 0, buffer.length, msg_factory)
               : msg.setArray(buffer, 0, buffer.length);
         }
@@ -359,6 +454,93 @@ public class FRAG3 extends Fragmentation {
 
     }
 
+
+    /**
+     * Entry for a streamed message: fragments are written to the input stream in order; fragments received out of
+     * order are kept until the missing fragments have been received.
+     */
+    protected class StreamEntry extends FragEntry {
+        protected final FragmentInputStream in=new FragmentInputStream(stream_buffer_size);
+        protected final Message[]           pending; // fragments not yet written to the stream, indexed by frag_id
+        protected int                       next;    // the ID of the next fragment to be written to the stream
+        protected volatile boolean          done;
+
+        protected StreamEntry(int num_frags) {
+            super(num_frags, false);
+            pending=new Message[num_frags];
+        }
+
+        /** Writes the fragment (and subsequent fragments received before) to the stream. Always returns null */
+        public Message set(Message frag_msg, Frag3Header hdr) {
+            lock.lock();
+            try {
+                if(!received.set(hdr.frag_id))
+                    return null;
+                if(hdr.frag_id == 0) // the first fragment carries the headers
+                    deliverStream(createMessage(frag_msg), hdr.id);
+                pending[hdr.frag_id]=frag_msg;
+                while(next < num_frags && pending[next] != null) {
+                    Message m=pending[next];
+                    pending[next++]=null;
+                    in.write(m.getArray(), m.getOffset(), m.getLength()); // blocks when the buffer is full
+                }
+                if(next == num_frags) {
+                    done=true;
+                    in.close();
+                    avg_size_up.add(hdr.original_length);
+                }
+            }
+            catch(Exception ex) {
+                log.error("%s: failed writing fragment to stream: %s", local_addr, ex);
+            }
+            finally {
+                lock.unlock();
+            }
+            return null;
+        }
+
+        protected Message createMessage(Message frag_msg) {
+            Message msg=new ObjectMessage(frag_msg.getDest(), in).setSrc(frag_msg.getSrc())
+              .setFlag(frag_msg.getFlags(false), false).setFlag(frag_msg.getFlags(true), true);
+            frag_msg.getHeaders().forEach((id,hdr) -> msg.putHeader(id, hdr));
+            return msg;
+        }
+
+        public String toString() {
+            return String.format("[tot_frags=%d, number_of_frags_recvd=%d, written=%d, stream=%s]",
+                                 num_frags, received.cardinality(), next, in);
+        }
+    }
+
+
+    /** Input stream of a streamed message. Reads throw an EOFException when the stream was aborted */
+    protected static class FragmentInputStream extends BlockingInputStream {
+        protected volatile boolean aborted;
+
+        protected FragmentInputStream(int capacity) {
+            super(capacity);
+        }
+
+        protected void abort() {
+            aborted=true;
+            Util.close(this);
+        }
+
+        public int read() throws IOException {
+            return checkAborted(super.read());
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            return len == 0? 0 : checkAborted(super.read(b, off, len));
+        }
+
+        protected int checkAborted(int num) throws EOFException {
+            if(num == -1 && aborted)
+                throw new EOFException("the sender of the message left before the message was received completely");
+            return num;
+        }
+    }
+
 }
 
 
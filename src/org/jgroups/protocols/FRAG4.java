@@ -85,6 +85,9 @@ public class FRAG4 extends FRAG2 {
             return retval;
         }
 
+        if(direct_reassembly)
+            return assembleDirect(fragments);
+
         int combined_length=0, index=0;
         for(Message fragment: fragments)
             combined_length+=fragment.getLength();
@@ -1,11 +1,14 @@
 package org.jgroups.protocols;
 
+import org.jgroups.Message;
+import org.jgroups.NioMessage;
 import org.jgroups.annotations.MBean;
 import org.jgroups.annotations.ManagedAttribute;
 import org.jgroups.annotations.Property;
 import org.jgroups.conf.AttributeType;
 import org.jgroups.stack.Protocol;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.LongAdder;
 
 /**
@@ -20,12 +23,19 @@ public class Fragmentation extends Protocol {
       type=AttributeType.BYTES)
     protected int                 frag_size=60000;
 
+    @Property(description="When true, messages with a byte array are reassembled into a direct (off-heap) ByteBuffer " +
+      "and delivered as NioMessage, rather than into a byte array on the heap. Ignored by FRAG, which always " +
+      "serializes messages")
+    protected boolean             direct_reassembly;
+
     protected LongAdder num_frags_sent=new LongAdder();
     protected LongAdder num_frags_received=new LongAdder();
 
 
     public int                         getFragSize()      {return frag_size;}
     public <T extends Fragmentation> T setFragSize(int f) {this.frag_size=f; return (T)this;}
+    public boolean                     directReassembly() {return direct_reassembly;}
+    public <T extends Fragmentation> T directReassembly(boolean b) {this.direct_reassembly=b; return (T)this;}
 
     @ManagedAttribute(description="Number of sent fragments",type=AttributeType.SCALAR)
     public long                        getNumberOfSentFragments()     {return num_frags_sent.sum();}
@@ -38,4 +48,12 @@ public class Fragmentation extends Protocol {
         num_frags_sent.reset();
         num_frags_received.reset();
     }
+
+    /** Creates a {@link NioMessage} with the given buffer, copying destination, sender, flags and headers from msg */
+    protected static Message createNioMessage(Message msg, ByteBuffer buf) {
+        Message retval=new NioMessage(msg.getDest(), buf).setSrc(msg.getSrc())
+          .setFlag(msg.getFlags(false), false).setFlag(msg.getFlags(true), true);
+        msg.getHeaders().forEach(retval::putHeader);
+        return retval;
+    }
 }
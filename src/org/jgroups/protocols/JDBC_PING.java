@@ -2,6 +2,7 @@ package org.jgroups.protocols;
 
 import org.jgroups.Address;
 import org.jgroups.annotations.Property;
+import org.jgroups.stack.Protocol;
 import org.jgroups.util.Responses;
 import org.jgroups.util.Util;
 
@@ -96,6 +97,10 @@ public class JDBC_PING extends FILE_PING {
         this.dataSource = dataSource; return this;
     }
 
+    /** Loading the driver and initializing the schema may be slow: independent of other protocols but the transport */
+    @Override
+    public List<Class<? extends Protocol>> startDependencies() {return List.of(TP.class);}
+
     @Override
     public void init() throws Exception {
         super.init();
@@ -8,6 +8,7 @@ import org.jgroups.annotations.Property;
 import org.jgroups.blocks.locking.AwaitInfo;
 import org.jgroups.blocks.locking.LockInfo;
 import org.jgroups.blocks.locking.LockNotification;
+import org.jgroups.conf.AttributeType;
 import org.jgroups.stack.Protocol;
 import org.jgroups.util.*;
 
@@ -15,19 +16,23 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 /**
@@ -52,6 +57,29 @@ abstract public class Locking extends Protocol {
       "See https://issues.jboss.org/browse/JGRP-1886 for details")
     protected boolean                                use_thread_id_for_lock_owner=true;
 
+    @Property(description="If true, the coordinator grants a lease along with a lock. While the lease is valid, local " +
+      "threads acquire and release the lock without contacting the coordinator. The lease is returned when it expires, " +
+      "or when the coordinator recalls it because a different member wants the lock. Needs to be the same on all members")
+    protected boolean                                use_leases;
+
+    @Property(description="Max time (in ms) a lease granted by the coordinator is valid. Expired leases are returned " +
+      "on the next unlock, or by a task running every lease_time/2 ms if the lock is not held",type=AttributeType.TIME)
+    protected long                                   lease_time=10_000;
+
+    @ManagedAttribute(description="Number of leases granted (only on coord)",type=AttributeType.SCALAR)
+    protected final LongAdder                        num_leases_granted=new LongAdder();
+
+    @ManagedAttribute(description="Number of leases recalled because a different member wanted the lock (only on coord)",
+      type=AttributeType.SCALAR)
+    protected final LongAdder                        num_leases_recalled=new LongAdder();
+
+    @ManagedAttribute(description="Number of leases returned to the coordinator",type=AttributeType.SCALAR)
+    protected final LongAdder                        num_leases_returned=new LongAdder();
+
+    @ManagedAttribute(description="Number of locks acquired from a lease, without contacting the coordinator",
+      type=AttributeType.SCALAR)
+    protected final LongAdder                        num_local_acquisitions=new LongAdder();
+
     protected View                                   view;
 
     // server side locks
@@ -66,6 +94,9 @@ abstract public class Locking extends Protocol {
     protected final Set<LockNotification>            lock_listeners=new CopyOnWriteArraySet<>();
 
     protected final static AtomicInteger             current_lock_id=new AtomicInteger(1);
+
+    // returns expired leases which are not held by any local thread
+    protected Future<?>                              lease_reaper;
     
 
 
@@ -88,7 +119,9 @@ abstract public class Locking extends Protocol {
 
         LOCK_INFO_REQ,     // request to get information about all acquired locks and all pending lock/unlock requests
         LOCK_INFO_RSP,     // response to LOCK_INFO_REQ
-        LOCK_REVOKED       // sent on reconciliation when a lock is already present (possible on a merge when both sides hold the same lock)
+        LOCK_REVOKED,      // sent on reconciliation when a lock is already present (possible on a merge when both sides hold the same lock)
+        LEASE_GRANTED,     // response to sender of GRANT_LOCK: the lock was acquired, plus a lease (timeout is the lease time)
+        RECALL_LEASE       // sent by the coord to the holder of a lease when a different owner wants the lock
     }
 
 
@@ -103,6 +136,10 @@ abstract public class Locking extends Protocol {
     public Locking setLockStripingSize(int l)         {this.lock_striping_size=l; return this;}
     public boolean useThreadIdForLockOwner()          {return use_thread_id_for_lock_owner;}
     public Locking useThreadIdForLockOwner(boolean u) {this.use_thread_id_for_lock_owner=u; return this;}
+    public boolean useLeases()                        {return use_leases;}
+    public Locking useLeases(boolean u)               {this.use_leases=u; return this;}
+    public long    leaseTime()                        {return lease_time;}
+    public Locking leaseTime(long t)                  {this.lease_time=t; return this;}
 
 
     public void addLockListener(LockNotification listener) {
@@ -126,13 +163,41 @@ abstract public class Locking extends Protocol {
     @ManagedAttribute(description="Number of client locks")
     public int getNumClientLocks() {return client_lock_table.numLocks();}
 
+    @ManagedAttribute(description="Number of leases held by this member")
+    public int getNumLeases() {return client_lock_table.numLeases();}
+
     public void init() throws Exception {
         super.init();
+        if(use_leases && lease_time <= 0)
+            throw new IllegalArgumentException("lease_time has to be positive");
         lock_stripes=new Lock[lock_striping_size];
         for(int i=0; i < lock_stripes.length; i++)
             lock_stripes[i]=new ReentrantLock();
     }
 
+    public void start() throws Exception {
+        super.start();
+        if(use_leases) {
+            long interval=Math.max(lease_time / 2, 1);
+            lease_reaper=getTransport().getTimer().scheduleWithFixedDelay(client_lock_table::returnExpiredLeases,
+                                                                         interval, interval, TimeUnit.MILLISECONDS, true);
+        }
+    }
+
+    public void stop() {
+        if(lease_reaper != null) {
+            lease_reaper.cancel(false);
+            lease_reaper=null;
+        }
+        super.stop();
+    }
+
+    public void resetStats() {
+        super.resetStats();
+        Stream.of(num_leases_granted, num_leases_recalled, num_leases_returned, num_local_acquisitions)
+          .forEach(LongAdder::reset);
+    }
+
     public Object down(Event evt) {
         switch(evt.getType()) {
             case Event.LOCK:
@@ -315,6 +380,12 @@ abstract public class Locking extends Protocol {
             case LOCK_REVOKED:
                 handleLockRevoked(req);
                 break;
+            case LEASE_GRANTED:
+                handleLeaseGrantedResponse(req.lock_name, req.lock_id, req.owner, req.timeout);
+                break;
+            case RECALL_LEASE:
+                client_lock_table.recallLease(req.lock_name, req.owner);
+                break;
             default:
                 log.error("%s: request of type %s not known", local_addr, req.type);
                 break;
@@ -353,6 +424,9 @@ abstract public class Locking extends Protocol {
         String client_locks=client_lock_table.printLocks();
         if(client_locks != null && !client_locks.isEmpty())
             sb.append("my locks: ").append(client_lock_table.printLocks());
+        String leases=client_lock_table.printLeases();
+        if(!leases.isEmpty())
+            sb.append("\nmy leases: ").append(leases);
         return sb.toString();
     }
 
@@ -421,7 +495,8 @@ abstract public class Locking extends Protocol {
     }
 
     protected void sendLockResponse(Type type, Owner dest, String lock_name, int lock_id) {
-        send(dest.getAddress(), new Request(type, lock_name, dest, 0).lockId(lock_id));
+        long timeout=type == Type.LEASE_GRANTED? lease_time : 0; // the lease time is set by the coordinator
+        send(dest.getAddress(), new Request(type, lock_name, dest, timeout).lockId(lock_id));
     }
 
     protected void sendSignalResponse(Owner dest, String lock_name) {
@@ -483,7 +558,15 @@ abstract public class Locking extends Protocol {
             lock.handleLockGrantedResponse(lock_id);
     }
 
+    protected void handleLeaseGrantedResponse(String lock_name, int lock_id, Owner owner, long lease_time) {
+        ClientLock lock=client_lock_table.getLock(lock_name,owner,false);
+        if(lock != null)
+            lock.handleLeaseGrantedResponse(lock_id, lease_time);
+    }
+
     protected void handleLockReleasedResponse(String lock_name, int lock_id, Owner owner) {
+        if(client_lock_table.leaseReturned(lock_name, lock_id, owner))
+            return;
         ClientLock lock=client_lock_table.getLock(lock_name,owner,false);
         if(lock != null)
             lock.handleLockReleasedResponse(lock_id);
@@ -512,6 +595,12 @@ abstract public class Locking extends Protocol {
         lock.lock();
         try {
             ServerLock server_lock=server_locks.get(lock_name);
+            if(server_lock == null && use_leases) {
+                // a lease was returned just before awaiting (ClientCondition.returnLease()), removing the unused lock
+                server_lock=new ServerLock(lock_name);
+                server_locks.put(lock_name, server_lock);
+                notifyLockCreated(lock_name);
+            }
             if (server_lock != null)
                 server_lock.condition.addWaiter(owner);
             else
@@ -723,6 +812,8 @@ abstract public class Locking extends Protocol {
         protected Owner                 owner;
         protected final List<Request>   queue=new ArrayList<>();
         protected final ServerCondition condition;
+        protected boolean               leased;      // owner holds a lease on this lock
+        protected boolean               lease_recalled; // RECALL_LEASE was sent to the owner
 
         public ServerLock(String lock_name) {
             this.lock_name=lock_name;
@@ -740,11 +831,12 @@ abstract public class Locking extends Protocol {
                 case GRANT_LOCK:
                     if(owner == null) {
                         setOwner(req.owner);
-                        return new Response(Type.LOCK_GRANTED, req.owner, req.lock_name, req.lock_id);
+                        return grant(req);
                     }
                     if(owner.equals(req.owner))
                         return new Response(Type.LOCK_GRANTED, req.owner, req.lock_name, req.lock_id);
 
+                    recallLease(); // a different owner wants the lock
                     if(req.is_trylock && req.timeout <= 0)
                         return new Response(Type.LOCK_DENIED, req.owner, req.lock_name, req.lock_id);
                     addToQueue(req);
@@ -844,7 +936,7 @@ abstract public class Locking extends Protocol {
                 switch(req.type) {
                     case GRANT_LOCK:
                         setOwner(req.owner);
-                        return new Response(Type.LOCK_GRANTED, req.owner, req.lock_name, req.lock_id);
+                        return grant(req);
                     case RELEASE_LOCK:
                         if(owner == null)
                             break;
@@ -856,7 +948,29 @@ abstract public class Locking extends Protocol {
             return null;
         }
 
+        /**
+         * Grants the lock to the (already set) owner. With leases enabled, a lease is granted, too, unless other
+         * requests for the lock are queued (no lease is granted for a contended lock)
+         */
+        protected Response grant(Request req) {
+            if(!use_leases || !isEmpty())
+                return new Response(Type.LOCK_GRANTED, req.owner, req.lock_name, req.lock_id);
+            leased=true;
+            num_leases_granted.increment();
+            return new Response(Type.LEASE_GRANTED, req.owner, req.lock_name, req.lock_id);
+        }
+
+        /** Asks the holder of the lease to return it (once); the holder does so as soon as the lock is not held locally */
+        protected void recallLease() {
+            if(!leased || lease_recalled)
+                return;
+            lease_recalled=true;
+            num_leases_recalled.increment();
+            sendLockResponse(Type.RECALL_LEASE, owner, lock_name, 0);
+        }
+
         protected void setOwner(Owner owner) {
+            leased=lease_recalled=false;
             if(owner == null) {
                 if(this.owner != null) {
                     Owner tmp=this.owner;
@@ -878,6 +992,8 @@ abstract public class Locking extends Protocol {
 
         public String toString() {
             StringBuilder sb=new StringBuilder(lock_name + ": ").append(owner);
+            if(leased)
+                sb.append(lease_recalled? " (lease recalled)" : " (leased)");
             synchronized(queue) {
                 if(!queue.isEmpty()) {
                     sb.append(", queue: ");
@@ -947,6 +1063,8 @@ abstract public class Locking extends Protocol {
         protected volatile boolean      is_trylock;
         protected long                  timeout;
         protected final ClientCondition condition;
+        protected volatile Lease        lease;       // set when this lock was acquired from a lease
+        protected volatile boolean      local_only;  // trying to acquire the lock from a lease: no request was sent
 
         // unique for locks for the same name:owner, can wrap around (that's ok)
         protected final int             lock_id=current_lock_id.getAndIncrement();
@@ -1027,6 +1145,12 @@ abstract public class Locking extends Protocol {
             lockGranted(lock_id);
         }
 
+        protected synchronized void handleLeaseGrantedResponse(int lock_id, long lease_time) {
+            if(this.lock_id == lock_id && !acquired)
+                client_lock_table.addLease(this, lease_time);
+            lockGranted(lock_id);
+        }
+
         protected void handleLockReleasedResponse(int lock_id) {
             if(this.lock_id != lock_id) {
                 log.error(Util.getMessage("DiscardedLOCKGRANTEDResponseWithLockId") + lock_id + ", my lock-id=" + this.lock_id);
@@ -1041,6 +1165,8 @@ abstract public class Locking extends Protocol {
             if(throwInterrupt && Thread.interrupted())
                 throw new InterruptedException();
             owner=getOwner();
+            if(acquireFromLease(-1, throwInterrupt) == Boolean.TRUE)
+                return;
             sendGrantLockRequest(name, lock_id, owner, 0, false);
             boolean interrupted=false;
             while(!acquired) {
@@ -1060,9 +1186,42 @@ abstract public class Locking extends Protocol {
                 Thread.currentThread().interrupt();
         }
 
+        /**
+         * Tries to acquire the lock from a lease held by this member, without contacting the coordinator
+         * @return true if the lock was acquired, false if it was not acquired within wait_ms (denied is set), or null
+         * if the lock has to be requested from the coordinator
+         */
+        protected Boolean acquireFromLease(long wait_ms, boolean throwInterrupt) throws InterruptedException {
+            if(!client_lock_table.hasLease(name))
+                return null;
+            local_only=true;
+            try {
+                Boolean rc=client_lock_table.acquireLease(this, wait_ms, throwInterrupt);
+                if(rc == Boolean.TRUE)
+                    acquired=true;
+                else if(rc == Boolean.FALSE)
+                    denied=true;
+                return rc;
+            }
+            catch(InterruptedException e) {
+                _unlockOK(); // no request was sent; simply remove the lock
+                throw e;
+            }
+            finally {
+                local_only=false;
+            }
+        }
+
         protected synchronized void _unlock(boolean force) {
             if(!acquired && !denied && !force)
                 return;
+            Lease l=lease;
+            if(l != null) { // acquired from a lease: the lease is only returned if expired or recalled
+                lease=null;
+                client_lock_table.releaseLease(l, this);
+                _unlockOK();
+                return;
+            }
             this.timeout=0;
             this.is_trylock=false;
             if(!denied) {
@@ -1115,6 +1274,15 @@ abstract public class Locking extends Protocol {
                 this.timeout=timeout;
                 if(owner == null)
                     owner=getOwner();
+                long start_local=System.nanoTime();
+                Boolean rc=acquireFromLease(use_timeout? timeout : 0, use_timeout);
+                if(rc != null) {
+                    if(!acquired || denied)
+                        _unlock(true);
+                    return rc;
+                }
+                if(use_timeout) // the time waiting for a local holder of the lease counts against the timeout
+                    timeout=this.timeout=Math.max(0, timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start_local));
                 sendGrantLockRequest(name, lock_id, owner, timeout, true);
 
                 boolean interrupted = false;
@@ -1173,9 +1341,15 @@ abstract public class Locking extends Protocol {
     protected class ClientLockTable {
         protected final ConcurrentMap<String,Map<Owner,ClientLock>> table=Util.createConcurrentMap(20);
         protected final Set<ClientLock>                             pending_release_reqs=new ConcurrentSkipListSet<>();
+        // leases granted by the coord, keyed by lock name. A lease is removed when it is returned
+        protected final ConcurrentMap<String,Lease>                 leases=Util.createConcurrentMap(20);
+        // returned leases for which no RELEASE_LOCK_OK has been received yet
+        protected final Set<Lease>                                  pending_lease_returns=ConcurrentHashMap.newKeySet();
 
 
-        protected int numLocks() {return table.size();}
+        protected int     numLocks()              {return table.size();}
+        protected int     numLeases()             {return leases.size();}
+        protected boolean hasLease(String name)   {return leases.containsKey(name);}
 
         protected synchronized ClientLock getLock(String name, Owner owner, boolean create_if_absent) {
             Map<Owner,ClientLock> owners=table.get(name);
@@ -1230,7 +1404,8 @@ abstract public class Locking extends Protocol {
             final List<ClientLock> pending_lock_reqs=new ArrayList<>();
             synchronized(this) {
                 if(!table.isEmpty()) {
-                    table.values().forEach(map -> map.values().stream().filter(lock -> !lock.acquired && !lock.denied)
+                    table.values().forEach(map -> map.values().stream()
+                      .filter(lock -> !lock.acquired && !lock.denied && !lock.local_only)
                       .forEach(pending_lock_reqs::add));
                 }
             }
@@ -1249,6 +1424,7 @@ abstract public class Locking extends Protocol {
                 }
                 pending_release_reqs.forEach(cl -> sendReleaseLockRequest(cl.name, cl.lock_id, cl.owner));
             }
+            pending_lease_returns.forEach(l -> sendReleaseLockRequest(l.name, l.lock_id, l.owner));
         }
 
         protected synchronized Collection<Map<Owner,ClientLock>> values() {
@@ -1260,9 +1436,11 @@ abstract public class Locking extends Protocol {
             List<Tuple<String,Owner>> l=new ArrayList<>();
             // table.forEach((key, value) -> value.keySet().forEach(owner -> l.add(new Tuple<>(key, owner))));
             table.forEach((k,v) -> v.forEach((owner, cl) -> {
-                if(cl.acquired && !cl.denied)
+                if(cl.acquired && !cl.denied && cl.lease == null)
                     l.add(new Tuple<>(k, owner));
             }));
+            // a lease which has not been returned is a lock held by the lease's owner, whether used locally or not
+            leases.values().forEach(lease -> l.add(new Tuple<>(lease.name, lease.owner)));
             return l;
         }
 
@@ -1271,7 +1449,7 @@ abstract public class Locking extends Protocol {
 
             // add the pending LOCK requests
             table.forEach((k,v) -> v.forEach((owner, cl) -> {
-                if(!cl.acquired  && !cl.denied) {
+                if(!cl.acquired  && !cl.denied && !cl.local_only) {
                     Request req=new Request(Type.GRANT_LOCK, cl.name, owner, cl.timeout, cl.is_trylock).lockId(cl.lock_id);
                     list.add(req);
                 }
@@ -1333,7 +1511,153 @@ abstract public class Locking extends Protocol {
                 pending_release_reqs.remove(cl);
         }
 
+        /** Called when the coord granted cl together with a lease: cl is the first holder of the lease */
+        protected void addLease(ClientLock cl, long lease_time) {
+            Lease lease=new Lease(cl.name, cl.owner, cl.lock_id, lease_time);
+            lease.holder=cl;
+            cl.lease=lease;
+            leases.put(cl.name, lease);
+        }
 
+        /**
+         * Acquires cl from the lease for its name. If the lease is held by a different local lock, we wait for it to be
+         * released locally (max wait_ms ms, or forever if wait_ms is negative)
+         * @return true if acquired, false if not acquired within wait_ms, or null if there's no (usable) lease and the
+         * lock has to be acquired from the coordinator
+         */
+        protected Boolean acquireLease(ClientLock cl, long wait_ms, boolean throwInterrupt) throws InterruptedException {
+            Lease lease=leases.get(cl.name);
+            if(lease == null)
+                return null;
+            long    deadline=wait_ms > 0? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait_ms) : 0;
+            boolean interrupted=false;
+            try {
+                synchronized(lease) {
+                    for(;;) {
+                        if(lease.returned)
+                            return null;
+                        if(lease.holder == null) {
+                            if(lease.usable()) {
+                                lease.holder=cl;
+                                cl.lease=lease;
+                                num_local_acquisitions.increment();
+                                return true;
+                            }
+                            returnLease(lease); // expired or recalled: the lock has to be acquired from the coord
+                            return null;
+                        }
+                        // the lease is held by a different local lock: wait until it is released locally (or returned)
+                        long wait_ns=deadline - System.nanoTime();
+                        if(wait_ms == 0 || (wait_ms > 0 && wait_ns <= 0))
+                            return false;
+                        try {
+                            lease.wait(wait_ms < 0? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait_ns)));
+                        }
+                        catch(InterruptedException e) {
+                            if(throwInterrupt)
+                                throw e;
+                            interrupted=true;
+                        }
+                    }
+                }
+            }
+            finally {
+                if(interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+
+        /** Releases the lease held by cl; the lease is returned to the coord if it has expired or was recalled */
+        protected void releaseLease(Lease lease, ClientLock cl) {
+            synchronized(lease) {
+                if(lease.holder == cl)
+                    lease.holder=null;
+                if(!lease.usable())
+                    returnLease(lease);
+                lease.notifyAll();
+            }
+        }
+
+        /** Returns the lease to the coord. Needs to hold the lease's monitor: the RELEASE_LOCK needs to be sent before
+         * any subsequent lock request for the same name */
+        protected void returnLease(Lease lease) {
+            if(lease.returned)
+                return;
+            lease.returned=true;
+            leases.remove(lease.name, lease);
+            pending_lease_returns.add(lease);
+            num_leases_returned.increment();
+            lease.notifyAll();
+            sendReleaseLockRequest(lease.name, lease.lock_id, lease.owner);
+        }
+
+        /** The coord wants the lease back: it is returned now if not held, or else when the holder releases it */
+        protected void recallLease(String name, Owner owner) {
+            Lease lease=leases.get(name);
+            if(lease == null || !lease.owner.equals(owner))
+                return;
+            synchronized(lease) {
+                lease.recalled=true;
+                if(lease.holder == null)
+                    returnLease(lease);
+            }
+        }
+
+        /** Called on a coord change: all leases are recalled, as the new coord doesn't know about them */
+        protected void recallLeases() {
+            for(Lease lease: leases.values())
+                recallLease(lease.name, lease.owner);
+        }
+
+        /** Returns all expired leases that are not held locally (called periodically) */
+        protected void returnExpiredLeases() {
+            for(Lease lease: leases.values()) {
+                synchronized(lease) {
+                    if(lease.holder == null && !lease.usable())
+                        returnLease(lease);
+                }
+            }
+        }
+
+        /** Called on reception of RELEASE_LOCK_OK; returns true if the response was for a returned lease */
+        protected boolean leaseReturned(String name, int lock_id, Owner owner) {
+            return !pending_lease_returns.isEmpty()
+              && pending_lease_returns.removeIf(l -> l.lock_id == lock_id && l.name.equals(name) && l.owner.equals(owner));
+        }
+
+        protected String printLeases() {
+            return leases.values().stream().map(Lease::toString).collect(Collectors.joining(", "));
+        }
+
+    }
+    
+    /**
+     * A lease on a lock, granted by the coordinator along with the lock (to {@link #owner}). Until it expires or is
+     * recalled, local threads acquire and release the lock by acquiring and releasing the lease, without contacting
+     * the coordinator. The lease is returned by sending a RELEASE_LOCK for owner to the coordinator.
+     */
+    protected static class Lease {
+        protected final String  name;
+        protected final Owner   owner;    // the owner of the lock on the coordinator
+        protected final int     lock_id;  // the lock-id of the GRANT_LOCK request which was granted the lease
+        protected final long    expiry;   // in ns
+        protected ClientLock    holder;   // the local lock currently holding the lease (null if not held)
+        protected boolean       recalled; // the coordinator asked for the lease to be returned
+        protected boolean       returned;
+
+        protected Lease(String name, Owner owner, int lock_id, long lease_time) {
+            this.name=name;
+            this.owner=owner;
+            this.lock_id=lock_id;
+            this.expiry=System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lease_time);
+        }
+
+        protected boolean usable() {return !recalled && !returned && expiry - System.nanoTime() > 0;}
+
+        public String toString() {
+            return String.format("%s (owner=%s, holder=%s%s)", name, owner, holder != null? holder.owner : "n/a",
+                                 recalled? ", recalled" : "");
+        }
     }
     
     protected class ClientCondition implements Condition {
@@ -1426,6 +1750,7 @@ abstract public class Locking extends Protocol {
         
         protected void await(boolean throwInterrupt) throws InterruptedException {
             if(!signaled.get()) {
+                returnLease();
                 lock.acquired = false;
                 sendAwaitConditionRequest(lock.name, lock.owner);
                 boolean interrupted=false;
@@ -1463,6 +1788,7 @@ abstract public class Locking extends Protocol {
             if(!signaled.get()) {
                 // We release the lock at the same time as waiting on the
                 // condition
+                returnLease();
                 lock.acquired = false;
                 sendAwaitConditionRequest(lock.name, lock.owner);
                 
@@ -1516,6 +1842,19 @@ abstract public class Locking extends Protocol {
             sendSignalConditionRequest(lock.name, true);
         }
         
+        /** The coord only knows the lease's owner, so a lock acquired from a lease returns the lease before awaiting */
+        protected void returnLease() {
+            Lease l=lock.lease;
+            if(l == null)
+                return;
+            lock.lease=null;
+            synchronized(l) {
+                if(l.holder == lock)
+                    l.holder=null;
+                client_lock_table.returnLease(l);
+            }
+        }
+
         protected void signaled() {
             signaled.set(true);
             Thread thread = parker.getAndSet(null);
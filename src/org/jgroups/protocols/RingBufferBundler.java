@@ -92,7 +92,6 @@ public class RingBufferBundler extends BaseBundler {
 
     /** Read and send messages in range [read-index .. read-index+available_msgs-1] */
     public void sendBundledMessages(final Message[] buf, final int read_index, final int available_msgs) {
-        byte[]    cluster_name=transport.cluster_name.chars();
         int       start=read_index;
         final int end=index(start + available_msgs-1); // index of the last message to be read
 
@@ -108,7 +107,7 @@ public class RingBufferBundler extends BaseBundler {
             Address dest=msg.getDest();
             try {
                 output.position(0);
-                Util.writeMessageListHeader(dest, msg.getSrc(), cluster_name, 1, output, dest == null);
+                transport.writeMessageListHeader(dest, msg.getSrc(), 1, output, dest == null);
 
                 // remember the position at which the number of messages (an int) was written, so we can later set the
                 // correct value (when we know the correct number of messages)
@@ -153,7 +153,6 @@ public class RingBufferBundlerLockless extends BaseBundler {
 
     /** Read and send messages in range [read-index .. read-index+available_msgs-1] */
     protected int sendBundledMessages(final Message[] buf, final int read_index, int available_msgs) {
-        byte[]    cluster_name=transport.cluster_name.chars();
         int       start=read_index;
         int       sent_msgs=0;
 
@@ -168,7 +167,7 @@ public class RingBufferBundlerLockless extends BaseBundler {
             Address dest=msg.getDest();
             try {
                 output.position(0);
-                Util.writeMessageListHeader(dest, msg.getSrc(), cluster_name, 1, output, dest == null);
+                transport.writeMessageListHeader(dest, msg.getSrc(), 1, output, dest == null);
 
                 // remember the position at which the number of messages (an int) was written, so we can later set the
                 // correct value (when we know the correct number of messages)
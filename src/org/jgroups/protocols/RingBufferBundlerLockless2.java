@@ -156,7 +156,6 @@ public class RingBufferBundlerLockless2 extends BaseBundler {
 
     /** Read and send messages in range [read-index+1 .. write_index-1] */
     protected int sendBundledMessages(final Message[] buf, final int read_index, final int write_index) {
-        byte[]    cluster_name=transport.cluster_name.chars();
         int       sent_msgs=0;
 
         for(int i=increment(read_index); i != write_index; i=increment(i)) {
@@ -169,7 +168,7 @@ public class RingBufferBundlerLockless2 extends BaseBundler {
             Address dest=msg.getDest();
             try {
                 output.position(0);
-                Util.writeMessageListHeader(dest, msg.getSrc(), cluster_name, 1, output, dest == null);
+                transport.writeMessageListHeader(dest, msg.getSrc(), 1, output, dest == null);
 
                 // remember the position at which the number of messages (an int) was written, so we can later set the
                 // correct value (when we know the correct number of messages)
@@ -9,6 +9,7 @@ import org.jgroups.annotations.MBean;
 import org.jgroups.annotations.Property;
 import org.jgroups.conf.AttributeType;
 import org.jgroups.stack.IpAddress;
+import org.jgroups.stack.Protocol;
 import org.jgroups.util.Runner;
 import org.jgroups.util.SslContextFactory;
 import org.jgroups.util.Tuple;
@@ -20,6 +21,7 @@ import javax.net.ssl.*;
 import java.io.*;
 import java.net.InetAddress;
 import java.security.KeyStore;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -151,6 +153,9 @@ public class SSL_KEY_EXCHANGE extends KeyExchange {
         return srv_sock == null? null : new IpAddress(getTransport().getBindAddress(), srv_sock.getLocalPort());
     }
 
+    /** Creating the SSL context (reading the keystore) may be slow: independent of other protocols but the transport */
+    @Override public List<Class<? extends Protocol>> startDependencies() {return List.of(TP.class);}
+
     public void init() throws Exception {
         super.init();
         if(port == 0)
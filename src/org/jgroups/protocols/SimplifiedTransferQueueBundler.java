@@ -78,7 +78,7 @@ public class SimplifiedTransferQueueBundler extends TransferQueueBundler {
                     msg_queue[start]=null;
                 }
                 else {
-                    Util.writeMessageListHeader(dest, msg_queue[start].getSrc(), transport.cluster_name.chars(), numMsgs, output, dest == null);
+                    transport.writeMessageListHeader(dest, msg_queue[start].getSrc(), numMsgs, output, dest == null);
                     for(int i=start; i < MSG_BUF_SIZE; ++i) {
                         Message msg=msg_queue[i];
                         // since we assigned the matching destination we can do plain ==
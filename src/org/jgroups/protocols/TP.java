@@ -4,6 +4,7 @@ package org.jgroups.protocols;
 import org.jgroups.*;
 import org.jgroups.annotations.*;
 import org.jgroups.blocks.LazyRemovalCache;
+import org.jgroups.blocks.SegmentedLazyRemovalCache;
 import org.jgroups.conf.AttributeType;
 import org.jgroups.conf.ClassConfigurator;
 import org.jgroups.conf.PropertyConverters;
@@ -15,6 +16,8 @@ import org.jgroups.util.UUID;
 import org.jgroups.util.*;
 
 import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
@@ -26,7 +29,9 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
 
 
 /**
@@ -56,6 +61,9 @@ import java.util.concurrent.locks.ReentrantLock;
 public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHandler {
     public static final    byte    LIST=1; // we have a list of messages rather than a single message when set
     public static final    byte    MULTICAST=2; // message is a multicast (versus a unicast) message when set
+    public static final    byte    COMPACT=4; // dest and src are sent as indices into the current view when set
+    public static final    byte    CLUSTER_NAME_HASH=8; // a hash of the cluster name is sent instead of the name when set
+    public static final    byte    COMPRESSED=16; // everything following the flags is compressed when set
     public static final    int     MSG_OVERHEAD=Global.SHORT_SIZE + Global.BYTE_SIZE; // version + flags
     protected static final long    MIN_WAIT_BETWEEN_DISCOVERIES=TimeUnit.NANOSECONDS.convert(10, TimeUnit.SECONDS);  // ns
 
@@ -109,6 +117,10 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
       "marked as removable. 0 disables reaping.",type=AttributeType.TIME)
     protected long logical_addr_cache_reaper_interval=60000;
 
+    @Property(description="Number of segments of the logical address cache (rounded up to a power of 2). Each segment " +
+      "has its own lock and expiry wheel",writable=false)
+    protected int logical_addr_cache_segments=16;
+
     /** The port to which the transport binds. 0 means to bind to any (ephemeral) port. See also {@link #port_range} */
     @Property(description="The port to which the transport binds. Default of 0 binds to any (ephemeral) port." +
       " See also port_range",systemProperty={Global.BIND_PORT},writable=false)
@@ -178,6 +190,52 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
       "\"no-bundler\") or the fully qualified classname of a Bundler implementation")
     protected String bundler_type="transfer-queue";
 
+    @Property(description="The type of timer: \"delay-queue\" (default, TimeScheduler3) or \"timing-wheel\" " +
+      "(TimingWheelScheduler)",writable=false)
+    protected String timer_type="delay-queue";
+
+    @Property(description="Duration of a tick of the timing wheel; tasks are executed at most one tick late. " +
+      "Only used when timer_type is \"timing-wheel\"",type=AttributeType.TIME,writable=false)
+    protected long timer_tick=TimingWheelScheduler.DEFAULT_TICK;
+
+    @Property(description="Number of buckets per level of the timing wheel (rounded up to a power of 2). " +
+      "Only used when timer_type is \"timing-wheel\"",writable=false)
+    protected int timer_wheel_size=TimingWheelScheduler.DEFAULT_WHEEL_SIZE;
+
+    @Property(description="If true, the destination and sender addresses of messages (or message lists) are sent as " +
+      "indices into the current view, rather than as full addresses, if they are members of the current view. " +
+      "Only used for unicasts, as multicasts may be received by non-members (e.g. other partitions). Messages whose " +
+      "addresses cannot be resolved by a receiver (e.g. during a view change) are dropped and need to be " +
+      "retransmitted by the reliable protocols")
+    protected boolean compact_addresses;
+
+    @Property(description="Time (ms) after the installation of a view after which compact addresses are used. Gives " +
+      "the other members time to install the same view. Should be greater than the time it takes to install a view " +
+      "on all members, or else (e.g.) a joiner might receive messages referring to a view it hasn't yet installed. " +
+      "Also used by hash_cluster_name",type=AttributeType.TIME)
+    protected long compact_addresses_delay=2000;
+
+    @Property(description="If true, a 4-byte hash of the cluster name is sent with message lists instead of the " +
+      "cluster name, when dest (if non-null) and the sender are members of the current view, and the view has been " +
+      "installed for at least compact_addresses_delay ms. Otherwise, the full cluster name is sent. A receiver " +
+      "accepts a hash only from members of its view, from former members, or from senders from which it has " +
+      "received a message with the full (matching) cluster name. Non-members from which nothing has been received " +
+      "for logical_addr_cache_reaper_interval ms are not verified anymore")
+    protected boolean hash_cluster_name;
+
+    @Property(description="Messages and message lists (bundles) whose serialized size is at least this number of " +
+      "bytes are compressed as a whole before being sent. Useful when many small, similar messages are bundled, " +
+      "which are individually below COMPRESS.min_size. 0 disables compression",type=AttributeType.BYTES)
+    protected int bundle_compression_threshold;
+
+    @Property(description="Compression level (from java.util.zip.Deflater) used by bundle compression",writable=false)
+    protected int bundle_compression_level=Deflater.DEFAULT_COMPRESSION;
+
+    @Property(description="Max length of a compressed message or message list, before and after compression. Frames " +
+      "with larger lengths are not compressed by the sender and are rejected by the receiver. 0 sets it to 4 times " +
+      "the max size of the bundler",type=AttributeType.BYTES,writable=false)
+    protected int bundle_compression_max_size;
+
     @ManagedAttribute(description="Fully qualified classname of bundler")
     public String getBundlerClass() {
         return bundler != null? bundler.getClass().getName() : "null";
@@ -210,6 +268,9 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
     public long getLogicalAddrCacheReaperInterval() {return logical_addr_cache_reaper_interval;}
     public <T extends TP> T setLogicalAddrCacheReaperInterval(long l) {this.logical_addr_cache_reaper_interval=l; return (T)this;}
 
+    public int getLogicalAddrCacheSegments() {return logical_addr_cache_segments;}
+    public <T extends TP> T setLogicalAddrCacheSegments(int s) {this.logical_addr_cache_segments=s; return (T)this;}
+
     public boolean loopbackCopy() {return loopback_copy;}
     public <T extends TP> T loopbackCopy(boolean l) {this.loopback_copy=l; return (T)this;}
 
@@ -243,6 +304,69 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
     public String getBundlerType() {return bundler_type;}
     public <T extends TP> T setBundlerType(String b) {this.bundler_type=b; return (T)this;}
 
+    public String           getTimerType()               {return timer_type;}
+    public <T extends TP> T setTimerType(String t)       {this.timer_type=t; return (T)this;}
+    public long             getTimerTick()               {return timer_tick;}
+    public <T extends TP> T setTimerTick(long t)         {this.timer_tick=t; return (T)this;}
+    public int              getTimerWheelSize()          {return timer_wheel_size;}
+    public <T extends TP> T setTimerWheelSize(int s)     {this.timer_wheel_size=s; return (T)this;}
+
+    public boolean          compactAddresses()           {return compact_addresses;}
+    public <T extends TP> T compactAddresses(boolean b)  {this.compact_addresses=b; return (T)this;}
+
+    public boolean          hashClusterName()            {return hash_cluster_name;}
+    public <T extends TP> T hashClusterName(boolean b)   {this.hash_cluster_name=b; return (T)this;}
+
+    public int              getBundleCompressionThreshold()      {return bundle_compression_threshold;}
+    public <T extends TP> T setBundleCompressionThreshold(int t) {this.bundle_compression_threshold=t; return (T)this;}
+    public int              getBundleCompressionLevel()          {return bundle_compression_level;}
+    public <T extends TP> T setBundleCompressionLevel(int l)     {this.bundle_compression_level=l; return (T)this;}
+    public int              getBundleCompressionMaxSize()        {return bundle_compression_max_size;}
+    public <T extends TP> T setBundleCompressionMaxSize(int s)   {this.bundle_compression_max_size=s; return (T)this;}
+    public BundleCompressor getBundleCompressor()                {return bundle_compressor;}
+
+    public long             getCompactAddressesDelay()       {return compact_addresses_delay;}
+    public <T extends TP> T setCompactAddressesDelay(long d) {
+        this.compact_addresses_delay=d; compact_addrs.delay(d); return (T)this;
+    }
+
+    /** Returns the compact addresses to be used when sending messages, or null if compact addresses are disabled */
+    public CompactAddresses getCompactAddresses() {return compact_addresses? compact_addrs : null;}
+
+    @ManagedAttribute(description="Number of received messages or message lists whose compact addresses could not " +
+      "be resolved, and which were therefore dropped",type=AttributeType.SCALAR)
+    public long getNumCompactAddressMisses() {return num_compact_addr_misses.sum();}
+
+    @ManagedAttribute(description="Number of received message lists with a hash of the cluster name from senders " +
+      "which have not been verified against the full cluster name, and which were therefore dropped",
+      type=AttributeType.SCALAR)
+    public long getNumUnverifiedClusterNameHashes() {return num_unverified_hashes.sum();}
+
+    @ManagedAttribute(description="Number of messages or message lists compressed before sending",
+      type=AttributeType.SCALAR)
+    public long getNumBundleCompressions() {return bundle_compressor.numCompressions();}
+
+    @ManagedAttribute(description="Number of received messages or message lists that were decompressed",
+      type=AttributeType.SCALAR)
+    public long getNumBundleDecompressions() {return bundle_compressor.numDecompressions();}
+
+    @ManagedAttribute(description="Ratio between the original and the compressed size of compressed messages and " +
+      "message lists")
+    public double getBundleCompressionRatio() {return bundle_compressor.compressionRatio();}
+
+    @ManagedAttribute(description="Number of bytes saved by compressing messages and message lists",
+      type=AttributeType.BYTES)
+    public long getBundleCompressionBytesSaved() {return bundle_compressor.bytesSaved();}
+
+    @ManagedAttribute(description="Total time spent compressing messages and message lists, including " +
+      "compressions which were discarded as they were not smaller than the original",type=AttributeType.TIME,
+      unit=TimeUnit.NANOSECONDS)
+    public long getBundleCompressionTime() {return bundle_compressor.compressionTime();}
+
+    @ManagedAttribute(description="Total time spent decompressing messages and message lists",
+      type=AttributeType.TIME,unit=TimeUnit.NANOSECONDS)
+    public long getBundleDecompressionTime() {return bundle_compressor.decompressionTime();}
+
 
     @ManagedAttribute
     public String getMessageFactoryClass() {
@@ -312,6 +436,11 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
         return timer != null? timer.getClass().getSimpleName() : "null";
     }
 
+    @ManagedOperation(description="Prints the occupancy of the levels of the timing wheel (if used)")
+    public String printTimerOccupancy() {
+        return timer instanceof TimingWheelScheduler? ((TimingWheelScheduler)timer).occupancy() : "n/a";
+    }
+
     @ManagedAttribute(description="Name of the cluster to which this transport is connected")
     public String getClusterName() {
         return cluster_name != null? cluster_name.toString() : null;
@@ -406,13 +535,34 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
     /** The header including the cluster name, sent with each message */
     protected TpHeader                header;
 
+    /** Maintained even if compact_addresses is false, so that compact addresses sent by others can be resolved */
+    protected final CompactAddresses  compact_addrs=new CompactAddresses();
+    protected final LongAdder         num_compact_addr_misses=new LongAdder();
+
+    /** Hash of cluster_name, computed on connect */
+    protected int                     cluster_name_hash;
+
+    /**
+     * Non-members from which a message with the full cluster name was received, and the time (ns) when the first
+     * message was received. Only maintained when hashes of the cluster name are sent or have been received. Pruned on
+     * view changes and by the logical_addr_cache reaper
+     */
+    protected final Map<Address,Long> verified_senders=Util.createConcurrentMap();
+
+    /** Set when the first message list with a hash of the cluster name has been received */
+    protected volatile boolean        hashes_received;
+    protected final LongAdder         num_unverified_hashes=new LongAdder();
+
+    /** Used even if bundle_compression_threshold is 0, so that compressed messages sent by others can be received */
+    protected final BundleCompressor  bundle_compressor=new BundleCompressor();
+
 
     /**
      * Cache which maintains mappings between logical and physical addresses. When sending a message to a logical
      * address,  we look up the physical address from logical_addr_cache and send the message to the physical address<br/>
      * The keys are logical addresses, the values physical addresses
      */
-    protected LazyRemovalCache<Address,PhysicalAddress> logical_addr_cache;
+    protected SegmentedLazyRemovalCache<Address,PhysicalAddress> logical_addr_cache;
 
     // last time (in ns) we sent a discovery request
     protected long last_discovery_request;
@@ -421,7 +571,7 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
 
     protected final AverageMinMax avg_batch_size=new AverageMinMax();
 
-    protected static final LazyRemovalCache.Printable<Address,LazyRemovalCache.Entry<PhysicalAddress>> print_function=
+    protected static final LazyRemovalCache.Printable<Address,SegmentedLazyRemovalCache.Entry<Address,PhysicalAddress>> print_function=
       (logical_addr, entry) -> {
           StringBuilder sb=new StringBuilder();
           String tmp_logical_name=NameCache.get(logical_addr);
@@ -456,7 +606,7 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
 
     public boolean isMulticastCapable() {return supportsMulticasting();}
 
-    public LazyRemovalCache<Address,PhysicalAddress> getLogicalAddressCache() {return logical_addr_cache;}
+    public SegmentedLazyRemovalCache<Address,PhysicalAddress> getLogicalAddressCache() {return logical_addr_cache;}
 
     public String toString() {
         return local_addr != null? getName() + "(local address: " + local_addr + ')' : getName();
@@ -478,6 +628,9 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
 
     public void resetStats() {
         msg_stats.reset();
+        num_compact_addr_misses.reset();
+        num_unverified_hashes.reset();
+        bundle_compressor.resetStats();
         avg_batch_size.clear();
         msg_processing_policy.reset();
         if(local_transport != null)
@@ -663,6 +816,9 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
     public void evictLogicalAddressCache(boolean force) {
         logical_addr_cache.removeMarkedElements(force);
         fetchLocalAddresses();
+        // non-members from which nothing was received within the reaper interval
+        long now=System.nanoTime(), max_age=TimeUnit.MILLISECONDS.toNanos(logical_addr_cache_reaper_interval);
+        verified_senders.entrySet().removeIf(e -> now - e.getValue() >= max_age && !isMember(e.getKey()));
     }
 
 
@@ -684,6 +840,8 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
 
     public void init() throws Exception {
         this.id=ClassConfigurator.getProtocolId(TP.class);
+        compact_addrs.delay(compact_addresses_delay);
+        bundle_compressor.level(bundle_compression_level);
 
         if(use_virtual_threads && !Util.fibersAvailable()) {
             log.warn("use_virtual_threads was set to false, as virtual threads are not available in this Java version");
@@ -714,7 +872,7 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
 
         // ========================================== Timer ==============================
         if(timer == null) {
-            timer=new TimeScheduler3(thread_pool, thread_factory, false); // don't start the timer thread yet (JGRP-2332)
+            timer=createTimer(timer_type); // don't start the timer thread yet (JGRP-2332)
             timer.setNonBlockingTaskHandling(timer_handle_non_blocking_tasks);
         }
 
@@ -731,7 +889,8 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
         if(!m.isEmpty())
             up(new Event(Event.CONFIG, m));
 
-        logical_addr_cache=new LazyRemovalCache<>(logical_addr_cache_max_size, logical_addr_cache_expiration);
+        logical_addr_cache=new SegmentedLazyRemovalCache<>(logical_addr_cache_max_size, logical_addr_cache_expiration,
+                                                           logical_addr_cache_segments);
         if(logical_addr_cache_reaper_interval > 0 && (logical_addr_cache_reaper == null || logical_addr_cache_reaper.isDone())) {
             logical_addr_cache_reaper=timer.scheduleWithFixedDelay(new Runnable() {
                 public void run() {
@@ -756,6 +915,8 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
 
         bundler=createBundler(bundler_type);
         bundler.init(this);
+        bundle_compressor.maxLength(bundle_compression_max_size > 0? bundle_compression_max_size
+                                      : (int)Math.min(Integer.MAX_VALUE, bundler.getMaxSize() * 4L));
     }
 
 
@@ -792,6 +953,7 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
         }
         if(thread_pool != null)
             thread_pool.destroy();
+        bundle_compressor.clear();
     }
 
 
@@ -903,6 +1065,12 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
                 Collection<Address> old_members;
                 synchronized(members) {
                     View v=evt.getArg();
+                    // former members remain verified, e.g. the members of a different partition, whose MERGE3 INFO
+                    // multicasts carry the hash of the cluster name
+                    long now=System.nanoTime();
+                    for(Address mbr: members)
+                        if(!v.containsMember(mbr))
+                            verified_senders.put(mbr, now);
                     this.view=v;
                     old_members=new ArrayList<>(members);
                     members.clear();
@@ -927,6 +1095,8 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
                 if(msg_processing_policy instanceof MaxOneThreadPerSender)
                     ((MaxOneThreadPerSender)msg_processing_policy).viewChange(view.getMembers());
 
+                compact_addrs.viewChange(evt.getArg());
+                verified_senders.keySet().removeAll(members); // members are verified by the view
                 if(local_transport != null)
                     local_transport.viewChange(this.view);
                 break;
@@ -936,6 +1106,7 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
             case Event.CONNECT_USE_FLUSH:
             case Event.CONNECT_WITH_STATE_TRANSFER_USE_FLUSH:
                 cluster_name=new AsciiString((String)evt.getArg());
+                cluster_name_hash=cluster_name.hashCode();
                 header=new TpHeader(cluster_name);
                 setInAllThreadFactories(cluster_name != null? cluster_name.toString() : null, local_addr, thread_naming_pattern);
                 setThreadNames();
@@ -955,6 +1126,9 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
 
             case Event.DISCONNECT:
                 unsetThreadNames();
+                compact_addrs.clear();
+                verified_senders.clear();
+                hashes_received=false;
                 connectLock.lock();
                 try {
                     if(local_transport != null)
@@ -1045,6 +1219,20 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
       return new DiagnosticsHandler(log, socket_factory, thread_factory).transport(this);
   }
 
+    protected TimeScheduler createTimer(String type) {
+        if(type == null)
+            throw new IllegalArgumentException("timer type has to be non-null");
+        switch(type) {
+            case "delay-queue":
+                return new TimeScheduler3(thread_pool, thread_factory, false);
+            case "timing-wheel":
+                return new TimingWheelScheduler(thread_pool, thread_factory, timer_tick, timer_wheel_size,
+                                                TimingWheelScheduler.DEFAULT_LEVELS, false);
+            default:
+                throw new IllegalArgumentException(String.format("timer type %s not known", type));
+        }
+    }
+
     protected Bundler createBundler(String type) throws Exception {
         if(type == null)
             throw new IllegalArgumentException("bundler type has to be non-null");
@@ -1205,9 +1393,21 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
         offset+=Global.BYTE_SIZE;
 
         boolean is_message_list=(flags & LIST) == LIST, multicast=(flags & MULTICAST) == MULTICAST;
-        ByteArrayDataInputStream in=new ByteArrayDataInputStream(data, offset, length);
+        ByteArrayDataInputStream in;
+        if((flags & COMPRESSED) == COMPRESSED) {
+            try {
+                byte[] tmp=bundle_compressor.decompress(data, offset);
+                in=new ByteArrayDataInputStream(tmp);
+            }
+            catch(Throwable t) {
+                log.error(String.format(Util.getMessage("IncomingMsgFailure"), local_addr), t);
+                return;
+            }
+        }
+        else
+            in=new ByteArrayDataInputStream(data, offset, length);
         if(is_message_list) // used if message bundling is enabled
-            handleMessageBatch(in, multicast, msg_factory);
+            handleMessageBatch(in, flags, msg_factory);
         else
             handleSingleMessage(in, multicast);
     }
@@ -1223,19 +1423,38 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
         if(!versionMatch(version, sender))
             return;
         byte flags=in.readByte();
+        if((flags & COMPRESSED) == COMPRESSED)
+            in=new ByteArrayDataInputStream(bundle_compressor.decompress(in));
 
         boolean is_message_list=(flags & LIST) == LIST, multicast=(flags & MULTICAST) == MULTICAST;
         if(is_message_list) // used if message bundling is enabled
-            handleMessageBatch(in, multicast, msg_factory);
+            handleMessageBatch(in, flags, msg_factory);
         else
             handleSingleMessage(in, multicast);
     }
 
 
     protected void handleMessageBatch(DataInput in, boolean multicast, MessageFactory factory) {
+        handleMessageBatch(in, (byte)(multicast? MULTICAST : 0), factory);
+    }
+
+    protected void handleMessageBatch(DataInput in, byte flags, MessageFactory factory) {
         try {
-            final MessageBatch[] batches=Util.readMessageBatch(in, multicast, factory);
+            final MessageBatch[] batches=Util.readMessageBatch(in, flags, factory, compact_addrs, cluster_name,
+                                                               cluster_name_hash);
             final MessageBatch regular=batches[0], oob=batches[1];
+            final MessageBatch batch=regular != null? regular : oob;
+            if(batch == null)
+                return;
+            if((flags & COMPACT) == COMPACT && batch.sender() == null) {
+                num_compact_addr_misses.increment();
+                if(is_trace)
+                    log.trace("%s: dropped message list: compact addresses could not be resolved (%s)",
+                              local_addr, compact_addrs);
+                return;
+            }
+            if(!verifyClusterName(batch, (flags & CLUSTER_NAME_HASH) == CLUSTER_NAME_HASH))
+                return;
 
             processBatch(oob,    true);
             processBatch(regular,false);
@@ -1254,6 +1473,11 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
 
             if(!multicast && unicastDestMismatch(msg.getDest()))
                 return;
+            if(verifySenders() && !isVerified(msg.getSrc())) {
+                TpHeader hdr=msg.getHeader(id);
+                if(hdr != null && cluster_name != null && cluster_name.equals(hdr.getClusterName()))
+                    verified_senders.putIfAbsent(msg.getSrc(), System.nanoTime());
+            }
 
             boolean oob=msg.isFlagSet(Message.Flag.OOB);
             msg_processing_policy.process(msg, oob);
@@ -1263,6 +1487,49 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
         }
     }
 
+    /**
+     * Checks if a hash of the cluster name was sent by a verified sender (member of the view, former member, or sender
+     * of a message with the full cluster name). Records the sender as verified if the full (matching) cluster name
+     * was sent.
+     * @return False if the message list needs to be dropped, true otherwise
+     */
+    protected boolean verifyClusterName(MessageBatch batch, boolean hashed) {
+        Address sender=batch.sender();
+        if(sender == null || cluster_name == null)
+            return true;
+        if(hashed) {
+            if(!hashes_received)
+                hashes_received=true;
+            // a mismatching hash is dropped (and logged) by passBatchUp()
+            if(batch.clusterName() == cluster_name && !isVerified(sender)) {
+                num_unverified_hashes.increment();
+                if(is_trace)
+                    log.trace("%s: dropped message list from %s: hash of cluster name from unverified sender",
+                              local_addr, sender);
+                return false;
+            }
+            verified_senders.replace(sender, System.nanoTime()); // keeps verified non-members from being evicted
+            return true;
+        }
+        if(verifySenders() && !isMember(sender) && cluster_name.equals(batch.clusterName()))
+            verified_senders.put(sender, System.nanoTime());
+        return true;
+    }
+
+    /** Senders only need to be verified when hashes of the cluster name are sent or have been received */
+    protected boolean verifySenders() {
+        return hash_cluster_name || hashes_received;
+    }
+
+    protected boolean isVerified(Address sender) {
+        return isMember(sender) || verified_senders.containsKey(sender);
+    }
+
+    protected boolean isMember(Address mbr) {
+        View v=view;
+        return v != null && v.indexOf(mbr) >= 0;
+    }
+
     protected void processBatch(MessageBatch batch, boolean oob) {
         try {
             if(batch != null && !batch.isEmpty() && !unicastDestMismatch(batch.getDest()))
@@ -1294,7 +1561,44 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
 
 
 
+    /** Returns true if the hash of the cluster name rather than the name can be sent to dest (null: all members) */
+    public boolean sendClusterNameHash(Address dest) {
+        return hash_cluster_name && local_addr != null && compact_addrs.stableIndex(dest, local_addr) != null;
+    }
+
+    /** Writes a single message, possibly as a list of 1 with compact addresses and/or a hash of the cluster name */
+    public void writeMessage(Message msg, DataOutput out, boolean multicast) throws IOException {
+        Util.writeMessage(msg, out, multicast, cluster_name.chars(), id, getCompactAddresses(),
+                          sendClusterNameHash(msg.getDest()));
+    }
+
+    public void writeMessageList(Address dest, Address src, List<Message> msgs, DataOutput out,
+                                 boolean multicast) throws IOException {
+        Util.writeMessageList(dest, src, cluster_name.chars(), msgs, out, multicast, id, getCompactAddresses(),
+                              sendClusterNameHash(dest));
+    }
+
+    public void writeMessageList(Address dest, Address src, Message[] msgs, int offset, int length, DataOutput out,
+                                 boolean multicast) throws IOException {
+        Util.writeMessageList(dest, src, cluster_name.chars(), msgs, offset, length, out, multicast, id,
+                              getCompactAddresses(), sendClusterNameHash(dest));
+    }
+
+    public void writeMessageListHeader(Address dest, Address src, int num_msgs, DataOutput out,
+                                       boolean multicast) throws IOException {
+        Util.writeMessageListHeader(dest, src, cluster_name.chars(), num_msgs, out, multicast, getCompactAddresses(),
+                                    sendClusterNameHash(dest));
+    }
+
     public void doSend(byte[] buf, int offset, int length, Address dest) throws Exception {
+        if(bundle_compression_threshold > 0 && length >= bundle_compression_threshold) {
+            ByteArray compressed=bundle_compressor.compress(buf, offset, length);
+            if(compressed != null) {
+                buf=compressed.getArray();
+                offset=compressed.getOffset();
+                length=compressed.getLength();
+            }
+        }
         if(stats) {
             msg_stats.incrNumMsgsSent(1);
             msg_stats.incrNumBytesSent(length);
@@ -1402,7 +1706,7 @@ public abstract class TP extends Protocol implements DiagnosticsHandler.ProbeHan
             }
         }
         if(do_send) {
-            missing.removeAll(logical_addr_cache.keySet());
+            missing.removeIf(logical_addr_cache::containsKey);
             if(!missing.isEmpty()) {  // FIND_MBRS either returns immediately or is processed in a separate thread
                 Responses rsps=fetchResponsesFromDiscoveryProtocol(missing);
                 rsps.done();
@@ -266,8 +266,7 @@ public class TransferQueueBundler2 implements Bundler, Runnable {
         private Buffer addMessage(Message msg, TP transport) throws IOException {
             short transport_id=transport.getId();
             if(count == 0) { // write the headers - only once
-                Util.writeMessageListHeader(msg.dest(), transport.getAddress(), transport.getClusterNameAscii().chars(),
-                                            1, out, msg.getDest() == null);
+                transport.writeMessageListHeader(msg.dest(), transport.getAddress(), 1, out, msg.getDest() == null);
                 length_index=out.position() - Global.INT_SIZE;
             }
             out.writeShort(msg.getType());
@@ -0,0 +1,344 @@
+package org.jgroups.protocols;
+
+import org.jgroups.*;
+import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.annotations.Property;
+import org.jgroups.conf.AttributeType;
+import org.jgroups.stack.Protocol;
+import org.jgroups.util.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Warm restart: persists the last view, the logical-physical address mappings and the logical names of the members
+ * to a local file. On a restart, the mappings and names are preloaded into the transport and {@link NameCache}, so
+ * that the first messages to existing members don't have to wait for the physical addresses to be fetched.
+ * The first JOIN request is sent directly to the coordinator of the last view (after sending it our own address),
+ * skipping discovery. If that join attempt fails (e.g. because the coordinator left), regular discovery is used.<br/>
+ * The snapshot is written on disconnect and (if write_on_view_change is true) after view changes, so that it
+ * is also available after a crash. Writes triggered by view changes are done by the timer, and view changes arriving
+ * within write_delay are coalesced into a single write. Snapshots older than max_age are ignored.<br/>
+ * The snapshot file is named after the cluster and member_id, which needs to be unique per member and stable across
+ * restarts (the logical name is random unless set explicitly). If member_id is not set, no snapshots are read or
+ * written. Needs to be placed above the discovery protocol, e.g. directly above it.
+ * @author Bela Ban
+ * @since  5.2
+ */
+@MBean(description="Persists the last view and address mappings, so that a restarted member can rejoin quickly")
+public class WARM_RESTART extends Protocol {
+
+    @Property(description="The directory in which the snapshots are stored")
+    protected String  location=System.getProperty("java.io.tmpdir") + File.separator + "jgroups";
+
+    @Property(description="The ID of this member, unique in the cluster and stable across restarts. The snapshot " +
+      "file is named after the cluster and this ID. No snapshots are read or written if not set")
+    protected String  member_id;
+
+    @Property(description="Snapshots older than this are ignored",type=AttributeType.TIME)
+    protected long    max_age=300_000;
+
+    @Property(description="Writes a snapshot on every view change, so that a snapshot is available even when " +
+      "the member crashed. Otherwise, a snapshot is only written on disconnect")
+    protected boolean write_on_view_change=true;
+
+    @Property(description="Time to wait after a view change before writing the snapshot; further view changes in " +
+      "this time are included in the same write",type=AttributeType.TIME)
+    protected long    write_delay=500;
+
+    @Property(description="Sends the first JOIN request directly to the coordinator of the last view, skipping discovery")
+    protected boolean targeted_join=true;
+
+    @ManagedAttribute(description="Number of mappings loaded from the last snapshot")
+    protected int     num_mappings_loaded;
+
+    @ManagedAttribute(description="Number of snapshots written",type=AttributeType.SCALAR)
+    protected int     num_snapshots_written;
+
+    @ManagedAttribute(description="Number of JOIN requests sent directly to the last known coordinator",
+      type=AttributeType.SCALAR)
+    protected int     num_targeted_joins;
+
+    protected static final String SUFFIX=".snapshot";
+    protected String              cluster_name;
+    protected volatile View       view;
+    // coordinator of the last view, set when a snapshot was loaded
+    protected final AtomicReference<Address>   last_coord=new AtomicReference<>();
+    // returned to GMS for a targeted join
+    protected final AtomicReference<Responses> targeted_rsps=new AtomicReference<>();
+    protected final AtomicBoolean              write_pending=new AtomicBoolean(); // a write has been scheduled
+    protected Future<?>                        write_task;
+
+
+    public String        location()                     {return location;}
+    public WARM_RESTART  location(String l)             {this.location=l; return this;}
+    public String        memberId()                     {return member_id;}
+    public WARM_RESTART  memberId(String id)            {this.member_id=id; return this;}
+    public long          maxAge()                       {return max_age;}
+    public WARM_RESTART  maxAge(long a)                 {this.max_age=a; return this;}
+    public boolean       writeOnViewChange()            {return write_on_view_change;}
+    public WARM_RESTART  writeOnViewChange(boolean b)   {this.write_on_view_change=b; return this;}
+    public long          writeDelay()                   {return write_delay;}
+    public WARM_RESTART  writeDelay(long d)             {this.write_delay=d; return this;}
+    public boolean       targetedJoin()                 {return targeted_join;}
+    public WARM_RESTART  targetedJoin(boolean b)        {this.targeted_join=b; return this;}
+
+    @ManagedAttribute(description="The file the snapshot is written to and read from")
+    public String snapshotFile() {
+        File f=file();
+        return f != null? f.getAbsolutePath() : null;
+    }
+
+    public void resetStats() {
+        super.resetStats();
+        num_mappings_loaded=num_snapshots_written=num_targeted_joins=0;
+    }
+
+    public void init() throws Exception {
+        super.init();
+        File dir=new File(location);
+        if(!dir.exists() && !dir.mkdirs())
+            throw new IllegalArgumentException(String.format("location %s could not be created", location));
+        if(!dir.isDirectory())
+            throw new IllegalArgumentException(String.format("location %s is not a directory", location));
+        if(member_id == null)
+            log.warn("%s: member_id is not set; no snapshots will be read or written", getClass().getSimpleName());
+    }
+
+    public void stop() {
+        super.stop();
+        cancelWrite();
+    }
+
+    public Object down(Event evt) {
+        switch(evt.getType()) {
+            case Event.CONNECT:
+            case Event.CONNECT_USE_FLUSH:
+            case Event.CONNECT_WITH_STATE_TRANSFER:
+            case Event.CONNECT_WITH_STATE_TRANSFER_USE_FLUSH:
+                cluster_name=evt.getArg();
+                Object retval=down_prot.down(evt);
+                readSnapshot();
+                return retval;
+            case Event.FIND_INITIAL_MBRS:
+                return findInitialMembers(evt);
+            case Event.VIEW_CHANGE:
+                retval=down_prot.down(evt);
+                view=evt.getArg();
+                last_coord.set(null);
+                targeted_rsps.set(null);
+                if(write_on_view_change)
+                    scheduleWrite();
+                return retval;
+            case Event.DISCONNECT:
+                cancelWrite();
+                writeSnapshot();
+                view=null;
+                last_coord.set(null);
+                break;
+        }
+        return down_prot.down(evt);
+    }
+
+    /** Writes the snapshot on the timer after write_delay, unless a write is pending already */
+    protected void scheduleWrite() {
+        if(!write_pending.compareAndSet(false, true))
+            return;
+        write_task=getTransport().getTimer().schedule(() -> {
+            write_pending.set(false); // views installed from now on trigger another write
+            writeSnapshot();
+        }, write_delay, TimeUnit.MILLISECONDS, false);
+    }
+
+    protected void cancelWrite() {
+        Future<?> task=write_task;
+        if(task != null)
+            task.cancel(false);
+        write_pending.set(false);
+    }
+
+    @ManagedOperation(description="Writes a snapshot of the current view and address mappings")
+    public synchronized void writeSnapshot() {
+        View v=view;
+        File f=file();
+        if(v == null || f == null)
+            return;
+        Map<Address,PhysicalAddress> mappings=(Map<Address,PhysicalAddress>)down_prot.down(new Event(Event.GET_LOGICAL_PHYSICAL_MAPPINGS, true));
+        Snapshot snapshot=new Snapshot(System.currentTimeMillis(), local_addr, v);
+        if(mappings != null) {
+            for(Map.Entry<Address,PhysicalAddress> e: mappings.entrySet()) {
+                Address mbr=e.getKey();
+                if(!mbr.equals(local_addr) && v.containsMember(mbr) && e.getValue() != null)
+                    snapshot.add(mbr, e.getValue(), NameCache.get(mbr));
+            }
+        }
+        File tmp=new File(f.getParentFile(), f.getName() + ".tmp");
+        try {
+            try(DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                snapshot.writeTo(out);
+            }
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            num_snapshots_written++;
+            log.trace("%s: wrote snapshot %s to %s", local_addr, snapshot, f);
+        }
+        catch(Exception ex) {
+            log.warn("%s: failed writing snapshot to %s: %s", local_addr, f, ex);
+            tmp.delete();
+        }
+    }
+
+    /** Reads the snapshot (if present and not too old) and adds its mappings to the transport and {@link NameCache} */
+    protected synchronized void readSnapshot() {
+        File f=file();
+        if(f == null || !f.exists())
+            return;
+        Snapshot snapshot=new Snapshot();
+        try(DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            snapshot.readFrom(in);
+        }
+        catch(Exception ex) {
+            log.warn("%s: failed reading snapshot from %s: %s", local_addr, f, ex);
+            return;
+        }
+        long age=System.currentTimeMillis() - snapshot.timestamp;
+        if(max_age > 0 && age > max_age) {
+            log.debug("%s: ignoring snapshot %s as its age (%s) is greater than max_age (%s)", local_addr, f,
+                      Util.printTime(age, TimeUnit.MILLISECONDS), Util.printTime(max_age, TimeUnit.MILLISECONDS));
+            return;
+        }
+        for(int i=0; i < snapshot.size(); i++) {
+            Address mbr=snapshot.members.get(i);
+            if(snapshot.names.get(i) != null)
+                NameCache.add(mbr, snapshot.names.get(i));
+            down_prot.down(new Event(Event.ADD_PHYSICAL_ADDRESS, new Tuple<>(mbr, snapshot.physical_addrs.get(i))));
+        }
+        num_mappings_loaded=snapshot.size();
+
+        // the first member of the last view, excluding our previous incarnation, is the coordinator (if still alive)
+        last_coord.set(snapshot.view.getMembers().stream().filter(m -> !m.equals(snapshot.local_addr)).findFirst()
+                         .orElse(null));
+        log.debug("%s: loaded %d mappings from %s (age: %s), last view: %s", local_addr, snapshot.size(), f,
+                  Util.printTime(age, TimeUnit.MILLISECONDS), snapshot.view);
+    }
+
+    /**
+     * Returns the coordinator of the last view as discovery response, after sending it our own address, so GMS
+     * sends the JOIN request directly to it. Otherwise, regular discovery is used
+     */
+    protected Responses findInitialMembers(Event evt) {
+        Responses prev=targeted_rsps.getAndSet(null);
+        if(prev != null) {
+            // the targeted join failed: GMS reuses the responses of the first discovery run (targeted_rsps) for
+            // subsequent runs, so the (possibly stale) coordinator needs to be removed. As the reused responses are
+            // done, GMS doesn't wait for the responses of this run; wait for them here, or GMS would only see the
+            // responses received synchronously
+            prev.clear();
+            Responses rsps=(Responses)down_prot.down(evt);
+            if(rsps != null)
+                rsps.waitFor(evt.<Long>getArg());
+            return rsps;
+        }
+        Responses rsps=sendTargetedJoin();
+        return rsps != null? rsps : (Responses)down_prot.down(evt);
+    }
+
+    /** Returns the coordinator of the last view, or null if regular discovery is to be used */
+    protected Responses sendTargetedJoin() {
+        Address coord=last_coord.getAndSet(null);
+        if(!targeted_join || coord == null)
+            return null;
+        PhysicalAddress coord_addr=(PhysicalAddress)down_prot.down(new Event(Event.GET_PHYSICAL_ADDRESS, coord));
+        Discovery discovery=stack.findProtocol(Discovery.class);
+        if(coord_addr == null || discovery == null)
+            return null;
+
+        // send our address to the coordinator, so it doesn't have to fetch it when sending the JOIN response
+        PhysicalAddress my_addr=(PhysicalAddress)down_prot.down(new Event(Event.GET_PHYSICAL_ADDRESS, local_addr));
+        PingData data=new PingData(local_addr, false, NameCache.get(local_addr), my_addr);
+        Message msg=new BytesMessage(coord).setFlag(Message.Flag.OOB, Message.Flag.DONT_BUNDLE)
+          .putHeader(discovery.getId(), new PingHeader(PingHeader.GET_MBRS_RSP).clusterName(cluster_name))
+          .setArray(Discovery.marshal(data));
+        down_prot.down(msg);
+
+        Responses rsps=new Responses(true);
+        rsps.addResponse(new PingData(coord, true, NameCache.get(coord), coord_addr).coord(true), true);
+        num_targeted_joins++;
+        log.debug("%s: sending JOIN request to the coordinator of the last view (%s)", local_addr, coord);
+        targeted_rsps.set(rsps.done());
+        return rsps;
+    }
+
+    protected File file() {
+        if(cluster_name == null || member_id == null)
+            return null;
+        return new File(location, sanitize(cluster_name) + "-" + sanitize(member_id) + SUFFIX);
+    }
+
+    protected static String sanitize(String s) {
+        return s.replaceAll("[^a-zA-Z0-9._-]", "_");
+    }
+
+
+    /** The last view, our address in it and the physical addresses and logical names of the other members */
+    protected static class Snapshot implements Streamable {
+        protected long                        timestamp;
+        protected Address                     local_addr;
+        protected View                        view;
+        protected final List<Address>         members=new ArrayList<>();
+        protected final List<PhysicalAddress> physical_addrs=new ArrayList<>();
+        protected final List<String>          names=new ArrayList<>();
+
+        public Snapshot() {
+        }
+
+        public Snapshot(long timestamp, Address local_addr, View view) {
+            this.timestamp=timestamp;
+            this.local_addr=local_addr;
+            this.view=view;
+        }
+
+        public Snapshot add(Address mbr, PhysicalAddress physical_addr, String name) {
+            members.add(mbr);
+            physical_addrs.add(physical_addr);
+            names.add(name);
+            return this;
+        }
+
+        public int size() {return members.size();}
+
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeLong(timestamp);
+            Util.writeAddress(local_addr, out);
+            Util.writeView(view, out);
+            out.writeInt(members.size());
+            for(int i=0; i < members.size(); i++) {
+                Util.writeAddress(members.get(i), out);
+                Util.writeAddress(physical_addrs.get(i), out);
+                Bits.writeString(names.get(i), out);
+            }
+        }
+
+        public void readFrom(DataInput in) throws IOException, ClassNotFoundException {
+            timestamp=in.readLong();
+            local_addr=Util.readAddress(in);
+            view=Util.readView(in);
+            int size=in.readInt();
+            for(int i=0; i < size; i++)
+                add(Util.readAddress(in), (PhysicalAddress)Util.readAddress(in), Bits.readString(in));
+        }
+
+        public String toString() {
+            return String.format("view=%s, %d mappings", view, members.size());
+        }
+    }
+}
@@ -6,7 +6,9 @@ import org.jgroups.annotations.Property;
 import org.jgroups.protocols.Discovery;
 import org.jgroups.protocols.PingData;
 import org.jgroups.protocols.PingHeader;
+import org.jgroups.protocols.TP;
 import org.jgroups.stack.IpAddress;
+import org.jgroups.stack.Protocol;
 import org.jgroups.util.ByteArray;
 import org.jgroups.util.NameCache;
 import org.jgroups.util.Responses;
@@ -47,6 +49,10 @@ public class DNS_PING extends Discovery {
 
     private int                    transportPort, portRange;
 
+    /** Creating the DNS resolver may be slow: independent of other protocols but the transport */
+    @Override
+    public List<Class<? extends Protocol>> startDependencies() {return List.of(TP.class);}
+
     @Override
     public void init() throws Exception {
         super.init();
@@ -0,0 +1,30 @@
+package org.jgroups.protocols.pbcast;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Versioned application state, used by {@link STATE_DELTA} to transfer only the changes a rejoining member missed,
+ * rather than the full state. The application keeps a bounded log of changes, e.g. the last N updates together with
+ * the version each update produced.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public interface DeltaState {
+
+    /**
+     * Returns the version of the local state (e.g. a version number or version vector), or null if there is no local
+     * state. Invoked on the state requester.
+     */
+    byte[] getVersion() throws Exception;
+
+    /**
+     * Writes the changes since the given version to the output stream. Invoked on the state provider.
+     * @return True if the changes were written, false if they are not available (e.g. because the change log has been
+     * truncated). In the latter case, the full state is transferred.
+     */
+    boolean getDelta(byte[] version, OutputStream out) throws Exception;
+
+    /** Reads the changes written by {@link #getDelta(byte[],OutputStream)} and applies them to the local state */
+    void setDelta(InputStream in) throws Exception;
+}
@@ -0,0 +1,60 @@
+package org.jgroups.protocols.pbcast;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * State kept in files, transferred by {@link STATE_SOCK} (when {@link STATE_SOCK#use_file_transfer} is enabled) with
+ * {@link FileChannel#transferTo(long,long,java.nio.channels.WritableByteChannel)} on the state provider and
+ * {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel,long,long)} on the state requester, bypassing
+ * the Java heap.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public interface FileState {
+
+    /**
+     * Returns the file regions which make up the state. Invoked on the state provider. The file channels are closed
+     * when the transfer is done.
+     */
+    List<FileRegion> getStateFiles() throws Exception;
+
+    /**
+     * Returns the file channel into which the region at the given index (of the list returned by
+     * {@link #getStateFiles()} on the state provider) is written, starting at position 0. Invoked on the state
+     * requester. The file channel is closed when the region has been received.
+     * @param index The index of the region
+     * @param length The length (in bytes) of the region
+     */
+    FileChannel createStateFile(int index, long length) throws Exception;
+
+    /** Invoked on the state requester when all regions have been received */
+    default void setStateFiles(int num_regions) throws Exception {}
+
+
+    /** A region of a file */
+    class FileRegion {
+        protected final FileChannel channel;
+        protected final long        position, count;
+
+        public FileRegion(FileChannel channel, long position, long count) {
+            this.channel=channel;
+            this.position=position;
+            this.count=count;
+        }
+
+        /** A region covering the entire file */
+        public FileRegion(FileChannel channel) throws IOException {
+            this(channel, 0, channel.size());
+        }
+
+        public FileChannel channel()  {return channel;}
+        public long        position() {return position;}
+        public long        count()    {return count;}
+
+        public String toString() {
+            return String.format("[%d .. %d]", position, position + count);
+        }
+    }
+}
@@ -189,7 +189,7 @@ public class GMS extends Protocol implements DiagnosticsHandler.ProbeHandler {
 
     /** Returns the current view and digest. Try to find a matching digest twice (if not found on the first try) */
     public Tuple<View,Digest> getViewAndDigest() {
-        MutableDigest digest=new MutableDigest(view.getMembersRaw()).set(getDigest());
+        MutableDigest digest=new MutableDigest(view).set(getDigest());
         return digest.allSet() || digest.set(getDigest()).allSet()? new Tuple<>(view, digest) : null;
     }
 
@@ -384,7 +384,7 @@ public class STABLE extends Protocol {
     protected void resetDigest() {
         if(view == null)
             return;
-        digest=new MutableDigest(view.getMembersRaw()); // .set(getDigest());
+        digest=new MutableDigest(view); // .set(getDigest());
         votes=new FixedSizeBitSet(view.size()); // all 0's initially
     }
 
@@ -583,7 +583,7 @@ public class STABLE extends Protocol {
         View          current_view=view;
         Address       dest=coordinator;
         boolean       is_coord=Objects.equals(local_addr, coordinator);
-        MutableDigest d=new MutableDigest(current_view.getMembersRaw()).set(getDigest());
+        MutableDigest d=new MutableDigest(current_view).set(getDigest());
         boolean       all_set=d.allSet() || d.set(getDigest()).allSet();
 
         if(!all_set) {
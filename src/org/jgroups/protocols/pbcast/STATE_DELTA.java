@@ -0,0 +1,147 @@
+package org.jgroups.protocols.pbcast;
+
+import org.jgroups.*;
+import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.conf.AttributeType;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.Digest;
+import org.jgroups.util.StateTransferResult;
+import org.jgroups.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Incremental state transfer: a state requester sends the version of the state it already has (e.g. after a restart,
+ * or after it was excluded from the cluster) along with the state request. The state provider then returns only the
+ * changes since that version, or the full state (as in {@link STATE_TRANSFER}) if it cannot provide them.
+ * <p/>
+ * The application implements {@link DeltaState} (in the channel's receiver, or set via
+ * {@link #setDeltaState(DeltaState)}); without it, STATE_DELTA behaves like {@link STATE_TRANSFER}.
+ * @author Bela Ban
+ * @since  5.2
+ */
+@MBean(description="State transfer protocol transferring only the changes a state requester missed")
+public class STATE_DELTA extends STATE_TRANSFER {
+
+    @ManagedAttribute(description="Number of deltas sent to state requesters",type=AttributeType.SCALAR)
+    protected final LongAdder num_deltas_sent=new LongAdder();
+
+    @ManagedAttribute(description="Number of deltas received",type=AttributeType.SCALAR)
+    protected final LongAdder num_deltas_received=new LongAdder();
+
+    @ManagedAttribute(description="Number of versioned state requests for which the full state had to be sent",
+      type=AttributeType.SCALAR)
+    protected final LongAdder num_full_transfers=new LongAdder();
+
+    protected volatile DeltaState                delta_state;
+
+    /** The versions sent by state requesters, removed when the state request is processed */
+    protected final Map<Address,byte[]>          versions=new ConcurrentHashMap<>();
+
+
+    public DeltaState  getDeltaState()             {return delta_state;}
+    public STATE_DELTA setDeltaState(DeltaState s) {this.delta_state=s; return this;}
+    public long        getNumDeltasSent()          {return num_deltas_sent.sum();}
+    public long        getNumDeltasReceived()      {return num_deltas_received.sum();}
+    public long        getNumFullTransfers()       {return num_full_transfers.sum();}
+
+    public void resetStats() {
+        super.resetStats();
+        num_deltas_sent.reset();
+        num_deltas_received.reset();
+        num_full_transfers.reset();
+    }
+
+    public Object up(Message msg) {
+        StateHeader hdr=msg.getHeader(this.id);
+        if(hdr != null) {
+            switch(hdr.type) {
+                case StateHeader.STATE_REQ:
+                    if(msg.getLength() > 0) // must be done before the request is queued
+                        versions.put(msg.getSrc(), Arrays.copyOfRange(msg.getArray(), msg.getOffset(),
+                                                                      msg.getOffset() + msg.getLength()));
+                    break;
+                case StateHeader.DELTA_RSP:
+                    handleStateRsp(hdr, msg.getSrc(), msg.getArray());
+                    return null;
+            }
+        }
+        return super.up(msg);
+    }
+
+    protected void handleViewChange(View v) {
+        super.handleViewChange(v);
+        versions.keySet().retainAll(v.getMembers());
+    }
+
+    /** Returns the registered delta state, or the channel's receiver if it implements {@link DeltaState} */
+    protected DeltaState deltaState() {
+        if(delta_state != null)
+            return delta_state;
+        JChannel ch=stack != null? stack.getChannel() : null;
+        Receiver r=ch != null? ch.getReceiver() : null;
+        return r instanceof DeltaState? (DeltaState)r : null;
+    }
+
+    /** Adds the version of the local state (if available) to the state request */
+    protected Message createStateRequest(Address target) {
+        DeltaState ds=deltaState();
+        byte[] version=null;
+        try {
+            version=ds != null? ds.getVersion() : null;
+        }
+        catch(Throwable t) {
+            log.warn("%s: failed getting the version of the local state; requesting the full state: %s", local_addr, t);
+        }
+        if(version == null || version.length == 0)
+            return super.createStateRequest(target);
+        log.debug("%s: requesting the changes since the local version (%d bytes) from %s", local_addr, version.length, target);
+        return new BytesMessage(target, version).putHeader(this.id, new StateHeader(StateHeader.STATE_REQ));
+    }
+
+    protected void getStateFromApplication(Address requester, Digest digest) {
+        byte[] version=versions.remove(requester);
+        DeltaState ds=version != null? deltaState() : null;
+        if(ds != null) {
+            try {
+                ByteArrayOutputStream out=new ByteArrayOutputStream(1024);
+                if(ds.getDelta(version, out)) {
+                    byte[] delta=out.toByteArray();
+                    if(stats) {
+                        num_deltas_sent.increment();
+                        num_bytes_sent.add(delta.length);
+                    }
+                    Message rsp=new BytesMessage(requester, delta).putHeader(this.id, new StateHeader(StateHeader.DELTA_RSP, digest));
+                    log.debug("%s: sending delta to %s (size=%s)", local_addr, requester, Util.printBytes(delta.length));
+                    down_prot.down(rsp);
+                    return;
+                }
+                log.debug("%s: changes for %s are not available; sending the full state", local_addr, requester);
+            }
+            catch(Throwable t) {
+                log.warn("%s: failed getting the changes for %s; sending the full state: %s", local_addr, requester, t);
+            }
+            num_full_transfers.increment();
+        }
+        super.getStateFromApplication(requester, digest);
+    }
+
+    protected void passStateUp(StateHeader hdr, Address sender, byte[] state) throws Exception {
+        if(hdr.type != StateHeader.DELTA_RSP) {
+            super.passStateUp(hdr, sender, state);
+            return;
+        }
+        DeltaState ds=deltaState();
+        if(ds == null)
+            throw new IllegalStateException(String.format("%s: received delta from %s, but no %s is registered",
+                                                          local_addr, sender, DeltaState.class.getSimpleName()));
+        ds.setDelta(new ByteArrayDataInputStream(state));
+        num_deltas_received.increment();
+        up_prot.up(new Event(Event.GET_STATE_OK, new StateTransferResult()));
+    }
+}
@@ -0,0 +1,914 @@
+package org.jgroups.protocols.pbcast;
+
+import org.jgroups.*;
+import org.jgroups.annotations.GuardedBy;
+import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.annotations.Property;
+import org.jgroups.conf.AttributeType;
+import org.jgroups.stack.Protocol;
+import org.jgroups.stack.StateTransferInfo;
+import org.jgroups.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Parallel state transfer: the application exposes its state as a number of independent segments
+ * ({@link SegmentedState}) and the joiner fetches the segments in parallel from several members, instead of pulling
+ * the entire state from a single member (as {@link STATE} and {@link STATE_SOCK} do).
+ * <p/>
+ * A segment is streamed from a provider to the joiner in chunks of {@link #chunk_size} bytes. Flow control is
+ * credit-based: a provider sends at most {@link #window} chunks of a segment ahead of the joiner, which returns credits
+ * when it has consumed chunks. The joiner fetches at most {@link #segments_per_provider} segments concurrently from
+ * the same provider.
+ * <p/>
+ * When done, a provider sends the length and CRC32 checksum of the segment; the joiner verifies them against the data
+ * it received. A segment whose transfer failed (provider left, exception, checksum mismatch, or no progress for
+ * {@link #segment_timeout} ms) is fetched again from a different provider, up to {@link #max_attempts} times.
+ * <p/>
+ * The application registers its state via {@link #setSegmentedState(SegmentedState)}, or by setting a receiver
+ * implementing {@link SegmentedState} in the channel. Contrary to {@link STATE}, no digest is transferred with the
+ * state (see {@link SegmentedState}).
+ * @author Bela Ban
+ * @since  5.2
+ */
+@MBean(description="Parallel state transfer of segmented state from multiple members")
+public class STATE_PARALLEL extends Protocol {
+
+    /* ----------------------------------------------Properties ----------------------------------- */
+    @Property(description="Max size (in bytes) of a chunk of a segment",type=AttributeType.BYTES)
+    protected int     chunk_size=64_000;
+
+    @Property(description="Size (in bytes) of the buffer into which chunks of a segment are received on the joiner. " +
+      "Needs to be at least window * chunk_size",type=AttributeType.BYTES)
+    protected int     buffer_size=1_000_000;
+
+    @Property(description="Max number of members from which segments are fetched. 0 fetches from all members")
+    protected int     max_providers;
+
+    @Property(description="Max number of segments fetched concurrently from the same member")
+    protected int     segments_per_provider=2;
+
+    @Property(description="Max number of chunks of a segment a provider sends before it has to wait for credits " +
+      "from the joiner")
+    protected int     window=8;
+
+    @Property(description="Time (ms) without receiving a chunk after which a segment is fetched from a different member",
+      type=AttributeType.TIME)
+    protected long    segment_timeout=10_000;
+
+    @Property(description="Max number of attempts to fetch a segment before the state transfer fails")
+    protected int     max_attempts=5;
+
+
+    /* --------------------------------------------- JMX statistics ------------------------------- */
+    @ManagedAttribute(description="Number of segments sent to joiners",type=AttributeType.SCALAR)
+    protected final LongAdder num_segments_sent=new LongAdder();
+
+    @ManagedAttribute(description="Number of segments received and verified",type=AttributeType.SCALAR)
+    protected final LongAdder num_segments_received=new LongAdder();
+
+    @ManagedAttribute(description="Number of segments which had to be fetched again",type=AttributeType.SCALAR)
+    protected final LongAdder num_retries=new LongAdder();
+
+    @ManagedAttribute(description="Number of state bytes sent",type=AttributeType.BYTES)
+    protected final LongAdder num_bytes_sent=new LongAdder();
+
+    @ManagedAttribute(description="Number of state bytes received",type=AttributeType.BYTES)
+    protected final LongAdder num_bytes_received=new LongAdder();
+
+
+    /* --------------------------------------------- Fields --------------------------------------- */
+    protected volatile SegmentedState segmented_state;
+
+    @GuardedBy("members")
+    protected final List<Address>     members=new ArrayList<>();
+
+    /** The state transfer in progress on the joiner (null if none) */
+    protected volatile Transfer       transfer;
+
+    /** Segments which are currently sent, keyed by joiner and segment */
+    protected final ConcurrentMap<Address,Map<Integer,SegmentSender>> senders=new ConcurrentHashMap<>();
+
+
+    public SegmentedState getSegmentedState()                   {return segmented_state;}
+    public STATE_PARALLEL setSegmentedState(SegmentedState s)   {this.segmented_state=s; return this;}
+    public int            getChunkSize()                        {return chunk_size;}
+    public STATE_PARALLEL setChunkSize(int s)                   {this.chunk_size=s; return this;}
+    public int            getBufferSize()                       {return buffer_size;}
+    public STATE_PARALLEL setBufferSize(int s)                  {this.buffer_size=s; return this;}
+    public int            getMaxProviders()                     {return max_providers;}
+    public STATE_PARALLEL setMaxProviders(int m)                {this.max_providers=m; return this;}
+    public int            getSegmentsPerProvider()              {return segments_per_provider;}
+    public STATE_PARALLEL setSegmentsPerProvider(int s)         {this.segments_per_provider=s; return this;}
+    public int            getWindow()                           {return window;}
+    public STATE_PARALLEL setWindow(int w)                      {this.window=w; return this;}
+    public long           getSegmentTimeout()                   {return segment_timeout;}
+    public STATE_PARALLEL setSegmentTimeout(long t)             {this.segment_timeout=t; return this;}
+    public int            getMaxAttempts()                      {return max_attempts;}
+    public STATE_PARALLEL setMaxAttempts(int m)                 {this.max_attempts=m; return this;}
+
+    public long           getSegmentsSent()                     {return num_segments_sent.sum();}
+    public long           getSegmentsReceived()                 {return num_segments_received.sum();}
+    public long           getRetries()                          {return num_retries.sum();}
+    public long           getBytesSent()                        {return num_bytes_sent.sum();}
+    public long           getBytesReceived()                    {return num_bytes_received.sum();}
+
+    @ManagedAttribute(description="Number of segments currently sent to joiners")
+    public int getNumSenders() {return senders.values().stream().mapToInt(Map::size).sum();}
+
+    @ManagedAttribute(description="True if a state transfer is in progress")
+    public boolean isTransferInProgress() {return transfer != null;}
+
+    public void resetStats() {
+        super.resetStats();
+        num_segments_sent.reset();
+        num_segments_received.reset();
+        num_retries.reset();
+        num_bytes_sent.reset();
+        num_bytes_received.reset();
+    }
+
+    public void init() throws Exception {
+        super.init();
+        if(chunk_size <= 0 || buffer_size <= 0)
+            throw new IllegalArgumentException("chunk_size and buffer_size have to be > 0");
+        if(window <= 0 || segments_per_provider <= 0 || max_attempts <= 0)
+            throw new IllegalArgumentException("window, segments_per_provider and max_attempts have to be > 0");
+        if(segment_timeout <= 0)
+            throw new IllegalArgumentException("segment_timeout has to be > 0");
+        // a provider sends at most window unconsumed chunks, so writing them to the buffer never blocks
+        if(buffer_size < (long)window * chunk_size)
+            throw new IllegalArgumentException(String.format("buffer_size (%d) has to be >= window (%d) * chunk_size (%d)",
+                                                             buffer_size, window, chunk_size));
+    }
+
+    public void start() throws Exception {
+        super.start();
+        Map<String,Object> map=new HashMap<>();
+        map.put("state_transfer", true);
+        map.put("protocol_class", getClass().getName());
+        up_prot.up(new Event(Event.CONFIG, map));
+    }
+
+    public void stop() {
+        super.stop();
+        Transfer t=transfer;
+        if(t != null)
+            t.complete(new StateTransferException(local_addr + ": state transfer was stopped"));
+        senders.values().forEach(m -> m.values().forEach(SegmentSender::cancel));
+        senders.clear();
+    }
+
+    @ManagedOperation(description="Prints the segments of the state transfer in progress")
+    public String printTransfer() {
+        Transfer t=transfer;
+        return t != null? t.toString() : "n/a";
+    }
+
+    public Object down(Event evt) {
+        switch(evt.getType()) {
+            case Event.VIEW_CHANGE:
+                handleViewChange(evt.getArg());
+                break;
+            case Event.GET_STATE:
+                handleGetState(evt.getArg());
+                return null; // don't pass down any further
+            case Event.CONFIG:
+                handleConfig(evt.getArg());
+                break;
+        }
+        return down_prot.down(evt);
+    }
+
+    public Object up(Event evt) {
+        switch(evt.getType()) {
+            case Event.VIEW_CHANGE:
+                handleViewChange(evt.getArg());
+                break;
+            case Event.CONFIG:
+                handleConfig(evt.getArg());
+                break;
+        }
+        return up_prot.up(evt);
+    }
+
+    public Object up(Message msg) {
+        SegmentHeader hdr=msg.getHeader(this.id);
+        if(hdr == null)
+            return up_prot.up(msg);
+        Address sender=msg.getSrc();
+        Transfer t=transfer;
+        switch(hdr.type) {
+            case SegmentHeader.REQ:
+                handleSegmentRequest(sender, hdr);
+                break;
+            case SegmentHeader.CREDIT:
+            case SegmentHeader.CANCEL:
+                SegmentSender s=findSender(sender, hdr);
+                if(s != null) {
+                    if(hdr.type == SegmentHeader.CREDIT)
+                        s.addCredits((int)hdr.value);
+                    else
+                        s.cancel();
+                }
+                break;
+            case SegmentHeader.CHUNK:
+                if(t != null)
+                    t.handleChunk(sender, hdr, msg.getArray(), msg.getOffset(), msg.getLength());
+                break;
+            case SegmentHeader.END:
+                if(t != null)
+                    t.handleEnd(sender, hdr);
+                break;
+            case SegmentHeader.ERROR:
+                if(t != null) {
+                    Throwable ex;
+                    try {
+                        ex=Util.exceptionFromBuffer(msg.getArray(), msg.getOffset(), msg.getLength());
+                    }
+                    catch(Throwable e) {
+                        ex=e;
+                    }
+                    t.handleError(sender, hdr, ex);
+                }
+                break;
+            default:
+                log.error("%s: type %d not known in SegmentHeader", local_addr, hdr.type);
+                break;
+        }
+        return null;
+    }
+
+
+    /* --------------------------------------------- Private methods ------------------------------ */
+
+    protected void handleConfig(Map<String,Object> config) {
+        if(config != null && config.containsKey("state_transfer"))
+            throw new IllegalArgumentException("Protocol stack must have only one state transfer protocol");
+    }
+
+    protected void handleViewChange(View v) {
+        List<Address> new_members=v.getMembers();
+        synchronized(members) {
+            members.clear();
+            members.addAll(new_members);
+        }
+        for(Iterator<Map.Entry<Address,Map<Integer,SegmentSender>>> it=senders.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Address,Map<Integer,SegmentSender>> entry=it.next();
+            if(!new_members.contains(entry.getKey())) {
+                entry.getValue().values().forEach(SegmentSender::cancel);
+                it.remove();
+            }
+        }
+        Transfer t=transfer;
+        if(t != null)
+            t.viewChange(new_members);
+    }
+
+    /** Returns the registered state, or the channel's receiver if it implements {@link SegmentedState} */
+    protected SegmentedState segmentedState() {
+        if(segmented_state != null)
+            return segmented_state;
+        JChannel ch=stack != null? stack.getChannel() : null;
+        Receiver r=ch != null? ch.getReceiver() : null;
+        return r instanceof SegmentedState? (SegmentedState)r : null;
+    }
+
+    /** Returns the members to fetch segments from; target (if set) is first */
+    protected List<Address> providers(Address target) {
+        List<Address> retval=new ArrayList<>();
+        synchronized(members) {
+            for(Address mbr: members)
+                if(!Objects.equals(mbr, local_addr))
+                    retval.add(mbr);
+        }
+        if(target != null && retval.remove(target))
+            retval.add(0, target);
+        return max_providers > 0 && retval.size() > max_providers? new ArrayList<>(retval.subList(0, max_providers)) : retval;
+    }
+
+    protected void handleGetState(StateTransferInfo info) {
+        if(transfer != null) {
+            up_prot.up(new Event(Event.STATE_TRANSFER_INPUTSTREAM_CLOSED,
+                                 new StateTransferResult(new IllegalStateException("state transfer is already in progress"))));
+            return;
+        }
+        List<Address> providers=providers(info.target);
+        if(providers.isEmpty()) {
+            log.debug("%s: first member (no state)", local_addr);
+            up_prot.up(new Event(Event.STATE_TRANSFER_INPUTSTREAM_CLOSED, new StateTransferResult()));
+            return;
+        }
+        SegmentedState app=segmentedState();
+        if(app == null) {
+            Exception ex=new IllegalStateException(String.format("%s: no %s registered", local_addr,
+                                                                 SegmentedState.class.getSimpleName()));
+            up_prot.up(new Event(Event.STATE_TRANSFER_INPUTSTREAM_CLOSED, new StateTransferResult(ex)));
+            return;
+        }
+        int num_segments=app.numSegments();
+        if(num_segments <= 0) {
+            up_prot.up(new Event(Event.STATE_TRANSFER_INPUTSTREAM_CLOSED, new StateTransferResult()));
+            return;
+        }
+        log.debug("%s: fetching %d segments from %s", local_addr, num_segments, providers);
+        Transfer t=transfer=new Transfer(app, num_segments, providers);
+        t.start();
+    }
+
+    protected void handleSegmentRequest(Address requester, SegmentHeader hdr) {
+        SegmentedState app=segmentedState();
+        if(app == null) {
+            sendError(requester, hdr.segment, hdr.attempt,
+                      new IllegalStateException(String.format("%s: no %s registered", local_addr,
+                                                              SegmentedState.class.getSimpleName())));
+            return;
+        }
+        log.trace("%s: received request for segment %d (attempt %d) from %s", local_addr, hdr.segment, hdr.attempt, requester);
+        SegmentSender s=new SegmentSender(requester, hdr.segment, hdr.attempt, app);
+        SegmentSender old=senders.computeIfAbsent(requester, k -> new ConcurrentHashMap<>()).put(hdr.segment, s);
+        if(old != null)
+            old.cancel();
+        if(!getTransport().getThreadPool().execute(s)) { // the joiner fetches the segment from a different member
+            Map<Integer,SegmentSender> map=senders.get(requester);
+            if(map != null)
+                map.remove(hdr.segment, s);
+            sendError(requester, hdr.segment, hdr.attempt,
+                      new IllegalStateException(String.format("%s: thread pool is full", local_addr)));
+        }
+    }
+
+    protected SegmentSender findSender(Address requester, SegmentHeader hdr) {
+        Map<Integer,SegmentSender> map=senders.get(requester);
+        SegmentSender s=map != null? map.get(hdr.segment) : null;
+        return s != null && s.attempt == hdr.attempt? s : null;
+    }
+
+    protected void sendControl(Address dest, SegmentHeader hdr) {
+        Message msg=new EmptyMessage(dest).putHeader(id, hdr).setFlag(Message.Flag.OOB, Message.Flag.DONT_BUNDLE);
+        down_prot.down(msg);
+    }
+
+    protected void sendError(Address dest, int segment, int attempt, Throwable ex) {
+        try {
+            Message msg=new BytesMessage(dest).setArray(Util.exceptionToBuffer(ex))
+              .putHeader(id, new SegmentHeader(SegmentHeader.ERROR, segment, attempt));
+            down_prot.down(msg);
+        }
+        catch(Throwable t) {
+            log.error("%s: failed sending exception %s to %s", local_addr, ex, dest);
+        }
+    }
+
+
+    /** The state transfer on the joiner. All state is guarded by the Transfer instance */
+    protected class Transfer {
+        protected final SegmentedState       app;
+        protected final Segment[]            segments;
+        protected final List<Address>        providers;
+        /** Number of segments currently fetched from a given provider */
+        protected final Map<Address,Integer> in_flight=new HashMap<>();
+        protected final Deque<Segment>       pending=new ArrayDeque<>();
+        protected final long                 start=System.currentTimeMillis();
+        protected int                        num_done;
+        protected boolean                    completed;
+        protected Future<?>                  timeout_checker;
+
+        protected Transfer(SegmentedState app, int num_segments, List<Address> providers) {
+            this.app=app;
+            this.providers=providers;
+            this.segments=new Segment[num_segments];
+            for(int i=0; i < segments.length; i++)
+                segments[i]=new Segment(i);
+        }
+
+        protected synchronized void start() {
+            pending.addAll(Arrays.asList(segments));
+            long interval=Math.max(1, segment_timeout / 2);
+            timeout_checker=getTransport().getTimer().scheduleWithFixedDelay(this::checkTimeouts, interval, interval,
+                                                                            TimeUnit.MILLISECONDS, false);
+            schedule();
+        }
+
+        protected void handleChunk(Address sender, SegmentHeader hdr, byte[] buf, int offset, int length) {
+            BlockingInputStream in;
+            synchronized(this) {
+                Segment seg=find(sender, hdr);
+                if(seg == null || seg.verified)
+                    return;
+                seg.crc.update(buf, offset, length);
+                seg.received+=length;
+                seg.chunks.add(seg.received);
+                seg.last_active=System.currentTimeMillis();
+                in=seg.in;
+            }
+            try {
+                // doesn't block: the provider sends at most window chunks which have not been read by setSegment()
+                in.write(buf, offset, length);
+                num_bytes_received.add(length);
+            }
+            catch(IOException e) {
+                log.error("%s: failed writing chunk of segment %d: %s", local_addr, hdr.segment, e);
+            }
+        }
+
+        /** Called when num bytes of a segment have been read: returns credits for the chunks read completely */
+        protected void consumed(Segment seg, int attempt, long num) {
+            Address provider;
+            int credits=0;
+            synchronized(this) {
+                if(completed || seg.attempt != attempt || seg.provider == null || seg.verified)
+                    return;
+                seg.consumed+=num;
+                while(!seg.chunks.isEmpty() && seg.chunks.peekFirst() <= seg.consumed) {
+                    seg.chunks.pollFirst();
+                    seg.unacked++;
+                }
+                if(seg.unacked >= Math.max(1, window / 2)) {
+                    credits=seg.unacked;
+                    seg.unacked=0;
+                }
+                provider=seg.provider;
+            }
+            if(credits > 0)
+                sendControl(provider, new SegmentHeader(SegmentHeader.CREDIT, seg.index, attempt, credits, 0));
+        }
+
+        protected synchronized void handleEnd(Address sender, SegmentHeader hdr) {
+            Segment seg=find(sender, hdr);
+            if(seg == null || seg.verified)
+                return;
+            long checksum=seg.crc.getValue();
+            if(seg.received != hdr.value || checksum != hdr.checksum) {
+                failed(seg, String.format("checksum mismatch: received %d bytes (crc=%d), expected %d bytes (crc=%d)",
+                                          seg.received, checksum, hdr.value, hdr.checksum));
+                return;
+            }
+            seg.verified=true;
+            Util.close(seg.in); // signals EOF to setSegment()
+            if(seg.set)
+                done(seg);
+        }
+
+        protected synchronized void handleError(Address sender, SegmentHeader hdr, Throwable ex) {
+            Segment seg=find(sender, hdr);
+            if(seg != null)
+                failed(seg, String.valueOf(ex));
+        }
+
+        protected synchronized void viewChange(List<Address> mbrs) {
+            if(completed)
+                return;
+            providers.retainAll(mbrs);
+            for(Segment seg: segments) {
+                if(seg.provider != null && !mbrs.contains(seg.provider))
+                    failed(seg, String.format("%s left", seg.provider));
+                if(completed)
+                    return;
+            }
+            if(providers.isEmpty())
+                complete(new StateTransferException(String.format("%s: no state providers left; %d/%d segments received",
+                                                                  local_addr, num_done, segments.length)));
+        }
+
+        protected synchronized void checkTimeouts() {
+            long now=System.currentTimeMillis();
+            for(Segment seg: segments) {
+                if(completed)
+                    return;
+                if(seg.provider != null && !seg.verified && now - seg.last_active > segment_timeout)
+                    failed(seg, String.format("no data received for %d ms", now - seg.last_active));
+            }
+            schedule(); // segments which couldn't be fetched because the thread pool was full
+        }
+
+        protected synchronized void complete(Throwable ex) {
+            if(completed)
+                return;
+            completed=true;
+            if(timeout_checker != null)
+                timeout_checker.cancel(true);
+            for(Segment seg: segments) {
+                if(seg.provider != null) {
+                    seg.in.abort();
+                    if(providers.contains(seg.provider))
+                        sendControl(seg.provider, new SegmentHeader(SegmentHeader.CANCEL, seg.index, seg.attempt));
+                    seg.provider=null;
+                }
+            }
+            transfer=null;
+            long time=System.currentTimeMillis() - start;
+            if(ex == null)
+                log.debug("%s: received %d segments from %s in %d ms", local_addr, segments.length, providers, time);
+            else
+                log.warn("%s: state transfer failed after %d ms: %s", local_addr, time, ex);
+            up_prot.up(new Event(Event.STATE_TRANSFER_INPUTSTREAM_CLOSED,
+                                 ex == null? new StateTransferResult() : new StateTransferResult(ex)));
+        }
+
+        /** Assigns pending segments to providers which have capacity */
+        protected void schedule() {
+            for(Iterator<Segment> it=pending.iterator(); !completed && it.hasNext() && hasCapacity();) {
+                Segment seg=it.next();
+                Address provider=pickProvider(seg);
+                if(provider != null) {
+                    if(!fetch(seg, provider))
+                        break; // the thread pool is full: retried by checkTimeouts()
+                    it.remove();
+                }
+            }
+        }
+
+        protected boolean hasCapacity() {
+            for(Address p: providers)
+                if(in_flight.getOrDefault(p, 0) < segments_per_provider)
+                    return true;
+            return false;
+        }
+
+        /**
+         * Picks the least loaded provider with capacity. Providers from which fetching seg failed are only picked when
+         * all providers have failed
+         */
+        protected Address pickProvider(Segment seg) {
+            boolean all_tried=seg.tried.containsAll(providers);
+            Address retval=null;
+            int min=Integer.MAX_VALUE;
+            for(Address p: providers) {
+                int num=in_flight.getOrDefault(p, 0);
+                if(num >= segments_per_provider || (!all_tried && seg.tried.contains(p)))
+                    continue;
+                if(num < min) {
+                    min=num;
+                    retval=p;
+                }
+            }
+            return retval;
+        }
+
+        /**
+         * Fetches a segment from a provider; setSegment() is called on a thread from the thread pool
+         * @return False if the thread pool is full, true otherwise
+         */
+        protected boolean fetch(Segment seg, Address provider) {
+            final int attempt=seg.attempt + 1;
+            final SegmentInputStream in=new SegmentInputStream(buffer_size, num -> consumed(seg, attempt, num));
+            // setSegment() and consumed() acquire the lock held by the caller, so they see the fields set below
+            if(!getTransport().getThreadPool().execute(() -> setSegment(seg, attempt, in)))
+                return false;
+            seg.attempt=attempt;
+            seg.provider=provider;
+            seg.in=in;
+            seg.crc.reset();
+            seg.chunks.clear();
+            seg.received=seg.consumed=seg.unacked=0;
+            seg.verified=seg.set=false;
+            seg.last_active=System.currentTimeMillis();
+            in_flight.merge(provider, 1, Integer::sum);
+            log.trace("%s: fetching segment %d (attempt %d) from %s", local_addr, seg.index, attempt, provider);
+            sendControl(provider, new SegmentHeader(SegmentHeader.REQ, seg.index, attempt));
+            return true;
+        }
+
+        protected void setSegment(Segment seg, int attempt, SegmentInputStream in) {
+            Throwable ex=null;
+            try {
+                app.setSegment(seg.index, in);
+            }
+            catch(Throwable t) {
+                ex=t;
+            }
+            finally {
+                Util.close(in);
+            }
+            synchronized(this) {
+                if(completed || seg.attempt != attempt || seg.provider == null)
+                    return;
+                if(ex != null) {
+                    failed(seg, String.format("setSegment() failed: %s", ex));
+                    return;
+                }
+                seg.set=true;
+                if(seg.verified)
+                    done(seg);
+            }
+        }
+
+        protected void done(Segment seg) {
+            release(seg);
+            seg.done=true;
+            num_segments_received.increment();
+            if(++num_done == segments.length)
+                complete(null);
+            else
+                schedule();
+        }
+
+        protected void failed(Segment seg, String reason) {
+            Address provider=seg.provider;
+            seg.in.abort();
+            release(seg);
+            seg.tried.add(provider);
+            num_retries.increment();
+            if(providers.contains(provider))
+                sendControl(provider, new SegmentHeader(SegmentHeader.CANCEL, seg.index, seg.attempt));
+            log.warn("%s: fetching segment %d from %s failed (attempt %d/%d): %s",
+                     local_addr, seg.index, provider, seg.attempt, max_attempts, reason);
+            if(seg.attempt >= max_attempts) {
+                complete(new StateTransferException(String.format("%s: failed fetching segment %d after %d attempts: %s",
+                                                                  local_addr, seg.index, seg.attempt, reason)));
+                return;
+            }
+            pending.addFirst(seg);
+            schedule();
+        }
+
+        protected void release(Segment seg) {
+            in_flight.computeIfPresent(seg.provider, (k,v) -> v > 1? v-1 : null);
+            seg.provider=null;
+        }
+
+        /** Returns the segment if it is currently fetched from sender with the attempt in the header, or else null */
+        protected Segment find(Address sender, SegmentHeader hdr) {
+            if(completed || hdr.segment < 0 || hdr.segment >= segments.length)
+                return null;
+            Segment seg=segments[hdr.segment];
+            return Objects.equals(seg.provider, sender) && seg.attempt == hdr.attempt? seg : null;
+        }
+
+        public synchronized String toString() {
+            StringBuilder sb=new StringBuilder(String.format("%d/%d segments done, providers: %s, in-flight: %s\n",
+                                                             num_done, segments.length, providers, in_flight));
+            for(Segment seg: segments)
+                if(!seg.done)
+                    sb.append(seg).append('\n');
+            return sb.toString();
+        }
+    }
+
+    /** A segment on the joiner */
+    protected static class Segment {
+        protected final int          index;
+        protected final CRC32        crc=new CRC32();
+        /** Providers from which fetching this segment failed */
+        protected final Set<Address> tried=new HashSet<>();
+        protected int                attempt;
+        protected Address            provider; // null if not currently fetched
+        protected SegmentInputStream in;
+        /** The offsets at which the chunks not yet read completely end */
+        protected final Deque<Long>  chunks=new ArrayDeque<>();
+        protected long               received, consumed, last_active;
+        protected int                unacked; // number of chunks read since credits were last sent
+        protected boolean            verified; // length and checksum match
+        protected boolean            set;      // setSegment() returned
+        protected boolean            done;
+
+        protected Segment(int index) {this.index=index;}
+
+        public String toString() {
+            return String.format("segment %d: attempt=%d, provider=%s, received=%s%s",
+                                 index, attempt, provider, Util.printBytes(received), verified? " (verified)" : "");
+        }
+    }
+
+
+    /**
+     * Input stream of a segment on the joiner. Reads return the bytes available rather than blocking until the
+     * requested number of bytes has been received, and report the bytes read, so that credits are returned when
+     * chunks have been consumed. Reads throw an EOFException when the stream was aborted
+     */
+    protected static class SegmentInputStream extends BlockingInputStream {
+        protected final LongConsumer consumed;
+        protected volatile boolean   aborted;
+
+        protected SegmentInputStream(int capacity, LongConsumer consumed) {
+            super(capacity);
+            this.consumed=consumed;
+        }
+
+        protected void abort() {
+            aborted=true;
+            Util.close(this);
+        }
+
+        public int read() throws IOException {
+            int b=checkAborted(super.read());
+            if(b >= 0)
+                consumed.accept(1);
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0)
+                return 0;
+            int avail=available(), num;
+            if(avail > 0) // there is a single reader, so reading what is available doesn't block
+                num=super.read(b, off, Math.min(len, avail));
+            else {
+                int first=checkAborted(super.read()); // blocks until at least 1 byte has been received
+                if(first == -1)
+                    return -1;
+                b[off]=(byte)first;
+                num=1;
+                if(len > 1 && (avail=available()) > 0)
+                    num+=Math.max(0, super.read(b, off+1, Math.min(len-1, avail)));
+            }
+            if(checkAborted(num) > 0)
+                consumed.accept(num);
+            return num;
+        }
+
+        protected int checkAborted(int num) throws EOFException {
+            if(num == -1 && aborted)
+                throw new EOFException("the transfer of the segment was aborted");
+            return num;
+        }
+    }
+
+
+    /**
+     * Sends a segment to a joiner. The segment is written to this output stream by
+     * {@link SegmentedState#getSegment(int,OutputStream)} and sent in chunks, every chunk consuming a credit.
+     */
+    protected class SegmentSender extends OutputStream implements Runnable {
+        protected final Address        requester;
+        protected final int            segment, attempt;
+        protected final SegmentedState app;
+        protected final CRC32          crc=new CRC32();
+        protected byte[]               buf=new byte[chunk_size];
+        protected int                  pos;
+        protected long                 length;
+        @GuardedBy("this")
+        protected int                  credits=window;
+        @GuardedBy("this")
+        protected boolean              cancelled;
+
+        protected SegmentSender(Address requester, int segment, int attempt, SegmentedState app) {
+            this.requester=requester;
+            this.segment=segment;
+            this.attempt=attempt;
+            this.app=app;
+        }
+
+        public void run() {
+            try {
+                app.getSegment(segment, this);
+                sendChunk();
+                Message end=new EmptyMessage(requester)
+                  .putHeader(id, new SegmentHeader(SegmentHeader.END, segment, attempt, length, crc.getValue()));
+                down_prot.down(end);
+                num_segments_sent.increment();
+                log.trace("%s: sent segment %d (%s) to %s", local_addr, segment, Util.printBytes(length), requester);
+            }
+            catch(Throwable t) {
+                if(!isCancelled())
+                    sendError(requester, segment, attempt, t);
+            }
+            finally {
+                Map<Integer,SegmentSender> map=senders.get(requester);
+                if(map != null)
+                    map.remove(segment, this);
+            }
+        }
+
+        public void write(int b) throws IOException {
+            buf[pos++]=(byte)b;
+            if(pos == buf.length)
+                sendChunk();
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while(len > 0) {
+                int num=Math.min(len, buf.length - pos);
+                System.arraycopy(b, off, buf, pos, num);
+                pos+=num;
+                off+=num;
+                len-=num;
+                if(pos == buf.length)
+                    sendChunk();
+            }
+        }
+
+        protected synchronized void addCredits(int num) {
+            credits+=num;
+            notifyAll();
+        }
+
+        protected synchronized void cancel() {
+            cancelled=true;
+            notifyAll();
+        }
+
+        protected synchronized boolean isCancelled() {return cancelled;}
+
+        protected void sendChunk() throws IOException {
+            if(pos == 0)
+                return;
+            acquireCredit();
+            crc.update(buf, 0, pos);
+            length+=pos;
+            Message msg=new BytesMessage(requester, buf, 0, pos).putHeader(id, new SegmentHeader(SegmentHeader.CHUNK, segment, attempt));
+            down_prot.down(msg);
+            num_bytes_sent.add(pos);
+            buf=new byte[chunk_size]; // the message's array must not be modified
+            pos=0;
+        }
+
+        protected synchronized void acquireCredit() throws IOException {
+            long deadline=System.currentTimeMillis() + segment_timeout;
+            while(credits <= 0 && !cancelled) {
+                long wait_time=deadline - System.currentTimeMillis();
+                if(wait_time <= 0)
+                    throw new IOException(String.format("%s: timed out waiting for credits from %s", local_addr, requester));
+                try {
+                    wait(wait_time);
+                }
+                catch(InterruptedException e) {
+                    throw new InterruptedIOException(e.toString());
+                }
+            }
+            if(cancelled)
+                throw new IOException(String.format("%s: transfer of segment %d to %s was cancelled", local_addr, segment, requester));
+            credits--;
+        }
+    }
+
+
+    public static class SegmentHeader extends Header {
+        public static final byte REQ=1, CHUNK=2, END=3, ERROR=4, CREDIT=5, CANCEL=6;
+
+        protected byte type;
+        protected int  segment, attempt;
+        protected long value;    // length (END) or number of credits (CREDIT)
+        protected long checksum; // CRC32 checksum (END)
+
+        public SegmentHeader() {}
+        public SegmentHeader(byte type, int segment, int attempt) {this(type, segment, attempt, 0, 0);}
+        public SegmentHeader(byte type, int segment, int attempt, long value, long checksum) {
+            this.type=type;
+            this.segment=segment;
+            this.attempt=attempt;
+            this.value=value;
+            this.checksum=checksum;
+        }
+
+        public short                      getMagicId() {return 98;}
+        public Supplier<? extends Header> create()     {return SegmentHeader::new;}
+        public byte                       type()       {return type;}
+        public int                        segment()    {return segment;}
+        public int                        attempt()    {return attempt;}
+
+        public int serializedSize() {
+            return Global.BYTE_SIZE + Bits.size(segment) + Bits.size(attempt) + Bits.size(value) + Bits.size(checksum);
+        }
+
+        @Override public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(type);
+            Bits.writeIntCompressed(segment, out);
+            Bits.writeIntCompressed(attempt, out);
+            Bits.writeLongCompressed(value, out);
+            Bits.writeLongCompressed(checksum, out);
+        }
+
+        @Override public void readFrom(DataInput in) throws IOException {
+            type=in.readByte();
+            segment=Bits.readIntCompressed(in);
+            attempt=Bits.readIntCompressed(in);
+            value=Bits.readLongCompressed(in);
+            checksum=Bits.readLongCompressed(in);
+        }
+
+        public String toString() {
+            StringBuilder sb=new StringBuilder(typeToString(type)).append(" segment=").append(segment)
+              .append(", attempt=").append(attempt);
+            if(type == END)
+                sb.append(", length=").append(value).append(", crc=").append(checksum);
+            else if(type == CREDIT)
+                sb.append(", credits=").append(value);
+            return sb.toString();
+        }
+
+        protected static String typeToString(byte type) {
+            switch(type) {
+                case REQ:    return "REQ";
+                case CHUNK:  return "CHUNK";
+                case END:    return "END";
+                case ERROR:  return "ERROR";
+                case CREDIT: return "CREDIT";
+                case CANCEL: return "CANCEL";
+                default:     return "n/a";
+            }
+        }
+    }
+}
@@ -1,9 +1,6 @@
 package org.jgroups.protocols.pbcast;
 
-import org.jgroups.Address;
-import org.jgroups.Event;
-import org.jgroups.Global;
-import org.jgroups.View;
+import org.jgroups.*;
 import org.jgroups.annotations.LocalAddress;
 import org.jgroups.annotations.MBean;
 import org.jgroups.annotations.Property;
@@ -19,6 +16,10 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
@@ -35,6 +36,12 @@ import java.util.concurrent.RejectedExecutionException;
  * When implementing the {@link org.jgroups.Receiver#setState(java.io.InputStream)} callback, there is no need to use a
  * {@link java.io.BufferedOutputStream}, as the input stream handed to the application already buffers incoming data
  * internally.
+ * <p/>
+ * When {@link #use_file_transfer} is enabled, the state is transferred as a list of file regions provided by
+ * {@link FileState}, which are sent with {@link FileChannel#transferTo(long,long,java.nio.channels.WritableByteChannel)}
+ * and received with {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel,long,long)}, without copying
+ * the state through the Java heap. {@link FileState} is either set with {@link #setFileState(FileState)}, or
+ * implemented by the channel's receiver. The state provider and the requester need to have the same setting.
  * @author Vladimir Blagojevic
  * @author Bela Ban
  * @see STATE_TRANSFER
@@ -73,6 +80,10 @@ public class STATE_SOCK extends StreamingStateTransfer {
     @Property(description="The size (in bytes) of the receive buffer of the socket",type=AttributeType.BYTES)
     protected int recv_buf_size;
 
+    @Property(description="Transfers the state as file regions (FileState) rather than via getState()/setState()",
+      writable=false)
+    protected boolean use_file_transfer;
+
     /*
     * --------------------------------------------- Fields ---------------------------------------
     */
@@ -82,11 +93,18 @@ public class STATE_SOCK extends StreamingStateTransfer {
      */
     protected volatile StateProviderAcceptor spawner;
 
+    protected volatile FileState             file_state;
+
 
     public STATE_SOCK() {
         super();
     }
 
+    public boolean    useFileTransfer()                {return use_file_transfer;}
+    public STATE_SOCK useFileTransfer(boolean b)       {this.use_file_transfer=b; return this;}
+    public FileState  getFileState()                   {return file_state;}
+    public STATE_SOCK setFileState(FileState s)        {this.file_state=s; return this;}
+
 
     public void stop() {
         super.stop();
@@ -100,10 +118,13 @@ public class STATE_SOCK extends StreamingStateTransfer {
     */
 
     protected StateProviderAcceptor createAcceptor() throws Exception {
-        StateProviderAcceptor retval=new StateProviderAcceptor(thread_pool,
-                                                               Util.createServerSocket(getSocketFactory(),
-                                                                                       "jgroups.streaming_state_transfer.srv_sock",
-                                                                                       bind_addr, bind_port, bind_port, recv_buf_size));
+        // sockets accepted by a server socket channel have a channel, needed by FileChannel.transferTo()
+        ServerSocket srv_sock=use_file_transfer?
+          Util.createServerSocketChannel(getSocketFactory(), "jgroups.streaming_state_transfer.srv_sock",
+                                         bind_addr, bind_port, bind_port, recv_buf_size).socket()
+          : Util.createServerSocket(getSocketFactory(), "jgroups.streaming_state_transfer.srv_sock",
+                                    bind_addr, bind_port, bind_port, recv_buf_size);
+        StateProviderAcceptor retval=new StateProviderAcceptor(thread_pool, srv_sock);
         Thread t=getThreadFactory().newThread(retval, "STATE server socket acceptor");
         t.start();
         return retval;
@@ -117,6 +138,8 @@ public class STATE_SOCK extends StreamingStateTransfer {
 
 
     protected Tuple<InputStream,Object> createStreamToProvider(Address provider, StateHeader hdr) throws Exception {
+        if(use_file_transfer)
+            return new Tuple<>(null, createChannelToProvider(hdr.bind_addr));
         IpAddress address=hdr.bind_addr;
         Socket socket=null;
         try {
@@ -137,9 +160,125 @@ public class STATE_SOCK extends StreamingStateTransfer {
         }
     }
 
+    protected SocketChannel createChannelToProvider(IpAddress address) throws Exception {
+        SocketChannel ch=null;
+        try {
+            ch=getSocketFactory().createSocketChannel("jgroups.state_sock.sock", new InetSocketAddress(bind_addr, 0));
+            ch.socket().setReceiveBufferSize(buffer_size);
+            ch.connect(new InetSocketAddress(address.getIpAddress(), address.getPort()));
+            log.debug("%s: connected to state provider %s:%d", local_addr, address.getIpAddress(), address.getPort());
+            Util.writeAddress(local_addr, new DataOutputStream(ch.socket().getOutputStream()));
+            return ch;
+        }
+        catch(Throwable t) {
+            Util.close(ch);
+            if(t instanceof Exception)
+                throw (Exception)t;
+            throw new Exception("failed creating socket channel", t);
+        }
+    }
+
     protected void close(Object resource) {
         if(resource instanceof Socket)
             Util.close((Socket)resource);
+        else if(resource instanceof Closeable)
+            Util.close((Closeable)resource);
+    }
+
+    /** Returns the registered file state, or the channel's receiver if it implements {@link FileState} */
+    protected FileState fileState() {
+        if(file_state != null)
+            return file_state;
+        JChannel ch=stack != null? stack.getChannel() : null;
+        Receiver r=ch != null? ch.getReceiver() : null;
+        if(r instanceof FileState)
+            return (FileState)r;
+        throw new IllegalStateException(String.format("%s: no %s registered", local_addr, FileState.class.getSimpleName()));
+    }
+
+    protected void setStateInApplication(InputStream in, Object resource, Address provider) {
+        if(!(resource instanceof SocketChannel)) {
+            super.setStateInApplication(in, resource, provider);
+            return;
+        }
+        SocketChannel ch=(SocketChannel)resource;
+        try {
+            FileState fs=fileState();
+            int num_regions=read(ch, Global.INT_SIZE).getInt();
+            log.debug("%s: receiving %d state files from %s", local_addr, num_regions, provider);
+            for(int i=0; i < num_regions; i++) {
+                long length=read(ch, Global.LONG_SIZE).getLong();
+                try(FileChannel fc=fs.createStateFile(i, length)) {
+                    for(long pos=0; pos < length;) {
+                        long num=fc.transferFrom(ch, pos, length - pos);
+                        if(num <= 0)
+                            throw new EOFException(String.format("state provider %s closed the connection", provider));
+                        pos+=num;
+                    }
+                }
+            }
+            fs.setStateFiles(num_regions);
+            up_prot.up(new Event(Event.STATE_TRANSFER_INPUTSTREAM_CLOSED, new StateTransferResult()));
+            down_prot.down(new Event(Event.GET_VIEW_FROM_COORD)); // https://issues.jboss.org/browse/JGRP-1751
+        }
+        catch(Throwable t) {
+            handleException(t);
+        }
+        finally {
+            close(resource);
+            if(isDigestNeeded()) {
+                openBarrierAndResumeStable();
+                closeHoleFor(provider);
+            }
+        }
+    }
+
+    /** Sends the file regions provided by {@link FileState} to the requester; the counterpart of {@link StateGetter} */
+    protected void sendStateFiles(Address requester, SocketChannel ch) {
+        List<FileState.FileRegion> regions=null;
+        try {
+            regions=fileState().getStateFiles();
+            int num_regions=regions != null? regions.size() : 0;
+            log.debug("%s: sending %d state files to %s", local_addr, num_regions, requester);
+            write(ch, ByteBuffer.allocate(Global.INT_SIZE).putInt(num_regions));
+            for(int i=0; i < num_regions; i++) {
+                FileState.FileRegion region=regions.get(i);
+                write(ch, ByteBuffer.allocate(Global.LONG_SIZE).putLong(region.count()));
+                for(long pos=0; pos < region.count();) {
+                    long num=region.channel().transferTo(region.position() + pos, region.count() - pos, ch);
+                    if(num <= 0)
+                        throw new EOFException(String.format("region %s is beyond the end of the file", region));
+                    pos+=num;
+                }
+                num_bytes_sent.add(region.count());
+            }
+            sendEof(requester);
+        }
+        catch(Throwable t) {
+            sendException(requester, t);
+        }
+        finally {
+            if(regions != null)
+                regions.forEach(r -> Util.close(r.channel()));
+            if(isDigestNeeded()) {
+                resumeStable();
+                closeHoleFor(requester);
+            }
+        }
+    }
+
+    protected static ByteBuffer read(SocketChannel ch, int size) throws IOException {
+        ByteBuffer buf=ByteBuffer.allocate(size);
+        while(buf.hasRemaining())
+            if(ch.read(buf) < 0)
+                throw new EOFException("connection to state provider was closed");
+        return buf.flip();
+    }
+
+    protected static void write(SocketChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while(buf.hasRemaining())
+            ch.write(buf);
     }
 
     protected void handleStateReq(Address requester) throws Exception {
@@ -224,6 +363,10 @@ public class STATE_SOCK extends StreamingStateTransfer {
 
                 DataInput in=new DataInputStream(socket.getInputStream());
                 Address stateRequester=Util.readAddress(in);
+                if(socket.getChannel() != null) {
+                    sendStateFiles(stateRequester, socket.getChannel());
+                    return;
+                }
                 output=new BufferedOutputStream(socket.getOutputStream(), buffer_size);
                 getStateFromApplication(stateRequester, output, false);
             }
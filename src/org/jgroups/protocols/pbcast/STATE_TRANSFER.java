@@ -135,7 +135,7 @@ public class STATE_TRANSFER extends Protocol implements ProcessingQueue.Handler<
                 state_requesters.add(msg.getSrc());
                 break;
             case StateHeader.STATE_RSP:
-                handleStateRsp(hdr.getDigest(), msg.getSrc(), msg.getArray());
+                handleStateRsp(hdr, msg.getSrc(), msg.getArray());
                 break;
             case StateHeader.STATE_EX:
                 closeHoleFor(msg.getSrc());
@@ -179,7 +179,7 @@ public class STATE_TRANSFER extends Protocol implements ProcessingQueue.Handler<
                     up_prot.up(new Event(Event.GET_STATE_OK, new StateTransferInfo()));
                 }
                 else {
-                    Message state_req=new EmptyMessage(target).putHeader(this.id, new StateHeader(StateHeader.STATE_REQ))
+                    Message state_req=createStateRequest(target)
                       .setFlag(Message.Flag.DONT_BUNDLE, Message.Flag.OOB, Message.Flag.SKIP_BARRIER);
                     log.debug("%s: asking %s for state", local_addr, target);
 
@@ -220,6 +220,11 @@ public class STATE_TRANSFER extends Protocol implements ProcessingQueue.Handler<
     }
 
 
+    /** Creates the state request sent to target */
+    protected Message createStateRequest(Address target) {
+        return new EmptyMessage(target).putHeader(this.id, new StateHeader(StateHeader.STATE_REQ));
+    }
+
     protected void punchHoleFor(Address member) {
         down_prot.down(new Event(Event.PUNCH_HOLE, member));
     }
@@ -354,6 +359,11 @@ public class STATE_TRANSFER extends Protocol implements ProcessingQueue.Handler<
 
     /** Set the digest and the send the state up to the application */
     protected void handleStateRsp(final Digest digest, Address sender, byte[] state) {
+        handleStateRsp(new StateHeader(StateHeader.STATE_RSP, digest), sender, state);
+    }
+
+    protected void handleStateRsp(StateHeader hdr, Address sender, byte[] state) {
+        Digest digest=hdr.getDigest();
         try {
             if(isDigestNeeded()) {
                 punchHoleFor(sender);
@@ -365,8 +375,7 @@ public class STATE_TRANSFER extends Protocol implements ProcessingQueue.Handler<
             stop=System.currentTimeMillis();
             log.debug("%s: received state, size=%s, time=%d milliseconds", local_addr,
                       (state == null? "0" : Util.printBytes(state.length)), stop - start);
-            StateTransferResult result=new StateTransferResult(state);
-            up_prot.up(new Event(Event.GET_STATE_OK, result));
+            passStateUp(hdr, sender, state);
             down_prot.down(new Event(Event.GET_VIEW_FROM_COORD)); // https://issues.jboss.org/browse/JGRP-1751
         }
         catch(Throwable t) {
@@ -380,6 +389,12 @@ public class STATE_TRANSFER extends Protocol implements ProcessingQueue.Handler<
         }
     }
 
+    /** Passes the state received from sender up to the application (while the barrier is closed) */
+    protected void passStateUp(StateHeader hdr, Address sender, byte[] state) throws Exception {
+        StateTransferResult result=new StateTransferResult(state);
+        up_prot.up(new Event(Event.GET_STATE_OK, result));
+    }
+
     /* ------------------------ End of Private Methods ------------------------------ */
 
     /**
@@ -392,6 +407,7 @@ public class STATE_TRANSFER extends Protocol implements ProcessingQueue.Handler<
         public static final byte STATE_REQ = 1;
         public static final byte STATE_RSP = 2;
         public static final byte STATE_EX  = 3;
+        public static final byte DELTA_RSP = 4; // used by STATE_DELTA
 
         protected byte    type=0;
         protected Digest  my_digest; // digest of sender (if type is STATE_RSP)
@@ -435,6 +451,7 @@ public class STATE_TRANSFER extends Protocol implements ProcessingQueue.Handler<
                 case STATE_REQ: return "STATE_REQ";
                 case STATE_RSP: return "STATE_RSP";
                 case STATE_EX:  return "STATE_EX";
+                case DELTA_RSP: return "DELTA_RSP";
                 default:        return "<unknown>";
             }
         }
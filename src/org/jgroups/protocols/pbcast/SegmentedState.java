@@ -0,0 +1,32 @@
+package org.jgroups.protocols.pbcast;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Application state partitioned into a number of independent segments, used by {@link STATE_PARALLEL}. The joiner
+ * fetches the segments in parallel from different members. The number of segments must be the same on all members.
+ * <p/>
+ * Segments are transferred while the cluster is running, without a global digest: the application needs to handle
+ * updates which are concurrent with a state transfer (e.g. by versioning its data).
+ * @author Bela Ban
+ * @since  5.2
+ */
+public interface SegmentedState {
+
+    /** Returns the number of segments */
+    int numSegments();
+
+    /**
+     * Writes the given segment to the output stream. Invoked on a state provider; can be called concurrently for
+     * different segments. The output stream doesn't need to be closed.
+     */
+    void getSegment(int segment, OutputStream out) throws Exception;
+
+    /**
+     * Reads the given segment from the input stream and sets it in the application. Invoked on the joiner; can be
+     * called concurrently for different segments. When a segment transfer fails, it is retried from a different member
+     * and this method is called again: the contents of the segment have to be replaced, not appended to.
+     */
+    void setSegment(int segment, InputStream in) throws Exception;
+}
@@ -4,7 +4,6 @@ package org.jgroups.stack;
 import org.jgroups.Event;
 import org.jgroups.Global;
 import org.jgroups.PhysicalAddress;
-import org.jgroups.annotations.LocalAddress;
 import org.jgroups.annotations.Property;
 import org.jgroups.annotations.RecommendedForUpgrade;
 import org.jgroups.conf.PropertyHelper;
@@ -38,6 +37,7 @@ import java.util.stream.Collectors;
 public class Configurator {
     protected static final Log    log=LogFactory.getLog(Configurator.class);
     protected static boolean      skip_setting_default_values=false;
+    protected static boolean      cache_metadata=true; // caches the annotated fields and methods of protocol classes
     protected final ProtocolStack stack;
 
 
@@ -50,6 +50,13 @@ public class Configurator {
 
     public static boolean skipSettingDefaultValues()              {return skip_setting_default_values;}
     public static void    skipSettingDefaultValues(boolean f)     {skip_setting_default_values=f;}
+    public static boolean cacheMetadata()                         {return cache_metadata;}
+    public static void    cacheMetadata(boolean f)                {cache_metadata=f;}
+
+    /** Returns the {@link ProtocolMetadata} of a class; cached unless {@link #cacheMetadata(boolean)} was disabled */
+    public static ProtocolMetadata metadata(Class<?> cl) {
+        return cache_metadata? ProtocolMetadata.get(cl) : ProtocolMetadata.create(cl);
+    }
 
     public Protocol setupProtocolStack(List<ProtocolConfiguration> config) throws Exception {
         return setupProtocolStack(config, stack);
@@ -335,36 +342,35 @@ public class Configurator {
             Map<String,String> properties=new HashMap<>(protocol_config.getProperties());
 
             // check which InetAddress-related properties are non-null, and create an InetAddressInfo structure for them
-            Method[] methods=Util.getAllDeclaredMethodsWithAnnotations(protocol.getClass(), Property.class);
+            ProtocolMetadata md=metadata(protocol.getClass());
+            Method[] methods=md.inetAddressSetters();
             for(int j=0; j < methods.length; j++) {
-                if(isSetPropertyMethod(methods[j], protocol.getClass())) {
-                    String propertyName=PropertyHelper.getPropertyName(methods[j]);
-                    String propertyValue=properties.get(propertyName);
+                String propertyName=PropertyHelper.getPropertyName(methods[j]);
+                String propertyValue=properties.get(propertyName);
 
-                    // if there is a systemProperty attribute defined in the annotation, set the property value from the system property
-                    String tmp=grabSystemProp(methods[j].getAnnotation(Property.class));
-                    if(tmp != null)
-                        propertyValue=tmp;
+                // if there is a systemProperty attribute defined in the annotation, set the property value from the system property
+                String tmp=grabSystemProp(methods[j].getAnnotation(Property.class));
+                if(tmp != null)
+                    propertyValue=tmp;
 
-                    if(propertyValue != null && InetAddressInfo.isInetAddressRelated(methods[j])) {
-                        Object converted=null;
-                        try {
-                            converted=PropertyHelper.getConvertedValue(protocol, methods[j], properties, propertyValue,
-                                                                       false, Util.getIpStackType());
-                        }
-                        catch(Exception e) {
-                            throw new Exception("string could not be converted for method " + propertyName + " in "
-                                                  + protocolName + " with default value " + propertyValue + ".Exception is " + e, e);
-                        }
-                        InetAddressInfo inetinfo=new InetAddressInfo(protocol, methods[j], properties, propertyValue, converted);
-                        Map<String,InetAddressInfo> m=inetAddressMap.computeIfAbsent(protocolName, k -> new HashMap<>());
-                        m.put(propertyName, inetinfo);
+                if(propertyValue != null) {
+                    Object converted=null;
+                    try {
+                        converted=PropertyHelper.getConvertedValue(protocol, methods[j], properties, propertyValue,
+                                                                   false, Util.getIpStackType());
+                    }
+                    catch(Exception e) {
+                        throw new Exception("string could not be converted for method " + propertyName + " in "
+                                              + protocolName + " with default value " + propertyValue + ".Exception is " + e, e);
                     }
+                    InetAddressInfo inetinfo=new InetAddressInfo(protocol, methods[j], properties, propertyValue, converted);
+                    Map<String,InetAddressInfo> m=inetAddressMap.computeIfAbsent(protocolName, k -> new HashMap<>());
+                    m.put(propertyName, inetinfo);
                 }
             }
 
-            // traverse class hierarchy and find all annotated fields and add them to the list if annotated
-            Field[] fields=Util.getAllDeclaredFieldsWithAnnotations(protocol.getClass(), Property.class);
+            // all annotated fields of the class hierarchy which are InetAddress related
+            Field[] fields=md.inetAddressFields();
             for(int j=0; j < fields.length; j++) {
                 String propertyName=PropertyHelper.getPropertyName(fields[j], properties);
                 String propertyValue=properties.get(propertyName);
@@ -374,8 +380,7 @@ public class Configurator {
                 if(tmp != null)
                     propertyValue=tmp;
 
-                if((propertyValue != null || !PropertyHelper.usesDefaultConverter(fields[j]))
-                  && InetAddressInfo.isInetAddressRelated(fields[j])) {
+                if(propertyValue != null || !PropertyHelper.usesDefaultConverter(fields[j])) {
                     Object converted=null;
                     try {
                         converted=PropertyHelper.getConvertedValue(protocol, fields[j], properties, propertyValue,
@@ -401,22 +406,14 @@ public class Configurator {
 
         // collect InetAddressInfo
         for(Protocol protocol : protocols) {
-            //traverse class hierarchy and find all annotated fields and add them to the list if annotated
-            for(Class<?> clazz=protocol.getClass(); clazz != null; clazz=clazz.getSuperclass()) {
-                Field[] fields=clazz.getDeclaredFields();
-                for(int j=0; j < fields.length; j++) {
-                    if(fields[j].isAnnotationPresent(Property.class)) {
-                        if(InetAddressInfo.isInetAddressRelated(fields[j])) {
-                            Object value=getValueFromObject(protocol, fields[j]);
-                            if(value instanceof InetAddress)
-                                retval.add((InetAddress)value);
-                            else if(value instanceof IpAddress)
-                                retval.add(((IpAddress)value).getIpAddress());
-                            else if(value instanceof InetSocketAddress)
-                                retval.add(((InetSocketAddress)value).getAddress());
-                        }
-                    }
-                }
+            for(Field field: metadata(protocol.getClass()).inetAddressFields()) {
+                Object value=getValueFromObject(protocol, field);
+                if(value instanceof InetAddress)
+                    retval.add((InetAddress)value);
+                else if(value instanceof IpAddress)
+                    retval.add(((IpAddress)value).getIpAddress());
+                else if(value instanceof InetSocketAddress)
+                    retval.add(((InetSocketAddress)value).getAddress());
             }
         }
         return retval;
@@ -427,8 +424,7 @@ public class Configurator {
         Map<String,InetAddress> map=new HashMap<>();
         if(protocols != null) {
             for(Protocol p: protocols) {
-                Field[] fields=Util.getAllDeclaredFieldsWithAnnotations(p.getClass(), Property.class);
-                for(Field f: fields) {
+                for(Field f: metadata(p.getClass()).propertyFields()) {
                     if(InetAddress.class.isAssignableFrom(f.getType())) {
                         try {
                             map.put(p.getName() + "." + f.getName(), getValueFromObject(p, f));
@@ -488,32 +484,29 @@ public class Configurator {
     protected static void setDefaultAddressValuesMethods(Object obj, StackType ip_version,
                                                          InetAddress default_ip_address) throws Exception {
         Map<String,String> properties=new HashMap<>(); // dummy properties
-        Method[] methods=Util.getAllDeclaredMethodsWithAnnotations(obj.getClass(), Property.class);
-        for(Method method: methods) {
-            if(isSetPropertyMethod(method, obj.getClass())) {
-                String propertyName=PropertyHelper.getPropertyName(method);
-                Object existing_value=getValueFromObject(obj, propertyName);
-                if(existing_value != null || !InetAddressInfo.isInetAddressRelated(method))
-                    continue;
+        for(Method method: metadata(obj.getClass()).inetAddressSetters()) {
+            String propertyName=PropertyHelper.getPropertyName(method);
+            Object existing_value=getValueFromObject(obj, propertyName);
+            if(existing_value != null)
+                continue;
 
-                Property annotation=method.getAnnotation(Property.class);
-                String defaultValue=ip_version == StackType.IPv4? annotation.defaultValueIPv4() : annotation.defaultValueIPv6();
-                if(defaultValue != null && !defaultValue.isEmpty()) {
-                    Object converted=null;
-                    try {
-                        if(defaultValue.equalsIgnoreCase(Global.NON_LOOPBACK_ADDRESS))
-                            converted=default_ip_address;
-                        else
-                            converted=PropertyHelper.getConvertedValue(obj, method, properties,
-                                                                       defaultValue, true, ip_version);
-                        method.invoke(obj, converted);
-                    }
-                    catch(Exception e) {
-                        throw new Exception("default could not be assigned for method " + propertyName + " in "
-                                              + obj + " with default " + defaultValue, e);
-                    }
-                    log.debug("set attribute %s.%s to default value %s", obj, propertyName, converted);
+            Property annotation=method.getAnnotation(Property.class);
+            String defaultValue=ip_version == StackType.IPv4? annotation.defaultValueIPv4() : annotation.defaultValueIPv6();
+            if(defaultValue != null && !defaultValue.isEmpty()) {
+                Object converted=null;
+                try {
+                    if(defaultValue.equalsIgnoreCase(Global.NON_LOOPBACK_ADDRESS))
+                        converted=default_ip_address;
+                    else
+                        converted=PropertyHelper.getConvertedValue(obj, method, properties,
+                                                                   defaultValue, true, ip_version);
+                    method.invoke(obj, converted);
                 }
+                catch(Exception e) {
+                    throw new Exception("default could not be assigned for method " + propertyName + " in "
+                                          + obj + " with default " + defaultValue, e);
+                }
+                log.debug("set attribute %s.%s to default value %s", obj, propertyName, converted);
             }
         }
     }
@@ -522,11 +515,10 @@ public class Configurator {
     protected static void setDefaultAddressValuesFields(Object obj, StackType ip_version,
                                                         InetAddress default_ip_address) throws Exception {
         Map<String,String> properties=new HashMap<>(); // dummy properties
-        Field[] fields=Util.getAllDeclaredFieldsWithAnnotations(obj.getClass(), Property.class);
-        for(Field field: fields) {
+        for(Field field: metadata(obj.getClass()).inetAddressFields()) {
             String propertyName=PropertyHelper.getPropertyName(field, properties);
             Object existing_value=getValueFromObject(obj, field);
-            if(existing_value != null || !InetAddressInfo.isInetAddressRelated(field))
+            if(existing_value != null)
                 continue;
 
             Property annotation=field.getAnnotation(Property.class);
@@ -564,7 +556,7 @@ public class Configurator {
             String protocolName=protocol.getName();
 
             //traverse class hierarchy and find all annotated fields and add them to the list if annotated
-            Field[] fields=Util.getAllDeclaredFieldsWithAnnotations(protocol.getClass(), LocalAddress.class);
+            Field[] fields=metadata(protocol.getClass()).localAddressFields();
             for(int i=0; i < fields.length; i++) {
                 Object val=getValueFromObject(protocol, fields[i]);
                 if(val == null)
@@ -606,26 +598,28 @@ public class Configurator {
         // Maps property name to property object
         Map<String,AccessibleObject> propertiesInventory=new HashMap<>();
 
+        ProtocolMetadata md=metadata(obj.getClass());
+
+        // no dependencies: the order is the public setters annotated with @Property, followed by the annotated fields
+        if(!md.hasDependencies()) {
+            AccessibleObject[] result=new AccessibleObject[md.propertyMethods().length + md.propertyFields().length];
+            System.arraycopy(md.propertyMethods(), 0, result, 0, md.propertyMethods().length);
+            System.arraycopy(md.propertyFields(), 0, result, md.propertyMethods().length, md.propertyFields().length);
+            return result;
+        }
+
         // get the methods for this class and add them to the list if annotated with @Property
-        Method[] methods=obj.getClass().getMethods();
-        for(int i=0; i < methods.length; i++) {
-            if(methods[i].isAnnotationPresent(Property.class) && isSetPropertyMethod(methods[i], obj.getClass())) {
-                String propertyName=PropertyHelper.getPropertyName(methods[i]);
-                unorderedFieldsAndMethods.add(methods[i]);
-                propertiesInventory.put(propertyName, methods[i]);
-            }
+        for(Method method: md.propertyMethods()) {
+            String propertyName=PropertyHelper.getPropertyName(method);
+            unorderedFieldsAndMethods.add(method);
+            propertiesInventory.put(propertyName, method);
         }
-        //traverse class hierarchy and find all annotated fields and add them to the list if annotated
-        for(Class<?> clazz=obj.getClass(); clazz != null; clazz=clazz.getSuperclass()) {
-            Field[] fields=clazz.getDeclaredFields();
-            for(int i=0; i < fields.length; i++) {
-                if(fields[i].isAnnotationPresent(Property.class)) {
-                    String propertyName=PropertyHelper.getPropertyName(fields[i], properties);
-                    unorderedFieldsAndMethods.add(fields[i]);
-                    // may need to change this based on name parameter of Property
-                    propertiesInventory.put(propertyName, fields[i]);
-                }
-            }
+        // all annotated fields of the class hierarchy
+        for(Field field: md.propertyFields()) {
+            String propertyName=PropertyHelper.getPropertyName(field, properties);
+            unorderedFieldsAndMethods.add(field);
+            // may need to change this based on name parameter of Property
+            propertiesInventory.put(propertyName, field);
         }
 
         // at this stage, we have all Fields and Methods annotated with @Property
@@ -723,10 +717,8 @@ public class Configurator {
     }
 
     public static void resolveAndInvokePropertyMethods(Object obj, Map<String,String> props, StackType ip_version) throws Exception {
-        Method[] methods=obj.getClass().getMethods();
-        for(Method method : methods) {
+        for(Method method : metadata(obj.getClass()).propertyMethods())
             resolveAndInvokePropertyMethod(obj, method, props, ip_version);
-        }
     }
 
     public static void resolveAndInvokePropertyMethod(Object obj, Method method, Map<String,String> props,
@@ -768,12 +760,8 @@ public class Configurator {
     }
 
     public static void resolveAndAssignFields(Object obj, Map<String,String> props, StackType ip_version) throws Exception {
-        //traverse class hierarchy and find all annotated fields
-        for(Class<?> clazz=obj.getClass(); clazz != null; clazz=clazz.getSuperclass()) {
-            Field[] fields=clazz.getDeclaredFields();
-            for(Field field : fields)
-                resolveAndAssignField(obj, field, props, ip_version);
-        }
+        for(Field field : metadata(obj.getClass()).propertyFields())
+            resolveAndAssignField(obj, field, props, ip_version);
     }
 
     public static void resolveAndAssignField(Object obj, Field field, Map<String,String> props, StackType ip_version) throws Exception {
@@ -235,6 +235,17 @@ public abstract class Protocol implements Lifecycle {
     }
 
 
+    /**
+     * Returns the protocols whose init() and start() need to have completed before this protocol's init() and
+     * start() can be called, when the stack is started in parallel ({@link ProtocolStack#parallelStart(boolean)}).
+     * Only protocols below this one are considered; protocols not found in the stack are ignored.<br/>
+     * The default (null) means that this protocol depends on all protocols below it (except independent ones), and
+     * is processed in stack order. A non-null list marks this protocol as independent: it is processed concurrently
+     * with others and no other protocol waits for it (unless it lists it as dependency). An empty list means that
+     * this protocol doesn't depend on any other protocol.
+     */
+    public List<Class<? extends Protocol>> startDependencies() {return null;}
+
     /** List of events that are required to be answered by some layer above */
     public List<Integer> requiredUpServices() {return null;}
 
@@ -0,0 +1,87 @@
+package org.jgroups.stack;
+
+import org.jgroups.annotations.Component;
+import org.jgroups.annotations.LocalAddress;
+import org.jgroups.annotations.Property;
+import org.jgroups.util.Util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.stream.Stream;
+
+/**
+ * The annotated fields and methods of a protocol (or component) class, as needed by {@link Configurator} to set
+ * attributes. Looking up annotations reflectively is expensive, and was done for every protocol of every channel
+ * created; instances are therefore computed once per class and cached.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class ProtocolMetadata {
+    protected static final ClassValue<ProtocolMetadata> CACHE=new ClassValue<>() {
+        protected ProtocolMetadata computeValue(Class<?> cl) {
+            return new ProtocolMetadata(cl);
+        }
+    };
+
+    protected final Class<?> clazz;
+    protected final Field[]  property_fields;      // fields annotated with @Property, subclass first
+    protected final Method[] property_methods;     // public setters annotated with @Property
+    protected final Method[] declared_setters;     // declared setters (incl. non-public) annotated with @Property
+    protected final Field[]  inet_address_fields;  // property_fields which are InetAddress related
+    protected final Method[] inet_address_setters; // declared_setters which are InetAddress related
+    protected final Field[]  local_address_fields; // fields annotated with @LocalAddress
+    protected final Field[]  component_fields;     // fields annotated with @Component
+    protected final boolean  has_dependencies;     // true if at least one @Property has a dependsUpon clause
+
+    protected ProtocolMetadata(Class<?> cl) {
+        this.clazz=cl;
+        property_fields=accessible(Util.getAllDeclaredFieldsWithAnnotations(cl, Property.class));
+        property_methods=Stream.of(cl.getMethods())
+          .filter(m -> m.isAnnotationPresent(Property.class) && Configurator.isSetPropertyMethod(m, cl))
+          .toArray(Method[]::new);
+        declared_setters=Stream.of(Util.getAllDeclaredMethodsWithAnnotations(cl, Property.class))
+          .filter(m -> Configurator.isSetPropertyMethod(m, cl)).toArray(Method[]::new);
+        inet_address_fields=Stream.of(property_fields).filter(Configurator.InetAddressInfo::isInetAddressRelated)
+          .toArray(Field[]::new);
+        inet_address_setters=Stream.of(declared_setters).filter(Configurator.InetAddressInfo::isInetAddressRelated)
+          .toArray(Method[]::new);
+        local_address_fields=accessible(Util.getAllDeclaredFieldsWithAnnotations(cl, LocalAddress.class));
+        component_fields=accessible(Util.getAllDeclaredFieldsWithAnnotations(cl, Component.class));
+        has_dependencies=Stream.concat(Stream.of(property_fields), Stream.of(property_methods))
+          .anyMatch(o -> !o.getAnnotation(Property.class).dependsUpon().trim().isEmpty());
+    }
+
+    /** Returns the (cached) metadata of a given class */
+    public static ProtocolMetadata get(Class<?> cl) {
+        return CACHE.get(cl);
+    }
+
+    /** Computes the metadata of a given class without caching it */
+    public static ProtocolMetadata create(Class<?> cl) {
+        return new ProtocolMetadata(cl);
+    }
+
+    public Class<?> getClazz()             {return clazz;}
+    public Field[]  propertyFields()       {return property_fields;}
+    public Method[] propertyMethods()      {return property_methods;}
+    public Method[] declaredSetters()      {return declared_setters;}
+    public Field[]  inetAddressFields()    {return inet_address_fields;}
+    public Method[] inetAddressSetters()   {return inet_address_setters;}
+    public Field[]  localAddressFields()   {return local_address_fields;}
+    public Field[]  componentFields()      {return component_fields;}
+    public boolean  hasDependencies()      {return has_dependencies;}
+
+    public String toString() {
+        return String.format("%s: %d property fields, %d property methods, %d inet address fields/setters, " +
+                               "%d components", clazz.getSimpleName(), property_fields.length, property_methods.length,
+                             inet_address_fields.length + inet_address_setters.length, component_fields.length);
+    }
+
+    protected static Field[] accessible(Field[] fields) {
+        for(Field f: fields)
+            if(!Modifier.isPublic(f.getModifiers()))
+                f.setAccessible(true);
+        return fields;
+    }
+}
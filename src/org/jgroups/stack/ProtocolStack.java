@@ -8,10 +8,7 @@ import org.jgroups.conf.ProtocolConfiguration;
 import org.jgroups.jmx.ResourceDMBean;
 import org.jgroups.logging.Log;
 import org.jgroups.protocols.TP;
-import org.jgroups.util.MessageBatch;
-import org.jgroups.util.Ref;
-import org.jgroups.util.StackType;
-import org.jgroups.util.Util;
+import org.jgroups.util.*;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -19,6 +16,7 @@ import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 import java.util.regex.Pattern;
 
 
@@ -42,10 +40,22 @@ public class ProtocolStack extends Protocol {
     protected Protocol            bottom_prot;
     protected JChannel            channel;
     protected volatile boolean    stopped=true;
+    // runs init() and start() of protocols with start dependencies concurrently (Protocol.startDependencies())
+    protected boolean             parallel_start=Boolean.parseBoolean(Util.getProperty(new String[]{Global.PARALLEL_START},
+                                                                                       null, null, "false"));
+    protected final Map<Protocol,Long> init_times=new ConcurrentHashMap<>(), start_times=new ConcurrentHashMap<>();
+    protected volatile long       init_time, start_time; // total time (ns) to init and start the stack
+
+    /** A step such as init() or start() executed on a protocol; index is the position from the bottom (transport) */
+    protected interface Step {
+        void run(Protocol prot, int index) throws Exception;
+    }
 
 
     public ProtocolStack topProtocol(Protocol top)       {this.top_prot=top; return this;}
     public ProtocolStack bottomProtocol(Protocol bottom) {this.bottom_prot=bottom; return this;}
+    public boolean       parallelStart()                 {return parallel_start;}
+    public ProtocolStack parallelStart(boolean b)        {this.parallel_start=b; return this;}
 
     protected final DiagnosticsHandler.ProbeHandler props_handler=new DiagnosticsHandler.ProbeHandler() {
 
@@ -66,6 +76,11 @@ public class ProtocolStack extends Protocol {
                     map.put(max_list_print_size, String.valueOf(Util.MAX_LIST_PRINT_SIZE));
                     return map;
                 }
+                if(key.equals("startup-times")) {
+                    HashMap<String, String> map=new HashMap<>(1);
+                    map.put("startup-times", printStartupTimes());
+                    return map;
+                }
                 if(key.equals("pp") || key.startsWith("print-protocols")) {
                     List<Protocol> prots=getProtocols();
                     Collections.reverse(prots);
@@ -168,7 +183,8 @@ public class ProtocolStack extends Protocol {
         }
 
         public String[] supportedKeys() {
-            return new String[]{"props", max_list_print_size + "[=number]", "print-protocols", "\nremove-protocol=<name>",
+            return new String[]{"props", max_list_print_size + "[=number]", "print-protocols", "startup-times",
+              "\nremove-protocol=<name>",
               "\ninsert-protocol=<name>=above | below=<name>"};
         }
     };
@@ -784,20 +800,23 @@ public class ProtocolStack extends Protocol {
     public void initProtocolStack(List<ProtocolConfiguration> configs) throws Exception {
         List<Protocol> protocols=getProtocols();
         Collections.reverse(protocols);
+        long start=System.nanoTime();
         try {
-            for(int i=0; i < protocols.size(); i++) {
-                Protocol prot=protocols.get(i);
+            run(protocols, init_times, (prot, i) -> {
                 if(prot.getProtocolStack() == null)
                     prot.setProtocolStack(this);
                 callAfterCreationHook(prot, prot.afterCreationHook());
                 prot.init();
                 initComponents(prot, configs != null? configs.get(i) : null);
-            }
+            });
         }
         catch(Exception ex) {
             this.destroy();
             throw ex;
         }
+        finally {
+            init_time=System.nanoTime() - start;
+        }
     }
 
     public static void initComponents(Protocol p, ProtocolConfiguration cfg) throws Exception {
@@ -885,8 +904,13 @@ public class ProtocolStack extends Protocol {
         stopped=false;
         List<Protocol> protocols=getProtocols();
         Collections.reverse(protocols);
-        for(Protocol prot: protocols)
-            prot.start();
+        long start=System.nanoTime();
+        try {
+            run(protocols, start_times, (prot, i) -> prot.start());
+        }
+        finally {
+            start_time=System.nanoTime() - start;
+        }
         TP transport=getTransport();
         transport.registerProbeHandler(props_handler);
     }
@@ -911,6 +935,116 @@ public class ProtocolStack extends Protocol {
 
 
 
+    /** Prints the time taken by init() and start() of each protocol, from bottom to top */
+    public String printStartupTimes() {
+        List<Protocol> protocols=getProtocols();
+        Collections.reverse(protocols);
+        StringBuilder sb=new StringBuilder(String.format("parallel_start=%b, init: %s, start: %s\n", parallel_start,
+                                                         Util.printTime(init_time, TimeUnit.NANOSECONDS),
+                                                         Util.printTime(start_time, TimeUnit.NANOSECONDS)));
+        for(Protocol prot: protocols) {
+            Long init=init_times.get(prot), start=start_times.get(prot);
+            sb.append(String.format("%-20s init: %s, start: %s\n", prot.getName(),
+                                    init != null? Util.printTime(init, TimeUnit.NANOSECONDS) : "n/a",
+                                    start != null? Util.printTime(start, TimeUnit.NANOSECONDS) : "n/a"));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs a step (e.g. init() or start()) on all protocols, from bottom to top. If {@link #parallel_start} is false,
+     * or no protocol defines {@link Protocol#startDependencies()}, the protocols are processed sequentially.<br/>
+     * Otherwise, protocols without start dependencies are processed sequentially by the caller's thread, and the
+     * others are processed concurrently by a temporary thread pool, as soon as the protocols (below them) they depend
+     * on have been processed. Returns when all protocols have been processed.
+     * @param protocols The protocols, from bottom to top
+     * @param times Records the time taken by the step for each protocol
+     * @param step The step
+     * @throws Exception The first exception thrown by a step
+     */
+    protected void run(List<Protocol> protocols, Map<Protocol,Long> times, Step step) throws Exception {
+        times.clear();
+        if(!parallel_start || protocols.stream().allMatch(p -> p.startDependencies() == null)) {
+            for(int i=0; i < protocols.size(); i++)
+                run(protocols.get(i), i, times, step);
+            return;
+        }
+
+        Map<Protocol,CompletableFuture<Void>> futures=new IdentityHashMap<>(protocols.size());
+        protocols.forEach(p -> futures.put(p, new CompletableFuture<>()));
+        ExecutorService pool=Executors.newCachedThreadPool(new DefaultThreadFactory("stack-starter", true, true));
+        Exception ex=null;
+        try {
+            for(int i=0; i < protocols.size(); i++) {
+                final Protocol prot=protocols.get(i);
+                final int index=i;
+                List<Class<? extends Protocol>> deps=prot.startDependencies();
+                if(deps == null)
+                    continue;
+                // only protocols below can be dependencies; this excludes cycles
+                CompletableFuture<?>[] dep_futures=protocols.subList(0, i).stream()
+                  .filter(p -> deps.stream().anyMatch(cl -> cl.isAssignableFrom(p.getClass())))
+                  .map(futures::get).toArray(CompletableFuture[]::new);
+                CompletableFuture.allOf(dep_futures).thenRunAsync(() -> {
+                    try {
+                        run(prot, index, times, step);
+                    }
+                    catch(Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, pool).whenComplete((r, t) -> {
+                    if(t != null)
+                        futures.get(prot).completeExceptionally(t);
+                    else
+                        futures.get(prot).complete(null);
+                });
+            }
+            for(int i=0; i < protocols.size(); i++) {
+                Protocol prot=protocols.get(i);
+                if(prot.startDependencies() != null)
+                    continue;
+                if(ex != null) { // unblock the protocols waiting for this one
+                    futures.get(prot).completeExceptionally(ex);
+                    continue;
+                }
+                try {
+                    run(prot, i, times, step);
+                    futures.get(prot).complete(null);
+                }
+                catch(Exception e) {
+                    futures.get(prot).completeExceptionally(ex=e);
+                }
+            }
+            try {
+                CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+            }
+            catch(CompletionException e) {
+                if(ex == null) {
+                    Throwable cause=e.getCause();
+                    while(cause instanceof CompletionException && cause.getCause() != null)
+                        cause=cause.getCause();
+                    ex=cause instanceof Exception? (Exception)cause : e;
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        if(ex != null)
+            throw ex;
+    }
+
+    protected static void run(Protocol prot, int index, Map<Protocol,Long> times, Step step) throws Exception {
+        long start=System.nanoTime();
+        try {
+            step.run(prot, index);
+        }
+        finally {
+            times.put(prot, System.nanoTime() - start);
+        }
+    }
+
+
     /*--------------------------- Protocol functionality ------------------------------*/
     public String getName()  {return "ProtocolStack";}
 
@@ -73,6 +73,11 @@ public class AsciiString implements Comparable<AsciiString> {
 
 
     public int hashCode() {
+        return hashCode(val);
+    }
+
+    /** Returns the same hash as {@link #hashCode()} for an AsciiString created from val */
+    public static int hashCode(byte[] val) {
         int h=0;
         if(val != null)
             for(int i=0; i < val.length; i++)
@@ -0,0 +1,195 @@
+package org.jgroups.util;
+
+import org.jgroups.Global;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.jgroups.protocols.TP.COMPRESSED;
+
+/**
+ * Compresses and decompresses entire messages or message lists as sent by the transport. A compressed frame has the
+ * format | version (short) | flags (with {@link org.jgroups.protocols.TP#COMPRESSED} set) | original length (int) |
+ * compressed length (int) | compressed bytes |, where the compressed bytes are everything following the flags of
+ * the original frame.<br/>
+ * Deflaters and inflaters are pooled; when the pool is empty, a new one is created.<br/>
+ * The lengths of a received frame are checked against {@link #maxLength()}, so that a corrupt or malicious frame cannot
+ * make the receiver allocate huge buffers; frames longer than that are not compressed by the sender.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class BundleCompressor {
+    public static final int                OFFSET=Global.SHORT_SIZE + Global.BYTE_SIZE; // version + flags
+    public static final int                HEADER_SIZE=OFFSET + Global.INT_SIZE * 2;
+    protected static final int             POOL_SIZE=8;
+    public static final int                DEFAULT_MAX_LENGTH=1024 * 1024;
+
+    protected int                          level=Deflater.DEFAULT_COMPRESSION;
+    protected int                          max_length=DEFAULT_MAX_LENGTH; // max original and compressed length
+    protected final BlockingQueue<Deflater> deflaters=new ArrayBlockingQueue<>(POOL_SIZE);
+    protected final BlockingQueue<Inflater> inflaters=new ArrayBlockingQueue<>(POOL_SIZE);
+
+    protected final LongAdder              num_compressions=new LongAdder();
+    protected final LongAdder              num_skipped=new LongAdder(); // compressed size was not smaller
+    protected final LongAdder              bytes_before=new LongAdder(), bytes_after=new LongAdder();
+    protected final LongAdder              compression_time=new LongAdder(); // ns
+    protected final LongAdder              num_decompressions=new LongAdder();
+    protected final LongAdder              decompression_time=new LongAdder(); // ns
+
+    public int              level()                  {return level;}
+    public BundleCompressor level(int l)             {this.level=l; return this;}
+    public int              maxLength()              {return max_length;}
+    public BundleCompressor maxLength(int l)         {this.max_length=l; return this;}
+    public long             numCompressions()        {return num_compressions.sum();}
+    public long             numSkipped()             {return num_skipped.sum();}
+    public long             numDecompressions()      {return num_decompressions.sum();}
+    public long             bytesSaved()             {return bytes_before.sum() - bytes_after.sum();}
+    public long             compressionTime()        {return compression_time.sum();}
+    public long             decompressionTime()      {return decompression_time.sum();}
+
+    /** Returns the ratio between the original and the compressed sizes of all compressed frames, or 0 if none */
+    public double compressionRatio() {
+        long after=bytes_after.sum();
+        return after == 0? 0 : bytes_before.sum() / (double)after;
+    }
+
+    public void resetStats() {
+        for(LongAdder a: new LongAdder[]{num_compressions, num_skipped, bytes_before, bytes_after, compression_time,
+          num_decompressions, decompression_time})
+            a.reset();
+    }
+
+    /** Releases all pooled deflaters and inflaters */
+    public void clear() {
+        Deflater d;
+        while((d=deflaters.poll()) != null)
+            d.end();
+        Inflater i;
+        while((i=inflaters.poll()) != null)
+            i.end();
+    }
+
+    /**
+     * Compresses a frame
+     * @return The compressed frame, or null if the compressed frame would not be smaller than the original, or the
+     *         frame is longer than {@link #maxLength()}
+     */
+    public ByteArray compress(byte[] buf, int offset, int length) {
+        if(length <= HEADER_SIZE || length - OFFSET > max_length)
+            return null;
+        long start=System.nanoTime();
+        int input_length=length - OFFSET;
+        byte[] out=new byte[length];
+        Deflater deflater=deflater();
+        try {
+            deflater.setInput(buf, offset + OFFSET, input_length);
+            deflater.finish();
+            int compressed_size=deflater.deflate(out, HEADER_SIZE, length - HEADER_SIZE);
+            if(!deflater.finished()) { // out is full: the compressed frame would not be smaller
+                num_skipped.increment();
+                return null;
+            }
+            System.arraycopy(buf, offset, out, 0, Global.SHORT_SIZE); // version
+            out[Global.SHORT_SIZE]=(byte)(buf[offset + Global.SHORT_SIZE] | COMPRESSED);
+            Bits.writeInt(input_length, out, OFFSET);
+            Bits.writeInt(compressed_size, out, OFFSET + Global.INT_SIZE);
+            int new_length=HEADER_SIZE + compressed_size;
+            num_compressions.increment();
+            bytes_before.add(length);
+            bytes_after.add(new_length);
+            return new ByteArray(out, 0, new_length);
+        }
+        finally {
+            release(deflater);
+            compression_time.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Decompresses the part of a compressed frame following the flags
+     * @param buf The buffer
+     * @param offset The offset of the original length, following the flags
+     * @return The decompressed bytes following the flags of the original frame
+     */
+    public byte[] decompress(byte[] buf, int offset) throws IOException {
+        int original_length=Bits.readInt(buf, offset), compressed_length=Bits.readInt(buf, offset + Global.INT_SIZE);
+        checkLength("compressed", compressed_length, Math.min(max_length, buf.length - offset - Global.INT_SIZE * 2));
+        return decompress(buf, offset + Global.INT_SIZE * 2, compressed_length, original_length);
+    }
+
+    /** Reads the part of a compressed frame following the flags from a stream and decompresses it */
+    public byte[] decompress(DataInput in) throws IOException {
+        int original_length=in.readInt(), compressed_length=in.readInt();
+        checkLength("compressed", compressed_length, max_length);
+        checkLength("original", original_length, max_length); // before reading the compressed bytes
+        byte[] compressed=new byte[compressed_length];
+        in.readFully(compressed);
+        return decompress(compressed, 0, compressed_length, original_length);
+    }
+
+    protected byte[] decompress(byte[] buf, int offset, int length, int original_length) throws IOException {
+        checkLength("original", original_length, max_length);
+        long start=System.nanoTime();
+        byte[] retval=new byte[original_length];
+        Inflater inflater=inflater();
+        try {
+            inflater.setInput(buf, offset, length);
+            int size=inflater.inflate(retval);
+            if(size != original_length)
+                throw new IOException(String.format("decompressed %d bytes, but expected %d", size, original_length));
+            num_decompressions.increment();
+            return retval;
+        }
+        catch(DataFormatException e) {
+            throw new IOException("failed decompressing message list", e);
+        }
+        finally {
+            release(inflater);
+            decompression_time.add(System.nanoTime() - start);
+        }
+    }
+
+    protected static void checkLength(String name, int length, int max) throws IOException {
+        if(length < 0 || length > max)
+            throw new IOException(String.format("invalid %s length %d (max: %d)", name, length, max));
+    }
+
+    public String toString() {
+        return String.format("%d compressions (%d skipped), ratio: %.2f, saved: %s, %d decompressions",
+                             numCompressions(), numSkipped(), compressionRatio(), Util.printBytes(bytesSaved()),
+                             numDecompressions());
+    }
+
+    protected Deflater deflater() {
+        Deflater d=deflaters.poll();
+        if(d == null)
+            return new Deflater(level);
+        d.reset();
+        d.setLevel(level);
+        return d;
+    }
+
+    protected Inflater inflater() {
+        Inflater i=inflaters.poll();
+        if(i == null)
+            return new Inflater();
+        i.reset();
+        return i;
+    }
+
+    protected void release(Deflater d) {
+        if(!deflaters.offer(d))
+            d.end();
+    }
+
+    protected void release(Inflater i) {
+        if(!inflaters.offer(i))
+            i.end();
+    }
+}
@@ -0,0 +1,103 @@
+package org.jgroups.util;
+
+import org.jgroups.Address;
+import org.jgroups.Global;
+import org.jgroups.View;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes the destination and sender addresses of a message (or message list) as indices into the current view,
+ * prefixed by the checksum of the view ({@link MemberIndex#checksum()}). The format on the wire is
+ * | checksum (int) | dest index (short) | src index (short) |, a dest index of -1 denotes a null destination.<br/>
+ * Senders only use the compact form for unicasts when dest and src are members of the current view, and the view
+ * has been installed for at least {@link #delay()} ms, so that the other members have had a chance to install it, too.
+ * Multicasts are always sent with full addresses, as they may be received by non-members, e.g. members of a different
+ * partition, which cannot resolve them. Some multicasts (e.g. MERGE3's INFO) are not retransmitted.<br/>
+ * Receivers keep the indices of the last {@link #MAX_VIEWS} views, so messages sent during a view change can still
+ * be resolved. If the checksum doesn't match any of them, the addresses cannot be resolved and the message is dropped;
+ * reliable protocols (NAKACK2, UNICAST3) will retransmit it.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class CompactAddresses {
+    public static final int              MAX_VIEWS=4;
+    public static final int              SIZE=Global.INT_SIZE + 2 * Short.BYTES;
+    public static final short            NULL_INDEX=-1;
+
+    // the indices of the last MAX_VIEWS views, the current one first. Replaced (copy-on-write) on a view change
+    protected volatile MemberIndex[]     indices={};
+    protected volatile long              installed; // time (ns) when the current view was installed
+    protected long                       delay=TimeUnit.SECONDS.toNanos(2);
+
+    public long             delay()                 {return TimeUnit.NANOSECONDS.toMillis(delay);}
+    public CompactAddresses delay(long ms)          {this.delay=TimeUnit.MILLISECONDS.toNanos(ms); return this;}
+    public MemberIndex      current()               {MemberIndex[] tmp=indices; return tmp.length > 0? tmp[0] : null;}
+
+    public synchronized CompactAddresses viewChange(View view) {
+        if(view == null)
+            return this;
+        MemberIndex index=view.getMemberIndex();
+        MemberIndex[] old=indices, tmp=new MemberIndex[Math.min(old.length+1, MAX_VIEWS)];
+        tmp[0]=index;
+        int pos=1;
+        for(int i=0; i < old.length && pos < tmp.length; i++) {
+            if(old[i].checksum() != index.checksum()) // evict an older view with the same checksum
+                tmp[pos++]=old[i];
+        }
+        indices=pos == tmp.length? tmp : Arrays.copyOf(tmp, pos);
+        installed=System.nanoTime();
+        return this;
+    }
+
+    public synchronized CompactAddresses clear() {
+        indices=new MemberIndex[0];
+        return this;
+    }
+
+    /**
+     * Returns the index of the current view if dest and src can be sent in compact form, otherwise null
+     * @param dest The destination; multicasts (null) are never sent in compact form
+     * @param src The sender, must be non-null
+     */
+    public MemberIndex indexFor(Address dest, Address src) {
+        return dest != null? stableIndex(dest, src) : null;
+    }
+
+    /**
+     * Returns the index of the current view if it has been installed for at least {@link #delay()} ms and dest
+     * (if non-null) and src are members of it, otherwise null
+     */
+    public MemberIndex stableIndex(Address dest, Address src) {
+        MemberIndex index=current();
+        if(index == null || src == null || index.size() > Short.MAX_VALUE || System.nanoTime() - installed < delay)
+            return null;
+        if(!index.contains(src) || (dest != null && !index.contains(dest)))
+            return null;
+        return index;
+    }
+
+    /** Returns the index of the view with the given checksum, or null if not found */
+    public MemberIndex get(int checksum) {
+        for(MemberIndex index: indices) {
+            if(index.checksum() == checksum)
+                return index;
+        }
+        return null;
+    }
+
+    /** Writes dest and src in compact form. Both must be members of index (see {@link #indexFor(Address, Address)}) */
+    public static void write(Address dest, Address src, MemberIndex index, DataOutput out) throws IOException {
+        out.writeInt(index.checksum());
+        out.writeShort(dest == null? NULL_INDEX : index.indexOf(dest));
+        out.writeShort(index.indexOf(src));
+    }
+
+    public String toString() {
+        MemberIndex[] tmp=indices;
+        return String.format("%d views (current: %s)", tmp.length, tmp.length > 0? tmp[0] : "n/a");
+    }
+}
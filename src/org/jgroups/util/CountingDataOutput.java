@@ -0,0 +1,14 @@
+package org.jgroups.util;
+
+/**
+ * Output stream which discards all bytes written and only advances the position. Used to compute the marshalled size
+ * of objects without allocating memory.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class CountingDataOutput extends BaseDataOutputStream {
+    public void           write(int b)                      {pos++;}
+    public void           write(byte[] b, int off, int len) {pos+=len;}
+    protected void        ensureCapacity(int bytes)         {}
+    public String         toString()                        {return String.format("%d bytes", pos);}
+}
@@ -0,0 +1,105 @@
+package org.jgroups.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Creates a preset dictionary for {@link java.util.zip.Deflater#setDictionary(byte[])} from sample payloads.<br/>
+ * Every {@link #K}-byte substring is counted once per sample in which it occurs. Runs of substrings which occur in at
+ * least 2 samples are extracted as segments and scored by the sum of their counts. The dictionary consists of the
+ * highest scoring segments, with the best one at the end (deflate encodes matches at a shorter distance with fewer
+ * bits).
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class DictionaryTrainer {
+    public static final int      K=8; // length of the substrings which are counted
+    protected final List<byte[]> samples=new ArrayList<>();
+    protected final int          max_samples, max_sample_size;
+
+    /**
+     * Creates a trainer
+     * @param max_samples The max number of samples to be added; further samples are discarded
+     * @param max_sample_size Samples longer than this are truncated
+     */
+    public DictionaryTrainer(int max_samples, int max_sample_size) {
+        this.max_samples=max_samples;
+        this.max_sample_size=max_sample_size;
+    }
+
+    public synchronized int     size()   {return samples.size();}
+    public synchronized boolean isFull() {return samples.size() >= max_samples;}
+
+    /** Adds a sample. Returns true if it was added, false if the max number of samples has been reached */
+    public synchronized boolean add(byte[] buf, int offset, int length) {
+        if(samples.size() >= max_samples || length < K)
+            return false;
+        samples.add(Arrays.copyOfRange(buf, offset, offset + Math.min(length, max_sample_size)));
+        return true;
+    }
+
+    public synchronized DictionaryTrainer clear() {
+        samples.clear();
+        return this;
+    }
+
+    /**
+     * Creates a dictionary of at most max_size bytes from the samples
+     * @return The dictionary, or null if the samples have nothing in common
+     */
+    public synchronized byte[] train(int max_size) {
+        Map<Long,Integer> counts=new HashMap<>();
+        for(byte[] sample: samples) {
+            Set<Long> seen=new HashSet<>();
+            for(int i=0; i + K <= sample.length; i++) {
+                long key=key(sample, i);
+                if(seen.add(key))
+                    counts.merge(key, 1, Integer::sum);
+            }
+        }
+
+        // extract the runs of common substrings as segments, and score them
+        Map<ByteBuffer,Long> segments=new HashMap<>(); // ByteBuffer: equals() and hashCode() compare the contents
+        for(byte[] sample: samples) {
+            int start=-1;
+            long score=0;
+            for(int i=0; i + K <= sample.length + 1; i++) {
+                int count=i + K <= sample.length? counts.getOrDefault(key(sample, i), 0) : 0;
+                if(count > 1) {
+                    if(start < 0)
+                        start=i;
+                    score+=count;
+                }
+                else if(start >= 0) {
+                    ByteBuffer segment=ByteBuffer.wrap(Arrays.copyOfRange(sample, start, i - 1 + K));
+                    segments.merge(segment, score, Math::max);
+                    start=-1;
+                    score=0;
+                }
+            }
+        }
+        if(segments.isEmpty())
+            return null;
+
+        List<Map.Entry<ByteBuffer,Long>> sorted=new ArrayList<>(segments.entrySet());
+        sorted.sort(Map.Entry.<ByteBuffer,Long>comparingByValue().reversed());
+        List<byte[]> selected=new ArrayList<>();
+        int size=0;
+        for(Map.Entry<ByteBuffer,Long> e: sorted) {
+            byte[] segment=e.getKey().array();
+            if(size + segment.length > max_size)
+                continue;
+            selected.add(segment);
+            size+=segment.length;
+        }
+        ByteArrayOutputStream out=new ByteArrayOutputStream(size);
+        for(int i=selected.size() - 1; i >= 0; i--) // the best segment is written last
+            out.write(selected.get(i), 0, selected.get(i).length);
+        return out.toByteArray();
+    }
+
+    protected static long key(byte[] buf, int offset) {
+        return Bits.readLong(buf, offset);
+    }
+}
@@ -37,6 +37,8 @@ public class Digest implements SizeStreamable, Iterable<Digest.Entry>, Construct
     // so to get the HD seqno for member P at index i --> seqnos[i*2], to get the HR --> seqnos[i*2 +1]
     protected long[]    seqnos;
 
+    // Optional index of members; only set when members is the membership of a view. Speeds up find()
+    protected MemberIndex index;
 
 
     /** Used for serialization */
@@ -62,6 +64,7 @@ public class Digest implements SizeStreamable, Iterable<Digest.Entry>, Construct
         if(digest == null)
             return;
         this.members=digest.members; // the members list is immutable
+        this.index=digest.index;
         this.seqnos=(digest instanceof MutableDigest || this instanceof MutableDigest)?
           Arrays.copyOf((digest).seqnos, digest.seqnos.length) : digest.seqnos;
         checkPostcondition();
@@ -226,6 +229,8 @@ public class Digest implements SizeStreamable, Iterable<Digest.Entry>, Construct
     protected int find(Address mbr) {
         if(mbr == null || members == null)
             return -1;
+        if(index != null)
+            return index.indexOf(mbr);
         for(int i=0; i < members.length; i++) {
             Address member=members[i];
             if(Objects.equals(member, mbr))
@@ -0,0 +1,62 @@
+package org.jgroups.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.function.ToIntFunction;
+
+/**
+ * Marshals and unmarshals instances of a given type. Marshallers are registered with {@link TypeRegistry} and then
+ * used by {@link Util#objectToStream(Object, DataOutput)} and {@link Util#objectFromStream(DataInput)} instead of
+ * Java serialization, e.g. for RPC arguments and return values.<br/>
+ * Instances are written directly to the output stream (e.g. that of the transport); no intermediate byte array is
+ * created.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public interface Marshaller<T> {
+
+    /** Writes obj to the output stream */
+    void write(T obj, DataOutput out) throws IOException;
+
+    /** Reads an instance from the input stream */
+    T read(DataInput in) throws IOException, ClassNotFoundException;
+
+    /**
+     * Returns the number of bytes written by {@link #write(Object, DataOutput)}, or -1 if not known. In the latter
+     * case, the size is computed by marshalling the object into an output stream which only counts bytes
+     */
+    default int size(T obj) {return -1;}
+
+
+    @FunctionalInterface
+    interface Writer<T> {
+        void write(T obj, DataOutput out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Reader<T> {
+        T read(DataInput in) throws IOException, ClassNotFoundException;
+    }
+
+    static <T> Marshaller<T> create(Writer<T> writer, Reader<T> reader) {
+        return create(writer, reader, null);
+    }
+
+    /**
+     * Creates a marshaller from lambdas
+     * @param writer Writes an instance to an output stream
+     * @param reader Reads an instance from an input stream
+     * @param sizer Computes the marshalled size of an instance. May be null
+     */
+    static <T> Marshaller<T> create(Writer<T> writer, Reader<T> reader, ToIntFunction<T> sizer) {
+        Objects.requireNonNull(writer);
+        Objects.requireNonNull(reader);
+        return new Marshaller<>() {
+            public void write(T obj, DataOutput out) throws IOException          {writer.write(obj, out);}
+            public T    read(DataInput in) throws IOException, ClassNotFoundException {return reader.read(in);}
+            public int  size(T obj)                                              {return sizer != null? sizer.applyAsInt(obj) : -1;}
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package org.jgroups.util;
+
+import org.jgroups.Address;
+import org.jgroups.View;
+import org.jgroups.ViewId;
+import org.jgroups.annotations.Immutable;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Maps the members of a {@link View} to dense ints [0 .. size-1], which are the positions of the members in the view.
+ * Protocols can use the index to store per-member state in arrays rather than in hashmaps keyed by address, e.g.
+ * {@code state[index.indexOf(sender)]}.<br/>
+ * The index is computed once per view (see {@link View#getMemberIndex()}) and is immutable. Lookups use an
+ * open-addressing table with linear probing and don't allocate.
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Immutable
+public class MemberIndex {
+    protected final ViewId    view_id;
+    protected final Address[] members;
+    protected final Address[] keys;    // open-addressing table; length is a power of 2
+    protected final int[]     indices; // indices[i] is the index of keys[i] in members
+    protected final int       mask;
+    protected final int       checksum; // identifies view_id and members, e.g. for compact addresses on the wire
+
+    public MemberIndex(View view) {
+        this(Objects.requireNonNull(view).getViewId(), view.getMembersRaw());
+    }
+
+    public MemberIndex(ViewId view_id, Address[] members) {
+        this.view_id=view_id;
+        this.members=Objects.requireNonNull(members);
+        int capacity=Util.getNextHigherPowerOfTwo(Math.max(2, members.length * 2));
+        keys=new Address[capacity];
+        indices=new int[capacity];
+        mask=capacity-1;
+        checksum=31 * Objects.hashCode(view_id) + Arrays.hashCode(members);
+        for(int i=0; i < members.length; i++) {
+            Address mbr=members[i];
+            if(mbr == null)
+                continue;
+            int slot=mbr.hashCode() & mask;
+            while(keys[slot] != null) {
+                if(keys[slot].equals(mbr))
+                    break; // duplicate member: keep the first index
+                slot=(slot+1) & mask;
+            }
+            if(keys[slot] == null) {
+                keys[slot]=mbr;
+                indices[slot]=i;
+            }
+        }
+    }
+
+    public ViewId  getViewId()   {return view_id;}
+    public int     size()        {return members.length;}
+    public int     checksum()    {return checksum;}
+    public Address get(int idx)  {return idx >= 0 && idx < members.length? members[idx] : null;}
+
+    /** Returns the index of mbr in the view, or -1 if mbr is null or not a member */
+    public int indexOf(Address mbr) {
+        if(mbr == null)
+            return -1;
+        int slot=mbr.hashCode() & mask;
+        for(;;) {
+            Address key=keys[slot];
+            if(key == null)
+                return -1;
+            if(key == mbr || key.equals(mbr))
+                return indices[slot];
+            slot=(slot+1) & mask;
+        }
+    }
+
+    public boolean contains(Address mbr) {
+        return indexOf(mbr) >= 0;
+    }
+
+    /** Returns true if this index was created from the view with the given view-id */
+    public boolean isFor(ViewId vid) {
+        return Objects.equals(view_id, vid);
+    }
+
+    public String toString() {
+        return String.format("%s (%d members)", view_id, members.length);
+    }
+}
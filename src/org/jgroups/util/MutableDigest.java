@@ -1,6 +1,7 @@
 package org.jgroups.util;
 
 import org.jgroups.Address;
+import org.jgroups.View;
 
 import java.util.Arrays;
 import java.util.function.Supplier;
@@ -20,6 +21,12 @@ public class MutableDigest extends Digest {
     }
 
 
+    /** Creates a digest for the members of a view. Lookups of members use the view's {@link MemberIndex} */
+    public MutableDigest(View view) {
+        this(view.getMembersRaw());
+        this.index=view.getMemberIndex();
+    }
+
     /** Only used for testing */
     public MutableDigest(Digest digest) {
         super(digest);
@@ -74,6 +74,8 @@ public class RequestTable<T> {
     public T get(long seqno) {
         lock.lock();
         try {
+            if(seqno < low || seqno >= high)
+                return null;
             int index=index(seqno);
             return buffer[index];
         }
@@ -204,7 +206,7 @@ public class RequestTable<T> {
         }
 
         for(long i=lo, num_iterations=0; i < hi && num_iterations < buf.length; i++, num_iterations++) {
-            int index=index(i);
+            int index=index(i, buf.length);
             T el=buf[index];
             if(!visitor.visit(el))
                 break;
@@ -0,0 +1,109 @@
+package org.jgroups.util;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * A {@link RequestTable} split into a number of stripes, each with its own lock. A thread adds requests to the stripe
+ * selected by its thread-id, so concurrent callers usually add to different stripes, and the removal of a request
+ * (e.g. when a response is received) only locks the stripe of the request.<br/>
+ * Each stripe generates its own (monotonically increasing) seqnos; the ID of a request is computed as
+ * {@code seqno << bits | stripe}, so that the stripe and seqno can be computed from the ID without any lookup.
+ * IDs are therefore unique, but not contiguous.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class StripedRequestTable<T> {
+    protected final RequestTable<T>[] stripes;
+    protected final int               bits; // number of bits needed to represent a stripe
+    protected final int               mask;
+
+    /** Creates a table with one stripe per 2 cores (rounded up to a power of 2) */
+    public StripedRequestTable(int capacity) {
+        this(Runtime.getRuntime().availableProcessors() * 2, capacity);
+    }
+
+    /**
+     * Creates a table
+     * @param num_stripes The number of stripes. Will be rounded up to the next power of 2
+     * @param capacity The initial capacity of each stripe
+     */
+    public StripedRequestTable(int num_stripes, int capacity) {
+        int len=Util.getNextHigherPowerOfTwo(Math.max(1, num_stripes));
+        stripes=new RequestTable[len];
+        mask=len-1;
+        bits=Integer.numberOfTrailingZeros(len);
+        for(int i=0; i < len; i++)
+            stripes[i]=new RequestTable<>(capacity, 1, 1); // seqno 0 is not used (a request-id of 0 means async)
+    }
+
+    public int                    numStripes()                 {return stripes.length;}
+    public RequestTable<T>        stripe(int index)            {return stripes[index];}
+
+    public StripedRequestTable<T> removesTillCompaction(int r) {
+        for(RequestTable<T> t: stripes)
+            t.removesTillCompaction(r);
+        return this;
+    }
+
+    /**
+     * Adds an element to the stripe of the current thread and returns its ID
+     * @param element The element to be added. Must not be null
+     * @return The ID of the element, needed to get or remove it
+     */
+    public long add(T element) {
+        Objects.requireNonNull(element);
+        int index=(int)Thread.currentThread().getId() & mask;
+        long seqno=stripes[index].add(element);
+        return seqno << bits | index;
+    }
+
+    /** Returns the element with the given ID, or null if not found */
+    public T get(long id) {
+        return stripes[(int)id & mask].get(id >>> bits);
+    }
+
+    /** Removes the element with the given ID and returns it, or null if not found */
+    public T remove(long id) {
+        return stripes[(int)id & mask].remove(id >>> bits);
+    }
+
+    /** Calls the consumer on all non-null elements. The iteration over a stripe doesn't hold its lock */
+    public StripedRequestTable<T> forEach(Consumer<T> c) {
+        for(RequestTable<T> t: stripes)
+            t.forEachNonBlocking(el -> {
+                if(el != null)
+                    c.accept(el);
+                return true;
+            });
+        return this;
+    }
+
+    /** Removes all elements. Seqnos are not reset, so IDs handed out earlier won't be reused */
+    public StripedRequestTable<T> clear() {
+        for(RequestTable<T> t: stripes) {
+            t.lock.lock();
+            try {
+                t.clear(t.high());
+            }
+            finally {
+                t.lock.unlock();
+            }
+        }
+        return this;
+    }
+
+    public int size() {
+        int size=0;
+        for(RequestTable<T> t: stripes)
+            size+=t.size();
+        return size;
+    }
+
+    public String toString() {
+        StringBuilder sb=new StringBuilder(String.format("%d stripes, %d element(s)", stripes.length, size()));
+        for(int i=0; i < stripes.length; i++)
+            sb.append(String.format("\n%d: %s", i, stripes[i]));
+        return sb.toString();
+    }
+}
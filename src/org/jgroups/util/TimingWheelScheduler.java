@@ -0,0 +1,660 @@
+package org.jgroups.util;
+
+
+import org.jgroups.Global;
+import org.jgroups.logging.Log;
+import org.jgroups.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+
+/**
+ * Implementation of {@link TimeScheduler} based on a hashed hierarchical timing wheel. Level 0 has wheel_size buckets
+ * of one tick each, level 1 has wheel_size buckets of wheel_size ticks each and so on. A task is added to the bucket
+ * of the lowest level covering its expiration tick; when the wheel of a lower level wraps around, the tasks of the
+ * next bucket of the higher level are cascaded down.<br/>
+ * Scheduling and cancelling a task are O(1): both only add the task to a lock-free queue, which is drained by the
+ * runner thread on the next tick (the runner is the only thread which modifies the wheels). The expired tasks of a
+ * tick are handled as a batch: non-blocking tasks are run by the runner thread (if non_blocking_task_handling is
+ * true), or else submitted to the thread pool as a single task. Blocking tasks are submitted individually.<br/>
+ * Tasks are executed at most one tick late. Compared to {@link TimeScheduler3}, this is beneficial when a large
+ * number of tasks is scheduled and cancelled before they expire (e.g. request timeouts).
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class TimingWheelScheduler implements TimeScheduler, Runnable {
+    /** Thread pool used to execute the tasks */
+    protected Executor                    pool;
+    protected ThreadPool                  thread_pool;
+
+    protected final long                  tick;       // duration of a tick (ns)
+    protected final int                   bits;       // log2(wheel_size)
+    protected final long                  mask;       // wheel_size-1
+    protected final Bucket[][]            wheels;     // wheels[level][bucket]
+
+    /** Tasks to be added to the wheels, and tasks to be removed from them (cancelled) */
+    protected final Queue<Task>           additions=new ConcurrentLinkedQueue<>();
+    protected final Queue<Task>           cancellations=new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger         size=new AtomicInteger();
+
+    /** Held by the runner while processing a tick, and by other threads inspecting the wheels */
+    protected final Lock                  lock=new ReentrantLock();
+    protected final long                  start_time; // time (ns) of tick 0
+    protected long                        current_tick; // the last tick processed; only accessed by the runner
+
+    /** Thread which advances the wheels and submits expired tasks to the pool for execution */
+    protected volatile Thread             runner;
+
+    protected static final Log            log=LogFactory.getLog(TimingWheelScheduler.class);
+
+    protected ThreadFactory               timer_thread_factory;
+
+    // if true, non-blocking timer tasks are run directly by the runner thread and not submitted to the thread pool
+    protected boolean                     non_blocking_task_handling=true;
+
+    protected boolean                     shut_down_pool;
+
+    // stats, only modified by the runner
+    protected volatile long               num_expired, num_cascaded, num_batches;
+
+    protected enum TaskType               {dynamic, fixed_rate, fixed_delay}
+
+    public static final long              DEFAULT_TICK=10; // ms
+    public static final int               DEFAULT_WHEEL_SIZE=512;
+    public static final int               DEFAULT_LEVELS=4;
+
+
+    /** Creates a scheduler with its own thread pool */
+    public TimingWheelScheduler() {
+        this(DEFAULT_TICK, DEFAULT_WHEEL_SIZE, DEFAULT_LEVELS);
+    }
+
+    /** Creates a scheduler with its own thread pool */
+    public TimingWheelScheduler(long tick, int wheel_size, int levels) {
+        this(tick, wheel_size, levels, new ThreadPoolExecutor(4, 10,
+                                                              30000, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(100),
+                                                              Executors.defaultThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy()));
+        shut_down_pool=true;
+        start();
+    }
+
+    public TimingWheelScheduler(ThreadPool thread_pool, ThreadFactory factory, boolean start) {
+        this(thread_pool, factory, DEFAULT_TICK, DEFAULT_WHEEL_SIZE, DEFAULT_LEVELS, start);
+    }
+
+    /**
+     * Creates a new scheduler
+     * @param thread_pool The thread pool executing the tasks
+     * @param factory The thread factory creating the runner thread
+     * @param tick The duration of a tick (ms)
+     * @param wheel_size The number of buckets per level (rounded up to a power of 2)
+     * @param levels The number of levels
+     * @param start Whether to start the runner thread
+     */
+    public TimingWheelScheduler(ThreadPool thread_pool, ThreadFactory factory, long tick, int wheel_size, int levels,
+                                boolean start) {
+        this(tick, wheel_size, levels, thread_pool.getThreadPool());
+        timer_thread_factory=factory;
+        this.thread_pool=Objects.requireNonNull(thread_pool);
+        if(start)
+            start();
+    }
+
+    protected TimingWheelScheduler(long tick, int wheel_size, int levels, Executor pool) {
+        if(tick <= 0)
+            throw new IllegalArgumentException("tick has to be positive");
+        if(levels <= 0)
+            throw new IllegalArgumentException("levels has to be positive");
+        this.tick=TimeUnit.NANOSECONDS.convert(tick, TimeUnit.MILLISECONDS);
+        int size=Util.getNextHigherPowerOfTwo(Math.max(wheel_size, 2));
+        this.bits=Integer.numberOfTrailingZeros(size);
+        if(bits * levels >= Long.SIZE - 1)
+            throw new IllegalArgumentException(String.format("wheel_size (%d) and levels (%d) are too large", size, levels));
+        this.mask=size-1;
+        wheels=new Bucket[levels][size];
+        for(Bucket[] wheel: wheels)
+            for(int i=0; i < wheel.length; i++)
+                wheel[i]=new Bucket();
+        start_time=System.nanoTime();
+        this.pool=pool;
+    }
+
+    public void    setThreadFactory(ThreadFactory f)     {condSet((p) -> p.setThreadFactory(f));}
+    public void    setThreadPool(Executor new_pool)      {pool=new_pool;}
+    public int     getMinThreads()                       {return condGet(ThreadPoolExecutor::getCorePoolSize, 0);}
+    public void    setMinThreads(int size)               {condSet(p -> p.setCorePoolSize(size));}
+    public int     getMaxThreads()                       {return condGet(ThreadPoolExecutor::getMaximumPoolSize, 0);}
+    public void    setMaxThreads(int size)               {condSet(p -> p.setMaximumPoolSize(size));}
+    public long    getKeepAliveTime()                    {return condGet(p -> p.getKeepAliveTime(TimeUnit.MILLISECONDS), 0L);}
+    public void    setKeepAliveTime(long time)           {condSet(p -> p.setKeepAliveTime(time, TimeUnit.MILLISECONDS));}
+    public int     getCurrentThreads()                   {return condGet(ThreadPoolExecutor::getPoolSize, 0);}
+    public int     getQueueSize()                        {return condGet(p -> p.getQueue().size(), 0);}
+    public int     size()                                {return size.get();}
+    public String  toString()                            {return getClass().getSimpleName();}
+    public boolean isShutdown()                          {return condGet(ThreadPoolExecutor::isShutdown, false);}
+    public boolean getNonBlockingTaskHandling()          {return non_blocking_task_handling;}
+    public void    setNonBlockingTaskHandling(boolean b) {this.non_blocking_task_handling=b;}
+    public long    tick()                                {return TimeUnit.MILLISECONDS.convert(tick, TimeUnit.NANOSECONDS);}
+    public int     wheelSize()                           {return (int)mask+1;}
+    public int     levels()                              {return wheels.length;}
+    public long    numExpired()                          {return num_expired;}
+    public long    numCascaded()                         {return num_cascaded;}
+    public long    numBatches()                          {return num_batches;}
+
+
+    /** Returns the number of occupied buckets and the number of tasks for each level */
+    public String occupancy() {
+        StringBuilder sb=new StringBuilder();
+        lock.lock();
+        try {
+            for(int level=0; level < wheels.length; level++) {
+                int buckets=0, tasks=0;
+                for(Bucket b: wheels[level]) {
+                    if(b.size > 0) {
+                        buckets++;
+                        tasks+=b.size;
+                    }
+                }
+                sb.append(String.format("level %d: %d/%d buckets occupied, %d tasks\n", level, buckets, wheels[level].length, tasks));
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        return sb.append(String.format("pending additions: %d, expired: %d, cascaded: %d, batches: %d",
+                                       additions.size(), num_expired, num_cascaded, num_batches)).toString();
+    }
+
+    public String dumpTimerTasks() {
+        StringBuilder sb=new StringBuilder();
+        lock.lock();
+        try {
+            for(Bucket[] wheel: wheels)
+                for(Bucket b: wheel)
+                    for(Task task=b.head; task != null; task=task.next) {
+                        sb.append(task);
+                        if(task.isCancelled())
+                            sb.append(" (cancelled)");
+                        sb.append("\n");
+                    }
+        }
+        finally {
+            lock.unlock();
+        }
+        for(Task task: additions)
+            sb.append(task).append(" (pending)\n");
+        return sb.toString();
+    }
+
+    /** Cancelled tasks are removed by the runner on the next tick; this removes them immediately */
+    public void removeCancelledTasks() {
+        lock.lock();
+        try {
+            processCancellations();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    public void execute(Runnable task, boolean can_block) {
+        submitToPool(task instanceof TimeScheduler.Task?
+                       new RecurringTask(task, TaskType.dynamic, 0, ((TimeScheduler.Task)task).nextInterval(), TimeUnit.MILLISECONDS, can_block)
+                       : new Task(task, can_block)); // we'll execute the task directly
+    }
+
+    public Future<?> schedule(Runnable work, long initial_delay, TimeUnit unit, boolean can_block) {
+        return doSchedule(new Task(work, initial_delay, unit, can_block), initial_delay);
+    }
+
+    public Future<?> scheduleWithFixedDelay(Runnable work, long initial_delay, long delay, TimeUnit unit, boolean can_block) {
+        return scheduleRecurring(work, TaskType.fixed_delay, initial_delay, delay, unit, can_block);
+    }
+
+    public Future<?> scheduleAtFixedRate(Runnable work, long initial_delay, long delay, TimeUnit unit, boolean can_block) {
+        return scheduleRecurring(work, TaskType.fixed_rate, initial_delay, delay, unit, can_block);
+    }
+
+    /**
+     * Schedule a task for execution at varying intervals. After execution, the task will get rescheduled after
+     * {@link org.jgroups.util.TimeScheduler.Task#nextInterval()} milliseconds. The task is never done until
+     * nextInterval() returns a value <= 0 or the task is cancelled.
+     * @param work the task to execute
+     */
+    public Future<?> scheduleWithDynamicInterval(TimeScheduler.Task work, boolean can_block) {
+        return scheduleRecurring(work, TaskType.dynamic, work.nextInterval(), 0, TimeUnit.MILLISECONDS, can_block);
+    }
+
+
+    public synchronized void start() {
+        if(runner == null || !runner.isAlive()) {
+            runner=timer_thread_factory != null? timer_thread_factory.newThread(this, "Timer runner") : new Thread(this, "Timer runner");
+            runner.start();
+        }
+    }
+
+    /** Stops the timer, cancelling all tasks */
+    public synchronized void stop() {
+        Thread tmp=runner;
+        runner=null;
+        if(tmp != null) {
+            tmp.interrupt();
+            try {tmp.join(500);} catch(InterruptedException e) {}
+        }
+
+        lock.lock();
+        try {
+            for(Bucket[] wheel: wheels)
+                for(Bucket b: wheel)
+                    for(Task task=b.detach(); task != null; task=task.clear())
+                        task.cancel(true);
+            Task task;
+            while((task=additions.poll()) != null)
+                task.cancel(true);
+            cancellations.clear();
+            size.set(0);
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if(pool instanceof ThreadPoolExecutor && shut_down_pool) {
+            ThreadPoolExecutor p=(ThreadPoolExecutor)pool;
+            List<Runnable> remaining_tasks=p.shutdownNow();
+            remaining_tasks.stream().filter(t -> t instanceof Future).forEach(t -> ((Future<?>)t).cancel(true));
+            p.getQueue().clear();
+            try {
+                p.awaitTermination(Global.THREADPOOL_SHUTDOWN_WAIT_TIME, TimeUnit.MILLISECONDS);
+            }
+            catch(InterruptedException e) {
+            }
+        }
+
+        // clears the threads list (https://issues.jboss.org/browse/JGRP-1971)
+        if(timer_thread_factory instanceof LazyThreadFactory)
+            ((LazyThreadFactory)timer_thread_factory).destroy();
+    }
+
+
+    public void run() {
+        final List<Task> expired=new ArrayList<>();
+        while(Thread.currentThread() == runner) {
+            try {
+                waitForNextTick();
+                long now_tick=(System.nanoTime() - start_time) / tick;
+                lock.lock();
+                try {
+                    processAdditions(expired);
+                    processCancellations();
+                    while(current_tick < now_tick) {
+                        current_tick++;
+                        cascade(current_tick, expired);
+                        expire(wheels[0][(int)(current_tick & mask)], expired);
+                    }
+                }
+                finally {
+                    lock.unlock();
+                }
+                dispatch(expired);
+            }
+            catch(Throwable t) {
+                log.error(Util.getMessage("FailedSubmittingTaskToThreadPool"), t);
+            }
+            finally {
+                expired.clear();
+            }
+        }
+    }
+
+
+    protected Future<?> scheduleRecurring(Runnable work, TaskType type, long initial_delay, long delay, TimeUnit unit, boolean can_block) {
+        return doSchedule(new RecurringTask(work, type, initial_delay, delay, unit, can_block), initial_delay);
+    }
+
+    protected Future<?> doSchedule(Task task, long initial_delay) {
+        if(task.getRunnable() == null)
+            throw new NullPointerException();
+        if(isShutdown())
+            return null;
+
+        if(initial_delay <= 0) {
+            submitToPool(task);
+            return task;
+        }
+        return add(task);
+    }
+
+    /** Adds a task; it will be placed into the wheels by the runner on the next tick */
+    protected Task add(Task task) {
+        size.incrementAndGet();
+        additions.add(task);
+        return task;
+    }
+
+    protected void waitForNextTick() {
+        long deadline=start_time + (current_tick+1) * tick;
+        for(;;) {
+            long wait_time=deadline - System.nanoTime();
+            if(wait_time <= 0 || Thread.currentThread() != runner)
+                return;
+            LockSupport.parkNanos(this, wait_time);
+        }
+    }
+
+    protected void processAdditions(List<Task> expired) {
+        Task task;
+        while((task=additions.poll()) != null) {
+            if(task.isDone())
+                size.decrementAndGet();
+            else
+                place(task, expired);
+        }
+    }
+
+    protected void processCancellations() {
+        Task task;
+        while((task=cancellations.poll()) != null) {
+            Bucket b=task.bucket;
+            if(b != null) {
+                b.remove(task);
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /** Adds a task to the bucket of the lowest level which covers its expiration tick */
+    protected void place(Task task, List<Task> expired) {
+        long deadline=task.deadline_tick;
+        if(deadline <= current_tick) {
+            expired(task, expired);
+            return;
+        }
+        int level=0;
+        while(level < wheels.length-1 && (deadline >>> ((level+1) * bits)) != (current_tick >>> ((level+1) * bits)))
+            level++;
+        wheels[level][(int)((deadline >>> (level * bits)) & mask)].add(task);
+    }
+
+    /** Moves the tasks of the buckets of the higher levels which start at tick t down to the lower levels */
+    protected void cascade(long t, List<Task> expired) {
+        for(int level=wheels.length-1; level > 0; level--) {
+            if((t & ((1L << (level * bits)) - 1)) != 0)
+                continue;
+            Bucket b=wheels[level][(int)((t >>> (level * bits)) & mask)];
+            for(Task task=b.detach(), next; task != null; task=next) {
+                next=task.clear();
+                num_cascaded++;
+                if(task.isDone())
+                    size.decrementAndGet();
+                else
+                    place(task, expired);
+            }
+        }
+    }
+
+    protected void expire(Bucket b, List<Task> expired) {
+        for(Task task=b.detach(), next; task != null; task=next) {
+            next=task.clear();
+            if(task.isDone())
+                size.decrementAndGet();
+            else
+                expired(task, expired);
+        }
+    }
+
+    protected void expired(Task task, List<Task> expired) {
+        size.decrementAndGet();
+        expired.add(task);
+    }
+
+    /** Runs or submits the expired tasks of a tick; non-blocking tasks are batched into a single pool task */
+    protected void dispatch(List<Task> expired) {
+        if(expired.isEmpty())
+            return;
+        num_expired+=expired.size();
+        List<Task> batch=null;
+        for(Task task: expired) {
+            if(task.isDone())
+                continue;
+            if(!task.canBlock()) {
+                if(non_blocking_task_handling)
+                    task.run();
+                else {
+                    if(batch == null)
+                        batch=new ArrayList<>();
+                    batch.add(task);
+                }
+                continue;
+            }
+            submitToPool(task);
+        }
+        if(batch != null) {
+            num_batches++;
+            submitToPool(batch.size() == 1? batch.get(0) : new Batch(batch));
+        }
+    }
+
+    protected void condSet(Consumer<ThreadPoolExecutor> setter) {
+        if(pool instanceof ThreadPoolExecutor)
+            setter.accept((ThreadPoolExecutor)pool);
+    }
+
+    protected <T> T condGet(Function<ThreadPoolExecutor,T> getter, T default_value) {
+        if(pool instanceof ThreadPoolExecutor)
+            return getter.apply((ThreadPoolExecutor)pool);
+        return default_value;
+    }
+
+    protected void submitToPool(Task task) {
+        if(non_blocking_task_handling && !task.canBlock()) {
+            task.run();
+            return;
+        }
+        submitToPool((Runnable)task);
+    }
+
+    protected void submitToPool(Runnable task) {
+        try {
+            if(pool == null) {
+                if((pool=thread_pool.getThreadPool()) == null) {
+                    log.warn("timer: thread pool is null, will use caller's thread to execute task %s", task);
+                    task.run();
+                    return;
+                }
+            }
+            pool.execute(task);
+        }
+        catch(RejectedExecutionException rejected) { // only thrown if rejection policy is "abort"
+            Thread thread=timer_thread_factory != null?
+              timer_thread_factory.newThread(task, "Timer temp thread")
+              : new Thread(task, "Timer temp thread");
+            thread.start();
+        }
+    }
+
+    protected long deadlineTick(long deadline) {
+        long elapsed=Math.max(0, deadline - start_time);
+        return (elapsed + tick - 1) / tick; // round up, so a task is never executed early
+    }
+
+
+    /** A doubly-linked list of tasks; only accessed by the runner (or when holding the lock) */
+    protected static class Bucket {
+        protected Task head;
+        protected int  size;
+
+        protected void add(Task t) {
+            t.bucket=this;
+            t.prev=null;
+            t.next=head;
+            if(head != null)
+                head.prev=t;
+            head=t;
+            size++;
+        }
+
+        protected void remove(Task t) {
+            if(t.prev != null)
+                t.prev.next=t.next;
+            else
+                head=t.next;
+            if(t.next != null)
+                t.next.prev=t.prev;
+            t.prev=t.next=null;
+            t.bucket=null;
+            size--;
+        }
+
+        /** Removes all tasks and returns the first; the tasks need to be unlinked with {@link Task#clear()} */
+        protected Task detach() {
+            Task retval=head;
+            head=null;
+            size=0;
+            return retval;
+        }
+    }
+
+    /** Runs a number of non-blocking tasks in a single thread of the pool */
+    protected static class Batch implements Runnable {
+        protected final List<Task> tasks;
+
+        protected Batch(List<Task> tasks) {this.tasks=tasks;}
+
+        public void run() {
+            for(Task task: tasks)
+                task.run();
+        }
+
+        public String toString() {return String.format("batch of %d tasks", tasks.size());}
+    }
+
+    public class Task implements Runnable, Future<Object> {
+        protected final Runnable   runnable;      // the task to execute
+        protected long             deadline;      // time (in ns) at which the task should execute
+        protected long             deadline_tick; // the tick at which the task should execute
+        protected volatile boolean cancelled;
+        protected volatile boolean done;
+        protected final boolean    can_block;
+        protected Task             prev, next;    // only accessed by the runner
+        protected Bucket           bucket;        // the bucket the task is in; only accessed by the runner
+
+        public Task(Runnable runnable, boolean can_block) {
+            this.runnable=runnable;
+            this.can_block=can_block;
+        }
+
+        public Task(Runnable runnable, long initial_delay, TimeUnit unit, boolean can_block) {
+            this.can_block=can_block;
+            this.runnable=runnable;
+            if(runnable == null)
+                throw new IllegalArgumentException("runnable cannot be null");
+            setDeadline(System.nanoTime() + TimeUnit.NANOSECONDS.convert(initial_delay, unit));
+        }
+
+        public Runnable getRunnable() {return runnable;}
+        public boolean  canBlock()    {return can_block;}
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean retval=!isDone();
+            cancelled=true;
+            if(retval)
+                cancellations.add(this); // removed from its bucket by the runner
+            return retval;
+        }
+
+        public boolean isCancelled() {return cancelled;}
+        public boolean isDone()      {return done || cancelled;}
+        public Object  get() throws InterruptedException, ExecutionException {return null;}
+        public Object  get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return null;
+        }
+
+        public void run() {
+            if(isDone())
+                return;
+            try {
+                runnable.run();
+            }
+            catch(Throwable t) {
+                log.error(Util.getMessage("FailedExecutingTask") + ' ' + runnable, t);
+            }
+            finally {
+                done=true;
+            }
+        }
+
+        public String toString() {
+            return String.format("%s (can block=%b)", runnable.toString(), can_block);
+        }
+
+        protected void setDeadline(long deadline) {
+            this.deadline=deadline;
+            this.deadline_tick=deadlineTick(deadline);
+        }
+
+        /** Unlinks the task after {@link Bucket#detach()} and returns the next task */
+        protected Task clear() {
+            Task retval=next;
+            prev=next=null;
+            bucket=null;
+            return retval;
+        }
+    }
+
+    /** Tasks which runs more than once, either dynamic, fixed-rate or fixed-delay, until cancelled */
+    protected class RecurringTask extends Task {
+        protected final TaskType type;
+        protected final long     period;     // ns
+        protected final long     first_time; // ns; time of the first execution
+        protected int            cnt=1;      // number of invocations (for fixed rate invocations)
+
+        public RecurringTask(Runnable runnable, TaskType type, long initial_delay, long delay, TimeUnit unit, boolean can_block) {
+            super(runnable, initial_delay, unit, can_block);
+            this.first_time=deadline;
+            this.type=type;
+            period=TimeUnit.NANOSECONDS.convert(delay, unit);
+            if(type == TaskType.dynamic && !(runnable instanceof TimeScheduler.Task))
+                throw new IllegalArgumentException("Need to provide a TimeScheduler.Task as runnable when type is dynamic");
+        }
+
+        public void run() {
+            if(isDone())
+                return;
+            super.run();
+            if(cancelled)
+                return;
+            done=false; // run again
+
+            switch(type) {
+                case dynamic:
+                    long next_interval=TimeUnit.NANOSECONDS.convert(((TimeScheduler.Task)runnable).nextInterval(), TimeUnit.MILLISECONDS);
+                    if(next_interval <= 0) {
+                        if(log.isTraceEnabled())
+                            log.trace("task will not get rescheduled as interval is " + next_interval);
+                        done=true;
+                        return;
+                    }
+                    setDeadline(System.nanoTime() + next_interval);
+                    break;
+                case fixed_rate:
+                    setDeadline(first_time + cnt++ * period);
+                    break;
+                case fixed_delay:
+                    setDeadline(System.nanoTime() + period);
+                    break;
+            }
+            add(this); // schedule this task again
+        }
+    }
+}
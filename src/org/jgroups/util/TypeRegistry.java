@@ -0,0 +1,161 @@
+package org.jgroups.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps user-defined type IDs to classes and their {@link Marshaller}s, similar to the magic IDs of
+ * {@link org.jgroups.conf.ClassConfigurator}. Instances of a registered class are marshalled by
+ * {@link Util#objectToStream(Object, DataOutput)} as type ID followed by the output of the marshaller, instead of
+ * falling back to Java serialization. Only the exact class is matched, not subclasses.<br/>
+ * The same IDs and classes have to be registered in all members, before they are used.
+ * <pre>
+ *   TypeRegistry.register((short)1, Person.class,
+ *                         (p, out) -> {out.writeUTF(p.name()); out.writeInt(p.age());},
+ *                         in -> new Person(in.readUTF(), in.readInt()));
+ * </pre>
+ * @author Bela Ban
+ * @since  5.2
+ */
+public final class TypeRegistry {
+    private static final Map<Class<?>,Entry<?>> by_class=new ConcurrentHashMap<>();
+    private static volatile Entry<?>[]          by_id=new Entry<?>[0];
+    private static volatile int                 size; // fast check in Util.objectToStream() etc
+
+    private TypeRegistry() {
+        throw new InstantiationError("Must not instantiate this class");
+    }
+
+    public static <T> void register(short id, Class<T> cl, Marshaller.Writer<T> writer, Marshaller.Reader<T> reader) {
+        register(id, cl, Marshaller.create(writer, reader));
+    }
+
+    /**
+     * Registers a class with a marshaller
+     * @param id The ID of the type. Needs to be >= 0
+     * @param cl The class
+     * @param m The marshaller for instances of cl
+     * @throws IllegalArgumentException If the ID is negative, or the ID or class is already registered
+     */
+    public static synchronized <T> void register(short id, Class<T> cl, Marshaller<T> m) {
+        Objects.requireNonNull(cl);
+        Objects.requireNonNull(m);
+        if(id < 0)
+            throw new IllegalArgumentException(String.format("type ID (%d) must be >= 0", id));
+        Entry<?> e=get(id);
+        if(e != null)
+            throw new IllegalArgumentException(String.format("type ID %d is already taken by %s", id, e.cl.getName()));
+        if((e=by_class.get(cl)) != null)
+            throw new IllegalArgumentException(String.format("%s is already registered with type ID %d", cl.getName(), e.id));
+        Entry<?>[] tmp=by_id.length <= id? Arrays.copyOf(by_id, id+1) : by_id.clone();
+        tmp[id]=new Entry<>(id, cl, m);
+        by_class.put(cl, tmp[id]);
+        by_id=tmp;
+        size=by_class.size();
+    }
+
+    public static synchronized boolean unregister(short id) {
+        Entry<?> e=get(id);
+        if(e == null)
+            return false;
+        Entry<?>[] tmp=by_id.clone();
+        tmp[id]=null;
+        by_class.remove(e.cl);
+        by_id=tmp;
+        size=by_class.size();
+        return true;
+    }
+
+    public static synchronized void clear() {
+        by_class.clear();
+        by_id=new Entry<?>[0];
+        size=0;
+    }
+
+    public static boolean isEmpty()                {return size == 0;}
+    public static int     size()                   {return size;}
+    public static boolean isRegistered(Object obj) {return obj != null && size > 0 && by_class.containsKey(obj.getClass());}
+
+    /** Returns the type ID of a class, or -1 if not registered */
+    public static short getId(Class<?> cl) {
+        Entry<?> e=by_class.get(cl);
+        return e != null? e.id : -1;
+    }
+
+    public static <T> Marshaller<T> getMarshaller(Class<T> cl) {
+        Entry<T> e=(Entry<T>)by_class.get(cl);
+        return e != null? e.marshaller : null;
+    }
+
+    public static String print() {
+        StringBuilder sb=new StringBuilder();
+        for(Entry<?> e: by_id)
+            if(e != null)
+                sb.append(String.format("%d: %s\n", e.id, e.cl.getName()));
+        return sb.toString();
+    }
+
+    /**
+     * Writes the type ID and the marshalled object if its class is registered
+     * @return True if the object was written, false if its class is not registered (nothing was written)
+     */
+    static boolean write(Object obj, byte type, DataOutput out) throws IOException {
+        Entry<Object> e=(Entry<Object>)by_class.get(obj.getClass());
+        if(e == null)
+            return false;
+        out.writeByte(type);
+        out.writeShort(e.id);
+        e.marshaller.write(obj, out);
+        return true;
+    }
+
+    /** Reads the type ID (the type byte has already been read) and the object */
+    static <T> T read(DataInput in) throws IOException, ClassNotFoundException {
+        short id=in.readShort();
+        Entry<?> e=get(id);
+        if(e == null)
+            throw new IllegalStateException(String.format("type ID %d is not registered", id));
+        return (T)e.marshaller.read(in);
+    }
+
+    /** Returns the size of the type byte, type ID and marshalled object, or -1 if the class isn't registered */
+    static int size(Object obj) {
+        Entry<Object> e=(Entry<Object>)by_class.get(obj.getClass());
+        if(e == null)
+            return -1;
+        int len=e.marshaller.size(obj);
+        if(len < 0) {
+            CountingDataOutput out=new CountingDataOutput();
+            try {
+                e.marshaller.write(obj, out);
+            }
+            catch(IOException ex) {
+                throw new IllegalStateException(String.format("failed computing the size of %s", obj), ex);
+            }
+            len=out.position();
+        }
+        return Byte.BYTES + Short.BYTES + len;
+    }
+
+    private static Entry<?> get(short id) {
+        Entry<?>[] tmp=by_id;
+        return id >= 0 && id < tmp.length? tmp[id] : null;
+    }
+
+    private static class Entry<T> {
+        private final short         id;
+        private final Class<T>      cl;
+        private final Marshaller<T> marshaller;
+
+        private Entry(short id, Class<T> cl, Marshaller<T> marshaller) {
+            this.id=id;
+            this.cl=cl;
+            this.marshaller=marshaller;
+        }
+    }
+}
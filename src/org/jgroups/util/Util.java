@@ -14,6 +14,7 @@ import org.jgroups.protocols.pbcast.NAKACK2;
 import org.jgroups.protocols.pbcast.STABLE;
 import org.jgroups.protocols.relay.SiteMaster;
 import org.jgroups.protocols.relay.SiteUUID;
+import org.jgroups.stack.Configurator;
 import org.jgroups.stack.IpAddress;
 import org.jgroups.stack.Protocol;
 import org.jgroups.stack.ProtocolStack;
@@ -47,6 +48,9 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.lang.System.nanoTime;
+import static org.jgroups.protocols.TP.CLUSTER_NAME_HASH;
+import static org.jgroups.protocols.TP.COMPACT;
+import static org.jgroups.protocols.TP.COMPRESSED;
 import static org.jgroups.protocols.TP.LIST;
 import static org.jgroups.protocols.TP.MULTICAST;
 
@@ -81,6 +85,7 @@ public class Util {
 
     private static final byte    TYPE_STREAMABLE   = 50;
     private static final byte    TYPE_SERIALIZABLE = 51;
+    private static final byte    TYPE_MARSHALLED   = 52; // registered with TypeRegistry
 
 
     public static final int      MAX_PORT=65535; // highest port allocatable
@@ -691,6 +696,8 @@ public class Util {
             case TYPE_STREAMABLE:
                 DataInput in=new ByteArrayDataInputStream(buffer,offset,length);
                 return readGenericStreamable(in, loader);
+            case TYPE_MARSHALLED:
+                return TypeRegistry.read(new ByteArrayDataInputStream(buffer,offset,length));
             case TYPE_SERIALIZABLE: // the object is Externalizable or Serializable
                 InputStream in_stream=new ByteArrayInputStream(buffer,offset,length);
                 try(ObjectInputStream oin=new ObjectInputStreamWithClassloader(in_stream, loader)) {
@@ -731,6 +738,8 @@ public class Util {
             case TYPE_STREAMABLE:
                 DataInput in=new ByteBufferInputStream(buffer);
                 return readGenericStreamable(in, loader);
+            case TYPE_MARSHALLED:
+                return TypeRegistry.read(new ByteBufferInputStream(buffer));
             case TYPE_SERIALIZABLE: // the object is Externalizable or Serializable
                 InputStream in_stream=new ByteBufferInputStream(buffer);
                 try(ObjectInputStream oin=new ObjectInputStreamWithClassloader(in_stream, loader)) {
@@ -769,6 +778,14 @@ public class Util {
     public static ByteArray objectToBuffer(Object obj) throws IOException {
         if(obj == null)
             return new ByteArray(TYPE_NULL_ARRAY);
+        if(!TypeRegistry.isEmpty()) {
+            int size=TypeRegistry.size(obj);
+            if(size > 0) {
+                ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(size);
+                TypeRegistry.write(obj, TYPE_MARSHALLED, out);
+                return out.getBuffer();
+            }
+        }
         if(obj instanceof Streamable)
             return writeStreamable((Streamable)obj);
         Byte type=obj instanceof Class<?>? TYPES.get(obj) : TYPES.get(obj.getClass());
@@ -882,6 +899,11 @@ public class Util {
     public static int size(Object obj) {
         if(obj == null)
             return Global.BYTE_SIZE;
+        if(!TypeRegistry.isEmpty()) {
+            int size=TypeRegistry.size(obj);
+            if(size > 0)
+                return size;
+        }
         if(obj instanceof SizeStreamable)
             return Global.BYTE_SIZE + Util.size((SizeStreamable)obj);
         Byte type=obj instanceof Class<?>? TYPES.get(obj) : TYPES.get(obj.getClass());
@@ -923,6 +945,8 @@ public class Util {
             out.write(TYPE_NULL);
             return;
         }
+        if(!TypeRegistry.isEmpty() && TypeRegistry.write(obj, TYPE_MARSHALLED, out))
+            return;
         if(obj instanceof Streamable) {
             out.writeByte(TYPE_STREAMABLE);
             writeGenericStreamable((Streamable)obj,out);
@@ -995,6 +1019,7 @@ public class Util {
         switch(b) {
             case TYPE_NULL:       return null;
             case TYPE_STREAMABLE: return readGenericStreamable(in, loader);
+            case TYPE_MARSHALLED: return TypeRegistry.read(in);
             case TYPE_SERIALIZABLE: // the object is Externalizable or Serializable
                 InputStream is=in instanceof ByteArrayDataInputStream?
                   new org.jgroups.util.InputStreamAdapter((ByteArrayDataInputStream)in) : (InputStream)in;
@@ -1397,6 +1422,25 @@ public class Util {
         msg.writeTo(dos);
     }
 
+    /**
+     * Writes a single message. If dest and src of the message can be written in compact form (see
+     * {@link CompactAddresses}), or a hash of the cluster name is to be sent, the message is written as a list of 1
+     * message instead
+     * @param addrs The compact addresses; if null, the message is written with full addresses
+     * @param hash_cluster_name Whether to send the hash of the cluster name rather than the cluster name
+     */
+    public static void writeMessage(Message msg, DataOutput dos, boolean multicast, byte[] cluster_name,
+                                    short transport_id, CompactAddresses addrs, boolean hash_cluster_name) throws IOException {
+        MemberIndex index=addrs != null? addrs.indexFor(msg.getDest(), msg.getSrc()) : null;
+        if(index == null && !hash_cluster_name) {
+            writeMessage(msg, dos, multicast);
+            return;
+        }
+        writeMessageListHeader(msg.getDest(), msg.getSrc(), cluster_name, 1, dos, multicast, index, hash_cluster_name);
+        dos.writeShort(msg.getType());
+        msg.writeToNoAddrs(msg.getSrc(), dos, transport_id); // exclude the transport header
+    }
+
     public static Message readMessage(DataInput in, MessageFactory mf) throws IOException, ClassNotFoundException {
         short type=in.readShort();
         Message msg=mf.create(type);
@@ -1417,7 +1461,14 @@ public class Util {
      */
     public static void writeMessageList(Address dest, Address src, byte[] cluster_name,
                                         List<Message> msgs, DataOutput dos, boolean multicast, short transport_id) throws IOException {
-        writeMessageListHeader(dest, src, cluster_name, msgs != null ? msgs.size() : 0, dos, multicast);
+        writeMessageList(dest, src, cluster_name, msgs, dos, multicast, transport_id, null, false);
+    }
+
+    public static void writeMessageList(Address dest, Address src, byte[] cluster_name, List<Message> msgs,
+                                        DataOutput dos, boolean multicast, short transport_id,
+                                        CompactAddresses addrs, boolean hash_cluster_name) throws IOException {
+        writeMessageListHeader(dest, src, cluster_name, msgs != null ? msgs.size() : 0, dos, multicast, addrs,
+                               hash_cluster_name);
 
         if(msgs != null)
             for(Message msg: msgs) {
@@ -1429,7 +1480,14 @@ public class Util {
     public static void writeMessageList(Address dest, Address src, byte[] cluster_name,
                                         Message[] msgs, int offset, int length, DataOutput dos, boolean multicast,
                                         short transport_id) throws IOException {
-        writeMessageListHeader(dest, src, cluster_name, length, dos, multicast);
+        writeMessageList(dest, src, cluster_name, msgs, offset, length, dos, multicast, transport_id, null, false);
+    }
+
+    public static void writeMessageList(Address dest, Address src, byte[] cluster_name,
+                                        Message[] msgs, int offset, int length, DataOutput dos, boolean multicast,
+                                        short transport_id, CompactAddresses addrs,
+                                        boolean hash_cluster_name) throws IOException {
+        writeMessageListHeader(dest, src, cluster_name, length, dos, multicast, addrs, hash_cluster_name);
 
         if(msgs != null)
             for(int i=0; i < length; i++) {
@@ -1440,21 +1498,51 @@ public class Util {
     }
 
     public static void writeMessageListHeader(Address dest, Address src, byte[] cluster_name, int numMsgs, DataOutput dos, boolean multicast) throws IOException {
+        writeMessageListHeader(dest, src, cluster_name, numMsgs, dos, multicast, (MemberIndex)null, false);
+    }
+
+    /**
+     * Writes the header of a message list. If addrs is non-null, dest is non-null and dest and src are members of the
+     * current view, they are written in compact form (see {@link CompactAddresses}). If hash_cluster_name is true, the hash of
+     * the cluster name ({@link AsciiString#hashCode()}) is written rather than the cluster name
+     */
+    public static void writeMessageListHeader(Address dest, Address src, byte[] cluster_name, int numMsgs, DataOutput dos,
+                                              boolean multicast, CompactAddresses addrs,
+                                              boolean hash_cluster_name) throws IOException {
+        MemberIndex index=addrs != null? addrs.indexFor(dest, src) : null;
+        writeMessageListHeader(dest, src, cluster_name, numMsgs, dos, multicast, index, hash_cluster_name);
+    }
+
+    protected static void writeMessageListHeader(Address dest, Address src, byte[] cluster_name, int numMsgs,
+                                                 DataOutput dos, boolean multicast, MemberIndex index,
+                                                 boolean hash_cluster_name) throws IOException {
         dos.writeShort(Version.version);
 
+        hash_cluster_name=hash_cluster_name && cluster_name != null;
         byte flags=LIST;
         if(multicast)
             flags+=MULTICAST;
+        if(index != null)
+            flags+=COMPACT;
+        if(hash_cluster_name)
+            flags+=CLUSTER_NAME_HASH;
 
         dos.writeByte(flags);
 
-        Util.writeAddress(dest, dos);
-
-        Util.writeAddress(src, dos);
+        if(index != null)
+            CompactAddresses.write(dest, src, index, dos);
+        else {
+            Util.writeAddress(dest, dos);
+            Util.writeAddress(src, dos);
+        }
 
-        dos.writeShort(cluster_name != null? cluster_name.length : -1);
-        if(cluster_name != null)
-            dos.write(cluster_name);
+        if(hash_cluster_name)
+            dos.writeInt(AsciiString.hashCode(cluster_name));
+        else {
+            dos.writeShort(cluster_name != null? cluster_name.length : -1);
+            if(cluster_name != null)
+                dos.write(cluster_name);
+        }
 
         dos.writeInt(numMsgs);
     }
@@ -1498,14 +1586,55 @@ public class Util {
      * @return an array of 2 MessageBatches in the order above, the first batch is at index 0
      */
     public static MessageBatch[] readMessageBatch(DataInput in, boolean multicast, MessageFactory factory)
+      throws IOException, ClassNotFoundException {
+        return readMessageBatch(in, (byte)(multicast? MULTICAST : 0), factory, null, null, 0);
+    }
+
+    /**
+     * Reads a list of messages into 2 MessageBatches (regular and OOB).<br/>
+     * If {@link TP#COMPACT} is set in flags, the addresses are read in compact form and resolved against addrs (see
+     * {@link CompactAddresses}). If they cannot be resolved, the messages are still read, but the sender of the
+     * batches will be null.<br/>
+     * If {@link TP#CLUSTER_NAME_HASH} is set, the hash of the cluster name is read. If it matches the hash of
+     * cluster_name, the cluster name of the batches is set to cluster_name, otherwise to a name derived from the hash
+     * (which won't match any cluster name).
+     * @param flags The flags read from the header
+     * @param addrs The compact addresses used to resolve addresses, may be null
+     * @param cluster_name The local cluster name, used to resolve the hash of the cluster name, may be null
+     * @param cluster_name_hash The hash of cluster_name
+     */
+    public static MessageBatch[] readMessageBatch(DataInput in, byte flags, MessageFactory factory,
+                                                  CompactAddresses addrs, AsciiString cluster_name, int cluster_name_hash)
       throws IOException, ClassNotFoundException {
         MessageBatch[] batches=new MessageBatch[2]; // [0]: reg, [1]: OOB
-        Address dest=Util.readAddress(in);
-        Address src=Util.readAddress(in);
-        short length=in.readShort();
-        byte[] cluster_name=length >= 0? new byte[length] : null;
-        if(cluster_name != null)
-            in.readFully(cluster_name, 0, cluster_name.length);
+        boolean multicast=(flags & MULTICAST) == MULTICAST;
+        Address dest, src;
+        if((flags & COMPACT) == COMPACT) {
+            int checksum=in.readInt();
+            short dest_index=in.readShort(), src_index=in.readShort();
+            MemberIndex index=addrs != null? addrs.get(checksum) : null;
+            dest=index != null? index.get(dest_index) : null;
+            src=index != null? index.get(src_index) : null;
+            if(dest_index != CompactAddresses.NULL_INDEX && dest == null)
+                src=null; // dest could not be resolved
+        }
+        else {
+            dest=Util.readAddress(in);
+            src=Util.readAddress(in);
+        }
+        AsciiString cname;
+        if((flags & CLUSTER_NAME_HASH) == CLUSTER_NAME_HASH) {
+            int hash=in.readInt();
+            cname=cluster_name != null && cluster_name_hash == hash? cluster_name
+              : new AsciiString(String.format("#%08x", hash));
+        }
+        else {
+            short length=in.readShort();
+            byte[] tmp=length >= 0? new byte[length] : null;
+            if(tmp != null)
+                in.readFully(tmp, 0, tmp.length);
+            cname=tmp != null? new AsciiString(tmp) : null;
+        }
 
         int len=in.readInt();
         for(int i=0; i < len; i++) {
@@ -1520,7 +1649,7 @@ public class Util {
                 index=1;
             }
             if(batches[index] == null)
-                batches[index]=new MessageBatch(dest, src, cluster_name != null? new AsciiString(cluster_name) : null, multicast, mode, len);
+                batches[index]=new MessageBatch(dest, src, cname, multicast, mode, len);
             batches[index].add(msg);
         }
         return batches;
@@ -1537,6 +1666,7 @@ public class Util {
             return;
         byte[] tmp=new byte[Global.INT_SIZE];
         MessageFactory mf=new DefaultMessageFactory();
+        BundleCompressor compressor=new BundleCompressor();
         try(DataInputStream dis=new DataInputStream(input)) {
             for(;;) {
                 // for TCP, we send the length first; this needs to be skipped as it is not part of the JGroups payload
@@ -1557,10 +1687,10 @@ public class Util {
                 }
                 short version=dis.readShort();
                 byte flags=dis.readByte();
+                DataInput in=(flags & COMPRESSED) == COMPRESSED? new ByteArrayDataInputStream(compressor.decompress(dis)) : dis;
                 boolean is_message_list=(flags & LIST) == LIST;
-                boolean multicast=(flags & MULTICAST) == MULTICAST;
                 if(is_message_list) { // used if message bundling is enabled
-                    final MessageBatch[] batches=Util.readMessageBatch(dis,multicast, mf);
+                    final MessageBatch[] batches=Util.readMessageBatch(in, flags, mf, null, null, 0);
                     for(MessageBatch batch: batches) {
                         if(batch == null)
                             continue;
@@ -1573,7 +1703,7 @@ public class Util {
                     }
                 }
                 else {
-                    Message msg=Util.readMessage(dis, mf);
+                    Message msg=Util.readMessage(in, mf);
                     if(msg_consumer != null)
                         msg_consumer.accept(version, msg);
                 }
@@ -3076,6 +3206,7 @@ public class Util {
     public static Object[][] createTimer() {
         return new Object[][]{
           {new TimeScheduler3()},
+          {new TimingWheelScheduler()}
         };
     }
 
@@ -3417,7 +3548,7 @@ public class Util {
     public static List<Object> getComponents(Object target) {
         if(target == null)
             return null;
-        Field[] fields=Util.getAllDeclaredFieldsWithAnnotations(target.getClass(), Component.class);
+        Field[] fields=Configurator.metadata(target.getClass()).componentFields();
         if(fields == null || fields.length == 0)
             return null;
         List<Object> components=new ArrayList<>(fields.length);
@@ -3437,7 +3568,7 @@ public class Util {
     public static void forAllComponents(Object target, BiConsumer<Object,String> func) {
         if(target == null)
             return;
-        Field[] fields=Util.getAllDeclaredFieldsWithAnnotations(target.getClass(), Component.class);
+        Field[] fields=Configurator.metadata(target.getClass()).componentFields();
         if(fields == null || fields.length == 0)
             return;
         for(Field f: fields) {
@@ -3455,7 +3586,7 @@ public class Util {
     public static void forAllComponentTypes(Class<?> cl, BiConsumer<Class<?>,String> func) {
         if(cl == null)
             return;
-        Field[] fields=Util.getAllDeclaredFieldsWithAnnotations(cl, Component.class);
+        Field[] fields=Configurator.metadata(cl).componentFields();
         if(fields == null || fields.length == 0)
             return;
         for(Field f: fields) {
@@ -3486,6 +3617,11 @@ public class Util {
         return (obj instanceof Class<?>? TYPES.get(obj) : TYPES.get(obj.getClass())) != null;
     }
 
+    /** Returns true if {@link #size(Object)} can compute the marshalled size of obj without serializing it */
+    public static boolean isSizeable(Object obj) {
+        return obj == null || obj instanceof SizeStreamable || isPrimitiveType(obj) || TypeRegistry.isRegistered(obj);
+    }
+
     public static Method findMethod(Object target,List<String> possible_names,Class<?>... parameter_types) {
         if(target == null)
             return null;
@@ -0,0 +1,115 @@
+package org.jgroups.blocks;
+
+import org.jgroups.Global;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+
+/**
+ * Tests {@link MethodInvokers}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL)
+public class MethodInvokersTest {
+    protected static final short ADD=1, CONCAT=2;
+
+    public void testArities() throws Exception {
+        Target t=new Target();
+        for(int i=0; i <= 6; i++) {
+            Class<?>[] types=new Class<?>[i];
+            Object[] args=new Object[i];
+            int expected=0;
+            for(int j=0; j < i; j++) {
+                types[j]=int.class;
+                args[j]=j+1;
+                expected+=j+1;
+            }
+            Method m=Target.class.getDeclaredMethod("sum" + i, types);
+            MethodInvokers.Invoker inv=MethodInvokers.create(m);
+            Object retval=MethodInvokers.invoke(inv, t, args);
+            assert retval.equals(expected) : String.format("sum%d: %s (expected %d)", i, retval, expected);
+        }
+    }
+
+    public void testVoidAndPrivateMethods() throws Exception {
+        Target t=new Target();
+        MethodInvokers.Invoker inv=MethodInvokers.create(Target.class.getDeclaredMethod("increment"));
+        assert MethodInvokers.invoke(inv, t, null) == null;
+        assert t.counter == 1;
+        inv=MethodInvokers.create(Target.class.getDeclaredMethod("secret", String.class));
+        assert MethodInvokers.invoke(inv, t, new Object[]{"x"}).equals("secret-x");
+    }
+
+    public void testStaticMethod() throws Exception {
+        MethodInvokers.Invoker inv=MethodInvokers.create(Target.class.getDeclaredMethod("twice", long.class));
+        assert MethodInvokers.invoke(inv, new Target(), new Object[]{21L}).equals(42L);
+    }
+
+    public void testExceptionIsPropagated() throws Exception {
+        MethodInvokers.Invoker inv=MethodInvokers.create(Target.class.getDeclaredMethod("fail"));
+        try {
+            MethodInvokers.invoke(inv, new Target(), null);
+            assert false : "should have thrown an exception";
+        }
+        catch(IllegalStateException ex) {
+            assert ex.getMessage().equals("boom");
+        }
+    }
+
+    public void testWrongNumberOfArgs() throws Exception {
+        MethodInvokers.Invoker inv=MethodInvokers.create(Target.class.getDeclaredMethod("sum2", int.class, int.class));
+        try {
+            MethodInvokers.invoke(inv, new Target(), new Object[]{1});
+            assert false : "should have thrown an exception";
+        }
+        catch(IllegalArgumentException expected) {
+        }
+    }
+
+    public void testCacheById() throws Exception {
+        MethodInvokers invokers=new MethodInvokers();
+        MethodLookup lookup=id -> {
+            try {
+                return id == ADD? Target.class.getDeclaredMethod("sum2", int.class, int.class)
+                  : id == CONCAT? Target.class.getDeclaredMethod("secret", String.class) : null;
+            }
+            catch(NoSuchMethodException e) {
+                return null;
+            }
+        };
+        MethodInvokers.Invoker inv=invokers.get(Target.class, ADD, lookup);
+        assert inv != null && invokers.get(Target.class, ADD, lookup) == inv;
+        assert invokers.get(Target.class, CONCAT, lookup) != null;
+        assert invokers.get(Target.class, (short)3, lookup) == null;
+        assert invokers.size() == 2;
+        assert MethodInvokers.invoke(inv, new Target(), new Object[]{1, 2}).equals(3);
+    }
+
+    public void testCacheByName() throws Exception {
+        MethodInvokers invokers=new MethodInvokers();
+        MethodInvokers.Invoker inv=invokers.get(Target.class, "sum3", new Class<?>[]{int.class, int.class, int.class});
+        assert inv != null;
+        assert invokers.get(Target.class, "sum3", new Class<?>[]{int.class, int.class, int.class}) == inv;
+        assert invokers.get(Target.class, "nonExistent", null) == null;
+        assert MethodInvokers.invoke(inv, new Target(), new Object[]{1, 2, 3}).equals(6);
+        Method m=Target.class.getDeclaredMethod("sum0");
+        assert invokers.get(m) == invokers.get(m);
+    }
+
+    protected static class Target {
+        protected int counter;
+
+        public int sum0()                                             {return 0;}
+        public int sum1(int a)                                        {return a;}
+        public int sum2(int a, int b)                                 {return a+b;}
+        public int sum3(int a, int b, int c)                          {return a+b+c;}
+        public int sum4(int a, int b, int c, int d)                   {return a+b+c+d;}
+        public int sum5(int a, int b, int c, int d, int e)            {return a+b+c+d+e;}
+        public int sum6(int a, int b, int c, int d, int e, int f)     {return a+b+c+d+e+f;}
+        public void increment()                                       {counter++;}
+        private String secret(String s)                               {return "secret-" + s;}
+        public static long twice(long l)                              {return l*2;}
+        public void fail()                                            {throw new IllegalStateException("boom");}
+    }
+}
@@ -17,6 +17,7 @@ import org.testng.annotations.Test;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.jgroups.Message.Flag.DONT_BUNDLE;
@@ -163,6 +164,24 @@ public class RpcDispatcherTest {
         assert res != null && res == 2;
     }
 
+    public void testStripedRequestTable() throws Exception {
+        da.stripedRequestTable(true);
+        assert da.correlator().stripedRequestTable();
+        RequestOptions opts=RequestOptions.SYNC().timeout(2000);
+        for(int i=0; i < 10; i++) {
+            Integer res=da.callRemoteMethod(b.getAddress(), "foo", null, null, opts);
+            assert res != null && res == 2;
+            RspList<Integer> rsps=da.callRemoteMethods(null, "foo", null, null, opts);
+            assert rsps.size() == 3 && rsps.getValue(a.getAddress()) == 1;
+        }
+        List<CompletableFuture<Integer>> futures=new ArrayList<>();
+        for(int i=0; i < 10; i++)
+            futures.add(da.callRemoteMethodWithFuture(c.getAddress(), new MethodCall("foo", null, null), opts));
+        for(CompletableFuture<Integer> f: futures)
+            assert f.get(5, TimeUnit.SECONDS) == 3;
+        assert da.correlator().request_table.size() == 0;
+    }
+
     public void testUnicastInvocationWithTimeout() throws Exception {
         RequestOptions opts=RequestOptions.SYNC().timeout(1000);
         Method meth=ServerObject.class.getDeclaredMethod("sleep", long.class);
@@ -299,6 +318,59 @@ public class RpcDispatcherTest {
             assert rsp.getValue() != null && rsp.getValue().equals(7);
     }
 
+    public void testMulticastBatch() throws Exception {
+        Stream.of(da,db,dc).forEach(d -> d.setMethodLookup(id -> ServerObject.methods[id]));
+        List<MethodCall> calls=Arrays.asList(new MethodCall((short)0), new MethodCall((short)6, 3, 4),
+                                             new MethodCall((short)3), new MethodCall((short)6, 1, 1));
+        List<RspList<Object>> rsps=da.callRemoteMethods(null, calls, RequestOptions.SYNC());
+        System.out.printf("rsps:\n%s\n", rsps);
+        assert rsps.size() == calls.size();
+        assert rsps.stream().allMatch(l -> l.size() == 3);
+        Map<Address,Integer> foo=Map.of(a.getAddress(), 1, b.getAddress(), 2, c.getAddress(), 3);
+        for(Map.Entry<Address,Rsp<Object>> e: rsps.get(0).entrySet())
+            assert e.getValue().getValue().equals(foo.get(e.getKey()));
+        for(Rsp<Object> rsp: rsps.get(1))
+            assert rsp.getValue().equals(7);
+        for(Rsp<Object> rsp: rsps.get(2)) // an exception doesn't prevent invocation of subsequent calls
+            assert rsp.hasException() && rsp.getException().getMessage().equals("booom");
+        for(Rsp<Object> rsp: rsps.get(3))
+            assert rsp.getValue().equals(2);
+    }
+
+    public void testMulticastBatchWithFutures() throws Exception {
+        List<MethodCall> calls=new ArrayList<>();
+        for(int i=0; i < 100; i++)
+            calls.add(new MethodCall(ServerObject.class.getMethod("add", int.class, int.class), i, 1));
+        List<CompletableFuture<RspList<Integer>>> futures=da.callRemoteMethodsWithFuture(null, calls, RequestOptions.SYNC());
+        assert futures.size() == calls.size();
+        for(int i=0; i < futures.size(); i++) {
+            RspList<Integer> rsps=futures.get(i).get(10, TimeUnit.SECONDS);
+            assert rsps.size() == 3;
+            for(Rsp<Integer> rsp: rsps)
+                assert rsp.getValue() == i+1;
+        }
+        assert da.callRemoteMethodsWithFuture(null, calls, RequestOptions.ASYNC()) == null;
+    }
+
+    public void testUnicastBatchWithFutures() throws Exception {
+        List<MethodCall> calls=Arrays.asList(new MethodCall("foo", null, null),
+                                             new MethodCall("throwException", null, null),
+                                             new MethodCall("add", new Object[]{5, 5}, new Class[]{int.class, int.class}));
+        for(JChannel dest: Arrays.asList(a, b)) { // to self and to other
+            List<CompletableFuture<Integer>> futures=da.callRemoteMethodWithFuture(dest.getAddress(), calls,
+                                                                                   RequestOptions.SYNC());
+            assert futures.get(0).get(10, TimeUnit.SECONDS) == (dest == a? 1 : 2);
+            try {
+                futures.get(1).get(10, TimeUnit.SECONDS);
+                assert false : "call should have thrown an exception";
+            }
+            catch(ExecutionException ex) {
+                assert ex.getCause().getMessage().equals("booom");
+            }
+            assert futures.get(2).get(10, TimeUnit.SECONDS) == 10;
+        }
+    }
+
     public void testMulticastInvocationWithTimeout() throws Exception {
         RequestOptions opts=RequestOptions.SYNC().timeout(1000);
         Method meth=ServerObject.class.getDeclaredMethod("sleep", long.class);
@@ -464,6 +536,89 @@ public class RpcDispatcherTest {
     }
 
 
+    /** C is slow: the responses of A and B have to be published before C's response */
+    public void testPublisher() throws Exception {
+        dc.setServerObject(new SlowServerObject("C", 3, 2000));
+        RspCollector<Integer> collector=new RspCollector<>(Long.MAX_VALUE);
+        long start=System.currentTimeMillis();
+        Flow.Publisher<Rsp<Integer>> pub=da.callRemoteMethodsWithPublisher(null, new MethodCall("foo", null, null),
+                                                                          RequestOptions.SYNC().timeout(10000));
+        pub.subscribe(collector);
+        Util.waitUntil(1500, 50, () -> collector.rsps.size() >= 2);
+        assert !collector.done.await(0, TimeUnit.MILLISECONDS);
+        long time=System.currentTimeMillis() - start;
+        assert time < 2000 : String.format("the responses of A and B took %d ms", time);
+        assert collector.done.await(10, TimeUnit.SECONDS);
+        assert collector.completed && collector.error == null;
+        List<Integer> values=collector.rsps.stream().map(Rsp::getValue).collect(Collectors.toList());
+        System.out.printf("values: %s\n", values);
+        assert values.equals(Arrays.asList(1, 2, 3)) || values.equals(Arrays.asList(2, 1, 3)) : values;
+    }
+
+    public void testPublisherWithTimeout() throws Exception {
+        dc.setServerObject(new SlowServerObject("C", 3, 5000));
+        RspCollector<Integer> collector=new RspCollector<>(Long.MAX_VALUE);
+        Flow.Publisher<Rsp<Integer>> pub=da.callRemoteMethodsWithPublisher(null, new MethodCall("foo", null, null),
+                                                                          RequestOptions.SYNC().timeout(1000));
+        pub.subscribe(collector);
+        assert collector.done.await(4, TimeUnit.SECONDS);
+        assert collector.completed && collector.rsps.size() == 2 : collector.rsps;
+        assert da.correlator().requests.isEmpty();
+    }
+
+    public void testPublisherBackpressureAndCancel() throws Exception {
+        RspCollector<Integer> collector=new RspCollector<>(1);
+        Flow.Publisher<Rsp<Integer>> pub=da.callRemoteMethodsWithPublisher(null, new MethodCall("foo", null, null),
+                                                                          RequestOptions.SYNC());
+        pub.subscribe(collector);
+        Util.waitUntil(2000, 50, () -> collector.rsps.size() == 1);
+        Util.sleep(500);
+        assert collector.rsps.size() == 1 : "only 1 response was requested: " + collector.rsps;
+        collector.subscription.request(1);
+        Util.waitUntil(2000, 50, () -> collector.rsps.size() == 2);
+        collector.subscription.cancel();
+        collector.subscription.request(1);
+        Util.sleep(500);
+        assert collector.rsps.size() == 2 && !collector.completed && collector.error == null;
+        assert da.correlator().requests.isEmpty();
+
+        // a second subscriber is rejected
+        RspCollector<Integer> second=new RspCollector<>(1);
+        pub.subscribe(second);
+        assert second.done.await(1, TimeUnit.SECONDS) && second.error instanceof IllegalStateException;
+    }
+
+    public void testPublisherWithEmptyDestinations() throws Exception {
+        RspCollector<Integer> collector=new RspCollector<>(1);
+        da.<Integer>callRemoteMethodsWithPublisher(Collections.emptyList(), new MethodCall("foo", null, null),
+                                                   RequestOptions.SYNC()).subscribe(collector);
+        assert collector.done.await(1, TimeUnit.SECONDS) && collector.completed && collector.rsps.isEmpty();
+    }
+
+    /** Subscriber callbacks must not be invoked with the lock of the request held */
+    public void testPublisherCallbacksWithoutLock() throws Exception {
+        List<Boolean> locked=new CopyOnWriteArrayList<>();
+        StreamingGroupRequest<Integer> req=(StreamingGroupRequest<Integer>)da.<Integer>callRemoteMethodsWithPublisher(
+          null, new MethodCall("foo", null, null), RequestOptions.SYNC());
+        RspCollector<Integer> collector=new RspCollector<>(Long.MAX_VALUE) {
+            public void onNext(Rsp<Integer> rsp) {
+                // times out if the lock is held by the thread delivering the response
+                Future<Boolean> f=CompletableFuture.supplyAsync(req::getResponsesComplete);
+                try {
+                    f.get(2, TimeUnit.SECONDS);
+                    locked.add(false);
+                }
+                catch(Exception ex) {
+                    locked.add(true);
+                }
+                super.onNext(rsp);
+            }
+        };
+        req.subscribe(collector);
+        assert collector.done.await(10, TimeUnit.SECONDS) && collector.completed;
+        assert collector.rsps.size() == 3 && locked.size() == 3 && !locked.contains(true) : locked;
+    }
+
     /**
      * Invoke a call which sleeps for 5s 5 times. Since the sleep should be done in parallel (OOB msgs), all 5 futures
      * should be done in roughly 5s. JIRA: https://issues.jboss.org/browse/JGRP-2039
@@ -873,6 +1028,40 @@ public class RpcDispatcherTest {
         assert size == val.length;
     }
 
+    protected static class RspCollector<T> implements Flow.Subscriber<Rsp<T>> {
+        protected final long               initial;
+        protected final List<Rsp<T>>       rsps=new CopyOnWriteArrayList<>();
+        protected final CountDownLatch     done=new CountDownLatch(1);
+        protected volatile Flow.Subscription subscription;
+        protected volatile boolean         completed;
+        protected volatile Throwable       error;
+
+        protected RspCollector(long initial) {this.initial=initial;}
+
+        public void onSubscribe(Flow.Subscription s) {
+            subscription=s;
+            s.request(initial);
+        }
+
+        public void onNext(Rsp<T> rsp) {rsps.add(rsp);}
+        public void onError(Throwable t) {error=t; done.countDown();}
+        public void onComplete()           {completed=true; done.countDown();}
+    }
+
+    protected static class SlowServerObject extends ServerObject {
+        protected final long sleep;
+
+        public SlowServerObject(String name, int i, long sleep) {
+            super(name, i);
+            this.sleep=sleep;
+        }
+
+        @Override public int foo() {
+            Util.sleep(sleep);
+            return super.foo();
+        }
+    }
+
     /**
      * This class serves as a server obect to turn requests into replies.
      * It is initialised with an integer id value.
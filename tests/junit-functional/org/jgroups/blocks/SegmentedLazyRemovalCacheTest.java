@@ -0,0 +1,174 @@
+package org.jgroups.blocks;
+
+import org.jgroups.Address;
+import org.jgroups.Global;
+import org.jgroups.util.UUID;
+import org.jgroups.util.Util;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link SegmentedLazyRemovalCache}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL)
+public class SegmentedLazyRemovalCacheTest {
+
+    public void testAddAndGet() {
+        SegmentedLazyRemovalCache<UUID,String> cache=new SegmentedLazyRemovalCache<>(10, 10000, 5);
+        assert cache.numSegments() == 8;
+        UUID u1=UUID.randomUUID(), u2=UUID.randomUUID();
+        assert cache.add(u1, "u1");
+        assert !cache.add(u1, "u1");
+        assert cache.addIfAbsent(u2, "u2");
+        assert !cache.addIfAbsent(u2, "u2-new");
+        assert cache.size() == 2;
+        assert cache.get(u1).equals("u1") && cache.get(u2).equals("u2");
+        assert cache.containsKey(u1) && !cache.containsKey(UUID.randomUUID());
+        assert cache.get(null) == null;
+        cache.add(u2, "u2-new");
+        assert cache.get(u2).equals("u2-new");
+    }
+
+    public void testRemoveAndAdd() {
+        SegmentedLazyRemovalCache<UUID,String> cache=new SegmentedLazyRemovalCache<>();
+        UUID uuid=UUID.randomUUID();
+        cache.add(uuid, "val");
+        cache.remove(uuid);
+        assert cache.size() == 1 && cache.getEntry(uuid).isRemovable();
+        assert cache.get(uuid).equals("val");
+        assert cache.nonRemovedValues().isEmpty();
+
+        cache.add(uuid, "val");
+        assert !cache.getEntry(uuid).isRemovable();
+        assert cache.nonRemovedValues().contains("val");
+        cache.add(uuid, "val2");
+        assert cache.get(uuid).equals("val2");
+    }
+
+    public void testRemoveAll() {
+        SegmentedLazyRemovalCache<UUID,String> cache=new SegmentedLazyRemovalCache<>(10, 0, 4);
+        List<UUID> list=Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        int cnt=1;
+        for(UUID uuid: list)
+            cache.add(uuid, "node-" + cnt++);
+        UUID uuid1=UUID.randomUUID(), uuid2=UUID.randomUUID();
+        cache.add(uuid1, "foo");
+        cache.add(uuid2, "bar");
+        assert cache.size() == 5;
+
+        cache.removeAll(list);
+        assert cache.size() == 5;
+        Map<UUID,String> contents=cache.contents(true);
+        assert contents.size() == 2 && contents.get(uuid1).equals("foo") && contents.get(uuid2).equals("bar");
+
+        cache.removeMarkedElements();
+        System.out.println("cache = " + cache);
+        assert cache.size() == 2;
+        assert cache.get(uuid1).equals("foo") && cache.get(uuid2).equals("bar");
+        assert cache.wheelSize() == 0;
+    }
+
+    public void testRetainAll() {
+        SegmentedLazyRemovalCache<UUID,String> cache=new SegmentedLazyRemovalCache<>(10, 0, 4);
+        List<UUID> list=Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        int cnt=1;
+        for(UUID uuid: list)
+            cache.add(uuid, "node-" + cnt++);
+        UUID uuid1=UUID.randomUUID(), uuid2=UUID.randomUUID();
+        cache.add(uuid1, "foo");
+        cache.add(uuid2, "bar");
+        cache.remove(uuid1);
+
+        cache.retainAll(Arrays.asList(uuid1, uuid2));
+        assert cache.size() == 5;
+        assert !cache.getEntry(uuid1).isRemovable() && !cache.getEntry(uuid2).isRemovable();
+
+        cache.removeMarkedElements();
+        System.out.println("cache = " + cache);
+        assert cache.size() == 2;
+        assert cache.get(uuid1).equals("foo") && cache.get(uuid2).equals("bar");
+    }
+
+    public void testRemovalOnExceedingMaxSize() {
+        SegmentedLazyRemovalCache<UUID,String> cache=new SegmentedLazyRemovalCache<>(2, 0, 4);
+        UUID u1=UUID.randomUUID(), u2=UUID.randomUUID(), u3=UUID.randomUUID(), u4=UUID.randomUUID();
+        cache.add(u1, "u1"); cache.add(u2, "u2");
+        cache.add(u3, "u3"); cache.add(u4, "u4");
+        assert cache.size() == 4;
+
+        cache.remove(u3);
+        assert cache.size() == 3;
+        cache.remove(u1);
+        assert cache.size() == 2;
+        cache.remove(u4);
+        assert cache.size() == 2;
+
+        cache.removeMarkedElements();
+        System.out.println("cache = " + cache);
+        assert cache.size() == 1;
+    }
+
+    public void testExpiration() {
+        SegmentedLazyRemovalCache<Address,String> cache=new SegmentedLazyRemovalCache<>(100, 500, 4);
+        Address a=Util.createRandomAddress("A"), b=Util.createRandomAddress("B"), c=Util.createRandomAddress("C");
+        cache.add(a, "A"); cache.add(b, "B"); cache.add(c, "C");
+        cache.remove(a);
+        cache.remove(b);
+        cache.removeMarkedElements();
+        assert cache.size() == 3 && cache.wheelSize() == 2;
+
+        cache.add(b, "B"); // unmarks B; its reference in the wheel is dropped when its tick is processed
+        Util.sleep(700);
+        cache.removeMarkedElements();
+        System.out.println("cache = " + cache);
+        assert cache.size() == 2 && cache.get(a) == null && cache.get(b).equals("B");
+        assert cache.wheelSize() == 0;
+
+        // B is marked again after having been unmarked: it needs to be added to the wheel again
+        cache.remove(b);
+        assert cache.wheelSize() == 1;
+        Util.sleep(700);
+        cache.removeMarkedElements();
+        assert cache.size() == 1 && cache.get(c).equals("C");
+    }
+
+    public void testRemarkingDoesNotAddDuplicates() {
+        SegmentedLazyRemovalCache<UUID,String> cache=new SegmentedLazyRemovalCache<>(100, 60_000, 1);
+        UUID u=UUID.randomUUID();
+        cache.add(u, "u");
+        for(int i=0; i < 10; i++) {
+            cache.remove(u);
+            cache.add(u, "u");
+        }
+        assert cache.wheelSize() <= 2 : String.format("wheel size: %d", cache.wheelSize());
+    }
+
+    public void testForcedRemoval() {
+        SegmentedLazyRemovalCache<UUID,String> cache=new SegmentedLazyRemovalCache<>(100, 60_000, 4);
+        UUID u1=UUID.randomUUID(), u2=UUID.randomUUID(), u3=UUID.randomUUID();
+        cache.add(u1, "u1"); cache.add(u2, "u2"); cache.add(u3, "u3");
+        cache.remove(u1);
+        cache.removeMarkedElements();
+        assert cache.size() == 3;
+        cache.removeMarkedElements(true);
+        assert cache.size() == 2 && cache.wheelSize() == 0;
+        cache.remove(u2, true);
+        assert cache.size() == 1;
+        cache.clear(true);
+        assert cache.size() == 0;
+    }
+
+    public void testKeySetAndValues() {
+        SegmentedLazyRemovalCache<UUID,String> cache=new SegmentedLazyRemovalCache<>(100, 60_000, 4);
+        for(int i=0; i < 20; i++)
+            cache.add(UUID.randomUUID(), "val-" + i);
+        assert cache.keySet().size() == 20 && cache.values().size() == 20;
+        cache.clear(false);
+        assert cache.size() == 20 && cache.nonRemovedValues().isEmpty();
+    }
+}
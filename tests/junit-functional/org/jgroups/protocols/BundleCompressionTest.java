@@ -0,0 +1,136 @@
+package org.jgroups.protocols;
+
+import org.jgroups.*;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.util.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Tests compression of message lists by the transport ({@link TP#bundle_compression_threshold})
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class BundleCompressionTest {
+    protected static final Address      A=Util.createRandomAddress("A");
+    protected static final AsciiString  CLUSTER=new AsciiString("BundleCompressionTest");
+    protected final MessageFactory      mf=new DefaultMessageFactory();
+    protected JChannel[]                channels;
+
+    @AfterMethod protected void destroy() {
+        if(channels != null)
+            Util.closeReverse(channels);
+        channels=null;
+    }
+
+    public void testCompressAndDecompress() throws Exception {
+        List<Message> list=new ArrayList<>();
+        for(int i=0; i < 100; i++)
+            list.add(new ObjectMessage(null, "hello world " + i).setSrc(A));
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(1024);
+        Util.writeMessageList(null, A, CLUSTER.chars(), list, out, true, (short)1);
+
+        BundleCompressor compressor=new BundleCompressor();
+        ByteArray compressed=compressor.compress(out.buffer(), 0, out.position());
+        assert compressed != null && compressed.getLength() < out.position() / 2;
+        assert compressor.compressionRatio() > 2;
+        assert compressor.bytesSaved() == out.position() - compressed.getLength();
+
+        ByteArrayDataInputStream in=new ByteArrayDataInputStream(compressed.getArray(), 0, compressed.getLength());
+        assert in.readShort() == Version.version;
+        byte flags=in.readByte();
+        assert (flags & TP.COMPRESSED) == TP.COMPRESSED && (flags & TP.LIST) == TP.LIST;
+        in=new ByteArrayDataInputStream(compressor.decompress(in));
+        MessageBatch batch=Util.readMessageBatch(in, flags, mf, null, CLUSTER, 0)[0];
+        assert batch.size() == list.size() && batch.sender().equals(A);
+        int i=0;
+        for(Message msg: batch)
+            assert msg.getObject().equals("hello world " + i++);
+    }
+
+    /** Random data cannot be compressed: the frame is sent uncompressed */
+    public void testIncompressible() throws Exception {
+        byte[] array=new byte[5000];
+        ThreadLocalRandom.current().nextBytes(array);
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(6000);
+        Util.writeMessage(new BytesMessage(null, array).setSrc(A), out, true);
+        BundleCompressor compressor=new BundleCompressor();
+        assert compressor.compress(out.buffer(), 0, out.position()) == null;
+        assert compressor.numCompressions() == 0 && compressor.numSkipped() == 1;
+    }
+
+    /** Lengths above the max length are rejected, and frames longer than it are not compressed */
+    public void testMaxLength() throws Exception {
+        BundleCompressor compressor=new BundleCompressor().maxLength(1000);
+        byte[] frame=new byte[2000]; // zeroes: compresses well
+        assert compressor.compress(frame, 0, frame.length) == null && compressor.numSkipped() == 0;
+        ByteArray compressed=compressor.compress(frame, 0, 500);
+        assert compressed != null;
+
+        byte[] buf=Arrays.copyOf(compressed.getArray(), compressed.getLength());
+        assert compressor.decompress(buf, BundleCompressor.OFFSET).length == 500 - BundleCompressor.OFFSET;
+        Bits.writeInt(Integer.MAX_VALUE, buf, BundleCompressor.OFFSET); // original length
+        expectIOException(() -> compressor.decompress(buf, BundleCompressor.OFFSET));
+        expectIOException(() -> compressor.decompress(new ByteArrayDataInputStream(buf, BundleCompressor.OFFSET,
+                                                                                     buf.length - BundleCompressor.OFFSET)));
+        Bits.writeInt(500 - BundleCompressor.OFFSET, buf, BundleCompressor.OFFSET);
+        Bits.writeInt(buf.length, buf, BundleCompressor.OFFSET + Global.INT_SIZE); // compressed length beyond the buffer
+        expectIOException(() -> compressor.decompress(buf, BundleCompressor.OFFSET));
+        Bits.writeInt(-1, buf, BundleCompressor.OFFSET + Global.INT_SIZE);
+        expectIOException(() -> compressor.decompress(new ByteArrayDataInputStream(buf, BundleCompressor.OFFSET,
+                                                                                     buf.length - BundleCompressor.OFFSET)));
+    }
+
+    public void testCluster() throws Exception {
+        channels=new JChannel[3];
+        MyReceiver<String>[] receivers=new MyReceiver[channels.length];
+        for(int i=0; i < channels.length; i++) {
+            channels[i]=create(String.valueOf((char)('A' + i)));
+            channels[i].setReceiver(receivers[i]=new MyReceiver<>());
+            channels[i].connect(CLUSTER.toString());
+        }
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, channels);
+        final int NUM=500;
+        for(int i=1; i <= NUM; i++) {
+            channels[0].send(null, "multicast message #" + i);
+            channels[1].send(channels[2].getAddress(), "unicast message #" + i);
+        }
+        Util.waitUntil(10000, 100, () -> receivers[0].size() == NUM && receivers[1].size() == NUM
+          && receivers[2].size() == NUM * 2);
+        assert IntStream.rangeClosed(1, NUM).allMatch(i -> receivers[1].list().contains("multicast message #" + i));
+        assert IntStream.rangeClosed(1, NUM).allMatch(i -> receivers[2].list().contains("unicast message #" + i));
+        TP a=channels[0].getProtocolStack().getTransport(), c=channels[2].getProtocolStack().getTransport();
+        assert a.getNumBundleCompressions() > 0 && a.getBundleCompressionRatio() > 1;
+        assert c.getNumBundleDecompressions() > 0;
+        assert Stream.of(channels).map(ch -> ch.getProtocolStack().getTransport())
+          .allMatch(tp -> tp.getBundleCompressionBytesSaved() >= 0);
+    }
+
+    protected static void expectIOException(Callable<?> c) throws Exception {
+        try {
+            c.call();
+            assert false : "decompression should have failed";
+        }
+        catch(IOException ex) {
+            System.out.printf("received exception as expected: %s\n", ex.getMessage());
+        }
+    }
+
+    protected static JChannel create(String name) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK().setBundleCompressionThreshold(500),
+                            new SHARED_LOOPBACK_PING(), new NAKACK2(), new UNICAST3(), new STABLE(), new GMS())
+          .name(name);
+    }
+}
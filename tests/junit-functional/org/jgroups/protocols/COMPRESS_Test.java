@@ -4,11 +4,23 @@ import org.jgroups.BytesMessage;
 import org.jgroups.Global;
 import org.jgroups.JChannel;
 import org.jgroups.Message;
+import org.jgroups.stack.ProtocolStack;
+import org.jgroups.util.DictionaryTrainer;
 import org.jgroups.util.MyReceiver;
 import org.jgroups.util.Util;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
 /**
  * @author Bela Ban
  * @since  5.0
@@ -18,8 +30,15 @@ public class COMPRESS_Test {
     protected JChannel a, b;
     protected MyReceiver<Message> r1=new MyReceiver<Message>().rawMsgs(true), r2=new MyReceiver<Message>().rawMsgs(true);
 
+    protected Path     dict_file;
+
     @AfterMethod
-    protected void destroy() {Util.close(r2, r1, b, a);}
+    protected void destroy() throws Exception {
+        Util.close(r2, r1, b, a);
+        if(dict_file != null)
+            Files.delete(dict_file);
+        dict_file=null;
+    }
 
 
     public void testSimpleCompression() throws Exception {
@@ -36,9 +55,179 @@ public class COMPRESS_Test {
     }
 
 
+    public void testDictionaryFile() throws Exception {
+        dict_file=Files.write(Files.createTempFile("dict", ".txt"), json(0).getBytes(StandardCharsets.UTF_8));
+        a=create("A", new COMPRESS().setMinSize(50).setDictionaryFile(dict_file.toString()));
+        b=create("B", new COMPRESS().setMinSize(50).setDictionaryFile(dict_file.toString()));
+        connect();
+        sendAndCheck(10);
+        assert prot(a).getNumDictionaryCompressions() == 10;
+        assert prot(b).getNumDictionaryFetches() == 0;
+    }
+
+    /** B doesn't have the dictionary used by A: it is fetched from A */
+    public void testDictionaryFetch() throws Exception {
+        dict_file=Files.write(Files.createTempFile("dict", ".txt"), json(0).getBytes(StandardCharsets.UTF_8));
+        a=create("A", new COMPRESS().setMinSize(50).setDictionaryFile(dict_file.toString()));
+        b=create("B", new COMPRESS().setMinSize(50));
+        connect();
+        sendAndCheck(10);
+        assert prot(b).getNumDictionaryFetches() == 1;
+        assert prot(b).getDictionaryId() == 0; // a fetched dictionary is not used for sending
+    }
+
+    /**
+     * The first request for the dictionary is lost: B queues the messages compressed with it (without blocking), plus
+     * the subsequent uncompressed message, and passes them up in order when the resent request has been answered
+     */
+    public void testDictionaryFetchIsNonBlocking() throws Exception {
+        dict_file=Files.write(Files.createTempFile("dict", ".txt"), json(0).getBytes(StandardCharsets.UTF_8));
+        a=create("A", new COMPRESS().setMinSize(50).setDictionaryFile(dict_file.toString()));
+        b=create("B", new COMPRESS().setMinSize(50).setDictionaryFetchTimeout(1000));
+        AtomicBoolean dropped=new AtomicBoolean();
+        dropDictionaryRequests(b, () -> dropped.compareAndSet(false, true));
+        connect();
+        for(int i=1; i <= 10; i++)
+            a.send(new BytesMessage(b.getAddress(), json(i).getBytes(StandardCharsets.UTF_8)));
+        Util.waitUntil(5000, 50, () -> prot(b).getNumQueuedMsgs() == 10);
+
+        // the receiver is not blocked, but the uncompressed message is queued behind the compressed ones
+        a.send(new BytesMessage(b.getAddress(), "hello".getBytes(StandardCharsets.UTF_8)));
+        Util.waitUntil(500, 50, () -> prot(b).getNumQueuedMsgs() == 11);
+        assert r2.size() == 0;
+
+        Util.waitUntil(5000, 100, () -> r2.size() == 11);
+        List<String> list=r2.list().stream().map(m -> new String(m.getArray(), m.getOffset(), m.getLength(),
+                                                                  StandardCharsets.UTF_8)).collect(Collectors.toList());
+        List<String> expected=IntStream.rangeClosed(1, 10).mapToObj(COMPRESS_Test::json).collect(Collectors.toList());
+        expected.add("hello");
+        assert list.equals(expected) : String.format("messages were passed up out of order: %s", list);
+        assert prot(b).getNumQueuedMsgs() == 0 && prot(b).getNumDictionaryFetches() == 1;
+
+        // no messages are queued anymore
+        a.send(new BytesMessage(b.getAddress(), "world".getBytes(StandardCharsets.UTF_8)));
+        Util.waitUntil(5000, 100, () -> r2.size() == 12);
+    }
+
+    /** The sender of messages waiting for a dictionary leaves: the queued messages are dropped */
+    public void testQueuedMessagesOfLeftMemberAreDropped() throws Exception {
+        dict_file=Files.write(Files.createTempFile("dict", ".txt"), json(0).getBytes(StandardCharsets.UTF_8));
+        a=create("A", new COMPRESS().setMinSize(50));
+        b=create("B", new COMPRESS().setMinSize(50).setDictionaryFile(dict_file.toString()));
+        dropDictionaryRequests(a, () -> true);
+        connect();
+        for(int i=1; i <= 5; i++)
+            b.send(new BytesMessage(a.getAddress(), json(i).getBytes(StandardCharsets.UTF_8)));
+        Util.waitUntil(5000, 50, () -> prot(a).getNumQueuedMsgs() == 5);
+        Util.close(b);
+        Util.waitUntil(5000, 50, () -> a.getView().size() == 1);
+        assert prot(a).getNumQueuedMsgs() == 0 && prot(a).pending_msgs.isEmpty();
+        assert r1.size() == 0;
+    }
+
+    /** The coordinator trains a dictionary and sends it to all members */
+    public void testTrainedDictionary() throws Exception {
+        a=create("A", new COMPRESS().setMinSize(50).trainDictionary(true).setTrainingSamples(50));
+        b=create("B", new COMPRESS().setMinSize(50).trainDictionary(true).setTrainingSamples(50));
+        connect();
+        sendAndCheck(50);
+        Util.waitUntil(10000, 100, () -> prot(a).getDictionaryId() != 0 && prot(a).getDictionaryId() == prot(b).getDictionaryId());
+        r1.reset(); r2.reset();
+        sendAndCheck(10);
+        assert prot(a).getNumDictionaryCompressions() == 10;
+
+        // a new member receives the dictionary from the coordinator
+        JChannel c=create("C", new COMPRESS().setMinSize(50).trainDictionary(true).setTrainingSamples(50));
+        try {
+            c.connect(COMPRESS_Test.class.getSimpleName());
+            Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+            Util.waitUntil(10000, 100, () -> prot(c).getDictionaryId() == prot(a).getDictionaryId());
+        }
+        finally {
+            Util.close(c);
+        }
+    }
+
+    /** A trained dictionary compresses small messages better than no dictionary */
+    public void testDictionaryTrainer() throws Exception {
+        DictionaryTrainer trainer=new DictionaryTrainer(100, 4096);
+        for(int i=0; i < 100; i++) {
+            byte[] buf=json(i).getBytes(StandardCharsets.UTF_8);
+            trainer.add(buf, 0, buf.length);
+        }
+        assert trainer.isFull();
+        byte[] dict=trainer.train(4096);
+        assert dict != null && dict.length > 0 && dict.length <= 4096;
+        byte[] msg=json(1000).getBytes(StandardCharsets.UTF_8);
+        int without=compressedSize(msg, null), with=compressedSize(msg, dict);
+        System.out.printf("%d bytes: %d bytes compressed without dictionary, %d bytes with dictionary\n",
+                          msg.length, without, with);
+        assert with < without * 3 / 4;
+    }
+
+    protected void connect() throws Exception {
+        a.connect(COMPRESS_Test.class.getSimpleName());
+        b.connect(COMPRESS_Test.class.getSimpleName());
+        Util.waitUntilAllChannelsHaveSameView(10000, 500, a,b);
+        a.setReceiver(r1); b.setReceiver(r2);
+    }
+
+    protected void sendAndCheck(int num) throws Exception {
+        for(int i=1; i <= num; i++)
+            a.send(new BytesMessage(b.getAddress(), json(i).getBytes(StandardCharsets.UTF_8)));
+        Util.waitUntil(10000, 100, () -> r2.size() == num);
+        List<Message> list=r2.list();
+        for(int i=0; i < num; i++) {
+            Message msg=list.get(i);
+            String s=new String(msg.getArray(), msg.getOffset(), msg.getLength(), StandardCharsets.UTF_8);
+            assert s.equals(json(i+1)) : String.format("expected %s, but got %s", json(i+1), s);
+        }
+    }
+
+    protected static int compressedSize(byte[] buf, byte[] dict) {
+        Deflater deflater=new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            if(dict != null)
+                deflater.setDictionary(dict);
+            deflater.setInput(buf);
+            deflater.finish();
+            byte[] out=new byte[buf.length * 2];
+            return deflater.deflate(out);
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    protected static String json(int i) {
+        String[] cities={"Zurich", "Geneva", "Basel", "Bern", "Lausanne"};
+        return String.format("{\"id\": %d, \"type\": \"order\", \"customer\": {\"name\": \"customer-%d\", " +
+                               "\"address\": {\"street\": \"Bahnhofstrasse %d\", \"city\": \"%s\"}}, " +
+                               "\"items\": [{\"sku\": \"item-%d\", \"quantity\": %d, \"price\": %d.95}], " +
+                               "\"status\": \"pending\", \"currency\": \"CHF\"}",
+                             i, i % 17, i % 100, cities[i % cities.length], i % 31, i % 5 + 1, i % 50);
+    }
+
+    /** Drops dictionary requests sent by ch when drop returns true */
+    protected static void dropDictionaryRequests(JChannel ch, BooleanSupplier drop) throws Exception {
+        short id=prot(ch).getId();
+        DROP prot=new DROP().addDownFilter(msg -> {
+            COMPRESS.CompressHeader hdr=msg.getHeader(id);
+            return hdr != null && hdr.type == COMPRESS.CompressHeader.DICT_REQ && drop.getAsBoolean();
+        });
+        ch.getProtocolStack().insertProtocol(prot, ProtocolStack.Position.BELOW, COMPRESS.class);
+    }
+
+    protected static COMPRESS prot(JChannel ch) {
+        return ch.getProtocolStack().findProtocol(COMPRESS.class);
+    }
 
     protected static JChannel create(String name) throws Exception {
-        return new JChannel(Util.getTestStack(new COMPRESS().setMinSize(50))).name(name);
+        return create(name, new COMPRESS().setMinSize(50));
+    }
+
+    protected static JChannel create(String name, COMPRESS compress) throws Exception {
+        return new JChannel(Util.getTestStack(compress)).name(name);
     }
 
 }
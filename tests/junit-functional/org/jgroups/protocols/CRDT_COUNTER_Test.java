@@ -0,0 +1,160 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Address;
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.View;
+import org.jgroups.blocks.atomic.Counter;
+import org.jgroups.blocks.atomic.CounterService;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Tests {@link CRDT_COUNTER}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class CRDT_COUNTER_Test {
+    protected JChannel          a, b, c, d;
+    protected static final String CLUSTER=CRDT_COUNTER_Test.class.getSimpleName();
+
+    @BeforeMethod protected void setup() throws Exception {
+        a=create("A");
+        b=create("B");
+        c=create("C");
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+    }
+
+    @AfterMethod protected void destroy() {
+        Util.close(d, c, b, a);
+    }
+
+    public void testUpdatesConverge() throws Exception {
+        Counter[] counters=Stream.of(a, b, c).map(ch -> new CounterService(ch).getOrCreateCounter("ctr", 10))
+          .toArray(Counter[]::new);
+        for(int i=0; i < 100; i++)
+            for(Counter ctr: counters)
+                ctr.incrementAndGet();
+        assert counters[0].decrementAndGet() == 109; // reads are local
+        counters[1].addAndGet(-9);
+        waitForValue(300, counters);
+        assert crdt(a).num_deltas_sent.sum() < 100 : "updates were not batched";
+    }
+
+    public void testGrowOnlyCounter() throws Exception {
+        CounterService sa=new CounterService(a), sb=new CounterService(b);
+        Counter ca=sa.getOrCreateGrowOnlyCounter("g"), cb=sb.getOrCreateGrowOnlyCounter("g");
+        ca.addAndGet(5);
+        cb.incrementAndGet();
+        waitForValue(6, ca, cb);
+        assertThrows(IllegalArgumentException.class, ca::decrementAndGet);
+        assertThrows(UnsupportedOperationException.class, () -> ca.set(10));
+        assertThrows(UnsupportedOperationException.class, () -> ca.compareAndSet(6, 10));
+        assertThrows(IllegalStateException.class, () -> sa.getOrCreateCounter("g", 0));
+    }
+
+    public void testJoiner() throws Exception {
+        Counter ca=new CounterService(a).getOrCreateCounter("ctr", 5), cb=new CounterService(b).getOrCreateCounter("ctr", 5);
+        ca.addAndGet(10);
+        cb.addAndGet(20);
+        waitForValue(35, ca, cb);
+        Util.close(b); // B's entry needs to be kept
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, c);
+
+        d=create("D");
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, c, d);
+        Util.waitUntil(5000, 100, () -> crdt(d).getNumCounters() == 1);
+        Counter cd=new CounterService(d).getOrCreateCounter("ctr", 0);
+        assert cd.get() == 35 : String.format("value is %d", cd.get());
+    }
+
+    public void testPartitionHealing() throws Exception {
+        Counter ca=new CounterService(a).getOrCreateCounter("ctr", 0), cc=new CounterService(c).getOrCreateCounter("ctr", 0);
+        waitForValue(0, ca, cc);
+
+        // split into {A,B} and {C}
+        long id=a.getView().getViewId().getId() + 1;
+        View v1=View.create(a.getAddress(), id, a.getAddress(), b.getAddress()), v2=View.create(c.getAddress(), id, c.getAddress());
+        injectView(v1, a, b);
+        injectView(v2, c);
+        Counter cb=new CounterService(b).getOrCreateCounter("ctr", 0);
+        ca.addAndGet(10);
+        cb.addAndGet(1);
+        cc.addAndGet(5);
+        waitForValue(11, ca, cb);
+        Util.sleep(500);
+        assert cc.get() == 5;
+
+        for(int i=0; i < 20 && !(a.getView().equals(b.getView()) && a.getView().equals(c.getView())); i++) {
+            for(JChannel ch: Arrays.asList(a, b, c))
+                ch.getProtocolStack().<MERGE3>findProtocol(MERGE3.class).sendInfo();
+            Util.sleep(1000);
+        }
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+        waitForValue(16, ca, cb, cc);
+    }
+
+    /** Merging is idempotent and commutative */
+    public void testMerge() {
+        Address x=Util.createRandomAddress("X"), y=Util.createRandomAddress("Y");
+        CRDT_COUNTER.CounterState s1=new CRDT_COUNTER.CounterState("ctr", false, 0, x),
+          s2=new CRDT_COUNTER.CounterState("ctr", false, 0, y);
+        s1.add(x, 5);
+        s1.add(x, -2);
+        s2.add(y, 7);
+        CRDT_COUNTER.CounterState m1=s1.copy(null), m2=s2.copy(null);
+        m1.merge(s2);
+        m1.merge(s2);
+        m2.merge(s1);
+        assert m1.value() == 10 && m2.value() == 10;
+        s1.add(x, 1);
+        m1.merge(s1.copy(x));
+        assert m1.value() == 11;
+    }
+
+    protected static void waitForValue(long expected, Counter... counters) throws Exception {
+        Util.waitUntil(10000, 100, () -> Stream.of(counters).allMatch(ctr -> ctr.get() == expected),
+                       () -> String.format("expected %d, but got %s", expected,
+                                           Stream.of(counters).map(Counter::toString).reduce((s1, s2) -> s1 + ", " + s2)));
+    }
+
+    protected static void assertThrows(Class<? extends Exception> ex, Runnable r) {
+        try {
+            r.run();
+            assert false : String.format("%s should have been thrown", ex.getSimpleName());
+        }
+        catch(Exception e) {
+            assert ex.isInstance(e) : String.format("expected %s but got %s", ex.getSimpleName(), e);
+        }
+    }
+
+    protected static void injectView(View view, JChannel... channels) {
+        for(JChannel ch: channels) {
+            GMS gms=ch.getProtocolStack().findProtocol(GMS.class);
+            gms.installView(view);
+        }
+    }
+
+    protected static CRDT_COUNTER crdt(JChannel ch) {
+        return ch.getProtocolStack().findProtocol(CRDT_COUNTER.class);
+    }
+
+    protected static JChannel create(String name) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK(), new SHARED_LOOPBACK_PING(),
+                            new MERGE3().setMinInterval(1000).setMaxInterval(3000).setCheckInterval(5000),
+                            new NAKACK2().useMcastXmit(false).logDiscardMessages(false).logNotFoundMessages(false),
+                            new UNICAST3(), new STABLE(),
+                            new GMS().setJoinTimeout(500).setMergeTimeout(3000).logViewWarnings(false),
+                            new CRDT_COUNTER())
+          .name(name).connect(CLUSTER);
+    }
+}
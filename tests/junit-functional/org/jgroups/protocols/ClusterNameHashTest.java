@@ -0,0 +1,153 @@
+package org.jgroups.protocols;
+
+import org.jgroups.*;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.util.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests sending of a hash of the cluster name instead of the cluster name ({@link TP#hash_cluster_name})
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class ClusterNameHashTest {
+    protected static final Address      A=Util.createRandomAddress("A");
+    protected static final AsciiString  CLUSTER=new AsciiString("ClusterNameHashTest");
+    protected static final long         DELAY=200;
+    protected final MessageFactory      mf=new DefaultMessageFactory();
+    protected JChannel[]                channels;
+
+    @AfterMethod protected void destroy() {
+        if(channels != null)
+            Util.closeReverse(channels);
+        channels=null;
+    }
+
+    public void testHashMatches() throws Exception {
+        ByteArrayDataOutputStream out=write(CLUSTER);
+        ByteArrayDataInputStream in=new ByteArrayDataInputStream(out.buffer(), 0, out.position());
+        in.readShort();
+        byte flags=in.readByte();
+        assert (flags & TP.CLUSTER_NAME_HASH) == TP.CLUSTER_NAME_HASH;
+        MessageBatch batch=Util.readMessageBatch(in, flags, mf, null, CLUSTER, CLUSTER.hashCode())[0];
+        assert batch.clusterName() == CLUSTER;
+        assert batch.size() == 1 && batch.sender().equals(A);
+    }
+
+    public void testHashMismatch() throws Exception {
+        ByteArrayDataOutputStream out=write(new AsciiString("other"));
+        ByteArrayDataInputStream in=new ByteArrayDataInputStream(out.buffer(), 0, out.position());
+        in.readShort();
+        byte flags=in.readByte();
+        MessageBatch batch=Util.readMessageBatch(in, flags, mf, null, CLUSTER, CLUSTER.hashCode())[0];
+        assert !CLUSTER.equals(batch.clusterName());
+        assert batch.size() == 1;
+    }
+
+    public void testSmallerThanFullName() throws Exception {
+        ByteArrayDataOutputStream full=new ByteArrayDataOutputStream(128);
+        Util.writeMessageList(null, A, CLUSTER.chars(), List.of(new EmptyMessage().setSrc(A)), full, true, (short)1);
+        assert write(CLUSTER).position() < full.position();
+    }
+
+    public void testCluster() throws Exception {
+        channels=new JChannel[3];
+        MyReceiver<Integer>[] receivers=new MyReceiver[channels.length];
+        for(int i=0; i < channels.length; i++) {
+            channels[i]=create(String.valueOf((char)('A' + i)));
+            channels[i].setReceiver(receivers[i]=new MyReceiver<>());
+            channels[i].connect(CLUSTER.toString());
+        }
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, channels);
+        Util.sleep(DELAY * 2); // the hash is used only after DELAY ms
+        for(int i=1; i <= 10; i++) {
+            channels[0].send(null, i);
+            channels[1].send(channels[2].getAddress(), i);
+        }
+        Util.waitUntil(10000, 100, () -> receivers[0].size() == 10 && receivers[1].size() == 10
+          && receivers[2].size() == 20);
+        assert Stream.of(channels).map(ch -> (TP)ch.getProtocolStack().getTransport())
+          .allMatch(tp -> tp.getNumUnverifiedClusterNameHashes() == 0);
+    }
+
+    /** Senders are only recorded as verified when hashes are sent or have been received */
+    public void testVerifiedSenders() throws Exception {
+        channels=new JChannel[]{new JChannel(new SHARED_LOOPBACK(), new SHARED_LOOPBACK_PING(), new NAKACK2(),
+                                             new UNICAST3(), new STABLE(), new GMS()).name("X")};
+        channels[0].connect(CLUSTER.toString());
+        TP tp=channels[0].getProtocolStack().getTransport();
+        MessageBatch batch=new MessageBatch(null, A, new AsciiString(CLUSTER), true, List.of());
+        assert tp.verifyClusterName(batch, false);
+        assert tp.verified_senders.isEmpty() && !tp.hashes_received;
+
+        // a hash from an unverified sender is dropped, but enables verification
+        MessageBatch hashed=new MessageBatch(null, A, tp.getClusterNameAscii(), true, List.of());
+        assert !tp.verifyClusterName(hashed, true);
+        assert tp.hashes_received && tp.getNumUnverifiedClusterNameHashes() == 1;
+        assert tp.verifyClusterName(batch, false);
+        assert tp.verified_senders.containsKey(A);
+        assert tp.verifyClusterName(hashed, true);
+
+        // non-members are removed by the reaper
+        tp.setLogicalAddrCacheReaperInterval(0);
+        tp.evictLogicalAddressCache();
+        assert tp.verified_senders.isEmpty();
+    }
+
+    /**
+     * A partitioned cluster merges: MERGE3's INFO multicasts (with a hash of the cluster name) from the other
+     * partition are accepted, as its members were verified before the split
+     */
+    public void testMerge() throws Exception {
+        channels=new JChannel[3];
+        for(int i=0; i < channels.length; i++) {
+            channels[i]=createWithMerge(String.valueOf((char)('A' + i)));
+            channels[i].connect(CLUSTER.toString());
+        }
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, channels);
+        JChannel a=channels[0], b=channels[1], c=channels[2];
+        injectView(View.create(a.getAddress(), 10, a.getAddress(), b.getAddress()), a, b);
+        injectView(View.create(c.getAddress(), 10, c.getAddress()), c);
+        Util.waitUntil(20000, 500, () -> Stream.of(channels).allMatch(ch -> ch.getView().size() == 3),
+                       () -> Util.printViews(channels));
+        System.out.printf("views after merge:\n%s\n", Util.printViews(channels));
+        assert Stream.of(channels).map(ch -> (TP)ch.getProtocolStack().getTransport())
+          .allMatch(tp -> tp.getNumUnverifiedClusterNameHashes() == 0);
+    }
+
+    protected static void injectView(View view, JChannel... channels) {
+        for(JChannel ch: channels) {
+            GMS gms=ch.getProtocolStack().findProtocol(GMS.class);
+            gms.installView(view);
+        }
+    }
+
+    protected static ByteArrayDataOutputStream write(AsciiString cluster_name) throws Exception {
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(128);
+        Util.writeMessageList(null, A, cluster_name.chars(), List.of(new EmptyMessage().setSrc(A)), out, true,
+                              (short)1, null, true);
+        return out;
+    }
+
+    protected static JChannel create(String name) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK().hashClusterName(true).setCompactAddressesDelay(DELAY),
+                            new SHARED_LOOPBACK_PING(), new NAKACK2(), new UNICAST3(), new STABLE(), new GMS())
+          .name(name);
+    }
+
+    protected static JChannel createWithMerge(String name) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK().hashClusterName(true).setCompactAddressesDelay(DELAY),
+                            new SHARED_LOOPBACK_PING(),
+                            new MERGE3().setMinInterval(500).setMaxInterval(1000).setCheckInterval(2000),
+                            new NAKACK2().logDiscardMessages(false).logNotFoundMessages(false), new UNICAST3(),
+                            new STABLE(), new GMS().setJoinTimeout(500).setMergeTimeout(3000).logViewWarnings(false))
+          .name(name);
+    }
+}
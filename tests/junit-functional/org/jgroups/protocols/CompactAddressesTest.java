@@ -0,0 +1,183 @@
+package org.jgroups.protocols;
+
+import org.jgroups.*;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.util.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Tests compact addresses ({@link TP#compact_addresses}, {@link CompactAddresses})
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class CompactAddressesTest {
+    protected static final Address   A=Util.createRandomAddress("A"), B=Util.createRandomAddress("B"),
+      C=Util.createRandomAddress("C");
+    protected static final byte[]    CLUSTER="cluster".getBytes();
+    protected static final short     TP_ID=1;
+    protected static final long      DELAY=200;
+    protected final MessageFactory   mf=new DefaultMessageFactory();
+    protected JChannel[]             channels;
+
+    @AfterMethod protected void destroy() {
+        if(channels != null)
+            Util.closeReverse(channels);
+        channels=null;
+    }
+
+    public void testIndexFor() {
+        CompactAddresses addrs=new CompactAddresses().delay(0);
+        assert addrs.indexFor(null, A) == null;
+        View view=View.create(A, 1, A, B);
+        addrs.viewChange(view);
+        assert addrs.indexFor(null, A) == null; // multicasts may be received by non-members
+        assert addrs.stableIndex(null, A) == view.getMemberIndex();
+        assert addrs.indexFor(B, A) == view.getMemberIndex();
+        assert addrs.indexFor(C, A) == null;
+        assert addrs.indexFor(A, C) == null;
+        assert addrs.indexFor(A, null) == null;
+    }
+
+    public void testDelay() {
+        CompactAddresses addrs=new CompactAddresses().delay(60_000);
+        addrs.viewChange(View.create(A, 1, A, B));
+        assert addrs.indexFor(B, A) == null && addrs.stableIndex(null, A) == null;
+    }
+
+    public void testPreviousViews() {
+        CompactAddresses addrs=new CompactAddresses().delay(0);
+        View[] views=IntStream.rangeClosed(1, CompactAddresses.MAX_VIEWS+1).mapToObj(i -> View.create(A, i, A, B, C))
+          .toArray(View[]::new);
+        for(View v: views)
+            addrs.viewChange(v);
+        assert addrs.get(views[0].getMemberIndex().checksum()) == null;
+        for(int i=1; i < views.length; i++)
+            assert addrs.get(views[i].getMemberIndex().checksum()) == views[i].getMemberIndex();
+    }
+
+    public void testWriteAndReadCompactList() throws Exception {
+        View view=View.create(A, 1, A, B, C);
+        CompactAddresses addrs=new CompactAddresses().delay(0).viewChange(view);
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(256);
+        List<Message> list=Arrays.asList(new ObjectMessage(C, "hello").setSrc(B), new ObjectMessage(C, "world").setSrc(B));
+        Util.writeMessageList(C, B, CLUSTER, list, out, false, TP_ID, addrs, false);
+
+        ByteArrayDataOutputStream full=new ByteArrayDataOutputStream(256);
+        Util.writeMessageList(C, B, CLUSTER, list, full, false, TP_ID, null, false);
+        System.out.printf("compact: %d bytes, full: %d bytes\n", out.position(), full.position());
+        assert out.position() < full.position();
+
+        ByteArrayDataInputStream in=new ByteArrayDataInputStream(out.buffer(), 0, out.position());
+        in.readShort(); // version
+        byte flags=in.readByte();
+        assert (flags & TP.COMPACT) == TP.COMPACT;
+        MessageBatch[] batches=Util.readMessageBatch(in, flags, mf, addrs, null, 0);
+        MessageBatch batch=batches[0];
+        assert batch.size() == 2;
+        assert batch.sender().equals(B) && batch.dest().equals(C);
+        for(Message msg: batch)
+            assert msg.getSrc().equals(B) && msg.getDest().equals(C);
+    }
+
+    public void testReadWithUnknownView() throws Exception {
+        CompactAddresses addrs=new CompactAddresses().delay(0).viewChange(View.create(A, 1, A, B, C));
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(256);
+        Util.writeMessageList(B, A, CLUSTER, List.of(new ObjectMessage(B, "hello").setSrc(A)), out, false,
+                              TP_ID, addrs, false);
+
+        CompactAddresses other=new CompactAddresses().viewChange(View.create(A, 2, A, B));
+        ByteArrayDataInputStream in=new ByteArrayDataInputStream(out.buffer(), 0, out.position());
+        in.readShort();
+        byte flags=in.readByte();
+        MessageBatch[] batches=Util.readMessageBatch(in, flags, mf, other, null, 0);
+        assert batches[0].sender() == null;
+        assert batches[0].size() == 1; // the message was still read
+    }
+
+    public void testSingleMessageInCompactForm() throws Exception {
+        CompactAddresses addrs=new CompactAddresses().delay(0).viewChange(View.create(A, 1, A, B));
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(256);
+        Util.writeMessage(new EmptyMessage(B).setSrc(A), out, false, CLUSTER, TP_ID, addrs, false);
+        ByteArrayDataInputStream in=new ByteArrayDataInputStream(out.buffer(), 0, out.position());
+        in.readShort();
+        byte flags=in.readByte();
+        assert (flags & TP.LIST) == TP.LIST && (flags & TP.COMPACT) == TP.COMPACT;
+        MessageBatch batch=Util.readMessageBatch(in, flags, mf, addrs, null, 0)[0];
+        assert batch.size() == 1 && batch.sender().equals(A) && batch.dest().equals(B);
+        assert batch.clusterName().equals(new AsciiString(CLUSTER));
+    }
+
+    public void testCluster() throws Exception {
+        channels=new JChannel[3];
+        MyReceiver<Integer>[] receivers=new MyReceiver[channels.length];
+        for(int i=0; i < channels.length; i++) {
+            channels[i]=create(String.valueOf((char)('A' + i)));
+            channels[i].setReceiver(receivers[i]=new MyReceiver<>());
+            channels[i].connect("CompactAddressesTest");
+        }
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, channels);
+        Util.sleep(DELAY * 2); // compact addresses are used only after DELAY ms
+        for(int i=1; i <= 10; i++) {
+            channels[0].send(null, i);
+            channels[1].send(channels[2].getAddress(), i);
+        }
+        Util.waitUntil(10000, 100, () -> receivers[0].size() == 10 && receivers[1].size() == 10
+          && receivers[2].size() == 20);
+        assert Stream.of(channels).map(ch -> (TP)ch.getProtocolStack().getTransport())
+          .allMatch(tp -> tp.getNumCompactAddressMisses() == 0);
+    }
+
+    /**
+     * A partitioned cluster merges: the members of one partition can't resolve compact addresses of the other
+     * partition's view, so MERGE3's (unreliable) INFO multicasts need to be sent with full addresses
+     */
+    public void testMerge() throws Exception {
+        channels=new JChannel[3];
+        for(int i=0; i < channels.length; i++) {
+            channels[i]=createWithMerge(String.valueOf((char)('A' + i)));
+            channels[i].connect("CompactAddressesTest");
+        }
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, channels);
+        JChannel a=channels[0], b=channels[1], c=channels[2];
+        View v1=View.create(a.getAddress(), 10, a.getAddress(), b.getAddress()),
+          v2=View.create(c.getAddress(), 10, c.getAddress());
+        injectView(v1, a, b);
+        injectView(v2, c);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, c);
+        Util.waitUntil(20000, 500, () -> Stream.of(channels).allMatch(ch -> ch.getView().size() == 3),
+                       () -> Util.printViews(channels));
+        System.out.printf("views after merge:\n%s\n", Util.printViews(channels));
+    }
+
+    protected static void injectView(View view, JChannel... channels) {
+        for(JChannel ch: channels) {
+            GMS gms=ch.getProtocolStack().findProtocol(GMS.class);
+            gms.installView(view);
+        }
+    }
+
+    protected static JChannel create(String name) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK().compactAddresses(true).setCompactAddressesDelay(DELAY),
+                            new SHARED_LOOPBACK_PING(), new NAKACK2(), new UNICAST3(), new STABLE(), new GMS())
+          .name(name);
+    }
+
+    protected static JChannel createWithMerge(String name) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK().compactAddresses(true).setCompactAddressesDelay(DELAY),
+                            new SHARED_LOOPBACK_PING(),
+                            new MERGE3().setMinInterval(500).setMaxInterval(1000).setCheckInterval(2000),
+                            new NAKACK2().logDiscardMessages(false).logNotFoundMessages(false), new UNICAST3(),
+                            new STABLE(), new GMS().setJoinTimeout(500).setMergeTimeout(3000).logViewWarnings(false))
+          .name(name);
+    }
+}
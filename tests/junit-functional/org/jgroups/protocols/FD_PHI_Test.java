@@ -0,0 +1,147 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link FD_PHI} and {@link FD_PHI.ArrivalWindow}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class FD_PHI_Test {
+    protected static final long MIN=TimeUnit.MILLISECONDS.toNanos(100), MAX=TimeUnit.SECONDS.toNanos(60);
+    protected JChannel a, b, c;
+
+    @AfterMethod protected void destroy() {
+        Util.close(c, b, a);
+    }
+
+    public void testMeanAndStdDeviation() {
+        FD_PHI.ArrivalWindow w=new FD_PHI.ArrivalWindow(4, 1000);
+        long now=System.nanoTime();
+        w.arrived(now);
+        for(int i=1; i <= 3; i++)
+            w.add(now + i * TimeUnit.SECONDS.toNanos(1), MIN, MAX);
+        assert w.size() == 4;
+        assert Math.abs(w.mean() - 1000) < 0.01;
+        assert w.stdDeviation() < 0.01;
+    }
+
+    public void testRingBufferOverwritesOldest() {
+        FD_PHI.ArrivalWindow w=new FD_PHI.ArrivalWindow(2, 5000);
+        long now=System.nanoTime();
+        w.arrived(now);
+        w.add(now + TimeUnit.SECONDS.toNanos(1), MIN, MAX);
+        w.add(now + TimeUnit.SECONDS.toNanos(2), MIN, MAX); // evicts the initial 5000 ms sample
+        assert w.size() == 2;
+        assert Math.abs(w.mean() - 1000) < 0.01;
+    }
+
+    public void testCoalescing() {
+        FD_PHI.ArrivalWindow w=new FD_PHI.ArrivalWindow(10, 1000);
+        long now=System.nanoTime();
+        w.arrived(now);
+        for(int i=1; i <= 50; i++)
+            w.add(now + TimeUnit.MILLISECONDS.toNanos(i), MIN, MAX);
+        assert w.size() == 1; // only the initial sample
+        assert w.lastArrival() == now + TimeUnit.MILLISECONDS.toNanos(50);
+    }
+
+    public void testLongGapNotRecorded() {
+        FD_PHI.ArrivalWindow w=new FD_PHI.ArrivalWindow(10, 1000);
+        long now=System.nanoTime();
+        w.arrived(now);
+        w.add(now + TimeUnit.SECONDS.toNanos(120), MIN, MAX);
+        assert w.size() == 1;
+    }
+
+    public void testPhiIncreases() {
+        assert FD_PHI.ArrivalWindow.computePhi(0, 1000, 100) < 0.01;
+        double prev=0;
+        for(long elapsed=1000; elapsed <= 2000; elapsed+=100) {
+            double phi=FD_PHI.ArrivalWindow.computePhi(elapsed, 1000, 100);
+            assert phi > prev : String.format("phi(%d)=%.2f, prev=%.2f", elapsed, phi, prev);
+            prev=phi;
+        }
+        assert FD_PHI.ArrivalWindow.computePhi(1000, 1000, 100) < 1; // 50% chance
+        assert FD_PHI.ArrivalWindow.computePhi(2000, 1000, 100) > 8;
+    }
+
+    public void testSuspicion() throws Exception {
+        a=create("A");
+        b=create("B");
+        c=create("C");
+        for(JChannel ch: new JChannel[]{a, b, c})
+            ch.connect("FD_PHI_Test");
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+        Util.sleep(1000); // accumulate some samples
+        FD_PHI fd=a.getProtocolStack().findProtocol(FD_PHI.class);
+        assert fd.phi(b.getAddress()) < fd.getThreshold();
+        assert !fd.getPhiValues().isEmpty();
+
+        // C stops sending heartbeats
+        c.getProtocolStack().removeProtocol(FD_PHI.class);
+        Util.waitUntil(10000, 200, () -> a.getView().size() == 2 && b.getView().size() == 2,
+                       () -> String.format("A: %s, B: %s (phi: %s)", a.getView(), b.getView(), fd.getPhiValues()));
+        assert fd.getSuspectEventsSent() > 0;
+    }
+
+    /**
+     * Traffic much more frequent than heartbeats shrinks the inter-arrival times; when it stops, the regular gaps
+     * between heartbeats (up to 2 * interval, as the first heartbeat after traffic is skipped) must not cause suspicions
+     */
+    public void testNoSuspicionWhenTrafficStops() throws Exception {
+        a=create("A", 1000);
+        b=create("B", 1000);
+        c=create("C", 1000);
+        for(JChannel ch: new JChannel[]{a, b, c})
+            ch.connect("FD_PHI_Test");
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+        FD_PHI fd=a.getProtocolStack().findProtocol(FD_PHI.class);
+
+        // busy: B and C send a message every 10 ms
+        for(int i=0; i < 200; i++) {
+            b.send(null, i);
+            c.send(null, i);
+            Util.sleep(10);
+        }
+        // idle: only heartbeats are received
+        for(int i=0; i < 40; i++) {
+            assert fd.getSuspectEventsSent() == 0 : String.format("phi: %s", fd.getPhiValues());
+            Util.sleep(100);
+        }
+        assert a.getView().size() == 3;
+    }
+
+    protected static JChannel create(String name) throws Exception {
+        FD_PHI fd=new FD_PHI().setThreshold(4).setMinInterval(50).setMinStdDeviation(50).setAcceptablePause(200)
+          .setCheckInterval(100);
+        fd.setInterval(100);
+        fd.setTimeout(5000);
+        return create(name, fd);
+    }
+
+    /** Creates a channel with the default FD_PHI settings, scaled down to the given heartbeat interval */
+    protected static JChannel create(String name, long interval) throws Exception {
+        FD_PHI fd=new FD_PHI().setMinInterval(interval / 10).setMinStdDeviation(interval / 16)
+          .setAcceptablePause(interval * 3 / 8).setCheckInterval(100);
+        fd.setInterval(interval);
+        fd.setTimeout(interval * 5);
+        return create(name, fd);
+    }
+
+    protected static JChannel create(String name, FD_PHI fd) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK(), new SHARED_LOOPBACK_PING(), fd,
+                            new NAKACK2(), new UNICAST3(), new STABLE(), new GMS().setJoinTimeout(1000))
+          .name(name);
+    }
+}
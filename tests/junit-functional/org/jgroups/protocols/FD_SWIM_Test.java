@@ -0,0 +1,124 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Address;
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.ObjectMessage;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.stack.Protocol;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests {@link FD_SWIM}. The number of members of the cluster test can be changed with -Dswim.members=N,
+ * e.g. 1000 to simulate a large cluster in a single JVM
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class FD_SWIM_Test {
+    protected static final int     NUM=Integer.getInteger("swim.members", 10);
+    protected static final Address A=Util.createRandomAddress("A"), B=Util.createRandomAddress("B");
+    protected JChannel[]           channels;
+
+    @AfterMethod protected void destroy() {
+        if(channels != null)
+            Util.closeReverse(channels);
+        channels=null;
+    }
+
+    public void testOverrideRules() {
+        FD_SWIM.MemberState s=new FD_SWIM.MemberState();
+        assert !s.apply(new FD_SWIM.Update(FD_SWIM.Update.ALIVE, A, 0));
+        assert s.apply(new FD_SWIM.Update(FD_SWIM.Update.SUSPECT, A, 0));
+        assert !s.apply(new FD_SWIM.Update(FD_SWIM.Update.SUSPECT, A, 0));
+        assert !s.apply(new FD_SWIM.Update(FD_SWIM.Update.ALIVE, A, 0));
+        assert s.apply(new FD_SWIM.Update(FD_SWIM.Update.ALIVE, A, 1)); // refutation
+        assert s.status == FD_SWIM.MemberState.ALIVE && s.incarnation == 1;
+        assert !s.apply(new FD_SWIM.Update(FD_SWIM.Update.SUSPECT, A, 0)); // stale
+        assert s.apply(new FD_SWIM.Update(FD_SWIM.Update.SUSPECT, A, 1));
+        assert s.apply(new FD_SWIM.Update(FD_SWIM.Update.CONFIRM, A, 1));
+        assert !s.apply(new FD_SWIM.Update(FD_SWIM.Update.ALIVE, A, 5)); // CONFIRM is final
+        assert s.status == FD_SWIM.MemberState.CONFIRM;
+    }
+
+    public void testHeaderSerialization() throws Exception {
+        FD_SWIM.SwimHeader hdr=new FD_SWIM.SwimHeader(FD_SWIM.SwimHeader.PING_REQ).seqno(322649).target(B)
+          .updates(new FD_SWIM.Update[]{new FD_SWIM.Update(FD_SWIM.Update.SUSPECT, A, 3),
+            new FD_SWIM.Update(FD_SWIM.Update.ALIVE, B, 1)});
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(hdr.serializedSize());
+        hdr.writeTo(out);
+        assert out.position() == hdr.serializedSize();
+        FD_SWIM.SwimHeader tmp=new FD_SWIM.SwimHeader();
+        tmp.readFrom(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+        assert tmp.type() == FD_SWIM.SwimHeader.PING_REQ && tmp.seqno() == 322649 && tmp.target().equals(B);
+        assert tmp.updates().length == 2;
+        assert tmp.updates()[0].type() == FD_SWIM.Update.SUSPECT && tmp.updates()[0].member().equals(A)
+          && tmp.updates()[0].incarnation() == 3;
+
+        FD_SWIM.SwimHeader piggyback=new FD_SWIM.SwimHeader(FD_SWIM.SwimHeader.PIGGYBACK);
+        out=new ByteArrayDataOutputStream(16);
+        piggyback.writeTo(out);
+        assert out.position() == piggyback.serializedSize();
+    }
+
+    /** Updates are piggybacked on a copy of a regular message, the message itself is not changed */
+    public void testPiggybackOnCopy() {
+        FD_SWIM swim=new FD_SWIM();
+        swim.setId((short)1000);
+        swim.members=Arrays.asList(A, B);
+        swim.updates.put(A, new FD_SWIM.Update(FD_SWIM.Update.SUSPECT, A, 0));
+        List<Message> sent=new ArrayList<>();
+        swim.setDownProtocol(new Protocol() {
+            public Object down(Message msg) {sent.add(msg); return null;}
+        });
+        Message msg=new ObjectMessage(B, "hello");
+        swim.down(msg);
+        assert sent.size() == 1 && sent.get(0) != msg;
+        assert msg.getHeader(swim.getId()) == null;
+        FD_SWIM.SwimHeader hdr=sent.get(0).getHeader(swim.getId());
+        assert hdr != null && hdr.updates().length == 1 && hdr.updates()[0].member().equals(A);
+        assert sent.get(0).getObject().equals("hello");
+    }
+
+    public void testCrashedMemberIsExcluded() throws Exception {
+        channels=new JChannel[NUM];
+        for(int i=0; i < channels.length; i++) {
+            channels[i]=create(String.valueOf(i+1));
+            channels[i].connect("FD_SWIM_Test");
+        }
+        Util.waitUntilAllChannelsHaveSameView(NUM * 1000L, 200, channels);
+        Util.sleep(1000);
+        assert Stream.of(channels).map(this::swim).allMatch(p -> p.num_confirmations == 0);
+
+        JChannel crashed=channels[NUM/2];
+        Util.shutdown(crashed);
+        JChannel[] remaining=Stream.of(channels).filter(ch -> ch != crashed).toArray(JChannel[]::new);
+        Util.waitUntil(NUM * 1000L + 10000, 500,
+                       () -> Stream.of(remaining).allMatch(ch -> ch.getView().size() == NUM-1),
+                       () -> Arrays.toString(Stream.of(remaining).map(ch -> ch.getView().size()).toArray()));
+        assert Stream.of(remaining).noneMatch(ch -> ch.getView().containsMember(crashed.getAddress()));
+    }
+
+    protected FD_SWIM swim(JChannel ch) {
+        return ch.getProtocolStack().findProtocol(FD_SWIM.class);
+    }
+
+    protected static JChannel create(String name) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK(), new SHARED_LOOPBACK_PING(),
+                            new FD_SWIM().setProtocolPeriod(200).setPingTimeout(80).setSuspectTimeout(1000),
+                            new NAKACK2(), new UNICAST3(), new STABLE(), new GMS().setJoinTimeout(2000))
+          .name(name);
+    }
+}
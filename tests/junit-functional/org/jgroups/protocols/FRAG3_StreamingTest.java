@@ -0,0 +1,150 @@
+package org.jgroups.protocols;
+
+import org.jgroups.*;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tests {@link FRAG3} with {@link FRAG3#setStreamThreshold(int)} enabled
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class FRAG3_StreamingTest {
+    protected JChannel            a, b;
+    protected MyReceiver          ra, rb;
+    protected static final int    FRAG_SIZE=8000, THRESHOLD=100_000, BUFFER_SIZE=20_000;
+    protected static final String CLUSTER=FRAG3_StreamingTest.class.getSimpleName();
+
+    @BeforeMethod protected void setup() throws Exception {
+        a=create("A").setReceiver(ra=new MyReceiver());
+        b=create("B").setReceiver(rb=new MyReceiver());
+        a.connect(CLUSTER);
+        b.connect(CLUSTER);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+    }
+
+    @AfterMethod protected void destroy() {
+        Util.close(b, a);
+    }
+
+    public void testMulticast() throws Exception {
+        byte[] data=random(1_000_000);
+        a.send(new BytesMessage(null, data));
+        Util.waitUntil(10000, 100, () -> ra.size() == 1 && rb.size() == 1);
+        assert Arrays.equals(ra.list().get(0), data);
+        assert Arrays.equals(rb.list().get(0), data);
+        assert prot(a).num_streamed_msgs.sum() == 1;
+        assert prot(b).num_streamed_msgs.sum() == 1;
+        // streamed messages are passed up on threads from the thread pool
+        assert !ra.thread_name.startsWith("FRAG3-stream") && !rb.thread_name.startsWith("FRAG3-stream");
+    }
+
+    public void testUnicast() throws Exception {
+        byte[] data=random(500_000);
+        a.send(new BytesMessage(b.getAddress(), data));
+        Util.waitUntil(10000, 100, () -> rb.size() == 1);
+        assert Arrays.equals(rb.list().get(0), data);
+        assert ra.size() == 0;
+    }
+
+    /** Messages below the threshold are reassembled in memory */
+    public void testBelowThreshold() throws Exception {
+        byte[] small=random(50_000), large=random(THRESHOLD);
+        a.send(new BytesMessage(b.getAddress(), small));
+        a.send(new BytesMessage(b.getAddress(), large));
+        Util.waitUntil(10000, 100, () -> rb.size() == 2);
+        assert rb.list().stream().anyMatch(buf -> Arrays.equals(buf, small));
+        assert rb.list().stream().anyMatch(buf -> Arrays.equals(buf, large));
+        assert prot(b).num_streamed_msgs.sum() == 1;
+    }
+
+    /** OOB messages are reassembled in memory, even when above the threshold */
+    public void testOOB() throws Exception {
+        byte[] data=random(1_000_000);
+        a.send(new BytesMessage(b.getAddress(), data).setFlag(Message.Flag.OOB));
+        Util.waitUntil(10000, 100, () -> rb.size() == 1);
+        assert Arrays.equals(rb.list().get(0), data);
+        assert prot(b).num_streamed_msgs.sum() == 0;
+    }
+
+    /** Removing the fragments of a sender while its message is being read makes the reader fail with an EOFException */
+    public void testAbort() throws Exception {
+        rb.latch=new CountDownLatch(1); // B doesn't read until the latch is released
+        a.send(new BytesMessage(b.getAddress(), random(1_000_000)));
+        Util.waitUntil(10000, 100, () -> rb.waiting);
+        prot(b).clearFragmentsFor(a.getAddress());
+        rb.latch.countDown();
+        Util.waitUntil(10000, 100, () -> rb.exception != null);
+        assert rb.exception instanceof EOFException : String.format("unexpected exception: %s", rb.exception);
+        assert rb.size() == 0;
+    }
+
+    protected static FRAG3 prot(JChannel ch) {
+        return ch.getProtocolStack().findProtocol(FRAG3.class);
+    }
+
+    protected static byte[] random(int size) {
+        byte[] retval=new byte[size];
+        ThreadLocalRandom.current().nextBytes(retval);
+        return retval;
+    }
+
+    protected static JChannel create(String name) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK(),
+                            new SHARED_LOOPBACK_PING(),
+                            new NAKACK2(),
+                            new UNICAST3(),
+                            new STABLE(),
+                            new GMS().setJoinTimeout(1000),
+                            new FRAG3().setStreamThreshold(THRESHOLD).setStreamBufferSize(BUFFER_SIZE).setFragSize(FRAG_SIZE))
+          .name(name);
+    }
+
+    protected static class MyReceiver implements Receiver {
+        protected final List<byte[]>      list=new ArrayList<>();
+        protected volatile CountDownLatch latch;
+        protected volatile boolean        waiting;
+        protected volatile Exception      exception;
+        protected volatile String         thread_name; // the thread which received the last message
+
+        public synchronized List<byte[]> list() {return new ArrayList<>(list);}
+        public synchronized int          size() {return list.size();}
+
+        public void receive(Message msg) {
+            thread_name=Thread.currentThread().getName();
+            byte[] buf;
+            if(msg instanceof ObjectMessage && msg.getObject() instanceof InputStream) {
+                try(InputStream in=msg.getObject()) {
+                    if(latch != null) {
+                        waiting=true;
+                        latch.await();
+                    }
+                    buf=in.readAllBytes();
+                }
+                catch(Exception ex) {
+                    exception=ex;
+                    return;
+                }
+            }
+            else
+                buf=msg.getArray();
+            synchronized(this) {
+                list.add(buf);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.blocks.locking.LockService;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Tests lock leasing in {@link Locking} ({@link Locking#use_leases}), for {@link CENTRAL_LOCK} and {@link CENTRAL_LOCK2}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true,dataProvider="createLockingProtocol")
+public class LockLeasingTest {
+    protected JChannel              a, b, c;
+    protected LockService           sa, sb, sc;
+    protected static final String   LOCK="lease-lock";
+    protected static final String   CLUSTER=LockLeasingTest.class.getSimpleName();
+
+    @DataProvider(name="createLockingProtocol")
+    Object[][] createLockingProtocol() {
+        return new Object[][] {
+          {CENTRAL_LOCK.class},
+          {CENTRAL_LOCK2.class}
+        };
+    }
+
+    protected void init(Class<? extends Locking> cl, long lease_time) throws Exception {
+        a=create("A", cl, lease_time).connect(CLUSTER);
+        b=create("B", cl, lease_time).connect(CLUSTER);
+        c=create("C", cl, lease_time).connect(CLUSTER);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+        sa=new LockService(a);
+        sb=new LockService(b);
+        sc=new LockService(c);
+    }
+
+    @AfterMethod protected void destroy() {
+        Util.close(c, b, a);
+    }
+
+    /** Repeated lock/unlock on B is satisfied by the lease granted on the first lock */
+    public void testLocalAcquisitions(Class<? extends Locking> cl) throws Exception {
+        init(cl, 60_000);
+        Lock lock=sb.getLock(LOCK);
+        for(int i=0; i < 100; i++) {
+            lock.lock();
+            lock.unlock();
+        }
+        assert locking(a).num_leases_granted.sum() == 1;
+        assert locking(b).num_local_acquisitions.sum() == 99;
+        assert locking(b).getNumLeases() == 1;
+        assert locking(b).getNumClientLocks() == 0;
+        assert lock.tryLock();
+        lock.unlock();
+        assert locking(b).num_local_acquisitions.sum() == 100;
+    }
+
+    /** The lease is not held by B: it's returned as soon as C wants the lock */
+    public void testRecallOfIdleLease(Class<? extends Locking> cl) throws Exception {
+        init(cl, 60_000);
+        Lock lock=sb.getLock(LOCK);
+        lock.lock();
+        lock.unlock();
+        assert locking(b).getNumLeases() == 1;
+
+        Lock lock2=sc.getLock(LOCK);
+        assert lock2.tryLock(5, TimeUnit.SECONDS);
+        assert locking(a).num_leases_recalled.sum() == 1;
+        Util.waitUntil(5000, 100, () -> locking(b).getNumLeases() == 0);
+        assert locking(c).getNumLeases() == 1;
+
+        // B cannot get the lock from its (returned) lease
+        assert !lock.tryLock();
+        lock2.unlock();
+        assert lock.tryLock(5, TimeUnit.SECONDS);
+        lock.unlock();
+    }
+
+    /** The lease is held by B when C wants the lock: it's returned when B unlocks */
+    public void testRecallOfHeldLease(Class<? extends Locking> cl) throws Exception {
+        init(cl, 60_000);
+        Lock lock=sb.getLock(LOCK);
+        lock.lock();
+        Lock lock2=sc.getLock(LOCK);
+        CompletableFuture<Boolean> f=CompletableFuture.supplyAsync(() -> {
+            lock2.lock();
+            return true;
+        });
+        Util.waitUntil(5000, 100, () -> locking(a).num_leases_recalled.sum() == 1);
+        assert !f.isDone();
+        lock.unlock();
+        assert f.get(5, TimeUnit.SECONDS);
+        assert locking(b).getNumLeases() == 0;
+
+        // B's lock request is queued behind C, which unlocks in a different thread (ok, as owners are address:thread)
+        CompletableFuture<Void> unlocker=CompletableFuture.runAsync(() -> {
+            Util.sleep(500);
+            sc.unlockAll();
+        });
+        assert lock.tryLock(5, TimeUnit.SECONDS);
+        unlocker.get(5, TimeUnit.SECONDS);
+        lock.unlock();
+    }
+
+    /** Local threads contending for a leased lock are mutually exclusive */
+    public void testMutualExclusionOfLocalThreads(Class<? extends Locking> cl) throws Exception {
+        init(cl, 60_000);
+        final int NUM_THREADS=4, NUM=500;
+        final int[] counter={0};
+        List<Thread> threads=new ArrayList<>(NUM_THREADS);
+        for(int i=0; i < NUM_THREADS; i++) {
+            Thread t=new Thread(() -> {
+                Lock lock=sb.getLock(LOCK);
+                for(int j=0; j < NUM; j++) {
+                    lock.lock();
+                    try {
+                        int tmp=counter[0];
+                        Thread.yield();
+                        counter[0]=tmp+1;
+                    }
+                    finally {
+                        lock.unlock();
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for(Thread t: threads)
+            t.join(20000);
+        assert counter[0] == NUM_THREADS * NUM : String.format("counter is %d", counter[0]);
+        System.out.printf("leases granted: %d, local acquisitions: %d\n",
+                          locking(a).num_leases_granted.sum(), locking(b).num_local_acquisitions.sum());
+        Lock lock=sc.getLock(LOCK);
+        assert lock.tryLock(5, TimeUnit.SECONDS);
+        lock.unlock();
+    }
+
+    public void testLeaseExpiration(Class<? extends Locking> cl) throws Exception {
+        init(cl, 500);
+        Lock lock=sb.getLock(LOCK);
+        lock.lock();
+        lock.unlock();
+        assert locking(b).getNumLeases() == 1;
+        Util.waitUntil(5000, 100, () -> locking(b).getNumLeases() == 0);
+        Util.waitUntil(5000, 100, () -> locking(a).getNumServerLocks() == 0);
+        assert locking(b).num_leases_returned.sum() == 1;
+    }
+
+    /** Awaiting a condition returns the lease, so the coordinator knows the lock was released */
+    public void testConditionWithLease(Class<? extends Locking> cl) throws Exception {
+        init(cl, 60_000);
+        Lock lock=sb.getLock(LOCK);
+        lock.lock();
+        lock.unlock();
+        lock.lock(); // acquired from the lease
+        Condition cond=lock.newCondition();
+        CompletableFuture<Void> signaler=CompletableFuture.runAsync(() -> {
+            Lock lock2=sc.getLock(LOCK);
+            Util.sleep(500);
+            lock2.lock();
+            try {
+                lock2.newCondition().signal();
+            }
+            finally {
+                lock2.unlock();
+            }
+        });
+        boolean signaled=cond.await(10, TimeUnit.SECONDS);
+        lock.unlock();
+        signaler.get(10, TimeUnit.SECONDS);
+        assert signaled;
+    }
+
+    protected static Locking locking(JChannel ch) {
+        return ch.getProtocolStack().findProtocol(Locking.class);
+    }
+
+    protected static JChannel create(String name, Class<? extends Locking> cl, long lease_time) throws Exception {
+        Locking locking=cl.getDeclaredConstructor().newInstance().useLeases(true).leaseTime(lease_time);
+        return new JChannel(Util.getTestStack(locking)).name(name);
+    }
+}
@@ -0,0 +1,110 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.blocks.atomic.Counter;
+import org.jgroups.blocks.atomic.CounterService;
+import org.jgroups.util.Range;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tests {@link COUNTER#getOrCreateReservingCounter(String, long, long, long)} and {@link Counter#reserve(long)}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class ReservingCounterTest {
+    protected JChannel          a, b, c;
+    protected static final String CLUSTER=ReservingCounterTest.class.getSimpleName();
+
+    @BeforeMethod protected void setup() throws Exception {
+        a=create("A");
+        b=create("B");
+        c=create("C");
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+    }
+
+    @AfterMethod protected void destroy() {
+        Util.close(c, b, a);
+    }
+
+    public void testReserve() {
+        Counter ctr=new CounterService(b).getOrCreateCounter("ctr", 10);
+        Range r=ctr.reserve(100);
+        assert r.low == 11 && r.high == 110 : String.format("range: %s", r);
+        assert ctr.get() == 110;
+    }
+
+    public void testLocalIncrements() throws Exception {
+        Counter ctr=new CounterService(b).getOrCreateReservingCounter("ids", 0, 100, 20);
+        COUNTER counter_b=b.getProtocolStack().findProtocol(COUNTER.class);
+        for(int i=1; i <= 80; i++)
+            assert ctr.incrementAndGet() == i;
+        // the next range is reserved asynchronously when 20 values are left
+        Util.waitUntil(5000, 10, () -> counter_b.getNumUnusedReservedValues() == 120);
+        for(int i=81; i <= 120; i++)
+            assert ctr.incrementAndGet() == i;
+        assert ctr.get() == 200;
+        assert ctr.addAndGet(10) == 130;
+        assert ctr.addAndGet(500) == 700; // larger than the block size: reserved on the coordinator directly
+        System.out.println("reservations: " + counter_b.printReservations());
+    }
+
+    public void testUniqueValues() throws Exception {
+        final int NUM=2000;
+        Set<Long> values=ConcurrentHashMap.newKeySet();
+        List<Thread> threads=new ArrayList<>();
+        for(JChannel ch: new JChannel[]{a, b, c}) {
+            Counter ctr=new CounterService(ch).getOrCreateReservingCounter("ids", 0, 50, 10);
+            for(int i=0; i < 2; i++) {
+                Thread t=new Thread(() -> {
+                    for(int j=0; j < NUM; j++)
+                        assert values.add(ctr.incrementAndGet());
+                });
+                threads.add(t);
+                t.start();
+            }
+        }
+        for(Thread t: threads)
+            t.join(30000);
+        assert values.size() == NUM * threads.size();
+    }
+
+    /** The same reserving counter is returned for the same name, until the counter is deleted */
+    public void testSameInstance() {
+        CounterService cs=new CounterService(a);
+        COUNTER counter_a=a.getProtocolStack().findProtocol(COUNTER.class);
+        Counter ctr=cs.getOrCreateReservingCounter("ids", 0, 10, 2);
+        assert ctr.incrementAndGet() == 1;
+        assert cs.getOrCreateReservingCounter("ids", 0, 10, 2) == ctr;
+        assert cs.getOrCreateReservingCounter("ids", 0, 20, 5) == ctr;
+        assert counter_a.printReservations().split("\n").length == 1;
+        counter_a.deleteCounter("ids");
+        assert counter_a.getNumUnusedReservedValues() == 0;
+        assert cs.getOrCreateReservingCounter("ids", 0, 10, 2) != ctr;
+    }
+
+    public void testUnsupportedOperations() {
+        Counter ctr=new CounterService(a).getOrCreateReservingCounter("ids", 0, 10, 2);
+        for(Runnable r: new Runnable[]{ctr::decrementAndGet, () -> ctr.set(5), () -> ctr.compareAndSet(0, 5)}) {
+            try {
+                r.run();
+                assert false : "UnsupportedOperationException should have been thrown";
+            }
+            catch(UnsupportedOperationException expected) {
+            }
+        }
+    }
+
+    protected static JChannel create(String name) throws Exception {
+        return new JChannel(Util.getTestStack(new COUNTER())).name(name).connect(CLUSTER);
+    }
+}
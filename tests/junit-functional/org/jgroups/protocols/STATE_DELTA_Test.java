@@ -0,0 +1,148 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.ObjectMessage;
+import org.jgroups.Receiver;
+import org.jgroups.protocols.pbcast.DeltaState;
+import org.jgroups.protocols.pbcast.STATE_DELTA;
+import org.jgroups.util.Bits;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests {@link STATE_DELTA}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class STATE_DELTA_Test {
+    protected JChannel            a, b, c;
+    protected Store               sa, sb, sc;
+    protected static final int    LOG_SIZE=10;
+    protected static final String CLUSTER=STATE_DELTA_Test.class.getSimpleName();
+
+    @BeforeMethod protected void setup() throws Exception {
+        a=create("A", sa=new Store());
+        b=create("B", sb=new Store());
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+        update(5, a, sa, sb);
+    }
+
+    @AfterMethod protected void destroy() {
+        Util.close(c, b, a);
+    }
+
+    /** A new member without state gets the full state */
+    public void testFullTransfer() throws Exception {
+        c=create("C", sc=new Store());
+        c.getState(null, 10000);
+        assert sc.data.equals(sa.data);
+        assert prot(c).getNumDeltasReceived() == 0;
+        assert prot(a).getNumFullTransfers() == 0; // no version was sent
+    }
+
+    /** A rejoining member gets only the changes it missed */
+    public void testDeltaTransfer() throws Exception {
+        c=create("C", sc=new Store());
+        c.getState(null, 10000);
+        Util.close(c);
+        update(LOG_SIZE, a, sa, sb);
+
+        c=create("C", sc); // restart with the state C had when it left
+        c.getState(null, 10000);
+        assert sc.data.equals(sa.data) : String.format("%s vs %s", sc.data, sa.data);
+        assert prot(c).getNumDeltasReceived() == 1;
+        assert prot(a).getNumDeltasSent() == 1;
+    }
+
+    /** A member which missed more changes than the change log keeps gets the full state */
+    public void testFallbackToFullTransfer() throws Exception {
+        c=create("C", sc=new Store());
+        c.getState(null, 10000);
+        Util.close(c);
+        update(LOG_SIZE + 1, a, sa, sb);
+
+        c=create("C", sc);
+        c.getState(null, 10000);
+        assert sc.data.equals(sa.data) : String.format("%s vs %s", sc.data, sa.data);
+        assert prot(c).getNumDeltasReceived() == 0;
+        assert prot(a).getNumFullTransfers() == 1;
+    }
+
+    protected static void update(int num, JChannel sender, Store... stores) throws Exception {
+        int expected=stores[0].size() + num;
+        for(int i=0; i < num; i++)
+            sender.send(new ObjectMessage(null, "update-" + (expected - num + i)));
+        Util.waitUntil(10000, 100, () -> Arrays.stream(stores).allMatch(s -> s.size() == expected));
+    }
+
+    protected static STATE_DELTA prot(JChannel ch) {
+        return ch.getProtocolStack().findProtocol(STATE_DELTA.class);
+    }
+
+    protected static JChannel create(String name, Store store) throws Exception {
+        return new JChannel(Util.getTestStack(new STATE_DELTA())).name(name).setReceiver(store).connect(CLUSTER);
+    }
+
+    /** A list of updates; the version is the number of updates. The change log consists of the last LOG_SIZE updates */
+    protected static class Store implements Receiver, DeltaState {
+        protected final List<String> data=new ArrayList<>();
+
+        protected synchronized int size() {return data.size();}
+
+        public synchronized void receive(Message msg) {
+            data.add(msg.getObject());
+        }
+
+        public synchronized void getState(OutputStream output) throws Exception {
+            write(new DataOutputStream(output), 0);
+        }
+
+        public synchronized void setState(InputStream input) throws Exception {
+            data.clear();
+            read(new DataInputStream(input));
+        }
+
+        public synchronized byte[] getVersion() {
+            if(data.isEmpty())
+                return null;
+            byte[] version=new byte[Global.LONG_SIZE];
+            Bits.writeLong(data.size(), version, 0);
+            return version;
+        }
+
+        public synchronized boolean getDelta(byte[] version, OutputStream out) throws Exception {
+            int from=(int)Bits.readLong(version, 0);
+            if(data.size() - from > LOG_SIZE)
+                return false;
+            write(new DataOutputStream(out), from);
+            return true;
+        }
+
+        public synchronized void setDelta(InputStream in) throws Exception {
+            read(new DataInputStream(in));
+        }
+
+        protected void write(DataOutputStream out, int from) throws IOException {
+            out.writeInt(data.size() - from);
+            for(int i=from; i < data.size(); i++)
+                out.writeUTF(data.get(i));
+            out.flush();
+        }
+
+        protected void read(DataInputStream in) throws IOException {
+            int num=in.readInt();
+            for(int i=0; i < num; i++)
+                data.add(in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.Receiver;
+import org.jgroups.StateTransferException;
+import org.jgroups.protocols.pbcast.STATE_PARALLEL;
+import org.jgroups.protocols.pbcast.SegmentedState;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Tests {@link STATE_PARALLEL}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class STATE_PARALLEL_Test {
+    protected JChannel            a, b, c, d;
+    protected Segments            sa, sb, sc, sd;
+    protected static final int    NUM_SEGMENTS=16, SEGMENT_SIZE=100_000;
+    protected static final String CLUSTER=STATE_PARALLEL_Test.class.getSimpleName();
+
+    @BeforeMethod protected void setup() throws Exception {
+        byte[][] state=new byte[NUM_SEGMENTS][];
+        for(int i=0; i < state.length; i++) {
+            state[i]=new byte[SEGMENT_SIZE + i];
+            ThreadLocalRandom.current().nextBytes(state[i]);
+        }
+        a=create("A", sa=new Segments(state));
+        b=create("B", sb=new Segments(state));
+        c=create("C", sc=new Segments(state));
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+    }
+
+    @AfterMethod protected void destroy() {
+        Util.close(d, c, b, a);
+    }
+
+    public void testParallelTransfer() throws Exception {
+        d=create("D", sd=new Segments(NUM_SEGMENTS));
+        d.getState(null, 20000);
+        assert sd.equals(sa);
+        for(JChannel ch: Arrays.asList(a, b, c))
+            assert prot(ch).getSegmentsSent() > 0 : String.format("%s didn't send any segments", ch.getAddress());
+        assert prot(d).getSegmentsReceived() == NUM_SEGMENTS;
+        assert prot(d).getRetries() == 0;
+        assert !prot(d).isTransferInProgress();
+    }
+
+    /** B fails sending a segment: it is fetched from a different member */
+    public void testRetryAfterException() throws Exception {
+        sb.getter_hook=seg -> {
+            if(seg % 2 == 0)
+                throw new IllegalStateException("failed reading segment " + seg);
+        };
+        d=create("D", sd=new Segments(NUM_SEGMENTS));
+        d.getState(null, 20000);
+        assert sd.equals(sa);
+        assert prot(d).getRetries() > 0;
+    }
+
+    /** B leaves while sending segments: they are fetched from A and C */
+    public void testRetryAfterProviderLeft() throws Exception {
+        CountDownLatch latch=new CountDownLatch(1);
+        sb.getter_hook=seg -> {
+            try {
+                latch.await();
+            }
+            catch(InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        d=create("D", sd=new Segments(NUM_SEGMENTS));
+        Thread closer=new Thread(() -> {
+            Util.waitUntilTrue(5000, 10, () -> prot(b).getNumSenders() > 0);
+            Util.close(b);
+            latch.countDown();
+        });
+        closer.start();
+        d.getState(null, 20000);
+        closer.join(10000);
+        assert sd.equals(sa);
+        assert prot(d).getRetries() > 0;
+    }
+
+    /** D reads the segments only when the latch is released: the providers send at most window chunks ahead of it */
+    public void testCreditsReturnedOnConsumption() throws Exception {
+        CountDownLatch latch=new CountDownLatch(1);
+        d=create("D", sd=new Segments(NUM_SEGMENTS));
+        sd.setter_hook=seg -> {
+            try {
+                latch.await();
+            }
+            catch(InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        STATE_PARALLEL p=prot(d);
+        Thread getter=new Thread(() -> {
+            try {
+                d.getState(null, 20000);
+            }
+            catch(Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        getter.start();
+        Util.waitUntil(5000, 10, () -> p.getBytesReceived() > 0);
+        Util.sleep(500); // the providers would send entire segments if credits were returned on reception
+        long max=3L * p.getSegmentsPerProvider() * p.getWindow() * p.getChunkSize(), received=p.getBytesReceived();
+        System.out.printf("received %,d bytes before the segments were read (max: %,d)\n", received, max);
+        latch.countDown();
+        assert received <= max : String.format("received %d bytes, but max is %d", received, max);
+        getter.join(20000);
+        assert sd.equals(sa);
+        assert p.getRetries() == 0;
+    }
+
+    /** D reads every segment with a single read that is larger than window * chunk_size */
+    public void testLargeRead() throws Exception {
+        d=create("D", sd=new Segments(NUM_SEGMENTS));
+        sd.read_fully=true;
+        STATE_PARALLEL p=prot(d);
+        assert SEGMENT_SIZE > p.getWindow() * p.getChunkSize();
+        d.getState(null, 20000);
+        assert sd.equals(sa);
+        assert p.getRetries() == 0;
+    }
+
+    public void testFailure() throws Exception {
+        for(Segments s: Arrays.asList(sa, sb, sc))
+            s.getter_hook=seg -> {throw new IllegalStateException("failed reading segment " + seg);};
+        d=create("D", sd=new Segments(NUM_SEGMENTS));
+        prot(d).setMaxAttempts(3);
+        try {
+            d.getState(null, 20000);
+            assert false : "state transfer should have failed";
+        }
+        catch(StateTransferException ex) {
+            System.out.printf("got exception as expected: %s\n", ex.getCause());
+        }
+        assert !prot(d).isTransferInProgress();
+        Util.waitUntil(5000, 100, () -> Stream.of(a, b, c).allMatch(ch -> prot(ch).getNumSenders() == 0));
+    }
+
+    protected static STATE_PARALLEL prot(JChannel ch) {
+        return ch.getProtocolStack().findProtocol(STATE_PARALLEL.class);
+    }
+
+    protected static JChannel create(String name, Segments state) throws Exception {
+        STATE_PARALLEL st=new STATE_PARALLEL().setChunkSize(8000).setWindow(4).setSegmentTimeout(2000);
+        return new JChannel(Util.getTestStack(st)).name(name).setReceiver(state).connect(CLUSTER);
+    }
+
+    protected static class Segments implements Receiver, SegmentedState {
+        protected final byte[][]     segments;
+        protected volatile IntConsumer getter_hook, setter_hook;
+        protected volatile boolean     read_fully; // reads a segment (of known size) with a single read
+
+        protected Segments(int num) {
+            segments=new byte[num][];
+        }
+
+        protected Segments(byte[][] state) {
+            segments=state;
+        }
+
+        public int numSegments() {
+            return segments.length;
+        }
+
+        public void getSegment(int segment, OutputStream out) throws Exception {
+            IntConsumer hook=getter_hook;
+            if(hook != null)
+                hook.accept(segment);
+            byte[] buf=segments[segment];
+            for(int i=0; i < buf.length; i+=1000) // many small writes
+                out.write(buf, i, Math.min(1000, buf.length - i));
+        }
+
+        public void setSegment(int segment, InputStream in) throws Exception {
+            IntConsumer hook=setter_hook;
+            if(hook != null)
+                hook.accept(segment);
+            byte[] buf;
+            if(read_fully) {
+                buf=new byte[SEGMENT_SIZE + segment];
+                new DataInputStream(in).readFully(buf);
+                assert in.read() == -1;
+            }
+            else
+                buf=in.readAllBytes();
+            synchronized(segments) {
+                segments[segment]=buf;
+            }
+        }
+
+        public boolean equals(Object obj) {
+            Segments other=(Segments)obj;
+            synchronized(segments) {
+                return Arrays.deepEquals(segments, other.segments);
+            }
+        }
+
+        public int hashCode() {
+            return Arrays.deepHashCode(segments);
+        }
+    }
+}
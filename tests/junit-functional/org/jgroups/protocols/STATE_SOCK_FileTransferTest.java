@@ -0,0 +1,132 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.Receiver;
+import org.jgroups.StateTransferException;
+import org.jgroups.protocols.pbcast.FileState;
+import org.jgroups.protocols.pbcast.STATE_SOCK;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tests {@link STATE_SOCK} with {@link STATE_SOCK#useFileTransfer(boolean)} enabled
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class STATE_SOCK_FileTransferTest {
+    protected JChannel            a, b;
+    protected Path                dir;
+    protected static final String CLUSTER=STATE_SOCK_FileTransferTest.class.getSimpleName();
+
+    @BeforeMethod protected void setup() throws Exception {
+        dir=Files.createTempDirectory(CLUSTER);
+    }
+
+    @AfterMethod protected void destroy() throws Exception {
+        Util.close(b, a);
+        for(File f: dir.toFile().listFiles())
+            Files.delete(f.toPath());
+        Files.delete(dir);
+    }
+
+    public void testFileTransfer() throws Exception {
+        byte[] data1=random(3_000_000), data2=random(100_000);
+        Path f1=Files.write(dir.resolve("A-1"), data1), f2=Files.write(dir.resolve("A-2"), data2);
+        StateFiles state_a=new StateFiles(dir, "A", f1, f2), state_b=new StateFiles(dir, "B");
+        a=create("A", state_a);
+        b=create("B", state_b);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+        b.getState(null, 10000);
+        assert state_b.num_received == 2;
+        assert Arrays.equals(Files.readAllBytes(dir.resolve("B-0")), data1);
+        assert Arrays.equals(Files.readAllBytes(dir.resolve("B-1")), data2);
+    }
+
+    /** Only a region of a file is transferred */
+    public void testRegion() throws Exception {
+        byte[] data=random(10_000);
+        Path f=Files.write(dir.resolve("A-1"), data);
+        StateFiles state_a=new StateFiles(dir, "A", f) {
+            public List<FileRegion> getStateFiles() throws Exception {
+                return List.of(new FileRegion(FileChannel.open(f, StandardOpenOption.READ), 1000, 2000));
+            }
+        }, state_b=new StateFiles(dir, "B");
+        a=create("A", state_a);
+        b=create("B", state_b);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+        b.getState(null, 10000);
+        assert Arrays.equals(Files.readAllBytes(dir.resolve("B-0")), Arrays.copyOfRange(data, 1000, 3000));
+    }
+
+    public void testFailure() throws Exception {
+        StateFiles state_a=new StateFiles(dir, "A") {
+            public List<FileRegion> getStateFiles() throws Exception {
+                throw new IllegalStateException("no files");
+            }
+        };
+        a=create("A", state_a);
+        b=create("B", new StateFiles(dir, "B"));
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+        try {
+            b.getState(null, 10000);
+            assert false : "state transfer should have failed";
+        }
+        catch(StateTransferException ex) {
+            System.out.printf("got exception as expected: %s\n", ex.getCause());
+        }
+    }
+
+    protected static byte[] random(int size) {
+        byte[] retval=new byte[size];
+        ThreadLocalRandom.current().nextBytes(retval);
+        return retval;
+    }
+
+    protected static JChannel create(String name, StateFiles state) throws Exception {
+        return new JChannel(Util.getTestStack(new STATE_SOCK().useFileTransfer(true)))
+          .name(name).setReceiver(state).connect(CLUSTER);
+    }
+
+    protected static class StateFiles implements Receiver, FileState {
+        protected final Path   dir;
+        protected final String prefix;
+        protected final Path[] files;
+        protected int          num_received;
+
+        protected StateFiles(Path dir, String prefix, Path... files) {
+            this.dir=dir;
+            this.prefix=prefix;
+            this.files=files;
+        }
+
+        public List<FileRegion> getStateFiles() throws Exception {
+            List<FileRegion> retval=new ArrayList<>(files.length);
+            for(Path f: files)
+                retval.add(new FileRegion(FileChannel.open(f, StandardOpenOption.READ)));
+            return retval;
+        }
+
+        public FileChannel createStateFile(int index, long length) throws Exception {
+            return FileChannel.open(dir.resolve(prefix + "-" + index), StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        public void setStateFiles(int num_regions) {
+            num_received=num_regions;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.jgroups.protocols;
+
+import org.jgroups.Event;
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.PhysicalAddress;
+import org.jgroups.View;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link WARM_RESTART}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class WARM_RESTART_Test {
+    protected JChannel          a, b, c;
+    protected File              dir;
+    protected static final String CLUSTER=WARM_RESTART_Test.class.getSimpleName();
+
+    @BeforeMethod protected void setup() throws Exception {
+        dir=Files.createTempDirectory("warm-restart").toFile();
+        a=create("A").connect(CLUSTER);
+        b=create("B").connect(CLUSTER);
+        c=create("C").connect(CLUSTER);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+    }
+
+    @AfterMethod protected void destroy() {
+        Util.close(c, b, a);
+        File[] files=dir.listFiles();
+        if(files != null)
+            for(File f: files)
+                f.delete();
+        dir.delete();
+    }
+
+    public void testRestart() throws Exception {
+        WARM_RESTART wr=c.getProtocolStack().findProtocol(WARM_RESTART.class);
+        File file=new File(wr.snapshotFile());
+        Util.waitUntil(10000, 100, file::exists);
+        Util.close(c);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+
+        c=create("C2", "C"); // the logical name changed, but the member ID is the same
+        long start=System.currentTimeMillis();
+        c.connect(CLUSTER);
+        long time=System.currentTimeMillis() - start;
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+        wr=c.getProtocolStack().findProtocol(WARM_RESTART.class);
+        System.out.printf("C rejoined in %d ms, view: %s\n", time, c.getView());
+        assert wr.num_mappings_loaded == 2 : String.format("mappings loaded: %d", wr.num_mappings_loaded);
+        assert wr.num_targeted_joins == 1;
+        assert c.getView().getCoord().equals(a.getAddress());
+    }
+
+    /** The coordinator in the snapshot left: the targeted join fails and regular discovery is used */
+    public void testRestartWithStaleCoordinator() throws Exception {
+        Util.close(c);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+        Util.close(a);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, b);
+
+        c=create("C");
+        c.connect(CLUSTER);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, b, c);
+        WARM_RESTART wr=c.getProtocolStack().findProtocol(WARM_RESTART.class);
+        assert wr.num_targeted_joins == 1;
+        View view=c.getView();
+        assert view.size() == 2 && view.getCoord().equals(b.getAddress());
+    }
+
+    /**
+     * Same as above, but with asynchronous discovery: the discovery responses after the failed targeted join are
+     * received after the discovery request has been sent
+     */
+    public void testRestartWithStaleCoordinatorAndAsyncDiscovery() throws Exception {
+        Util.close(c, b, a);
+        a=create("A", "A", tcpping()).connect(CLUSTER);
+        b=create("B", "B", tcpping(a)).connect(CLUSTER);
+        c=create("C", "C", tcpping(a, b)).connect(CLUSTER);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+        TCPPING ping=tcpping(a, b);
+        Util.close(c);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+        Util.close(a);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, b);
+
+        c=create("C", "C", ping);
+        c.connect(CLUSTER);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, b, c);
+        WARM_RESTART wr=c.getProtocolStack().findProtocol(WARM_RESTART.class);
+        assert wr.num_targeted_joins == 1;
+        View view=c.getView();
+        assert view.size() == 2 && view.getCoord().equals(b.getAddress());
+    }
+
+    /** View changes arriving within write_delay are written to the snapshot file only once */
+    public void testCoalescedWrites() throws Exception {
+        WARM_RESTART wr=a.getProtocolStack().findProtocol(WARM_RESTART.class);
+        Util.waitUntil(10000, 100, () -> wr.num_snapshots_written > 0);
+        wr.writeDelay(1000);
+        int written=wr.num_snapshots_written;
+        Util.close(c, b);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a);
+        Util.waitUntil(10000, 100, () -> wr.num_snapshots_written > written);
+        Util.sleep(1500);
+        assert wr.num_snapshots_written == written + 1 : String.format("snapshots written: %d (expected: %d)",
+                                                                        wr.num_snapshots_written, written + 1);
+    }
+
+    /** Without a member ID, no snapshots are written */
+    public void testNoMemberId() throws Exception {
+        JChannel d=create("D", null).connect(CLUSTER);
+        try {
+            Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c, d);
+            WARM_RESTART wr=d.getProtocolStack().findProtocol(WARM_RESTART.class);
+            Util.sleep(1000);
+            assert wr.snapshotFile() == null && wr.num_snapshots_written == 0;
+        }
+        finally {
+            Util.close(d);
+        }
+    }
+
+    public void testOldSnapshotIsIgnored() throws Exception {
+        Util.close(c);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b);
+        Util.sleep(200);
+        c=create("C");
+        c.getProtocolStack().<WARM_RESTART>findProtocol(WARM_RESTART.class).maxAge(100);
+        c.connect(CLUSTER);
+        Util.waitUntilAllChannelsHaveSameView(10000, 100, a, b, c);
+        WARM_RESTART wr=c.getProtocolStack().findProtocol(WARM_RESTART.class);
+        assert wr.num_mappings_loaded == 0 && wr.num_targeted_joins == 0;
+    }
+
+    protected JChannel create(String name) throws Exception {
+        return create(name, name);
+    }
+
+    protected JChannel create(String name, String member_id) throws Exception {
+        return create(name, member_id, new LOCAL_PING());
+    }
+
+    protected JChannel create(String name, String member_id, Discovery discovery) throws Exception {
+        TCP tcp=new TCP().setBindAddress(Util.getLoopback());
+        if(!discovery.isDynamic()) // TCPPING needs fixed ports
+            tcp.setBindPort(7800).setPortRange(50);
+        return new JChannel(tcp, discovery,
+                            new WARM_RESTART().location(dir.getAbsolutePath()).memberId(member_id).writeDelay(100),
+                            new NAKACK2(), new UNICAST3(), new STABLE(), new GMS().setJoinTimeout(1000))
+          .name(name);
+    }
+
+    /** Returns a TCPPING whose initial hosts are the physical addresses of the given channels */
+    protected static TCPPING tcpping(JChannel ... channels) {
+        List<PhysicalAddress> hosts=new ArrayList<>();
+        for(JChannel ch: channels)
+            hosts.add((PhysicalAddress)ch.down(new Event(Event.GET_PHYSICAL_ADDRESS, ch.getAddress())));
+        return new TCPPING().setInitialHosts2(hosts);
+    }
+}
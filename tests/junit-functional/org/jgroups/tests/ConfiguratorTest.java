@@ -7,6 +7,7 @@ import org.jgroups.protocols.*;
 import org.jgroups.protocols.pbcast.NAKACK2;
 import org.jgroups.stack.Configurator;
 import org.jgroups.stack.Protocol;
+import org.jgroups.stack.ProtocolMetadata;
 import org.jgroups.stack.ProtocolStack;
 import org.jgroups.util.Util;
 import org.testng.Assert;
@@ -15,6 +16,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * Tests ProtocolStack.insertProtocol() and removeProtocol()
@@ -153,6 +155,52 @@ public class ConfiguratorTest {
         }
     }
 
+    public void testMetadata() throws Exception {
+        ProtocolMetadata md=Configurator.metadata(UDP.class);
+        assert md == Configurator.metadata(UDP.class) : "metadata should have been cached";
+        assert md.propertyFields().length > 0 && md.inetAddressFields().length > 0 && md.componentFields().length > 0;
+        assert Stream.of(md.inetAddressFields()).anyMatch(f -> f.getName().equals("bind_addr"));
+        assert Stream.of(md.localAddressFields()).anyMatch(f -> f.getName().equals("bind_addr"));
+        assert !md.hasDependencies();
+
+        Configurator.cacheMetadata(false);
+        try {
+            assert Configurator.metadata(UDP.class) != md;
+            ProtocolMetadata tmp=Configurator.metadata(UDP.class);
+            assert tmp.propertyFields().length == md.propertyFields().length;
+            assert tmp.propertyMethods().length == md.propertyMethods().length;
+            try(JChannel c=new JChannel("udp.xml")) {
+                assert c.getProtocolStack().getTransport().getBindAddress() != null;
+            }
+        }
+        finally {
+            Configurator.cacheMetadata(true);
+        }
+        try(JChannel c=new JChannel("udp.xml")) {
+            assert c.getProtocolStack().getTransport().getBindAddress() != null;
+        }
+    }
+
+    public void testMetadataWithDependencies() throws Exception {
+        assert Configurator.metadata(Dependent.class).hasDependencies();
+        Dependent d=new Dependent();
+        Map<String,String> map=new HashMap<>(Map.of("b", "2", "a", "1"));
+        Configurator.initializeAttrs(d, map, Util.getIpStackType());
+        assert d.a == 1 && d.b == 2 && d.order.equals("ab") : d.order;
+        assert map.isEmpty();
+    }
+
+    protected static final class Dependent extends Protocol {
+        protected int    a, b;
+        protected String order="";
+
+        @Property(dependsUpon="a")
+        public void setB(int b) {this.b=b; order+="b";}
+
+        @Property
+        public void setA(int a) {this.a=a; order+="a";}
+    }
+
     protected static final class Person extends Protocol {
         @Property(systemProperty="person.name")
         protected String name;
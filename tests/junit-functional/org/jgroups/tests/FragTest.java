@@ -243,6 +243,22 @@ public class FragTest {
         assertForAllMessages(m -> Util.verifyByteBuffer(((NioMessage)m).getBuf()));
     }
 
+    /** Messages with a byte array are reassembled into direct buffers and delivered as NioMessages */
+    public void testDirectReassembly(Class<? extends Fragmentation> frag_clazz) throws Exception {
+        setup(frag_clazz);
+        if(frag_clazz.equals(FRAG.class))
+            return;
+        for(JChannel ch: Arrays.asList(a,b))
+            ((Fragmentation)ch.getProtocolStack().findProtocol(Fragmentation.class)).directReassembly(true);
+        Message m1=new BytesMessage(null, array), m2=new BytesMessage(b.getAddress(), array);
+        a.send(m1);
+        a.send(m2);
+        Util.waitUntil(5000, 500, () -> r1.size() == 1 && r2.size() == 2);
+        assertForAllMessages(m -> m instanceof NioMessage && ((NioMessage)m).isDirect());
+        assertForAllMessages(m -> Util.verifyByteBuffer(((NioMessage)m).getBuf()));
+        assertForAllMessages(m -> m.getSrc().equals(a.getAddress()));
+    }
+
     public void testCompositeMessage(Class<? extends Fragmentation> frag_clazz) throws Exception {
         setup(frag_clazz);
         CompositeMessage m1=new CompositeMessage(null, new EmptyMessage(null));
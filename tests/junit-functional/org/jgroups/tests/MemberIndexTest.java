@@ -0,0 +1,78 @@
+package org.jgroups.tests;
+
+import org.jgroups.Address;
+import org.jgroups.Global;
+import org.jgroups.View;
+import org.jgroups.util.MemberIndex;
+import org.jgroups.util.MutableDigest;
+import org.jgroups.util.UUID;
+import org.jgroups.util.Util;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link MemberIndex}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL)
+public class MemberIndexTest {
+    protected static final Address A=Util.createRandomAddress("A"), B=Util.createRandomAddress("B"),
+      C=Util.createRandomAddress("C"), D=Util.createRandomAddress("D");
+
+    public void testIndexOf() {
+        View view=View.create(A, 1, A, B, C);
+        MemberIndex index=view.getMemberIndex();
+        assert index.size() == 3;
+        assert index.indexOf(A) == 0 && index.indexOf(B) == 1 && index.indexOf(C) == 2;
+        assert index.indexOf(D) == -1;
+        assert index.indexOf(null) == -1;
+        assert index.get(1).equals(B);
+        assert index.get(3) == null && index.get(-1) == null;
+        assert view.indexOf(C) == 2;
+    }
+
+    public void testIndexOfEqualAddress() {
+        UUID b=(UUID)B;
+        Address copy=new UUID(b.getMostSignificantBits(), b.getLeastSignificantBits());
+        View view=View.create(A, 1, A, B, C);
+        assert view.indexOf(copy) == 1;
+    }
+
+    public void testSameIndexPerView() {
+        View view=View.create(A, 1, A, B, C);
+        MemberIndex index=view.getMemberIndex();
+        assert view.getMemberIndex() == index;
+        assert index.isFor(view.getViewId());
+        assert !index.isFor(View.create(A, 2, A, B).getViewId());
+    }
+
+    public void testEmptyView() {
+        View view=View.create(A, 1);
+        assert view.getMemberIndex().size() == 0;
+        assert view.indexOf(A) == -1;
+    }
+
+    public void testLargeView() {
+        List<Address> mbrs=new ArrayList<>();
+        for(int i=0; i < 1000; i++)
+            mbrs.add(Util.createRandomAddress(String.valueOf(i)));
+        View view=View.create(mbrs.get(0), 1, mbrs);
+        for(int i=0; i < mbrs.size(); i++)
+            assert view.indexOf(mbrs.get(i)) == i;
+        assert view.indexOf(A) == -1;
+    }
+
+    public void testDigestWithIndex() {
+        View view=View.create(A, 1, A, B, C);
+        MutableDigest digest=new MutableDigest(view);
+        digest.set(B, 5, 10).set(D, 1, 1);
+        assert digest.get(B)[0] == 5 && digest.get(B)[1] == 10;
+        assert digest.get(D) == null;
+        assert !digest.allSet();
+        digest.set(A, 1, 1).set(C, 2, 2);
+        assert digest.allSet();
+    }
+}
@@ -0,0 +1,119 @@
+package org.jgroups.tests;
+
+import org.jgroups.Global;
+import org.jgroups.JChannel;
+import org.jgroups.protocols.TP;
+import org.jgroups.stack.Protocol;
+import org.jgroups.stack.ProtocolStack;
+import org.jgroups.util.Util;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tests {@link ProtocolStack#parallelStart(boolean)} and {@link Protocol#startDependencies()}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class ParallelStartTest {
+    protected JChannel ch;
+
+    @AfterMethod protected void destroy() {Util.close(ch);}
+
+    public void testSequentialStart() throws Exception {
+        Map<String,long[]> times=new ConcurrentHashMap<>();
+        ch=create(false, times, new Slow("A", 500, null), new Slow("B", 500, List.of()), new Slow("C", 500, null));
+        long start=System.currentTimeMillis();
+        ch.connect(ParallelStartTest.class.getSimpleName());
+        long time=System.currentTimeMillis() - start;
+        assert time >= 1500 : String.format("start took %d ms", time);
+        assertOrder(times, "A", "B");
+        assertOrder(times, "B", "C");
+    }
+
+    public void testParallelStart() throws Exception {
+        Map<String,long[]> times=new ConcurrentHashMap<>();
+        ch=create(true, times, new Slow("A", 500, List.of()), new Slow("B", 500, List.of(TP.class)),
+                  new Slow("C", 500, null), new Slow("D", 500, null), new Slow("E", 500, List.of(Slow.class)));
+        long start=System.currentTimeMillis();
+        ch.connect(ParallelStartTest.class.getSimpleName());
+        long time=System.currentTimeMillis() - start;
+        System.out.println(ch.getProtocolStack().printStartupTimes());
+
+        // A and B run concurrently with C -> D, E waits for A and B (protocols below it)
+        assert time < 2000 : String.format("start took %d ms", time);
+        assertOrder(times, "C", "D");
+        assertOrder(times, "A", "E");
+        assertOrder(times, "B", "E");
+        assert overlap(times, "A", "C") && overlap(times, "B", "C");
+        assert ch.getProtocolStack().printStartupTimes().contains("Slow-E");
+    }
+
+    public void testParallelStartWithException() throws Exception {
+        Map<String,long[]> times=new ConcurrentHashMap<>();
+        Slow failing=new Slow("B", 100, List.of()) {
+            public void start() throws Exception {
+                super.start();
+                throw new IllegalStateException("B failed");
+            }
+        };
+        ch=create(true, times, new Slow("A", 500, null), failing, new Slow("C", 100, List.of(Slow.class)));
+        try {
+            ch.connect(ParallelStartTest.class.getSimpleName());
+            assert false : "connect() should have failed";
+        }
+        catch(Exception ex) {
+            System.out.printf("received exception as expected: %s\n", ex);
+            Throwable cause=ex;
+            while(cause.getCause() != null)
+                cause=cause.getCause();
+            assert cause instanceof IllegalStateException && cause.getMessage().equals("B failed");
+        }
+        assert !times.containsKey("C") : "C depends on B and should not have been started";
+    }
+
+    protected static JChannel create(boolean parallel, Map<String,long[]> times, Slow... slow) throws Exception {
+        for(Slow s: slow)
+            s.times=times;
+        Protocol[] prots=Util.getTestStack(slow);
+        JChannel ch=new JChannel(prots);
+        ch.getProtocolStack().parallelStart(parallel);
+        return ch;
+    }
+
+    protected static void assertOrder(Map<String,long[]> times, String first, String second) {
+        long[] f=times.get(first), s=times.get(second);
+        assert f[1] <= s[0] : String.format("%s (%s) should have completed before %s (%s) started", first, f[1], second, s[0]);
+    }
+
+    protected static boolean overlap(Map<String,long[]> times, String a, String b) {
+        long[] x=times.get(a), y=times.get(b);
+        return x[0] < y[1] && y[0] < x[1];
+    }
+
+    protected static class Slow extends Protocol {
+        protected final String                          slow_name;
+        protected final long                            sleep;
+        protected final List<Class<? extends Protocol>> deps;
+        protected Map<String,long[]>                    times;
+
+        protected Slow(String name, long sleep, List<Class<? extends Protocol>> deps) {
+            this.slow_name=name;
+            this.sleep=sleep;
+            this.deps=deps;
+        }
+
+        public String getName() {return "Slow-" + slow_name;}
+        public List<Class<? extends Protocol>> startDependencies() {return deps;}
+
+        public void start() throws Exception {
+            long start=System.nanoTime();
+            Util.sleep(sleep);
+            times.put(slow_name, new long[]{start, System.nanoTime()});
+        }
+    }
+}
@@ -570,6 +570,8 @@ public class SizeTest {
     public void testCompressHeader() throws Exception {
         COMPRESS.CompressHeader hdr=new COMPRESS.CompressHeader(2002);
         _testSize(hdr);
+        _testSize(new COMPRESS.CompressHeader(2002).dictionaryId(-322649));
+        _testSize(new COMPRESS.CompressHeader(COMPRESS.CompressHeader.DICT_REQ, 322649));
     }
 
 
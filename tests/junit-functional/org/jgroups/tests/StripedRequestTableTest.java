@@ -0,0 +1,122 @@
+package org.jgroups.tests;
+
+import org.jgroups.Global;
+import org.jgroups.util.StripedRequestTable;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link StripedRequestTable}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL)
+public class StripedRequestTableTest {
+
+    public void testCreation() {
+        StripedRequestTable<Integer> table=new StripedRequestTable<>(5, 4);
+        assert table.numStripes() == 8;
+        assert table.size() == 0;
+        table=new StripedRequestTable<>(0, 4);
+        assert table.numStripes() == 1;
+    }
+
+    public void testAddGetRemove() {
+        StripedRequestTable<Integer> table=new StripedRequestTable<>(4, 4);
+        List<Long> ids=new ArrayList<>();
+        for(int i=0; i < 10; i++) {
+            long id=table.add(i);
+            assert id > 0;
+            ids.add(id);
+        }
+        assert table.size() == 10;
+        for(int i=0; i < ids.size(); i++)
+            assert table.get(ids.get(i)) == i;
+        for(int i=0; i < ids.size(); i++)
+            assert table.remove(ids.get(i)) == i;
+        assert table.size() == 0;
+        for(long id: ids) {
+            assert table.get(id) == null;
+            assert table.remove(id) == null;
+        }
+    }
+
+    public void testGetNonExistentID() {
+        StripedRequestTable<Integer> table=new StripedRequestTable<>(4, 4);
+        assert table.get(0) == null;
+        assert table.get(12345) == null;
+        long id=table.add(1);
+        assert table.get(id + table.numStripes()) == null; // next seqno in the same stripe
+    }
+
+    public void testIDsAreNotReusedAfterClear() {
+        StripedRequestTable<Integer> table=new StripedRequestTable<>(4, 4);
+        long id=table.add(1);
+        table.clear();
+        assert table.size() == 0 && table.get(id) == null;
+        long id2=table.add(2);
+        assert id2 != id;
+        assert table.get(id) == null;
+        assert table.get(id2) == 2;
+    }
+
+    public void testForEach() {
+        StripedRequestTable<Integer> table=new StripedRequestTable<>(4, 4);
+        List<Long> ids=new ArrayList<>();
+        for(int i=1; i <= 10; i++)
+            ids.add(table.add(i));
+        table.remove(ids.get(0));
+        table.remove(ids.get(5));
+        AtomicInteger sum=new AtomicInteger();
+        table.forEach(sum::addAndGet);
+        assert sum.get() == 55 - 1 - 6;
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final int NUM_THREADS=16, NUM=5000;
+        final StripedRequestTable<Long> table=new StripedRequestTable<Long>(4, 4).removesTillCompaction(100);
+        final Set<Long> all_ids=ConcurrentHashMap.newKeySet();
+        final CountDownLatch latch=new CountDownLatch(1);
+        final AtomicInteger errors=new AtomicInteger();
+        Thread[] threads=new Thread[NUM_THREADS];
+        for(int i=0; i < threads.length; i++) {
+            final long val=i;
+            threads[i]=new Thread(() -> {
+                try {
+                    latch.await();
+                }
+                catch(InterruptedException e) {
+                    return;
+                }
+                List<Long> ids=new ArrayList<>(NUM);
+                for(int j=0; j < NUM; j++) {
+                    long id=table.add(val);
+                    ids.add(id);
+                    if(!all_ids.add(id))
+                        errors.incrementAndGet(); // duplicate ID
+                    if(j % 2 == 0) {
+                        if(table.remove(ids.remove(ids.size()-1)) != val)
+                            errors.incrementAndGet();
+                    }
+                }
+                for(long id: ids) {
+                    if(table.get(id) != val || table.remove(id) != val)
+                        errors.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        latch.countDown();
+        for(Thread t: threads)
+            t.join();
+        assert errors.get() == 0 : String.format("%d errors", errors.get());
+        assert all_ids.size() == NUM_THREADS * NUM;
+        assert table.size() == 0 : table;
+    }
+}
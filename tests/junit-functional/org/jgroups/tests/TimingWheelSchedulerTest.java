@@ -0,0 +1,76 @@
+package org.jgroups.tests;
+
+import org.jgroups.Global;
+import org.jgroups.util.TimingWheelScheduler;
+import org.jgroups.util.Util;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tests of {@link TimeSchedulerTest} against {@link TimingWheelScheduler}, plus tests specific to the
+ * timing wheel
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.TIME_SENSITIVE,singleThreaded=true)
+public class TimingWheelSchedulerTest extends TimeSchedulerTest {
+
+    @BeforeMethod @Override protected void init() {
+        timer=new TimingWheelScheduler();
+    }
+
+    /** Uses a small wheel (8 buckets of 10 ms), so tasks have to be cascaded down from levels 1 and 2 */
+    public void testCascading() throws Exception {
+        timer.stop();
+        TimingWheelScheduler wheel=new TimingWheelScheduler(10, 8, 3);
+        timer=wheel;
+        List<Long> delays=List.of(25L, 150L, 700L, 1200L);
+        List<Long> lateness=new CopyOnWriteArrayList<>();
+        long start=System.nanoTime();
+        for(long delay: delays) {
+            timer.schedule(() -> lateness.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) - delay),
+                           delay, TimeUnit.MILLISECONDS, false);
+        }
+        assert wheel.size() == delays.size();
+        Util.waitUntil(5000, 50, () -> lateness.size() == delays.size());
+        System.out.printf("lateness (ms): %s, %s\n", lateness, wheel.occupancy());
+        for(long l: lateness)
+            assert l >= 0 && l < 500 : String.format("task was executed %d ms late", l);
+        assert wheel.numCascaded() > 0;
+        assert wheel.size() == 0;
+    }
+
+    public void testCancelledTasksAreRemovedFromWheel() throws Exception {
+        TimingWheelScheduler wheel=(TimingWheelScheduler)timer;
+        AtomicInteger count=new AtomicInteger();
+        Future<?>[] futures=new Future<?>[1000];
+        for(int i=0; i < futures.length; i++)
+            futures[i]=timer.schedule(count::incrementAndGet, 60 + i, TimeUnit.SECONDS, false);
+        Util.waitUntil(2000, 20, () -> wheel.occupancy().contains("1000 tasks"));
+        for(Future<?> f: futures) {
+            boolean cancelled=f.cancel(false);
+            assert cancelled;
+        }
+        Util.waitUntil(2000, 20, () -> wheel.size() == 0);
+        System.out.println(wheel.occupancy());
+        assert count.get() == 0;
+        assert wheel.dumpTimerTasks().isEmpty();
+    }
+
+    public void testBatching() throws Exception {
+        TimingWheelScheduler wheel=(TimingWheelScheduler)timer;
+        wheel.setNonBlockingTaskHandling(false);
+        AtomicInteger count=new AtomicInteger();
+        for(int i=0; i < 100; i++)
+            timer.schedule(count::incrementAndGet, 200, TimeUnit.MILLISECONDS, false);
+        Util.waitUntil(2000, 50, () -> count.get() == 100);
+        System.out.println(wheel.occupancy());
+        assert wheel.numBatches() > 0 && wheel.numBatches() <= 5;
+    }
+}
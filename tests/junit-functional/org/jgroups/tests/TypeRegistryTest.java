@@ -0,0 +1,220 @@
+package org.jgroups.tests;
+
+import org.jgroups.Global;
+import org.jgroups.Message;
+import org.jgroups.ObjectMessage;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.MethodCallList;
+import org.jgroups.util.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Tests {@link TypeRegistry} and {@link Marshaller}
+ * @author Bela Ban
+ * @since  5.2
+ */
+@Test(groups=Global.FUNCTIONAL,singleThreaded=true)
+public class TypeRegistryTest {
+    protected static final short PERSON=1000, POINT=1001;
+
+    @BeforeMethod protected void setup() {
+        TypeRegistry.register(PERSON, Person.class, Person::write, Person::read);
+        TypeRegistry.register(POINT, Point.class, Marshaller.create((p, out) -> {out.writeInt(p.x); out.writeInt(p.y);},
+                                                                    in -> new Point(in.readInt(), in.readInt()),
+                                                                    p -> Global.INT_SIZE * 2));
+    }
+
+    @AfterMethod protected void destroy() {
+        TypeRegistry.unregister(PERSON);
+        TypeRegistry.unregister(POINT);
+    }
+
+    public void testRegistration() {
+        assert TypeRegistry.getId(Person.class) == PERSON;
+        assert TypeRegistry.getId(Point.class) == POINT;
+        assert TypeRegistry.getId(String.class) == -1;
+        assert TypeRegistry.getMarshaller(Point.class) != null;
+        assert TypeRegistry.isRegistered(new Point(1, 2));
+        assert !TypeRegistry.isRegistered(new Serialized("x"));
+    }
+
+    public void testDuplicateRegistration() {
+        try {
+            TypeRegistry.register(PERSON, Serialized.class, (s, out) -> {}, in -> null);
+            assert false : "registration of a duplicate ID should have failed";
+        }
+        catch(IllegalArgumentException expected) {
+            System.out.printf("received exception as expected: %s\n", expected);
+        }
+        try {
+            TypeRegistry.register((short)1002, Person.class, Person::write, Person::read);
+            assert false : "registration of a duplicate class should have failed";
+        }
+        catch(IllegalArgumentException expected) {
+            System.out.printf("received exception as expected: %s\n", expected);
+        }
+        try {
+            TypeRegistry.register((short)-1, Serialized.class, (s, out) -> {}, in -> null);
+            assert false : "registration of a negative ID should have failed";
+        }
+        catch(IllegalArgumentException expected) {
+            System.out.printf("received exception as expected: %s\n", expected);
+        }
+    }
+
+    public void testUnregister() throws Exception {
+        Point p=new Point(1, 2);
+        byte[] buf=Util.objectToByteBuffer(p);
+        assert TypeRegistry.unregister(POINT);
+        assert !TypeRegistry.unregister(POINT);
+        assert !TypeRegistry.isRegistered(p);
+        try {
+            Util.objectFromByteBuffer(buf);
+            assert false : "reading an unregistered type should have failed";
+        }
+        catch(IllegalStateException expected) {
+            System.out.printf("received exception as expected: %s\n", expected);
+        }
+    }
+
+    public void testObjectToStream() throws Exception {
+        Person person=new Person("Bela", 55);
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(64);
+        Util.objectToStream(person, out);
+        assert out.position() == Util.size(person);
+        Person p=Util.objectFromStream(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+        assert p.equals(person);
+
+        Point point=new Point(3, 4);
+        assert Util.size(point) == Global.BYTE_SIZE + Global.SHORT_SIZE + Global.INT_SIZE * 2;
+        ByteArray buf=Util.objectToBuffer(point);
+        assert buf.getLength() == Util.size(point);
+        assert Util.objectFromBuffer(buf, null).equals(point);
+        assert Util.objectFromByteBuffer(ByteBuffer.wrap(buf.getArray(), 0, buf.getLength()), null).equals(point);
+    }
+
+    public void testObjectMessage() throws Exception {
+        Person person=new Person("Bela", 55);
+        ObjectMessage msg=new ObjectMessage(null, person);
+        assert msg.getObject() == person; // not wrapped into an ObjectWrapper
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(64);
+        msg.writeTo(out);
+        assert out.position() == msg.size();
+        Message copy=new ObjectMessage();
+        copy.readFrom(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+        assert copy.getObject().equals(person);
+    }
+
+    public void testMethodCallSize() throws Exception {
+        MethodCall[] calls={
+          new MethodCall((short)1),
+          new MethodCall((short)1, new Person("Bela", 55), new Point(1, 2), null, 22, "hello", new byte[]{1,2,3}),
+          new MethodCall("foo", new Object[]{new Point(1, 2), 5L}, new Class<?>[]{Point.class, long.class}),
+          new MethodCall("bar", new Object[]{"hello", 5L}, new Class<?>[]{String.class, long.class}),
+          new MethodCall((short)2, new Serialized("not sizeable"), new Point(1, 2))
+        };
+        boolean[] sizeable={true, true, false, true, false};
+        for(int i=0; i < calls.length; i++) {
+            MethodCall call=calls[i];
+            assert call.isSizeable() == sizeable[i] : String.format("%s: sizeable=%b", call, call.isSizeable());
+            int size=call.serializedSize();
+            ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(64);
+            call.writeTo(out);
+            assert out.position() == size : String.format("%s: size=%d, written=%d", call, size, out.position());
+            MethodCall c=new MethodCall();
+            c.readFrom(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+            Object[] expected=call.getArgs() != null && call.getArgs().length > 0? call.getArgs() : null;
+            assert Arrays.deepEquals(c.getArgs(), expected) : String.format("%s: %s", call, c);
+        }
+        MethodCallList list=new MethodCallList(Arrays.asList(calls));
+        int size=list.serializedSize();
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(64);
+        list.writeTo(out);
+        assert out.position() == size;
+    }
+
+    public void testResultsSize() throws Exception {
+        MethodCallList.Results results=new MethodCallList.Results(3).setValue(0, new Point(1, 2)).setValue(1, "hello");
+        assert results.isSizeable();
+        checkResults(results);
+        results.setException(2, new IllegalStateException("booom"));
+        assert !results.isSizeable();
+        checkResults(results);
+    }
+
+    protected static void checkResults(MethodCallList.Results results) throws Exception {
+        int size=results.serializedSize();
+        ByteArrayDataOutputStream out=new ByteArrayDataOutputStream(64);
+        results.writeTo(out);
+        assert out.position() == size;
+        MethodCallList.Results r=new MethodCallList.Results();
+        r.readFrom(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+        assert r.size() == results.size();
+        for(int i=0; i < r.size(); i++)
+            assert r.isException(i) == results.isException(i);
+        assert r.value(0).equals(new Point(1, 2)) && r.value(1).equals("hello");
+    }
+
+
+    protected static class Person {
+        protected final String name;
+        protected final int    age;
+
+        protected Person(String name, int age) {
+            this.name=name;
+            this.age=age;
+        }
+
+        protected static void write(Person p, DataOutput out) throws IOException {
+            out.writeUTF(p.name);
+            out.writeInt(p.age);
+        }
+
+        protected static Person read(DataInput in) throws IOException {
+            return new Person(in.readUTF(), in.readInt());
+        }
+
+        public boolean equals(Object obj) {
+            return obj instanceof Person && ((Person)obj).name.equals(name) && ((Person)obj).age == age;
+        }
+
+        public int hashCode() {return Objects.hash(name, age);}
+        public String toString() {return String.format("%s (%d)", name, age);}
+    }
+
+    protected static class Point {
+        protected final int x, y;
+
+        protected Point(int x, int y) {
+            this.x=x;
+            this.y=y;
+        }
+
+        public boolean equals(Object obj) {
+            return obj instanceof Point && ((Point)obj).x == x && ((Point)obj).y == y;
+        }
+
+        public int hashCode() {return Objects.hash(x, y);}
+        public String toString() {return String.format("(%d,%d)", x, y);}
+    }
+
+    protected static class Serialized implements Serializable {
+        private static final long serialVersionUID=-3373316592779034040L;
+        protected final String s;
+
+        protected Serialized(String s) {this.s=s;}
+
+        public boolean equals(Object obj) {return obj instanceof Serialized && ((Serialized)obj).s.equals(s);}
+        public int hashCode() {return s.hashCode();}
+    }
+}
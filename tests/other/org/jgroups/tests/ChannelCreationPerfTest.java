@@ -0,0 +1,58 @@
+package org.jgroups.tests;
+
+import org.jgroups.JChannel;
+import org.jgroups.stack.Configurator;
+import org.jgroups.stack.ProtocolMetadata;
+import org.jgroups.util.Util;
+
+/**
+ * Measures the time to create (and close) a number of channels, with the annotated fields and methods of the protocols
+ * looked up reflectively for every channel, versus looked up once and cached in {@link ProtocolMetadata}.<br/>
+ * Usage: ChannelCreationPerfTest [-props udp.xml] [-channels 30] [-rounds 5]
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class ChannelCreationPerfTest {
+
+    protected static long createChannels(String props, int num_channels) throws Exception {
+        JChannel[] channels=new JChannel[num_channels];
+        long start=System.nanoTime();
+        for(int i=0; i < channels.length; i++)
+            channels[i]=new JChannel(props);
+        long time=System.nanoTime() - start;
+        Util.close(channels);
+        return time;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String props="udp.xml";
+        int    num_channels=30, rounds=5;
+        for(int i=0; i < args.length; i++) {
+            if("-props".equals(args[i])) {
+                props=args[++i];
+                continue;
+            }
+            if("-channels".equals(args[i])) {
+                num_channels=Integer.parseInt(args[++i]);
+                continue;
+            }
+            if("-rounds".equals(args[i])) {
+                rounds=Integer.parseInt(args[++i]);
+                continue;
+            }
+            System.out.println("ChannelCreationPerfTest [-props udp.xml] [-channels 30] [-rounds 5]");
+            return;
+        }
+
+        createChannels(props, num_channels); // warmup (class loading, JIT)
+        for(boolean cache: new boolean[]{false, true}) {
+            Configurator.cacheMetadata(cache);
+            long total=0;
+            for(int i=0; i < rounds; i++)
+                total+=createChannels(props, num_channels);
+            double avg_ms=total / (double)rounds / 1_000_000.0, per_channel=avg_ms / num_channels;
+            System.out.printf("%-10s %d channels: %,.2f ms (%,.2f ms/channel)\n",
+                              cache? "cached:" : "uncached:", num_channels, avg_ms, per_channel);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.jgroups.tests;
+
+import org.jgroups.Address;
+import org.jgroups.PhysicalAddress;
+import org.jgroups.blocks.LazyRemovalCache;
+import org.jgroups.blocks.SegmentedLazyRemovalCache;
+import org.jgroups.stack.IpAddress;
+import org.jgroups.util.UUID;
+import org.jgroups.util.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares {@link LazyRemovalCache} (the previous logical address cache of TP) with {@link SegmentedLazyRemovalCache}:
+ * the throughput of lookups by a number of concurrent threads, and the cost of a reaper run when most members have
+ * left (churn of client-like members), but only a few entries have expired.<br/>
+ * Usage: LogicalAddressCachePerfTest [-members 5000] [-threads 16] [-time 5] [-segments 16]
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class LogicalAddressCachePerfTest {
+    protected static volatile boolean running;
+
+    protected interface Cache {
+        void            add(Address key, PhysicalAddress val);
+        PhysicalAddress get(Address key);
+        void            remove(Address key);
+        void            removeMarkedElements();
+        int             size();
+    }
+
+    protected static class Lazy implements Cache {
+        protected final LazyRemovalCache<Address,PhysicalAddress> cache;
+        protected Lazy(int max, long max_age)                  {cache=new LazyRemovalCache<>(max, max_age);}
+        public void            add(Address k, PhysicalAddress v) {cache.add(k, v);}
+        public PhysicalAddress get(Address k)                    {return cache.get(k);}
+        public void            remove(Address k)                 {cache.remove(k);}
+        public void            removeMarkedElements()            {cache.removeMarkedElements();}
+        public int             size()                            {return cache.size();}
+        public String          toString()                        {return "LazyRemovalCache";}
+    }
+
+    protected static class Segmented implements Cache {
+        protected final SegmentedLazyRemovalCache<Address,PhysicalAddress> cache;
+        protected Segmented(int max, long max_age, int segs)     {cache=new SegmentedLazyRemovalCache<>(max, max_age, segs);}
+        public void            add(Address k, PhysicalAddress v) {cache.add(k, v);}
+        public PhysicalAddress get(Address k)                    {return cache.get(k);}
+        public void            remove(Address k)                 {cache.remove(k);}
+        public void            removeMarkedElements()            {cache.removeMarkedElements();}
+        public int             size()                            {return cache.size();}
+        public String          toString()                        {return "SegmentedLazyRemovalCache";}
+    }
+
+    protected static void populate(Cache cache, Address[] keys) throws Exception {
+        for(int i=0; i < keys.length; i++)
+            cache.add(keys[i], new IpAddress("127.0.0.1", 1024 + (i % 60000)));
+    }
+
+    protected static double lookups(Cache cache, Address[] keys, int num_threads, long time_ms) throws InterruptedException {
+        final LongAdder      ops=new LongAdder();
+        final CountDownLatch latch=new CountDownLatch(1);
+        final List<Thread>   threads=new ArrayList<>(num_threads);
+        running=true;
+        for(int i=0; i < num_threads; i++) {
+            Thread t=new Thread(() -> {
+                ThreadLocalRandom rand=ThreadLocalRandom.current();
+                try {
+                    latch.await();
+                }
+                catch(InterruptedException e) {
+                    return;
+                }
+                long cnt=0;
+                while(running) {
+                    for(int j=0; j < 1000; j++)
+                        if(cache.get(keys[rand.nextInt(keys.length)]) == null)
+                            throw new IllegalStateException("mapping not found");
+                    cnt+=1000;
+                }
+                ops.add(cnt);
+            });
+            threads.add(t);
+            t.start();
+        }
+        latch.countDown();
+        Util.sleep(time_ms);
+        running=false;
+        for(Thread t: threads)
+            t.join();
+        return ops.sum() / (time_ms / 1000.0);
+    }
+
+    /** Marks 90% of the members as removable (they left), then measures the avg time of a reaper run */
+    protected static double reaper(Cache cache, Address[] keys, int runs) {
+        for(int i=0; i < keys.length; i++)
+            if(i % 10 != 0)
+                cache.remove(keys[i]);
+        long start=System.nanoTime();
+        for(int i=0; i < runs; i++)
+            cache.removeMarkedElements();
+        return (System.nanoTime() - start) / (double)runs / 1000.0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int  num_members=5000, num_threads=16, segments=16;
+        long time=5;
+        for(int i=0; i < args.length; i++) {
+            if("-members".equals(args[i])) {
+                num_members=Integer.parseInt(args[++i]);
+                continue;
+            }
+            if("-threads".equals(args[i])) {
+                num_threads=Integer.parseInt(args[++i]);
+                continue;
+            }
+            if("-time".equals(args[i])) {
+                time=Long.parseLong(args[++i]);
+                continue;
+            }
+            if("-segments".equals(args[i])) {
+                segments=Integer.parseInt(args[++i]);
+                continue;
+            }
+            System.out.println("LogicalAddressCachePerfTest [-members 5000] [-threads 16] [-time 5] [-segments 16]");
+            return;
+        }
+        Address[] keys=new Address[num_members];
+        for(int i=0; i < keys.length; i++)
+            keys[i]=UUID.randomUUID();
+
+        // max size is greater than the number of members, so the size check doesn't trigger a reaper run
+        int max=num_members * 2;
+        long max_age=360_000;
+        for(int round=0; round < 2; round++) { // the first round is a warmup
+            for(Cache cache: new Cache[]{new Lazy(max, max_age), new Segmented(max, max_age, segments)}) {
+                populate(cache, keys);
+                double lookups=lookups(cache, keys, num_threads, time * 1000);
+                double reaper_us=reaper(cache, keys, 1000);
+                if(round > 0)
+                    System.out.printf("%-26s %,d members, %d threads: %,.0f lookups/sec, reaper run: %,.2f us\n",
+                                      cache + ":", cache.size(), num_threads, lookups, reaper_us);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.jgroups.tests;
+
+import org.jgroups.util.StripedRequestTable;
+import org.jgroups.util.Util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the add/get/remove cycle of a pending request, as done by RequestCorrelator, with a number of concurrent
+ * callers: a {@link ConcurrentMap} plus a shared {@link AtomicLong} request-id generator (the default) versus a
+ * {@link StripedRequestTable}.<br/>
+ * Usage: RequestTablePerfTest [-threads 64] [-time 10] [-stripes <2*cores>]
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class RequestTablePerfTest {
+    protected static volatile boolean running;
+
+    protected interface Table {
+        long   add(Object req);
+        Object get(long id);
+        Object remove(long id);
+    }
+
+    protected static class MapTable implements Table {
+        protected final ConcurrentMap<Long,Object> map=new ConcurrentHashMap<>();
+        protected final AtomicLong                 ids=new AtomicLong(1);
+
+        public long add(Object req) {
+            long id=ids.getAndIncrement();
+            map.putIfAbsent(id, req);
+            return id;
+        }
+        public Object get(long id)    {return map.get(id);}
+        public Object remove(long id) {return map.remove(id);}
+    }
+
+    protected static class StripedTable implements Table {
+        protected final StripedRequestTable<Object> table;
+
+        protected StripedTable(int stripes) {table=new StripedRequestTable<>(stripes, 32).removesTillCompaction(1024);}
+        public long   add(Object req)  {return table.add(req);}
+        public Object get(long id)     {return table.get(id);}
+        public Object remove(long id)  {return table.remove(id);}
+    }
+
+    protected static long run(String name, Table table, int num_threads, long time_ms) throws InterruptedException {
+        final LongAdder       ops=new LongAdder();
+        final CountDownLatch  latch=new CountDownLatch(1);
+        final Thread[]        threads=new Thread[num_threads];
+        final Object          req=new Object();
+        running=true;
+        for(int i=0; i < threads.length; i++) {
+            threads[i]=new Thread(() -> {
+                try {
+                    latch.await();
+                }
+                catch(InterruptedException e) {
+                    return;
+                }
+                while(running) {
+                    long id=table.add(req);
+                    if(table.get(id) != req || table.remove(id) != req)
+                        throw new IllegalStateException(String.format("request %d not found", id));
+                    ops.increment();
+                }
+            }, name + "-" + i);
+            threads[i].start();
+        }
+        long start=System.nanoTime();
+        latch.countDown();
+        Util.sleep(time_ms);
+        running=false;
+        for(Thread t: threads)
+            t.join();
+        long time_ns=System.nanoTime() - start, num=ops.sum();
+        System.out.printf("%-20s %,12d requests in %s: %,.0f requests/sec, %,.0f ns/request\n", name + ":", num,
+                          Util.printTime(time_ns, TimeUnit.NANOSECONDS),
+                          num / (time_ns / 1_000_000_000.0), time_ns * (double)num_threads / num);
+        return num;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int  num_threads=64, num_stripes=Runtime.getRuntime().availableProcessors() * 2;
+        long time=10;
+        for(int i=0; i < args.length; i++) {
+            if("-threads".equals(args[i])) {
+                num_threads=Integer.parseInt(args[++i]);
+                continue;
+            }
+            if("-time".equals(args[i])) {
+                time=Long.parseLong(args[++i]);
+                continue;
+            }
+            if("-stripes".equals(args[i])) {
+                num_stripes=Integer.parseInt(args[++i]);
+                continue;
+            }
+            System.out.println("RequestTablePerfTest [-threads <num>] [-time <secs>] [-stripes <num>]");
+            return;
+        }
+        System.out.printf("%d threads, %d secs, %d stripes\n", num_threads, time, num_stripes);
+        // warmup
+        run("map (warmup)", new MapTable(), num_threads, 2000);
+        run("striped (warmup)", new StripedTable(num_stripes), num_threads, 2000);
+
+        long map=run("map", new MapTable(), num_threads, time * 1000);
+        long striped=run("striped", new StripedTable(num_stripes), num_threads, time * 1000);
+        System.out.printf("\nstriped / map: %.2f\n", striped / (double)map);
+    }
+}
@@ -110,6 +110,13 @@ public class PerfUtil {
             Util.objectToStream(obj, out);
         }
 
+        @Override protected int argSize(Object obj) {
+            if(obj instanceof Throwable || obj instanceof Config || obj instanceof Results)
+                return -1;
+            int size=super.argSize(obj);
+            return size < 0? size : Global.BYTE_SIZE + size;
+        }
+
         protected Object readArg(DataInput in) throws IOException, ClassNotFoundException {
             byte type=in.readByte();
             switch(type) {
@@ -0,0 +1,152 @@
+package org.jgroups.tests;
+
+import org.jgroups.JChannel;
+import org.jgroups.View;
+import org.jgroups.protocols.FD_SWIM;
+import org.jgroups.protocols.SHARED_LOOPBACK;
+import org.jgroups.protocols.SHARED_LOOPBACK_PING;
+import org.jgroups.protocols.UNICAST3;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.util.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Simulates a large cluster (1000 members by default) in a single JVM over {@link SHARED_LOOPBACK}, with
+ * {@link FD_SWIM} as failure detection. Crashes a number of members and measures the time until all remaining members
+ * have installed a view without them, plus the number of failure detection messages sent per member.
+ * @author Bela Ban
+ * @since  5.2
+ */
+public class SwimStressTest {
+    protected JChannel[] channels;
+
+    protected void start(int num, int num_crashes, long protocol_period, long ping_timeout, long suspect_timeout,
+                         int num_connectors) throws Exception {
+        channels=new JChannel[num];
+        for(int i=0; i < num; i++)
+            channels[i]=create(String.valueOf(i+1), protocol_period, ping_timeout, suspect_timeout);
+
+        long start=System.nanoTime();
+        channels[0].connect(SwimStressTest.class.getSimpleName());
+        ExecutorService connectors=Executors.newFixedThreadPool(num_connectors);
+        List<Future<?>> futures=new ArrayList<>(num);
+        for(int i=1; i < num; i++) {
+            JChannel ch=channels[i];
+            futures.add(connectors.submit(() -> {
+                ch.connect(SwimStressTest.class.getSimpleName());
+                return null;
+            }));
+        }
+        for(Future<?> f: futures)
+            f.get();
+        connectors.shutdown();
+        Util.waitUntil(num * 1000L, 1000, () -> Stream.of(channels).allMatch(ch -> ch.getView().size() == num),
+                       () -> String.format("view sizes: %s", viewSizes(channels)));
+        System.out.printf("%d members joined in %s\n", num, Util.printTime(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+
+        // let the cluster run for a number of protocol periods before crashing members
+        long pings_before=pingsSent(channels);
+        Util.sleep(protocol_period * 10);
+        System.out.printf("failure detection messages per member and protocol period: %.2f\n",
+                          (pingsSent(channels) - pings_before) / (double)num / 10);
+
+        List<JChannel> crashed=new ArrayList<>(num_crashes), remaining=new ArrayList<>(List.of(channels));
+        for(int i=0; i < num_crashes; i++) // never crash the coordinator
+            crashed.add(remaining.remove((int)Util.random(remaining.size() - 1)));
+        System.out.printf("crashing %s\n", crashed.stream().map(JChannel::getAddress).collect(Collectors.toList()));
+        start=System.nanoTime();
+        for(JChannel ch: crashed)
+            Util.shutdown(ch);
+        JChannel[] rest=remaining.toArray(new JChannel[0]);
+        int expected=num - num_crashes;
+        Util.waitUntil(suspect_timeout * 10 + num * 100L, 500,
+                       () -> Stream.of(rest).allMatch(ch -> ch.getView().size() == expected),
+                       () -> String.format("view sizes: %s", viewSizes(rest)));
+        View v=rest[0].getView();
+        if(crashed.stream().anyMatch(ch -> v.containsMember(ch.getAddress())))
+            throw new IllegalStateException(String.format("view %s contains crashed members", v));
+        System.out.printf("%d crashed members were excluded in %s, view: %s\n", num_crashes,
+                          Util.printTime(System.nanoTime() - start, TimeUnit.NANOSECONDS), v.getViewId());
+    }
+
+    protected void stop() {
+        if(channels != null)
+            Util.closeReverse(channels);
+    }
+
+    protected static long pingsSent(JChannel[] channels) {
+        return Stream.of(channels).filter(JChannel::isConnected)
+          .map(ch -> (FD_SWIM)ch.getProtocolStack().findProtocol(FD_SWIM.class))
+          .mapToLong(fd -> fd.getNumPingsSent() + fd.getNumPingReqsSent()).sum();
+    }
+
+    protected static String viewSizes(JChannel[] channels) {
+        return Stream.of(channels).collect(Collectors.groupingBy(ch -> ch.getView() == null? 0 : ch.getView().size(),
+                                                                 Collectors.counting())).toString();
+    }
+
+    protected static JChannel create(String name, long protocol_period, long ping_timeout,
+                                     long suspect_timeout) throws Exception {
+        return new JChannel(new SHARED_LOOPBACK(),
+                            new SHARED_LOOPBACK_PING(),
+                            new FD_SWIM().setProtocolPeriod(protocol_period).setPingTimeout(ping_timeout)
+                              .setSuspectTimeout(suspect_timeout),
+                            new NAKACK2(),
+                            new UNICAST3(),
+                            new STABLE(),
+                            new GMS().setJoinTimeout(5000))
+          .name(name);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int num=1000, num_crashes=5, num_connectors=20;
+        long protocol_period=1000, ping_timeout=300, suspect_timeout=5000;
+        for(int i=0; i < args.length; i++) {
+            if("-num".equals(args[i])) {
+                num=Integer.parseInt(args[++i]);
+                continue;
+            }
+            if("-crashes".equals(args[i])) {
+                num_crashes=Integer.parseInt(args[++i]);
+                continue;
+            }
+            if("-connectors".equals(args[i])) {
+                num_connectors=Integer.parseInt(args[++i]);
+                continue;
+            }
+            if("-protocol_period".equals(args[i])) {
+                protocol_period=Long.parseLong(args[++i]);
+                continue;
+            }
+            if("-ping_timeout".equals(args[i])) {
+                ping_timeout=Long.parseLong(args[++i]);
+                continue;
+            }
+            if("-suspect_timeout".equals(args[i])) {
+                suspect_timeout=Long.parseLong(args[++i]);
+                continue;
+            }
+            System.out.println("SwimStressTest [-num <members>] [-crashes <members to crash>] " +
+                                 "[-connectors <threads connecting members>] [-protocol_period <ms>] " +
+                                 "[-ping_timeout <ms>] [-suspect_timeout <ms>]");
+            return;
+        }
+        SwimStressTest test=new SwimStressTest();
+        try {
+            test.start(num, num_crashes, protocol_period, ping_timeout, suspect_timeout, num_connectors);
+        }
+        finally {
+            test.stop();
+        }
+    }
+}